@@ -1,16 +1,30 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 
 // A class representing a client with a wishlist.
+// The client number is saved as "number"; files saved while client IDs were strings such as "C12"
+// have a "clientId" string instead, which is converted when they are loaded.
 public class Client implements Serializable {
     private static final long serialVersionUID = 1L;
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("clientName", String.class),
+        new ObjectStreamField("address", String.class),
+        new ObjectStreamField("phone", String.class),
+        new ObjectStreamField("number", int.class),
+        new ObjectStreamField("balance", double.class),
+        new ObjectStreamField("wishlist", Wishlist.class)
+    };
     private String clientName;
     private String address;
     private String phone;
-    private String clientId;
+    private int clientId; // Numeric ID; the "C" prefix is only added for display
     private double balance; // Balance variable to represent account balance
     private static final String CLIENT_STRING = "C";
 
-    private Wishlist wishlist; // Each client has one wishlist
+    private Wishlist wishlist; // Each client has one wishlist, created on first use
 
     // Constructor to create a new client with the given name, address, and phone
     // number.
@@ -18,9 +32,8 @@ public class Client implements Serializable {
         this.clientName = clientName;
         this.address = address;
         this.phone = phone;
-        this.clientId = CLIENT_STRING + (ClientIdServer.instance()).getId();
+        this.clientId = (ClientIdServer.instance()).getId();
         this.balance = 0.0; // Initialize balance to zero
-        this.wishlist = new Wishlist(); // Initialize the wishlist
     }
 
     // Method to get the client's name.
@@ -40,9 +53,24 @@ public class Client implements Serializable {
 
     // Method to get the client's unique ID.
     public String getClientId() {
+        return formatClientId(clientId);
+    }
+
+    // Method to get the numeric part of the client's ID.
+    public int getClientNumber() {
         return clientId;
     }
 
+    // Method to build the display ID of a client from its number.
+    public static String formatClientId(int clientNumber) {
+        return CLIENT_STRING + clientNumber;
+    }
+
+    // Method to get the number from a client ID such as "C12", or -1 if it is not a client ID.
+    public static int parseClientId(String clientId) {
+        return EntityIds.parse(clientId, CLIENT_STRING);
+    }
+
     // Method to get the client's account balance.
     public double getBalance() {
         return balance;
@@ -65,18 +93,53 @@ public class Client implements Serializable {
 
     // Method to check if this client has the same ID as the provided one.
     public boolean equals(String id) {
-        return this.clientId.equals(id);
+        return parseClientId(id) == clientId;
     }
 
-    // Method to get the client's wishlist.
+    // Method to get the client's wishlist, creating it the first time it is needed.
     public Wishlist getWishlist() {
+        if (wishlist == null) {
+            wishlist = new Wishlist();
+        }
         return wishlist;
     }
 
+    // Method to check if the client has any products in their wishlist.
+    public boolean hasWishlist() {
+        return wishlist != null && !wishlist.isEmpty();
+    }
+
     // Method to provide a string representation of the client.
     public String toString() {
-        String string = "Client Name: " + clientName + " | Address: " + address + " | ID: " + clientId + " | Phone: "
+        String string = "Client Name: " + clientName + " | Address: " + address + " | ID: " + getClientId() + " | Phone: "
                 + phone + " | Balance: $" + balance;
         return string;
     }
+
+    // Custom serialization method that saves the fields under their serial names.
+    private void writeObject(ObjectOutputStream output) throws IOException {
+        ObjectOutputStream.PutField fields = output.putFields();
+        fields.put("clientName", clientName);
+        fields.put("address", address);
+        fields.put("phone", phone);
+        fields.put("number", clientId);
+        fields.put("balance", balance);
+        fields.put("wishlist", wishlist);
+        output.writeFields();
+    }
+
+    // Custom deserialization method that converts the string ID of older files.
+    private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = input.readFields();
+        clientName = (String) fields.get("clientName", null);
+        address = (String) fields.get("address", null);
+        phone = (String) fields.get("phone", null);
+        balance = fields.get("balance", 0.0);
+        wishlist = (Wishlist) fields.get("wishlist", null);
+        if (fields.defaulted("number")) {
+            clientId = parseClientId((String) fields.get("clientId", null));
+        } else {
+            clientId = fields.get("number", 0);
+        }
+    }
 }
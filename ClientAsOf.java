@@ -0,0 +1,72 @@
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// A class representing a client as they were at one moment, rebuilt from the EventJournal:
+// their balance, their wishlist, and each waitlist they were on with their place in it.
+public class ClientAsOf {
+    private String clientId;
+    private long time;
+    private double balance;
+    private Map<String, Integer> wishlist; // Product ID -> quantity, in the order added
+    private Map<String, Integer> waitlisted; // Product ID -> quantity waited for
+    private Map<String, Integer> waitlistPositions; // Product ID -> place in the waitlist, from 1
+
+    // Constructor for the state of a client at a moment.
+    public ClientAsOf(String clientId, long time, double balance, Map<String, Integer> wishlist,
+            Map<String, Integer> waitlisted, Map<String, Integer> waitlistPositions) {
+        this.clientId = clientId;
+        this.time = time;
+        this.balance = balance;
+        this.wishlist = Collections.unmodifiableMap(new LinkedHashMap<>(wishlist));
+        this.waitlisted = Collections.unmodifiableMap(new LinkedHashMap<>(waitlisted));
+        this.waitlistPositions = Collections.unmodifiableMap(new LinkedHashMap<>(waitlistPositions));
+    }
+
+    // Method to get the client ID.
+    public String getClientId() {
+        return clientId;
+    }
+
+    // Method to get the moment the state is for, in milliseconds.
+    public long getTime() {
+        return time;
+    }
+
+    // Method to get the client's balance.
+    public double getBalance() {
+        return balance;
+    }
+
+    // Method to get the client's wishlist: quantities by product ID.
+    public Map<String, Integer> getWishlist() {
+        return wishlist;
+    }
+
+    // Method to get the quantities the client waited for, by product ID.
+    public Map<String, Integer> getWaitlisted() {
+        return waitlisted;
+    }
+
+    // Method to get the client's place in each waitlist they were on, counting from 1, by product ID.
+    public Map<String, Integer> getWaitlistPositions() {
+        return waitlistPositions;
+    }
+
+    // Method to provide a string representation of the client's state.
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        text.append("Client ").append(clientId).append(" as of ").append(new java.util.Date(time))
+                .append(" | Balance: $").append(balance).append('\n');
+        text.append("Wishlist: ").append(wishlist.isEmpty() ? "empty" : wishlist.toString()).append('\n');
+        text.append("Waitlists:");
+        if (waitlisted.isEmpty()) {
+            text.append(" none");
+        }
+        for (Map.Entry<String, Integer> entry : waitlisted.entrySet()) {
+            text.append("\n  ").append(entry.getKey()).append(": ").append(entry.getValue()).append(" units, place ")
+                    .append(waitlistPositions.get(entry.getKey()));
+        }
+        return text.toString();
+    }
+}
@@ -3,6 +3,7 @@ import java.io.*;
 
 // A class representing a server for generating unique client IDs.
 public class ClientIdServer implements Serializable {
+  private static final long serialVersionUID = -5572512232653495651L; // As computed for the first saved form
   private int idCounter;
   private static ClientIdServer clientIdServer;
 
@@ -20,7 +21,7 @@ public class ClientIdServer implements Serializable {
   }
 
   // Method to get a unique client ID.
-  public int getId() {
+  public synchronized int getId() {
     return idCounter++;
   }
 
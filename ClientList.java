@@ -6,6 +6,7 @@ import java.io.*;
 public class ClientList implements Serializable {
     private static final long serialVersionUID = 1L;
     private List<Client> clients = new LinkedList<>();
+    private transient IntObjectMap<Client> clientsById; // Index by client number, rebuilt after loading
     private static ClientList clientList;
 
     private ClientList() {
@@ -21,22 +22,34 @@ public class ClientList implements Serializable {
         }
     }
 
+    // Method to create a separate ClientList that is not the singleton, such as the one kept by each
+    // partition of a PartitionedWarehouse.
+    public static ClientList newInstance() {
+        return new ClientList();
+    }
+
     // Method to add a client to the list.
     public boolean addClient(Client client) {
         clients.add(client);
+        index().put(client.getClientNumber(), client);
         return true;
     }
 
     // Method to remove a client from the list.
     public boolean removeClient(Client client) {
-        return clients.remove(client);
+        if (clients.remove(client)) {
+            index().remove(client.getClientNumber());
+            return true;
+        }
+        return false;
     }
 
     // Method to update client information in the list.
     public boolean updateClient(Client updatedClient) {
         for (int i = 0; i < clients.size(); i++) {
-            if (clients.get(i).getClientId().equals(updatedClient.getClientId())) {
+            if (clients.get(i).getClientNumber() == updatedClient.getClientNumber()) {
                 clients.set(i, updatedClient);
+                index().put(updatedClient.getClientNumber(), updatedClient);
                 return true;
             }
         }
@@ -45,12 +58,23 @@ public class ClientList implements Serializable {
 
     // Method to get a client by their ID from the list.
     public Client getClientById(String clientId) {
-        for (Client client : clients) {
-            if (client.getClientId().equals(clientId)) {
-                return client;
+        return index().get(Client.parseClientId(clientId));
+    }
+
+    // Method to get a client by the numeric part of their ID.
+    public Client getClientByNumber(int clientNumber) {
+        return index().get(clientNumber);
+    }
+
+    // Method to get the client index, building it from the list the first time it is used.
+    private IntObjectMap<Client> index() {
+        if (clientsById == null) {
+            clientsById = new IntObjectMap<>(clients.size());
+            for (Client client : clients) {
+                clientsById.put(client.getClientNumber(), client);
             }
         }
-        return null;
+        return clientsById;
     }
 
     // Method to get an iterator for all clients in the list.
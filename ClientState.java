@@ -0,0 +1,82 @@
+import java.util.Map;
+
+// A class representing a client as they were at one version of the warehouse.
+// States are immutable, so a reader can use them without any locking.
+public class ClientState {
+    private int clientId;
+    private String clientName;
+    private String address;
+    private String phone;
+    private double balance;
+    private int[] wishlistProducts; // Product numbers, in wishlist order
+    private int[] wishlistQuantities;
+
+    // Constructor to copy the current state of a client and their wishlist.
+    public ClientState(Client client) {
+        this.clientId = client.getClientNumber();
+        this.clientName = client.getClientName();
+        this.address = client.getAddress();
+        this.phone = client.getPhone();
+        this.balance = client.getBalance();
+        Map<Integer, Integer> entries = client.hasWishlist() ? client.getWishlist().getEntries() : Map.of();
+        this.wishlistProducts = new int[entries.size()];
+        this.wishlistQuantities = new int[entries.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Integer> entry : entries.entrySet()) {
+            wishlistProducts[i] = entry.getKey();
+            wishlistQuantities[i] = entry.getValue();
+            i++;
+        }
+    }
+
+    // Method to get the client's ID.
+    public String getClientId() {
+        return Client.formatClientId(clientId);
+    }
+
+    // Method to get the numeric part of the client's ID.
+    public int getClientNumber() {
+        return clientId;
+    }
+
+    // Method to get the client's name.
+    public String getClientName() {
+        return clientName;
+    }
+
+    // Method to get the client's address.
+    public String getAddress() {
+        return address;
+    }
+
+    // Method to get the client's phone number.
+    public String getPhone() {
+        return phone;
+    }
+
+    // Method to get the client's account balance.
+    public double getBalance() {
+        return balance;
+    }
+
+    // Method to get the number of products in the wishlist.
+    public int getWishlistSize() {
+        return wishlistProducts.length;
+    }
+
+    // Method to get the product number of one wishlist entry.
+    public int getWishlistProduct(int index) {
+        return wishlistProducts[index];
+    }
+
+    // Method to get the quantity of one wishlist entry.
+    public int getWishlistQuantity(int index) {
+        return wishlistQuantities[index];
+    }
+
+    // Method to provide a string representation of the client state.
+    public String toString() {
+        return "Client Name: " + clientName + " | Address: " + address + " | ID: " + getClientId() + " | Phone: "
+                + phone + " | Balance: $" + balance;
+    }
+}
@@ -0,0 +1,81 @@
+import java.util.Arrays;
+
+// A class that counts how often each integer key occurs in a stream in fixed memory.
+//
+// The sketch is a depth x width table of counters. Adding a key adds to one counter in each row,
+// chosen by a different hash per row; the estimate for a key is the smallest of its counters.
+// Estimates never undercount. With width w and depth d, an estimate exceeds the true count by
+// more than (e / w) * N, where N is the total of everything added, with probability at most
+// e^-d. For example, width 1024 and depth 4 overcount by at most 0.27% of N with probability
+// above 98%.
+public class CountMinSketch {
+    // Odd 64-bit constants for the row hashes (from the SplitMix64 and Murmur3 finalizers).
+    private static final long[] SEEDS = { 0x9E3779B97F4A7C15L, 0xBF58476D1CE4E5B9L, 0x94D049BB133111EBL,
+            0xFF51AFD7ED558CCDL, 0xC4CEB9FE1A85EC53L, 0xD6E8FEB86659FD93L, 0xA0761D6478BD642FL,
+            0xE7037ED1A0B428DBL };
+
+    private int depth;
+    private int width; // A power of two
+    private long[] counts; // Row after row
+    private long total;
+
+    // Constructor for a sketch with the given number of rows (at most 8) and counters per row
+    // (rounded up to a power of two).
+    public CountMinSketch(int depth, int width) {
+        if (depth < 1 || depth > SEEDS.length || width < 1) {
+            throw new IllegalArgumentException("Depth must be 1 to " + SEEDS.length + " and width positive");
+        }
+        this.depth = depth;
+        this.width = width == 1 ? 1 : Integer.highestOneBit(width - 1) << 1;
+        this.counts = new long[depth * this.width];
+    }
+
+    // Method to add a count for a key.
+    public void add(int key, long count) {
+        for (int row = 0; row < depth; row++) {
+            counts[row * width + column(row, key)] += count;
+        }
+        total += count;
+    }
+
+    // Method to estimate the count of a key. Never less than the true count.
+    public long estimate(int key) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counts[row * width + column(row, key)]);
+        }
+        return estimate;
+    }
+
+    // Method to take the counts of another sketch of the same size out of this one.
+    public void subtract(CountMinSketch other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] -= other.counts[i];
+        }
+        total -= other.total;
+    }
+
+    // Method to reset every counter to zero.
+    public void clear() {
+        Arrays.fill(counts, 0);
+        total = 0;
+    }
+
+    // Method to get the total of everything counted.
+    public long getTotal() {
+        return total;
+    }
+
+    // Method to get the most an estimate can overcount by, with probability 1 - e^-depth.
+    public long getErrorBound() {
+        return (long) Math.ceil(Math.E / width * total);
+    }
+
+    private int column(int row, int key) {
+        long hash = (key + 1L) * SEEDS[row];
+        hash ^= hash >>> 31;
+        hash *= SEEDS[(row + 1) % SEEDS.length];
+        hash ^= hash >>> 29;
+        return (int) (hash & (width - 1));
+    }
+}
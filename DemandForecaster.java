@@ -0,0 +1,140 @@
+import java.io.Serializable;
+import java.util.Arrays;
+
+// A class that forecasts the daily demand of each product from the invoices as they are created.
+//
+// For every product it keeps, in primitive arrays indexed by product number:
+//   - the units sold so far on the current day,
+//   - an exponentially weighted moving average (EWMA) of units sold per day, with the weekday
+//     pattern taken out, and
+//   - an EWMA of units sold on each day of the week, used as a seasonality factor.
+// When an invoice arrives on a later day, the finished day is folded into the averages and any
+// days without sales in between decay them. Recording a line is O(1) (plus the days skipped, at
+// most 7 steps), and a forecast for one product is O(horizon), so suggestions for every product
+// cost O(products) for a fixed horizon. Days are counted in UTC.
+public class DemandForecaster implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private static final double DAILY_WEIGHT = 0.3; // Weight of the newest day in the daily average
+    private static final double WEEKDAY_WEIGHT = 0.1; // Weight of the newest week in a weekday average
+
+    private long[] currentDay = new long[0]; // Day of the units counted in unitsToday; 0 when unused
+    private long[] unitsToday = new long[0];
+    private double[] dailyAverage = new double[0];
+    private double[] weekdayAverage = new double[0]; // 7 per product, Monday first
+
+    // Method to record the lines of a new invoice.
+    public void record(Invoice invoice) {
+        long day = dayOf(invoice.getTime());
+        for (int line = 0; line < invoice.getLineCount(); line++) {
+            record(invoice.getProductNumber(line), day, invoice.getQuantity(line));
+        }
+    }
+
+    // Method to record units of a product sold on a day (days since 1970-01-01).
+    public void record(int productNumber, long day, int units) {
+        ensureCapacity(productNumber + 1);
+        if (currentDay[productNumber] == 0) {
+            currentDay[productNumber] = day;
+        } else if (day > currentDay[productNumber]) {
+            closeDays(productNumber, day);
+        }
+        // Sales dated before the current day (a clock going backwards) count towards the current day.
+        unitsToday[productNumber] += units;
+    }
+
+    // Method to get the forecast units per day of a product as of a day, before seasonality.
+    public double getDailyRate(int productNumber, long today) {
+        if (productNumber >= currentDay.length || currentDay[productNumber] == 0) {
+            return 0;
+        }
+        long lastDay = currentDay[productNumber];
+        if (today <= lastDay) {
+            return dailyAverage[productNumber];
+        }
+        // Fold the last day in and decay over the days without sales, without changing the state.
+        double rate = DAILY_WEIGHT * deseasonalized(productNumber, lastDay)
+                + (1 - DAILY_WEIGHT) * dailyAverage[productNumber];
+        return rate * Math.pow(1 - DAILY_WEIGHT, today - lastDay - 1);
+    }
+
+    // Method to get how busy a day of the week is for a product compared to an average day
+    // (1 when there is no history).
+    public double getSeasonality(int productNumber, long day) {
+        if (productNumber >= currentDay.length) {
+            return 1;
+        }
+        double total = 0;
+        for (int weekday = 0; weekday < 7; weekday++) {
+            total += weekdayAverage[7 * productNumber + weekday];
+        }
+        if (total <= 0) {
+            return 1;
+        }
+        return weekdayAverage[7 * productNumber + weekdayOf(day)] * 7 / total;
+    }
+
+    // Method to forecast the units of a product sold over the days after today.
+    public double forecast(int productNumber, long today, int days) {
+        double rate = getDailyRate(productNumber, today);
+        if (rate == 0) {
+            return 0;
+        }
+        double units = 0;
+        for (long day = today + 1; day <= today + days; day++) {
+            units += rate * getSeasonality(productNumber, day);
+        }
+        return units;
+    }
+
+    // Method to get the day (days since 1970-01-01, UTC) of a time in milliseconds.
+    public static long dayOf(long timeMillis) {
+        return Math.floorDiv(timeMillis, DAY_MILLIS);
+    }
+
+    // Folds the current day into the averages, decays them over the days without sales up to the
+    // given day, and starts counting that day.
+    private void closeDays(int productNumber, long day) {
+        long closedDay = currentDay[productNumber];
+        long units = unitsToday[productNumber];
+        dailyAverage[productNumber] = DAILY_WEIGHT * deseasonalized(productNumber, closedDay)
+                + (1 - DAILY_WEIGHT) * dailyAverage[productNumber];
+        int closedSlot = 7 * productNumber + weekdayOf(closedDay);
+        weekdayAverage[closedSlot] = WEEKDAY_WEIGHT * units + (1 - WEEKDAY_WEIGHT) * weekdayAverage[closedSlot];
+
+        long emptyDays = day - closedDay - 1;
+        if (emptyDays > 0) {
+            dailyAverage[productNumber] *= Math.pow(1 - DAILY_WEIGHT, emptyDays);
+            // Each weekday decays once for every time it occurred among the empty days.
+            for (int k = 0; k < 7 && k < emptyDays; k++) {
+                long occurrences = emptyDays / 7 + (k < emptyDays % 7 ? 1 : 0);
+                int slot = 7 * productNumber + weekdayOf(closedDay + 1 + k);
+                weekdayAverage[slot] *= Math.pow(1 - WEEKDAY_WEIGHT, occurrences);
+            }
+        }
+        currentDay[productNumber] = day;
+        unitsToday[productNumber] = 0;
+    }
+
+    // The units counted for the current day divided by that weekday's seasonality factor.
+    private double deseasonalized(int productNumber, long day) {
+        double seasonality = getSeasonality(productNumber, day);
+        return seasonality > 0 ? unitsToday[productNumber] / seasonality : unitsToday[productNumber];
+    }
+
+    private void ensureCapacity(int products) {
+        if (products <= currentDay.length) {
+            return;
+        }
+        int capacity = Math.max(products, Math.max(16, currentDay.length * 2));
+        currentDay = Arrays.copyOf(currentDay, capacity);
+        unitsToday = Arrays.copyOf(unitsToday, capacity);
+        dailyAverage = Arrays.copyOf(dailyAverage, capacity);
+        weekdayAverage = Arrays.copyOf(weekdayAverage, 7 * capacity);
+    }
+
+    // 1970-01-01 was a Thursday; Monday is 0.
+    private static int weekdayOf(long day) {
+        return (int) Math.floorMod(day + 3, 7L);
+    }
+}
@@ -0,0 +1,26 @@
+// A class with helpers for the display IDs of clients, products and invoices.
+// Entities keep only the number of their ID; the prefix ("C", "P", "INV") is added for display.
+public class EntityIds {
+
+    private EntityIds() {
+        // Private constructor; the class only has static helpers.
+    }
+
+    // Method to get the number from an ID such as "P12", or -1 if the ID does not have the
+    // given prefix followed by digits. Parsing does not create any objects.
+    public static int parse(String id, String prefix) {
+        if (id == null || !id.startsWith(prefix) || id.length() == prefix.length()
+                || id.length() - prefix.length() > 9) {
+            return -1;
+        }
+        int number = 0;
+        for (int i = prefix.length(); i < id.length(); i++) {
+            char digit = id.charAt(i);
+            if (digit < '0' || digit > '9') {
+                return -1;
+            }
+            number = number * 10 + (digit - '0');
+        }
+        return number;
+    }
+}
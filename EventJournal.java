@@ -0,0 +1,422 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// A class representing the history of the warehouse as a journal of events, from which the state
+// of the warehouse, or of one client, can be rebuilt as of any moment since the journal started.
+//
+// Every event sets one value outright rather than changing it, so the latest event about a value
+// is its state:
+//   BALANCE   subject = client,  value = the new balance (the bits of the double)
+//   STOCK     subject = product, value = the new stock
+//   WAITLIST  subject = product, object = client, value = the quantity waited for (0 = left the waitlist)
+//   WISHLIST  subject = client,  object = product, value = the quantity wanted (0 = removed)
+// The one exception is PAYMENT (subject = client, value = the amount paid), which notes why the
+// BALANCE event after it happened and changes nothing by itself.
+// A journal started on existing data first records that data as events.
+//
+// The events are kept in parallel primitive arrays in time order, so replaying them reads memory
+// in sequence and allocates nothing. A checkpoint, a copy of the state, is taken each time the
+// events since the last one outnumber both CHECKPOINT_INTERVAL and the size of the state, so a
+// rebuild starts from the nearest checkpoint and replays at most that many events, while the
+// checkpoints cost O(1) per event. The positions of each client's and each product's events are
+// indexed as well, so rebuilding one client replays only their events (and those of the waitlists
+// they are on) since the checkpoint. Only the events are saved; the checkpoints and indexes are
+// rebuilt after loading.
+public class EventJournal implements Serializable {
+    private static final long serialVersionUID = 1L;
+    static final byte BALANCE = 1;
+    static final byte STOCK = 2;
+    static final byte WAITLIST = 3;
+    static final byte WISHLIST = 4;
+    static final byte PAYMENT = 5;
+    public static final int CHECKPOINT_INTERVAL = 1 << 16;
+
+    private long startTime;
+    private transient int size;
+    private transient long[] times;
+    private transient byte[] types;
+    private transient int[] subjects;
+    private transient int[] objects;
+    private transient long[] values;
+    private transient StateAsOf current; // The state after every event so far
+    private transient List<Checkpoint> checkpoints;
+    private transient IntObjectMap<Positions> clientEvents; // Client -> positions of the events about them
+    private transient IntObjectMap<Positions> productEvents; // Product -> positions of the events about it
+
+    // A functional interface for an action taking a payment: the client number, the time and the amount.
+    public interface PaymentConsumer {
+        void accept(int clientNumber, long time, double amount);
+    }
+
+    // A class holding the state after the events before a position.
+    private static class Checkpoint {
+        private int position;
+        private long time;
+        private StateAsOf state; // Never changed once taken
+
+        private Checkpoint(int position, long time, StateAsOf state) {
+            this.position = position;
+            this.time = time;
+            this.state = state;
+        }
+    }
+
+    // A class holding a growing list of event positions, in increasing order.
+    private static class Positions {
+        private int[] items = new int[4];
+        private int count;
+
+        private void add(int position) {
+            if (count == items.length) {
+                items = Arrays.copyOf(items, count * 2);
+            }
+            items[count++] = position;
+        }
+
+        // Finds the index of the first position at or after a position.
+        private int indexFrom(int position) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (items[middle] < position) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    // Constructor for a journal that starts now by recording the given products and clients:
+    // their stock and waitlists, and their balances and wishlists.
+    public EventJournal(Iterator<Product> products, Iterator<Client> clients) {
+        startTime = System.currentTimeMillis();
+        reset(1024);
+        while (products.hasNext()) {
+            Product product = products.next();
+            recordStock(product);
+            if (product.hasWaitlist()) {
+                Waitlist waitlist = product.getWaitlist();
+                for (int clientNumber : waitlist.getClientNumbers()) {
+                    recordWaitlist(product.getProductNumber(), clientNumber, waitlist.getClientQuantity(clientNumber));
+                }
+            }
+        }
+        while (clients.hasNext()) {
+            Client client = clients.next();
+            recordBalance(client);
+            if (client.hasWishlist()) {
+                for (Map.Entry<Integer, Integer> entry : client.getWishlist().getEntries().entrySet()) {
+                    recordWishlist(client.getClientNumber(), entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    // Method to record a client's balance, such as after it changed or when the client was added.
+    public synchronized void recordBalance(Client client) {
+        append(BALANCE, client.getClientNumber(), 0, Double.doubleToLongBits(client.getBalance()));
+    }
+
+    // Method to record a product's stock. The stock is read here, under the journal's lock, so
+    // that when changes made at the same time are recorded, the last event has the final stock.
+    public synchronized void recordStock(Product product) {
+        append(STOCK, product.getProductNumber(), 0, product.getQuantity());
+    }
+
+    // Method to record the quantity a client waits for on a product's waitlist (0 if they left it).
+    public synchronized void recordWaitlist(int productNumber, int clientNumber, int quantity) {
+        append(WAITLIST, productNumber, clientNumber, quantity);
+    }
+
+    // Method to record the quantity of a product on a client's wishlist (0 if it was removed).
+    public synchronized void recordWishlist(int clientNumber, int productNumber, int quantity) {
+        append(WISHLIST, clientNumber, productNumber, quantity);
+    }
+
+    // Method to record a payment received from a client. The balance it leads to is recorded separately.
+    public synchronized void recordPayment(int clientNumber, double amount) {
+        append(PAYMENT, clientNumber, 0, Double.doubleToLongBits(amount));
+    }
+
+    // Method to get the time the journal started, in milliseconds. There is no history before it.
+    public long getStartTime() {
+        return startTime;
+    }
+
+    // Method to get the number of events recorded.
+    public synchronized int size() {
+        return size;
+    }
+
+    // Method to get the number of checkpoints held.
+    public synchronized int getCheckpointCount() {
+        return checkpoints.size();
+    }
+
+    // Method to rebuild the state of the warehouse as of a moment, from the nearest checkpoint.
+    public StateAsOf stateAsOf(long time) {
+        Checkpoint checkpoint;
+        int end;
+        long[] eventTimes;
+        byte[] eventTypes;
+        int[] eventSubjects;
+        int[] eventObjects;
+        long[] eventValues;
+        synchronized (this) {
+            checkStart(time);
+            checkpoint = checkpointAt(time);
+            end = endAt(time, checkpoint.position);
+            // Events are only ever added past the end, and the arrays are replaced when they grow,
+            // so these can be read without the lock.
+            eventTimes = times;
+            eventTypes = types;
+            eventSubjects = subjects;
+            eventObjects = objects;
+            eventValues = values;
+        }
+        StateAsOf state = checkpoint.state.copy();
+        for (int i = checkpoint.position; i < end; i++) {
+            state.apply(eventTypes[i], eventSubjects[i], eventObjects[i], eventValues[i]);
+        }
+        state.setTime(time);
+        return state;
+    }
+
+    // Method to pass each payment recorded from one time to another (milliseconds, both included)
+    // to an action, in time order. Only the events in the range are read, and the action runs
+    // without the journal's lock.
+    public void forEachPayment(long from, long to, PaymentConsumer action) {
+        int start;
+        int end;
+        long[] eventTimes;
+        byte[] eventTypes;
+        int[] eventSubjects;
+        long[] eventValues;
+        synchronized (this) {
+            start = from == Long.MIN_VALUE ? 0 : endAt(from - 1, 0);
+            end = endAt(to, start);
+            eventTimes = times;
+            eventTypes = types;
+            eventSubjects = subjects;
+            eventValues = values;
+        }
+        for (int i = start; i < end; i++) {
+            if (eventTypes[i] == PAYMENT) {
+                action.accept(eventSubjects[i], eventTimes[i], Double.longBitsToDouble(eventValues[i]));
+            }
+        }
+    }
+
+    // Method to rebuild a client as of a moment, replaying only the events about the client and
+    // the waitlists they were on since the nearest checkpoint. Returns null if there was no such client.
+    public synchronized ClientAsOf clientAsOf(int clientNumber, long time) {
+        checkStart(time);
+        Checkpoint checkpoint = checkpointAt(time);
+        int end = endAt(time, checkpoint.position);
+        StateAsOf state = checkpoint.state;
+        double balance = state.getBalance(clientNumber);
+        IntIntMap wishlist = state.copyOfList(state.wishlists(), clientNumber);
+        IntIntMap waiting = state.copyOfList(state.waitingByClient(), clientNumber);
+        Positions positions = clientEvents.get(clientNumber);
+        if (positions != null) {
+            for (int i = positions.indexFrom(checkpoint.position); i < positions.count && positions.items[i] < end; i++) {
+                int event = positions.items[i];
+                if (types[event] == BALANCE) {
+                    balance = Double.longBitsToDouble(values[event]);
+                } else if (types[event] == WISHLIST) {
+                    setOrRemove(wishlist, objects[event], (int) values[event]);
+                } else if (types[event] == WAITLIST) {
+                    setOrRemove(waiting, subjects[event], (int) values[event]);
+                }
+            }
+        }
+        if (Double.isNaN(balance)) {
+            return null;
+        }
+        Map<String, Integer> wished = new LinkedHashMap<>();
+        wishlist.forEach((productNumber, quantity) -> wished.put(Product.formatProductId(productNumber), quantity));
+        Map<String, Integer> waitlisted = new LinkedHashMap<>();
+        Map<String, Integer> places = new LinkedHashMap<>();
+        for (int productNumber : waiting.keys()) {
+            String productId = Product.formatProductId(productNumber);
+            waitlisted.put(productId, waiting.get(productNumber, 0));
+            places.put(productId, waitlistPosition(checkpoint, end, productNumber, clientNumber));
+        }
+        return new ClientAsOf(Client.formatClientId(clientNumber), time, balance, wished, waitlisted, places);
+    }
+
+    // Works out a client's place on a product's waitlist from the checkpoint and the product's
+    // waitlist events after it. The caller must hold the lock.
+    private int waitlistPosition(Checkpoint checkpoint, int end, int productNumber, int clientNumber) {
+        IntIntMap waitlist = checkpoint.state.copyOfList(checkpoint.state.waitlists(), productNumber);
+        Positions positions = productEvents.get(productNumber);
+        if (positions != null) {
+            for (int i = positions.indexFrom(checkpoint.position); i < positions.count && positions.items[i] < end; i++) {
+                int event = positions.items[i];
+                if (types[event] == WAITLIST) {
+                    setOrRemove(waitlist, objects[event], (int) values[event]);
+                }
+            }
+        }
+        return waitlist.indexOf(clientNumber) + 1;
+    }
+
+    // Method to provide a string representation of the journal.
+    public synchronized String toString() {
+        return "EventJournal: " + size + " events since " + new java.util.Date(startTime) + ", " + checkpoints.size()
+                + " checkpoints";
+    }
+
+    // Adds an event, keeping times in order even if the clock goes back. The caller must hold the lock.
+    private void append(byte type, int subject, int object, long value) {
+        if (size == times.length) {
+            int capacity = size * 2;
+            times = Arrays.copyOf(times, capacity);
+            types = Arrays.copyOf(types, capacity);
+            subjects = Arrays.copyOf(subjects, capacity);
+            objects = Arrays.copyOf(objects, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        long now = System.currentTimeMillis();
+        times[size] = size == 0 ? Math.max(now, startTime) : Math.max(now, times[size - 1]);
+        types[size] = type;
+        subjects[size] = subject;
+        objects[size] = object;
+        values[size] = value;
+        size++;
+        added(size - 1);
+    }
+
+    // Applies the event at a position to the current state and the indexes, and takes a
+    // checkpoint when one is due. The caller must hold the lock.
+    private void added(int position) {
+        byte type = types[position];
+        current.apply(type, subjects[position], objects[position], values[position]);
+        if (type == BALANCE || type == WISHLIST || type == PAYMENT) {
+            positionsOf(clientEvents, subjects[position]).add(position);
+        } else {
+            positionsOf(productEvents, subjects[position]).add(position);
+            if (type == WAITLIST) {
+                positionsOf(clientEvents, objects[position]).add(position);
+            }
+        }
+        int sinceCheckpoint = position + 1 - checkpoints.get(checkpoints.size() - 1).position;
+        if (sinceCheckpoint >= CHECKPOINT_INTERVAL && sinceCheckpoint >= current.weight()) {
+            StateAsOf state = current.copy();
+            state.setTime(times[position]);
+            checkpoints.add(new Checkpoint(position + 1, times[position], state));
+        }
+    }
+
+    // Finds the last checkpoint taken at or before a time. The caller must hold the lock.
+    private Checkpoint checkpointAt(long time) {
+        int low = 0;
+        int high = checkpoints.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (checkpoints.get(middle).time <= time) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return checkpoints.get(low);
+    }
+
+    // Finds the position after the last event at or before a time. The caller must hold the lock.
+    private int endAt(long time, int from) {
+        int low = from;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (times[middle] <= time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void checkStart(long time) {
+        if (time < startTime) {
+            throw new IllegalArgumentException("The history starts at " + new java.util.Date(startTime));
+        }
+    }
+
+    private static Positions positionsOf(IntObjectMap<Positions> index, int key) {
+        Positions positions = index.get(key);
+        if (positions == null) {
+            positions = new Positions();
+            index.put(key, positions);
+        }
+        return positions;
+    }
+
+    private static void setOrRemove(IntIntMap list, int key, int quantity) {
+        if (quantity > 0) {
+            list.put(key, quantity);
+        } else {
+            list.remove(key);
+        }
+    }
+
+    // Empties the arrays, state, checkpoints and indexes.
+    private void reset(int capacity) {
+        size = 0;
+        times = new long[capacity];
+        types = new byte[capacity];
+        subjects = new int[capacity];
+        objects = new int[capacity];
+        values = new long[capacity];
+        current = new StateAsOf();
+        checkpoints = new ArrayList<>();
+        checkpoints.add(new Checkpoint(0, Long.MIN_VALUE, new StateAsOf()));
+        clientEvents = new IntObjectMap<>();
+        productEvents = new IntObjectMap<>();
+    }
+
+    // Custom serialization method that saves only the events, trimmed to the number recorded.
+    private synchronized void writeObject(ObjectOutputStream output) throws IOException {
+        output.defaultWriteObject();
+        output.writeInt(size);
+        output.writeObject(Arrays.copyOf(times, size));
+        output.writeObject(Arrays.copyOf(types, size));
+        output.writeObject(Arrays.copyOf(subjects, size));
+        output.writeObject(Arrays.copyOf(objects, size));
+        output.writeObject(Arrays.copyOf(values, size));
+    }
+
+    // Custom deserialization method that reads the events back and replays them once to rebuild
+    // the current state, the checkpoints and the indexes.
+    private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+        input.defaultReadObject();
+        int count = input.readInt();
+        long[] savedTimes = (long[]) input.readObject();
+        byte[] savedTypes = (byte[]) input.readObject();
+        int[] savedSubjects = (int[]) input.readObject();
+        int[] savedObjects = (int[]) input.readObject();
+        long[] savedValues = (long[]) input.readObject();
+        reset(Math.max(1024, count));
+        System.arraycopy(savedTimes, 0, times, 0, count);
+        System.arraycopy(savedTypes, 0, types, 0, count);
+        System.arraycopy(savedSubjects, 0, subjects, 0, count);
+        System.arraycopy(savedObjects, 0, objects, 0, count);
+        System.arraycopy(savedValues, 0, values, 0, count);
+        for (int position = 0; position < count; position++) {
+            size = position + 1;
+            added(position);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// A class holding the named sites that stock the products of the catalog (see Site). Sites are
+// kept in the order they were added, which is also how the OrderRouter breaks ties.
+public class Federation {
+    private static Federation federation;
+    private Map<String, Site> sites = new LinkedHashMap<>();
+
+    private Federation() {
+        // Private constructor to enforce singleton pattern.
+    }
+
+    // Method to get an instance of the Federation (singleton pattern).
+    public static synchronized Federation instance() {
+        if (federation == null) {
+            return (federation = new Federation());
+        } else {
+            return federation;
+        }
+    }
+
+    // Method to add a site. Returns false if there is already a site with the same name.
+    public synchronized boolean addSite(Site site) {
+        return sites.putIfAbsent(site.getName(), site) == null;
+    }
+
+    // Method to remove a site by name. Returns the site removed, or null if there was none.
+    public synchronized Site removeSite(String name) {
+        return sites.remove(name);
+    }
+
+    // Method to get a site by name, or null if there is none.
+    public synchronized Site getSite(String name) {
+        return sites.get(name);
+    }
+
+    // Method to get a copy of the list of sites, in the order they were added.
+    public synchronized List<Site> getSites() {
+        return new ArrayList<>(sites.values());
+    }
+
+    // Method to save every site that keeps its own file. The Warehouse site is saved with the
+    // Warehouse. Returns true if all of them were saved.
+    public boolean saveSites() {
+        boolean saved = true;
+        for (Site site : getSites()) {
+            if (site instanceof LocalSite) {
+                saved &= ((LocalSite) site).save();
+            }
+        }
+        return saved;
+    }
+
+    // Method to provide a string representation of the federation.
+    public String toString() {
+        StringBuilder stringBuilder = new StringBuilder();
+        for (Site site : getSites()) {
+            stringBuilder.append(site).append("\n");
+        }
+        return stringBuilder.toString();
+    }
+}
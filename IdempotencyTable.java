@@ -0,0 +1,103 @@
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// A class that remembers the results of requests by idempotency key, so that a request sent again
+// (for example after a timeout) gets the original result instead of being carried out twice.
+//
+// Keys are kept in the order they were recorded, in a LinkedHashMap, with the time they expire.
+// Because every key lives for the same time, the oldest key is always the first to expire, so
+// recording a key drops expired keys from the front, and then the oldest keys while the table is
+// over its capacity. Looking a key up and recording one both take O(1) time (plus the keys
+// dropped, each of which was recorded once). The table is saved with the Warehouse.
+public class IdempotencyTable implements Serializable {
+    private static final long serialVersionUID = 1L;
+    public static final int DEFAULT_CAPACITY = 100_000;
+    public static final long DEFAULT_TTL_MILLIS = 24L * 60 * 60 * 1000;
+
+    private int capacity;
+    private long ttlMillis;
+    private LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+    // A class holding a result and when it expires.
+    private static class Entry implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private Serializable result;
+        private long expiresAt;
+
+        private Entry(Serializable result, long expiresAt) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    // Constructor for a table with the default capacity and time to live.
+    public IdempotencyTable() {
+        this(DEFAULT_CAPACITY, DEFAULT_TTL_MILLIS);
+    }
+
+    // Constructor for a table that keeps at most capacity keys, each for ttlMillis.
+    public IdempotencyTable(int capacity, long ttlMillis) {
+        if (capacity < 1 || ttlMillis <= 0) {
+            throw new IllegalArgumentException("Capacity and time to live must be positive");
+        }
+        this.capacity = capacity;
+        this.ttlMillis = ttlMillis;
+    }
+
+    // Method to get the result recorded for a key, or null if there is none or it has expired.
+    public synchronized Serializable get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null || entry.expiresAt <= System.currentTimeMillis()) {
+            return null;
+        }
+        return entry.result;
+    }
+
+    // Method to record the result of a request made now. A key already recorded keeps its first result.
+    public void put(String key, Serializable result) {
+        put(key, result, System.currentTimeMillis());
+    }
+
+    // Method to record the result of a request made at the given time, such as one read back from
+    // a journal. A key already recorded keeps its first result.
+    public synchronized void put(String key, Serializable result, long madeAt) {
+        long now = System.currentTimeMillis();
+        long expiresAt = madeAt + ttlMillis;
+        if (expiresAt <= now) {
+            return;
+        }
+        evict(now);
+        entries.putIfAbsent(key, new Entry(result, expiresAt));
+        while (entries.size() > capacity) {
+            Iterator<Map.Entry<String, Entry>> oldest = entries.entrySet().iterator();
+            oldest.next();
+            oldest.remove();
+        }
+    }
+
+    // Method to get the number of keys held, including any that have expired but not been dropped yet.
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // Method to build the key under which a client's request is recorded, so that keys chosen by
+    // different clients never collide.
+    public static String scopedKey(String operation, String clientId, String key) {
+        return operation + "/" + clientId + "/" + key;
+    }
+
+    // Drops expired keys from the front.
+    private void evict(long now) {
+        Iterator<Map.Entry<String, Entry>> oldest = entries.entrySet().iterator();
+        while (oldest.hasNext() && oldest.next().getValue().expiresAt <= now) {
+            oldest.remove();
+        }
+    }
+
+    // Method to provide a string representation of the table.
+    public synchronized String toString() {
+        return "IdempotencyTable: " + entries.size() + "/" + capacity + " keys, kept for " + ttlMillis / 1000 + "s";
+    }
+}
@@ -0,0 +1,240 @@
+import java.util.Arrays;
+
+// A class representing a map from int keys to int values that remembers the order the keys were
+// added in, such as a waitlist from client number to requested quantity. Setting the value of a
+// key already in the map keeps its place.
+//
+// The entries are kept in two int arrays in the order they were added, and an open-addressing
+// table of entry positions finds them by key, so nothing is boxed and a lookup does not allocate.
+// A removed entry leaves a gap in the arrays that is closed up when they next grow.
+public class IntIntMap {
+    private int[] entryKeys;
+    private int[] entryValues;
+    private boolean[] removed;
+    private int end; // Number of entry positions used, including gaps
+    private int size;
+    private int[] slots; // Entry position + 1, 0 if the slot is empty
+    private int mask;
+    private int shift;
+
+    // A functional interface for an action taking a key and its value.
+    public interface EntryConsumer {
+        void accept(int key, int value);
+    }
+
+    // Constructor for an empty map.
+    public IntIntMap() {
+        this(4);
+    }
+
+    // Constructor for an empty map with room for the given number of keys before it grows.
+    public IntIntMap(int expectedSize) {
+        int capacity = Math.max(2, expectedSize);
+        entryKeys = new int[capacity];
+        entryValues = new int[capacity];
+        removed = new boolean[capacity];
+        allocateSlots(IntObjectMap.tableSizeFor(capacity));
+    }
+
+    // Method to get the value of a key, or the default value if the map does not have the key.
+    public int get(int key, int defaultValue) {
+        int position = find(key);
+        return position < 0 ? defaultValue : entryValues[position];
+    }
+
+    // Method to check if the map has a key.
+    public boolean containsKey(int key) {
+        return find(key) >= 0;
+    }
+
+    // Method to set the value of a key. A new key goes after the others; a key already in the map keeps its place.
+    public void put(int key, int value) {
+        int slot = slotOf(key);
+        while (slots[slot] != 0) {
+            int position = slots[slot] - 1;
+            if (entryKeys[position] == key) {
+                entryValues[position] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (end == entryKeys.length) {
+            grow();
+            slot = slotOf(key);
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+        }
+        entryKeys[end] = key;
+        entryValues[end] = value;
+        removed[end] = false;
+        slots[slot] = ++end;
+        size++;
+    }
+
+    // Method to add to the value of a key, adding the key with the amount if it is not in the map.
+    // Returns the new value.
+    public int addTo(int key, int amount) {
+        int position = find(key);
+        if (position < 0) {
+            put(key, amount);
+            return amount;
+        }
+        return entryValues[position] += amount;
+    }
+
+    // Method to remove a key. Returns true if the map had the key.
+    public boolean remove(int key) {
+        int slot = slotOf(key);
+        while (slots[slot] != 0 && entryKeys[slots[slot] - 1] != key) {
+            slot = (slot + 1) & mask;
+        }
+        if (slots[slot] == 0) {
+            return false;
+        }
+        int position = slots[slot] - 1;
+        removed[position] = true;
+        size--;
+        // Shift back the slots that probed past the freed one, so every key stays reachable.
+        int free = slot;
+        for (int next = (free + 1) & mask; slots[next] != 0; next = (next + 1) & mask) {
+            int home = slotOf(entryKeys[slots[next] - 1]);
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                slots[free] = slots[next];
+                free = next;
+            }
+        }
+        slots[free] = 0;
+        if (size == 0) {
+            end = 0;
+        }
+        return true;
+    }
+
+    // Method to get the number of keys in the map.
+    public int size() {
+        return size;
+    }
+
+    // Method to get the length of the entry arrays, counting the positions not used yet.
+    public int capacity() {
+        return entryKeys.length;
+    }
+
+    // Method to get the number of slots in the table of entry positions.
+    public int tableSize() {
+        return slots.length;
+    }
+
+    // Method to check if the map has no keys.
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Method to get the place of a key in the order the keys were added, counting from 0, or -1 if
+    // the map does not have the key.
+    public int indexOf(int key) {
+        int position = find(key);
+        if (position < 0) {
+            return -1;
+        }
+        int index = 0;
+        for (int before = 0; before < position; before++) {
+            index += removed[before] ? 0 : 1;
+        }
+        return index;
+    }
+
+    // Method to get the keys in the order they were added. The array is a copy.
+    public int[] keys() {
+        int[] keys = new int[size];
+        int i = 0;
+        for (int position = 0; position < end; position++) {
+            if (!removed[position]) {
+                keys[i++] = entryKeys[position];
+            }
+        }
+        return keys;
+    }
+
+    // Method to pass every key and its value to an action, in the order the keys were added.
+    // The action must not change the map.
+    public void forEach(EntryConsumer action) {
+        for (int position = 0; position < end; position++) {
+            if (!removed[position]) {
+                action.accept(entryKeys[position], entryValues[position]);
+            }
+        }
+    }
+
+    // Method to get the sum of the values.
+    public long sumOfValues() {
+        long sum = 0;
+        for (int position = 0; position < end; position++) {
+            if (!removed[position]) {
+                sum += entryValues[position];
+            }
+        }
+        return sum;
+    }
+
+    // Method to provide a string representation of the map.
+    public String toString() {
+        StringBuilder text = new StringBuilder("{");
+        forEach((key, value) -> text.append(text.length() > 1 ? ", " : "").append(key).append('=').append(value));
+        return text.append('}').toString();
+    }
+
+    // Finds the entry position of a key, or -1.
+    private int find(int key) {
+        for (int slot = slotOf(key); slots[slot] != 0; slot = (slot + 1) & mask) {
+            int position = slots[slot] - 1;
+            if (entryKeys[position] == key) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private int slotOf(int key) {
+        return (key * 0x9E3779B9) >>> shift;
+    }
+
+    // Closes up the gaps left by removed entries, doubling the arrays if they are more than half
+    // full, and rebuilds the slot table.
+    private void grow() {
+        int capacity = size * 2 > entryKeys.length ? entryKeys.length * 2 : entryKeys.length;
+        int[] keys = new int[capacity];
+        int[] values = new int[capacity];
+        int kept = 0;
+        for (int position = 0; position < end; position++) {
+            if (!removed[position]) {
+                keys[kept] = entryKeys[position];
+                values[kept] = entryValues[position];
+                kept++;
+            }
+        }
+        entryKeys = keys;
+        entryValues = values;
+        removed = new boolean[capacity];
+        end = kept;
+        allocateSlots(IntObjectMap.tableSizeFor(capacity));
+        for (int position = 0; position < end; position++) {
+            int slot = slotOf(entryKeys[position]);
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = position + 1;
+        }
+    }
+
+    private void allocateSlots(int tableSize) {
+        if (slots != null && slots.length == tableSize) {
+            Arrays.fill(slots, 0);
+        } else {
+            slots = new int[tableSize];
+        }
+        mask = tableSize - 1;
+        shift = 32 - Integer.numberOfTrailingZeros(tableSize);
+    }
+}
@@ -0,0 +1,204 @@
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+// A class representing a hash map from int keys to objects, such as an index from product,
+// client or invoice number to the entity. Keys are kept as plain ints in an open-addressing
+// table with linear probing, so looking a key up neither boxes it nor follows a chain of entry
+// objects. Removing a key shifts the entries after it back, so the table never fills with
+// markers for removed keys. Integer.MIN_VALUE cannot be used as a key.
+public class IntObjectMap<V> {
+    private static final int FREE = Integer.MIN_VALUE; // Marks an empty slot
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private int[] keys;
+    private Object[] values;
+    private int mask;
+    private int shift;
+    private int size;
+    private int resizeAt;
+
+    // A functional interface for an action taking a key and its value.
+    public interface EntryConsumer<V> {
+        void accept(int key, V value);
+    }
+
+    // Constructor for an empty map.
+    public IntObjectMap() {
+        this(16);
+    }
+
+    // Constructor for an empty map with room for the given number of keys before it grows.
+    public IntObjectMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    // Method to get the value of a key, or null if the map does not have the key.
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        if (key == FREE) {
+            return null;
+        }
+        for (int slot = slotOf(key); keys[slot] != FREE; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return (V) values[slot];
+            }
+        }
+        return null;
+    }
+
+    // Method to check if the map has a key.
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    // Method to set the value of a key. Returns the previous value, or null if there was none.
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (key == FREE) {
+            throw new IllegalArgumentException("Integer.MIN_VALUE cannot be a key");
+        }
+        if (value == null) {
+            return remove(key);
+        }
+        int slot = slotOf(key);
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                V previous = (V) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > resizeAt) {
+            grow();
+        }
+        return null;
+    }
+
+    // Method to get the value of a key, first setting it to the value made by the function if the
+    // map does not have the key.
+    public V computeIfAbsent(int key, IntFunction<V> function) {
+        V value = get(key);
+        if (value == null) {
+            value = function.apply(key);
+            put(key, value);
+        }
+        return value;
+    }
+
+    // Method to remove a key. Returns its value, or null if the map did not have the key.
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        if (key == FREE) {
+            return null;
+        }
+        int slot = slotOf(key);
+        while (keys[slot] != key) {
+            if (keys[slot] == FREE) {
+                return null;
+            }
+            slot = (slot + 1) & mask;
+        }
+        V previous = (V) values[slot];
+        // Shift back the entries that probed past the freed slot, so every key stays reachable.
+        int free = slot;
+        for (int next = (free + 1) & mask; keys[next] != FREE; next = (next + 1) & mask) {
+            int home = slotOf(keys[next]);
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                values[free] = values[next];
+                free = next;
+            }
+        }
+        keys[free] = FREE;
+        values[free] = null;
+        size--;
+        return previous;
+    }
+
+    // Method to get the number of keys in the map.
+    public int size() {
+        return size;
+    }
+
+    // Method to check if the map has no keys.
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Method to remove every key.
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    // Method to pass every value to an action, in no particular order.
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<? super V> action) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != FREE) {
+                action.accept((V) values[slot]);
+            }
+        }
+    }
+
+    // Method to pass every key and its value to an action, in no particular order.
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryConsumer<? super V> action) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != FREE) {
+                action.accept(keys[slot], (V) values[slot]);
+            }
+        }
+    }
+
+    // Method to provide a string representation of the map.
+    public String toString() {
+        StringBuilder text = new StringBuilder("{");
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != FREE) {
+                text.append(text.length() > 1 ? ", " : "").append(keys[slot]).append('=').append(values[slot]);
+            }
+        }
+        return text.append('}').toString();
+    }
+
+    // Spreads the bits of a key with a Fibonacci hash, so consecutive numbers do not cluster.
+    private int slotOf(int key) {
+        return (key * 0x9E3779B9) >>> shift;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(keys.length * 2);
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != FREE) {
+                int target = slotOf(oldKeys[slot]);
+                while (keys[target] != FREE) {
+                    target = (target + 1) & mask;
+                }
+                keys[target] = oldKeys[slot];
+                values[target] = oldValues[slot];
+            }
+        }
+    }
+
+    private void allocate(int tableSize) {
+        keys = new int[tableSize];
+        Arrays.fill(keys, FREE);
+        values = new Object[tableSize];
+        mask = tableSize - 1;
+        shift = 32 - Integer.numberOfTrailingZeros(tableSize);
+        resizeAt = (int) (tableSize * LOAD_FACTOR);
+    }
+
+    static int tableSizeFor(int expectedSize) {
+        int needed = (int) Math.min(1 << 30, Math.max(4, (long) Math.ceil(expectedSize / LOAD_FACTOR)));
+        return Integer.highestOneBit(needed - 1) << 1;
+    }
+}
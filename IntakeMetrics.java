@@ -0,0 +1,79 @@
+// A class holding the figures of an OrderIntake at a moment: how many orders wait and how long
+// they waited before a consumer took them, and how many were admitted, rejected, shed and processed.
+public class IntakeMetrics {
+    private int queueDepth;
+    private int queueCapacity;
+    private int waitingClients;
+    private long admitted;
+    private long rejected;
+    private long shed;
+    private long processed;
+    private double averageWaitMillis;
+    private double maxWaitMillis;
+
+    // Constructor for the figures of an intake.
+    public IntakeMetrics(int queueDepth, int queueCapacity, int waitingClients, long admitted, long rejected,
+            long shed, long processed, double averageWaitMillis, double maxWaitMillis) {
+        this.queueDepth = queueDepth;
+        this.queueCapacity = queueCapacity;
+        this.waitingClients = waitingClients;
+        this.admitted = admitted;
+        this.rejected = rejected;
+        this.shed = shed;
+        this.processed = processed;
+        this.averageWaitMillis = averageWaitMillis;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    // Method to get the number of orders waiting in the queue.
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    // Method to get the capacity of the queue.
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    // Method to get the number of clients with orders waiting.
+    public int getWaitingClients() {
+        return waitingClients;
+    }
+
+    // Method to get the number of orders admitted to the queue.
+    public long getAdmitted() {
+        return admitted;
+    }
+
+    // Method to get the number of orders rejected because the queue was full.
+    public long getRejected() {
+        return rejected;
+    }
+
+    // Method to get the number of queued orders shed for orders of higher priority.
+    public long getShed() {
+        return shed;
+    }
+
+    // Method to get the number of orders the consumers have processed.
+    public long getProcessed() {
+        return processed;
+    }
+
+    // Method to get the average time orders waited in the queue, in milliseconds.
+    public double getAverageWaitMillis() {
+        return averageWaitMillis;
+    }
+
+    // Method to get the longest time an order waited in the queue, in milliseconds.
+    public double getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    // Method to provide a string representation of the figures.
+    public String toString() {
+        return String.format("intake queue %d/%d (%d clients) | admitted %d, rejected %d, shed %d, processed %d"
+                + " | wait avg %.2f ms, max %.2f ms", queueDepth, queueCapacity, waitingClients, admitted, rejected,
+                shed, processed, averageWaitMillis, maxWaitMillis);
+    }
+}
@@ -1,65 +1,166 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.*;
 
 // A class representing an invoice.
+// An invoice refers to its client and products by number only, and keeps a frozen copy of the
+// client name and of each product's name and price at the time it was created. Saving an
+// invoice therefore never pulls in the client, their wishlist or any product waitlists.
+// The fields are saved under names of their own. Files saved while invoices held a string ID, a
+// Date, the client and product objects and lists of quantities and prices are converted to this
+// form when they are loaded.
 public class Invoice implements Serializable {
     private static final long serialVersionUID = 1L;
-    private String invoiceId;
-    private Date date;
-    private Client client;
-    private List<Product> products;
-    private List<Integer> quantities;
-    private List<Double> unitPrices;
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("number", int.class),
+        new ObjectStreamField("time", long.class),
+        new ObjectStreamField("clientNumber", int.class),
+        new ObjectStreamField("clientName", String.class),
+        new ObjectStreamField("productNumbers", int[].class),
+        new ObjectStreamField("productNames", String[].class),
+        new ObjectStreamField("lineQuantities", int[].class),
+        new ObjectStreamField("lineUnitPrices", double[].class),
+        new ObjectStreamField("totalPrice", double.class)
+    };
+    private int invoiceId; // Numeric ID; the "INV" prefix is only added for display
+    private long date; // Invoice time in milliseconds
+    private int clientId;
+    private String clientName;
+    private int[] productIds;
+    private String[] productNames;
+    private int[] quantities;
+    private double[] unitPrices;
     private double totalPrice;
     private static final String INVOICE_STRING = "INV";
 
     // Constructor to initialize an invoice with a client, products, quantities, and
     // unit prices.
     public Invoice(Client client, List<Product> products, List<Integer> quantities, List<Double> unitPrices) {
-        this.invoiceId = INVOICE_STRING + (InvoiceIdServer.instance()).getId();
-        this.client = client;
-        this.date = new Date();
-        this.products = products;
-        this.quantities = quantities;
-        this.unitPrices = unitPrices;
+        this.invoiceId = (InvoiceIdServer.instance()).getId();
+        this.clientId = client.getClientNumber();
+        this.clientName = client.getClientName();
+        this.date = System.currentTimeMillis();
+        int lines = products.size();
+        this.productIds = new int[lines];
+        this.productNames = new String[lines];
+        this.quantities = new int[lines];
+        this.unitPrices = new double[lines];
+        for (int i = 0; i < lines; i++) {
+            Product product = products.get(i);
+            this.productIds[i] = product.getProductNumber();
+            this.productNames[i] = product.getProductName();
+            this.quantities[i] = quantities.get(i);
+            this.unitPrices[i] = unitPrices.get(i);
+        }
         this.totalPrice = getTotalAmount();
     }
 
     // Method to get the invoice ID.
     public String getInvoiceId() {
+        return INVOICE_STRING + invoiceId;
+    }
+
+    // Method to get the numeric part of the invoice ID.
+    public int getInvoiceNumber() {
         return invoiceId;
     }
 
+    // Method to get the number from an invoice ID such as "INV12", or -1 if it is not an invoice ID.
+    public static int parseInvoiceId(String invoiceId) {
+        return EntityIds.parse(invoiceId, INVOICE_STRING);
+    }
+
     // Method to get the invoice date.
     public Date getDate() {
+        return new Date(date);
+    }
+
+    // Method to get the invoice time in milliseconds.
+    public long getTime() {
         return date;
     }
 
     // Method to get the client associated with the invoice.
     public Client getClient() {
-        return client;
+        return ClientList.instance().getClientByNumber(clientId);
+    }
+
+    // Method to get the ID of the client associated with the invoice.
+    public String getClientId() {
+        return Client.formatClientId(clientId);
+    }
+
+    // Method to get the numeric part of the client's ID.
+    public int getClientNumber() {
+        return clientId;
+    }
+
+    // Method to get the client name as it was when the invoice was created.
+    public String getClientName() {
+        return clientName;
     }
 
     // Method to get the list of products on the invoice.
     public List<Product> getProducts() {
+        ProductCatalog catalog = ProductCatalog.instance();
+        List<Product> products = new ArrayList<>(productIds.length);
+        for (int productId : productIds) {
+            products.add(catalog.getProductByNumber(productId));
+        }
         return products;
     }
 
+    // Method to get the number of product lines on the invoice.
+    public int getLineCount() {
+        return productIds.length;
+    }
+
+    // Method to get the product number of one line.
+    public int getProductNumber(int line) {
+        return productIds[line];
+    }
+
+    // Method to get the product name of one line, as it was when the invoice was created.
+    public String getProductName(int line) {
+        return productNames[line];
+    }
+
+    // Method to get the quantity of one line.
+    public int getQuantity(int line) {
+        return quantities[line];
+    }
+
+    // Method to get the unit price of one line, as it was when the invoice was created.
+    public double getUnitPrice(int line) {
+        return unitPrices[line];
+    }
+
     // Method to get the list of quantities for each product.
     public List<Integer> getQuantities() {
-        return quantities;
+        List<Integer> list = new ArrayList<>(quantities.length);
+        for (int quantity : quantities) {
+            list.add(quantity);
+        }
+        return list;
     }
 
     // Method to get the list of unit prices for each product.
     public List<Double> getUnitPrices() {
-        return unitPrices;
+        List<Double> list = new ArrayList<>(unitPrices.length);
+        for (double unitPrice : unitPrices) {
+            list.add(unitPrice);
+        }
+        return list;
     }
 
     // Method to calculate the total amount of the invoice.
     public double getTotalAmount() {
         double total = 0.0;
-        for (int i = 0; i < products.size(); i++) {
-            total += quantities.get(i) * unitPrices.get(i);
+        for (int i = 0; i < productIds.length; i++) {
+            total += quantities[i] * unitPrices[i];
         }
         return total;
     }
@@ -67,15 +168,20 @@ public class Invoice implements Serializable {
     // Method to provide a string representation of the invoice.
     public String toString() {
         StringBuilder stringBuilder = new StringBuilder();
-        stringBuilder.append("Invoice ID: ").append(invoiceId).append("\n");
-        stringBuilder.append("Date: ").append(date).append("\n");
-        stringBuilder.append("Client: ").append(client).append("\n");
+        stringBuilder.append("Invoice ID: ").append(INVOICE_STRING).append(invoiceId).append("\n");
+        stringBuilder.append("Date: ").append(getDate()).append("\n");
+        Client client = getClient();
+        if (client != null) {
+            stringBuilder.append("Client: ").append(client).append("\n");
+        } else {
+            stringBuilder.append("Client: ").append(clientName).append(" | ID: ").append(getClientId()).append("\n");
+        }
 
         stringBuilder.append("Products:\n");
-        for (int i = 0; i < products.size(); i++) {
-            stringBuilder.append("  Product: ").append(products.get(i).getProductName());
-            stringBuilder.append(" | Quantity: ").append(quantities.get(i));
-            stringBuilder.append(" | Unit Price: $").append(unitPrices.get(i));
+        for (int i = 0; i < productIds.length; i++) {
+            stringBuilder.append("  Product: ").append(productNames[i]);
+            stringBuilder.append(" | Quantity: ").append(quantities[i]);
+            stringBuilder.append(" | Unit Price: $").append(unitPrices[i]);
             stringBuilder.append("\n");
         }
 
@@ -83,4 +189,63 @@ public class Invoice implements Serializable {
 
         return stringBuilder.toString();
     }
+
+    // Custom serialization method that saves the fields under their serial names.
+    private void writeObject(ObjectOutputStream output) throws IOException {
+        ObjectOutputStream.PutField fields = output.putFields();
+        fields.put("number", invoiceId);
+        fields.put("time", date);
+        fields.put("clientNumber", clientId);
+        fields.put("clientName", clientName);
+        fields.put("productNumbers", productIds);
+        fields.put("productNames", productNames);
+        fields.put("lineQuantities", quantities);
+        fields.put("lineUnitPrices", unitPrices);
+        fields.put("totalPrice", totalPrice);
+        output.writeFields();
+    }
+
+    // Custom deserialization method that reads either form of the fields.
+    private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = input.readFields();
+        totalPrice = fields.get("totalPrice", 0.0);
+        if (fields.defaulted("number")) {
+            readOlderFields(fields);
+            return;
+        }
+        invoiceId = fields.get("number", 0);
+        date = fields.get("time", 0L);
+        clientId = fields.get("clientNumber", 0);
+        clientName = (String) fields.get("clientName", null);
+        productIds = (int[]) fields.get("productNumbers", null);
+        productNames = (String[]) fields.get("productNames", null);
+        quantities = (int[]) fields.get("lineQuantities", null);
+        unitPrices = (double[]) fields.get("lineUnitPrices", null);
+    }
+
+    // Converts the fields of a file saved before invoices kept only numbers and copies. The client
+    // and products are complete here, since nothing they refer to leads back to an invoice.
+    private void readOlderFields(ObjectInputStream.GetField fields) throws IOException {
+        invoiceId = parseInvoiceId((String) fields.get("invoiceId", null));
+        Date savedDate = (Date) fields.get("date", null);
+        date = savedDate == null ? 0L : savedDate.getTime();
+        Client client = (Client) fields.get("client", null);
+        clientId = client == null ? -1 : client.getClientNumber();
+        clientName = client == null ? null : client.getClientName();
+        List<?> products = (List<?>) fields.get("products", null);
+        List<?> lineQuantities = (List<?>) fields.get("quantities", null);
+        List<?> lineUnitPrices = (List<?>) fields.get("unitPrices", null);
+        int lines = products == null ? 0 : products.size();
+        productIds = new int[lines];
+        productNames = new String[lines];
+        quantities = new int[lines];
+        unitPrices = new double[lines];
+        for (int i = 0; i < lines; i++) {
+            Product product = (Product) products.get(i);
+            productIds[i] = product.getProductNumber();
+            productNames[i] = product.getProductName();
+            quantities[i] = (Integer) lineQuantities.get(i);
+            unitPrices[i] = (Double) lineUnitPrices.get(i);
+        }
+    }
 }
@@ -2,6 +2,7 @@ import java.io.*;
 
 // A class representing a server for generating unique invoice IDs.
 public class InvoiceIdServer implements Serializable {
+    private static final long serialVersionUID = -3578564906802235777L; // As computed for the first saved form
     private int idCounter;
     private static InvoiceIdServer invoiceIdServer;
 
@@ -19,7 +20,7 @@ public class InvoiceIdServer implements Serializable {
     }
 
     // Method to get a unique invoice ID.
-    public int getId() {
+    public synchronized int getId() {
         return idCounter++;
     }
 
@@ -1,16 +1,206 @@
 import java.io.IOException;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.lang.ref.SoftReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.YearMonth;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.TreeMap;
 
 // A class representing a list of invoices.
+// Invoices are partitioned by month (see InvoicePartition). Only the current month is open and
+// changes; it is saved with the list. When the first invoice of a later month arrives, the open
+// month is sealed and written to its own gzip file in the invoice directory, and from then on is
+// read back only when a lookup needs it (and kept in memory while there is room).
+//
+// The list keeps a small summary of every month: how many invoices it has, its first and last
+// dates and invoice numbers, and which clients it has invoices for. Lookups by date, client or
+// invoice ID skip the months that cannot match without reading them. Lists made by newInstance()
+// have no directory and keep their sealed months in memory.
+//
+// A sealed month is never changed in place: removing one of its invoices or archiving it replaces
+// or drops its summary, and the old summary keeps reading the same invoices. A SealedMonths view
+// taken at one moment (as snapshots do) therefore stays the same however the list changes later.
 public class InvoiceList implements Serializable {
     private static final long serialVersionUID = 1L;
-    private List<Invoice> invoices = new ArrayList<>();
+    public static final String DEFAULT_DIRECTORY = "WarehouseInvoices"; // Where the singleton writes sealed months
+    private TreeMap<Integer, Month> months = new TreeMap<>(); // By month number, see InvoicePartition.monthOf()
+    private List<Invoice> invoices; // Only in lists saved before invoices were partitioned by month
+    private SalesViews salesViews = new SalesViews(); // Running sales totals, saved with the list
+    private String directory; // Where sealed months are written, or null to keep them in memory
+    private transient SealedMonths sealedMonths; // Built on first use, dropped when the sealed months change
     private static InvoiceList invoiceList;
 
+    // The summary of one month. It holds the partition itself while the month is open or kept in
+    // memory, and otherwise the name of its file.
+    private static class Month implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private int month;
+        private InvoicePartition partition; // Null once written to its file
+        private String fileName;
+        private int count;
+        private long firstTime = Long.MAX_VALUE;
+        private long lastTime = Long.MIN_VALUE;
+        private int firstNumber = Integer.MAX_VALUE;
+        private int lastNumber = Integer.MIN_VALUE;
+        private int[] clients; // Client numbers with invoices in the month, in order, once sealed
+        private transient SoftReference<InvoicePartition> loaded; // The partition read from the file
+
+        Month(int month) {
+            this.month = month;
+            this.partition = new InvoicePartition(month);
+        }
+
+        // Constructor for the summary that replaces a sealed month by a new sealed partition, kept in
+        // the same place: in memory, or in the month's file (which must already hold it).
+        Month(Month replaced, InvoicePartition replacement) {
+            this.month = replaced.month;
+            this.fileName = replaced.fileName;
+            if (fileName == null) {
+                this.partition = replacement;
+            } else {
+                this.loaded = new SoftReference<>(replacement);
+            }
+            summarize(replacement);
+        }
+
+        boolean isOpen() {
+            return partition != null && !partition.isSealed();
+        }
+
+        void add(Invoice invoice) {
+            partition.add(invoice);
+            count++;
+            firstTime = Math.min(firstTime, invoice.getTime());
+            lastTime = Math.max(lastTime, invoice.getTime());
+            firstNumber = Math.min(firstNumber, invoice.getInvoiceNumber());
+            lastNumber = Math.max(lastNumber, invoice.getInvoiceNumber());
+        }
+
+        // Takes the summary from a partition, such as one just sealed or with an invoice removed.
+        void summarize(InvoicePartition summarized) {
+            count = summarized.size();
+            firstTime = summarized.getFirstTime();
+            lastTime = summarized.getLastTime();
+            firstNumber = Integer.MAX_VALUE;
+            lastNumber = Integer.MIN_VALUE;
+            for (Invoice invoice : summarized.getInvoices()) {
+                firstNumber = Math.min(firstNumber, invoice.getInvoiceNumber());
+                lastNumber = Math.max(lastNumber, invoice.getInvoiceNumber());
+            }
+            clients = summarized.isSealed() ? summarized.getClientNumbers() : null;
+        }
+
+        boolean overlaps(long from, long to) {
+            return count > 0 && firstTime <= to && lastTime >= from;
+        }
+
+        boolean mayHaveClient(int clientNumber) {
+            return isOpen() ? partition.hasClient(clientNumber) : Arrays.binarySearch(clients, clientNumber) >= 0;
+        }
+
+        boolean mayHaveInvoice(int invoiceNumber) {
+            return count > 0 && invoiceNumber >= firstNumber && invoiceNumber <= lastNumber;
+        }
+
+        // Notes that the sealed partition is now in a file, such as after it was written or archived.
+        // The partition written, if given, is kept for as long as there is room.
+        synchronized void movedTo(Path file, InvoicePartition written) {
+            fileName = file.toString();
+            if (written != null) {
+                loaded = new SoftReference<>(written);
+            }
+            partition = null;
+        }
+
+        // Keeps the sealed partition in memory for good, for an old summary whose file is about to
+        // hold something else. It goes with the summary once no view refers to it.
+        synchronized void keep(InvoicePartition kept) {
+            partition = kept;
+            loaded = null;
+        }
+
+        // Gets the partition, reading it from its file if it is not in memory.
+        synchronized InvoicePartition partition() {
+            if (partition != null) {
+                return partition;
+            }
+            InvoicePartition read = loaded == null ? null : loaded.get();
+            if (read == null) {
+                try {
+                    read = InvoicePartition.read(Paths.get(fileName));
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException("Cannot read the invoices of " + InvoicePartition.yearMonthOf(month),
+                            ioe);
+                }
+                loaded = new SoftReference<>(read);
+            }
+            return read;
+        }
+    }
+
+    // A read-only view of the sealed months as they were when it was taken, reading the months
+    // from their files only when their invoices are needed. Invoices are numbered by position,
+    // month by month, in the same order as getInvoices().
+    public static class SealedMonths {
+        private final Month[] sealed;
+        private final int[] starts; // Position of the first invoice of each month, then the total
+
+        private SealedMonths(List<Month> sealed) {
+            this.sealed = sealed.toArray(new Month[0]);
+            this.starts = new int[this.sealed.length + 1];
+            for (int i = 0; i < this.sealed.length; i++) {
+                starts[i + 1] = starts[i] + this.sealed[i].count;
+            }
+        }
+
+        // Method to get the number of invoices in the sealed months.
+        public int size() {
+            return starts[sealed.length];
+        }
+
+        // Method to get the invoice at a position, from 0 to size() - 1.
+        public Invoice get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Invoice " + index + " of " + size());
+            }
+            int month = Arrays.binarySearch(starts, index);
+            if (month < 0) {
+                month = -month - 2; // The month whose first position is below the index
+            } else {
+                while (sealed[month].count == 0) {
+                    month++; // Skip empty months starting at the same position
+                }
+            }
+            return sealed[month].partition().getInvoiceAt(index - starts[month]);
+        }
+
+        // Method to get an iterator for the invoices, month by month. Each month is read as the
+        // iterator reaches it.
+        public Iterator<Invoice> iterator() {
+            return Arrays.stream(sealed).flatMap(month -> month.partition().getInvoices().stream()).iterator();
+        }
+
+        // Method to get the invoices of a client, month by month. Only the months with invoices for
+        // the client are read.
+        public List<Invoice> getInvoicesForClient(int clientNumber) {
+            List<Invoice> invoices = new ArrayList<>();
+            for (Month month : sealed) {
+                if (month.count > 0 && month.mayHaveClient(clientNumber)) {
+                    invoices.addAll(month.partition().getInvoicesForClient(clientNumber));
+                }
+            }
+            return invoices;
+        }
+    }
+
     private InvoiceList() {
         // Private constructor to enforce singleton pattern.
     }
@@ -18,41 +208,321 @@ public class InvoiceList implements Serializable {
     // Method to get an instance of the InvoiceList (singleton pattern).
     public static InvoiceList instance() {
         if (invoiceList == null) {
-            return (invoiceList = new InvoiceList());
+            invoiceList = new InvoiceList();
+            invoiceList.directory = DEFAULT_DIRECTORY;
+            return invoiceList;
         } else {
             return invoiceList;
         }
     }
 
+    // Method to create a separate InvoiceList that is not the singleton, such as the one kept by each
+    // partition of a PartitionedWarehouse. It keeps its sealed months in memory.
+    public static InvoiceList newInstance() {
+        return new InvoiceList();
+    }
+
+    // Method to set the directory sealed months are written to from now on, or null to keep them in
+    // memory. Months already written stay where they are.
+    public void setDirectory(Path directory) {
+        this.directory = directory == null ? null : directory.toString();
+    }
+
+    // Method to get the directory sealed months are written to, or null if they are kept in memory.
+    public Path getDirectory() {
+        return directory == null ? null : Paths.get(directory);
+    }
+
     // Method to add an invoice to the list.
     public boolean addInvoice(Invoice invoice) {
-        invoices.add(invoice);
+        SalesViews views = getSalesViews();
+        place(invoice);
+        views.add(invoice);
         return true;
     }
 
-    // Method to remove an invoice from the list.
+    // Method to remove an invoice from the list. A sealed month is replaced by a new sealed
+    // partition without the invoice, written under the same file name; views taken before keep
+    // the old partition in memory.
     public boolean removeInvoice(Invoice invoice) {
-        return invoices.remove(invoice);
+        SalesViews views = getSalesViews();
+        for (Month month : months.values()) {
+            if (!month.mayHaveInvoice(invoice.getInvoiceNumber())) {
+                continue;
+            }
+            InvoicePartition partition = month.partition();
+            if (partition.getInvoice(invoice.getInvoiceNumber()) != invoice) {
+                continue;
+            }
+            if (month.isOpen()) {
+                partition.remove(invoice);
+                month.summarize(partition);
+            } else {
+                InvoicePartition replacement = partition.without(invoice);
+                month.keep(partition);
+                if (month.fileName != null) {
+                    try {
+                        replacement.write(Paths.get(month.fileName));
+                    } catch (IOException ioe) {
+                        ioe.printStackTrace();
+                        return false;
+                    }
+                }
+                months.put(month.month, new Month(month, replacement));
+                sealedMonths = null;
+            }
+            views.remove(invoice);
+            return true;
+        }
+        return false;
     }
 
-    // Method to get an iterator for all invoices in the list.
+    // Method to get an iterator for all invoices in the list, month by month. Sealed months are
+    // read from their files as the iterator reaches them.
     public Iterator<Invoice> getInvoices() {
-        return invoices.iterator();
+        return months.values().stream().flatMap(month -> month.partition().getInvoices().stream()).iterator();
+    }
+
+    // Method to get a view of the sealed months as they are now. The view does not change when
+    // the list does.
+    public SealedMonths getSealedMonths() {
+        if (sealedMonths == null) {
+            List<Month> sealed = new ArrayList<>(months.size());
+            for (Month month : months.values()) {
+                if (!month.isOpen()) {
+                    sealed.add(month);
+                }
+            }
+            sealedMonths = new SealedMonths(sealed);
+        }
+        return sealedMonths;
+    }
+
+    // Method to get the invoices of the open month in the order they were added, as a read-only
+    // list. It is empty if there is no open month.
+    public List<Invoice> getOpenMonthInvoices() {
+        Month open = months.isEmpty() ? null : months.lastEntry().getValue();
+        return open != null && open.isOpen() ? open.partition.getInvoices() : Collections.emptyList();
     }
 
-    // Method to get an invoice by its ID from the list.
+    // Method to get an invoice by its ID from the list. Only the months whose invoice numbers cover
+    // the ID are looked at.
     public Invoice getInvoiceById(String invoiceId) {
-        return invoices.stream()
-                .filter(invoice -> invoice.getInvoiceId().equals(invoiceId))
-                .findFirst()
-                .orElse(null);
+        int invoiceNumber = Invoice.parseInvoiceId(invoiceId);
+        if (invoiceNumber < 0) {
+            return null;
+        }
+        for (Month month : months.values()) {
+            if (month.mayHaveInvoice(invoiceNumber)) {
+                Invoice invoice = month.partition().getInvoice(invoiceNumber);
+                if (invoice != null) {
+                    return invoice;
+                }
+            }
+        }
+        return null;
     }
 
     // Method to get invoices for a specific client ID.
     public List<Invoice> getInvoicesForClient(String clientId) {
-        return invoices.stream()
-                .filter(invoice -> invoice.getClient().getClientId().equals(clientId))
-                .collect(Collectors.toList());
+        return new ArrayList<>(getInvoicesForClientNumber(Client.parseClientId(clientId)));
+    }
+
+    // Method to get the invoices of a client by the numeric part of their ID, month by month.
+    // The list is read-only.
+    public List<Invoice> getInvoicesForClientNumber(int clientNumber) {
+        return getInvoicesForClientNumber(clientNumber, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    // Method to get the invoices of a client dated from one time to another (milliseconds, both
+    // included), month by month. Only the months with invoices for the client in the range are read.
+    // The list is read-only.
+    public List<Invoice> getInvoicesForClientNumber(int clientNumber, long from, long to) {
+        if (clientNumber < 0) {
+            return Collections.emptyList();
+        }
+        return select(clientNumber, from, to);
+    }
+
+    // Method to check if the invoices are in date order across the whole list.
+    public boolean isInDateOrder() {
+        long previousTime = Long.MIN_VALUE;
+        for (Month month : months.values()) {
+            if (month.count == 0) {
+                continue;
+            }
+            if (month.firstTime < previousTime || (month.isOpen() && !month.partition.isInDateOrder())) {
+                return false;
+            }
+            previousTime = month.lastTime;
+        }
+        return true;
+    }
+
+    // Method to get the invoices dated from one time to another (milliseconds, both included),
+    // month by month. Only the months with invoices in the range are read. The list is read-only.
+    public List<Invoice> getInvoicesBetween(long from, long to) {
+        return select(-1, from, to);
+    }
+
+    // Method to get all invoices as a read-only list, month by month.
+    public List<Invoice> getInvoiceList() {
+        return getInvoicesBetween(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    // Method to get the running sales totals per product, client and day. Lists saved before the
+    // totals existed have them rebuilt from the invoices the first time. Archived months stay in
+    // the totals.
+    public synchronized SalesViews getSalesViews() {
+        if (salesViews == null) {
+            salesViews = new SalesViews();
+            salesViews.rebuild(getInvoices());
+        }
+        return salesViews;
+    }
+
+    // Method to get the number of invoices.
+    public int size() {
+        int size = 0;
+        for (Month month : months.values()) {
+            size += month.count;
+        }
+        return size;
+    }
+
+    // Method to get the months the list has invoices for, oldest first.
+    public List<YearMonth> getMonths() {
+        List<YearMonth> result = new ArrayList<>();
+        for (Month month : months.values()) {
+            result.add(InvoicePartition.yearMonthOf(month.month));
+        }
+        return result;
+    }
+
+    // Method to count the months with invoices dated from one time to another (milliseconds, both included).
+    public int countMonthsBetween(long from, long to) {
+        int count = 0;
+        for (Month month : months.values()) {
+            count += month.overlaps(from, to) ? 1 : 0;
+        }
+        return count;
+    }
+
+    // Method to move the sealed months before a month to another directory, leaving the open month
+    // and every later month alone. Archived months leave the list and its lookups (but not the sales
+    // totals) and can be read with InvoicePartition.read(). Returns the number of months moved.
+    // The list must be saved afterwards, since the saved list still names the moved files.
+    public int archiveMonthsBefore(YearMonth before, Path archiveDirectory) throws IOException {
+        Files.createDirectories(archiveDirectory);
+        int archived = 0;
+        Iterator<Month> older = months.headMap(InvoicePartition.monthOf(before), false).values().iterator();
+        while (older.hasNext()) {
+            Month month = older.next();
+            if (month.isOpen()) {
+                continue;
+            }
+            Path target = archiveDirectory.resolve(fileNameOf(month.month));
+            if (month.fileName != null) {
+                Files.move(Paths.get(month.fileName), target, StandardCopyOption.REPLACE_EXISTING);
+                month.movedTo(target, null); // Views taken before read it from the archive
+            } else {
+                month.partition.write(target);
+            }
+            older.remove();
+            sealedMonths = null;
+            archived++;
+        }
+        return archived;
+    }
+
+    // Method to get the part of a date ordered list of invoices dated from one time to another
+    // (milliseconds, both included), found by binary search. The result is a view of the list.
+    public static List<Invoice> datedBetween(List<Invoice> inDateOrder, long from, long to) {
+        int start = firstDatedFrom(inDateOrder, from);
+        int end = to == Long.MAX_VALUE ? inDateOrder.size() : firstDatedFrom(inDateOrder, to + 1);
+        return inDateOrder.subList(start, Math.max(start, end));
+    }
+
+    // Binary search for the position of the first invoice dated at or after a time.
+    private static int firstDatedFrom(List<Invoice> inDateOrder, long time) {
+        int low = 0;
+        int high = inDateOrder.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (inDateOrder.get(middle).getTime() < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Collects the invoices in a date range, of one client or (for a client number below 0) of all
+    // clients, from the months that can have any.
+    private List<Invoice> select(int clientNumber, long from, long to) {
+        List<List<Invoice>> parts = new ArrayList<>();
+        int size = 0;
+        for (Month month : months.values()) {
+            if (month.overlaps(from, to) && (clientNumber < 0 || month.mayHaveClient(clientNumber))) {
+                List<Invoice> part = month.partition().getInvoicesBetween(clientNumber, from, to);
+                parts.add(part);
+                size += part.size();
+            }
+        }
+        if (parts.size() == 1) {
+            return Collections.unmodifiableList(parts.get(0));
+        }
+        List<Invoice> selected = new ArrayList<>(size);
+        for (List<Invoice> part : parts) {
+            selected.addAll(part);
+        }
+        return Collections.unmodifiableList(selected);
+    }
+
+    // Adds an invoice to the open month, first sealing it if the invoice is from a later month.
+    // An invoice dated before the open month (the clock went back) stays in the open month; the
+    // summaries record the actual dates, so lookups by date still find it.
+    private void place(Invoice invoice) {
+        int monthNumber = InvoicePartition.monthOf(invoice.getTime());
+        Month open = months.isEmpty() ? null : months.lastEntry().getValue();
+        if (open == null || !open.isOpen() || monthNumber > open.month) {
+            if (open != null && open.isOpen()) {
+                open.partition.seal();
+                open.summarize(open.partition);
+                sealedMonths = null;
+                writeSealedMonths();
+            }
+            int key = open == null ? monthNumber : Math.max(monthNumber, open.month + 1);
+            open = new Month(key);
+            months.put(key, open);
+        }
+        open.add(invoice);
+    }
+
+    // Writes the sealed months still held in memory to their files, if the list has a directory.
+    // A month that cannot be written stays in memory, is saved with the list and is tried again
+    // the next time a month is sealed.
+    private void writeSealedMonths() {
+        if (directory == null) {
+            return;
+        }
+        for (Month month : months.values()) {
+            if (month.partition == null || month.isOpen()) {
+                continue;
+            }
+            Path file = Paths.get(directory, fileNameOf(month.month));
+            try {
+                month.partition.write(file);
+                month.movedTo(file, month.partition);
+            } catch (IOException ioe) {
+                ioe.printStackTrace();
+            }
+        }
+    }
+
+    private static String fileNameOf(int month) {
+        return "invoices-" + InvoicePartition.yearMonthOf(month) + ".gz";
     }
 
     // Custom serialization method for writing the object to a file.
@@ -66,12 +536,23 @@ public class InvoiceList implements Serializable {
     }
 
     // Custom deserialization method for reading the object from a file.
+    // Lists saved before invoices were partitioned by month are split into months as they load.
     private void readObject(java.io.ObjectInputStream input) {
         try {
             if (invoiceList != null) {
                 return;
             } else {
                 input.defaultReadObject();
+                if (months == null) {
+                    months = new TreeMap<>();
+                    directory = DEFAULT_DIRECTORY;
+                }
+                if (invoices != null) {
+                    for (Invoice invoice : invoices) {
+                        place(invoice);
+                    }
+                    invoices = null;
+                }
                 if (invoiceList == null) {
                     invoiceList = (InvoiceList) input.readObject();
                 } else {
@@ -87,6 +568,6 @@ public class InvoiceList implements Serializable {
 
     // Method to provide a string representation of the invoice list.
     public String toString() {
-        return invoices.toString();
+        return getInvoiceList().toString();
     }
-}
\ No newline at end of file
+}
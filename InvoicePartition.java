@@ -0,0 +1,332 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// A class representing the invoices of one month, with indexes by client and by invoice number.
+// Months are calendar months in UTC, like the days of the sales totals.
+//
+// A partition is open while its month is current, and invoices are added to it. Sealing it sorts
+// the invoices by date and freezes them and their indexes into arrays; after that it never
+// changes. A sealed partition can be written to its own gzip file and read back, indexes included.
+public class InvoicePartition implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private int month; // Months since year 0, see monthOf()
+    private boolean sealed;
+    // While open: the invoices in the order they were added. The indexes are rebuilt after loading.
+    private List<Invoice> added;
+    private transient IntObjectMap<List<Invoice>> addedByClient;
+    private transient IntObjectMap<Invoice> addedByNumber;
+    private transient int unsortedDates = -1; // Number of invoices dated before the one added before them
+    // Once sealed: the invoices in date order, the distinct client numbers in order with where each
+    // client's positions start, and the invoice numbers in order with their positions.
+    private Invoice[] invoices;
+    private int[] clients;
+    private int[] clientStarts;
+    private int[] clientPositions;
+    private int[] numbers;
+    private int[] numberPositions;
+
+    // Constructor for an open, empty partition of a month (see monthOf()).
+    public InvoicePartition(int month) {
+        this.month = month;
+        this.added = new ArrayList<>();
+    }
+
+    // Method to get the month of a time in milliseconds, as months since year 0 (UTC).
+    public static int monthOf(long timeMillis) {
+        LocalDate day = LocalDate.ofEpochDay(DemandForecaster.dayOf(timeMillis));
+        return day.getYear() * 12 + day.getMonthValue() - 1;
+    }
+
+    // Method to get the month number of a calendar month.
+    public static int monthOf(YearMonth yearMonth) {
+        return yearMonth.getYear() * 12 + yearMonth.getMonthValue() - 1;
+    }
+
+    // Method to get the calendar month of a month number.
+    public static YearMonth yearMonthOf(int month) {
+        return YearMonth.of(Math.floorDiv(month, 12), Math.floorMod(month, 12) + 1);
+    }
+
+    // Method to get the month of the partition, as months since year 0.
+    public int getMonth() {
+        return month;
+    }
+
+    // Method to check if the partition is sealed.
+    public boolean isSealed() {
+        return sealed;
+    }
+
+    // Method to get the number of invoices.
+    public int size() {
+        return sealed ? invoices.length : added.size();
+    }
+
+    // Method to add an invoice to an open partition.
+    public void add(Invoice invoice) {
+        checkOpen();
+        index();
+        if (!added.isEmpty() && invoice.getTime() < added.get(added.size() - 1).getTime()) {
+            unsortedDates++;
+        }
+        added.add(invoice);
+        addedByClient.computeIfAbsent(invoice.getClientNumber(), clientNumber -> new ArrayList<>()).add(invoice);
+        addedByNumber.put(invoice.getInvoiceNumber(), invoice);
+    }
+
+    // Method to remove an invoice from an open partition. Returns true if it was there.
+    public boolean remove(Invoice invoice) {
+        checkOpen();
+        if (!added.remove(invoice)) {
+            return false;
+        }
+        addedByClient = null; // Rebuilt on next use
+        addedByNumber = null;
+        return true;
+    }
+
+    // Method to get a sealed copy of the partition without one invoice. Sealed partitions never
+    // change, so removing an invoice from one means replacing it.
+    public InvoicePartition without(Invoice invoice) {
+        InvoicePartition copy = new InvoicePartition(month);
+        for (Invoice kept : getInvoices()) {
+            if (kept != invoice) {
+                copy.added.add(kept);
+            }
+        }
+        copy.seal();
+        return copy;
+    }
+
+    // Method to seal the partition: sort the invoices by date (keeping the order they were added
+    // for equal dates) and build the array indexes. Sealing a sealed partition does nothing.
+    public void seal() {
+        if (sealed) {
+            return;
+        }
+        invoices = added.toArray(new Invoice[0]);
+        Arrays.sort(invoices, Comparator.comparingLong(Invoice::getTime));
+        int count = invoices.length;
+        // Client index: positions grouped by client, in date order within each client. Sorting
+        // client number and position packed into one long keeps both orders without boxing.
+        long[] byClient = new long[count];
+        long[] byNumber = new long[count];
+        for (int i = 0; i < count; i++) {
+            byClient[i] = ((long) invoices[i].getClientNumber() << 32) | i;
+            byNumber[i] = ((long) invoices[i].getInvoiceNumber() << 32) | i;
+        }
+        Arrays.sort(byClient);
+        Arrays.sort(byNumber);
+        clientPositions = new int[count];
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            clientPositions[i] = (int) byClient[i];
+            if (i == 0 || (byClient[i] >>> 32) != (byClient[i - 1] >>> 32)) {
+                distinct++;
+            }
+        }
+        clients = new int[distinct];
+        clientStarts = new int[distinct + 1];
+        for (int i = 0, client = -1; i < count; i++) {
+            if (i == 0 || (byClient[i] >>> 32) != (byClient[i - 1] >>> 32)) {
+                clients[++client] = (int) (byClient[i] >>> 32);
+                clientStarts[client] = i;
+            }
+        }
+        clientStarts[distinct] = count;
+        // Invoice number index.
+        numbers = new int[count];
+        numberPositions = new int[count];
+        for (int i = 0; i < count; i++) {
+            numbers[i] = (int) (byNumber[i] >>> 32);
+            numberPositions[i] = (int) byNumber[i];
+        }
+        sealed = true;
+        added = null;
+        addedByClient = null;
+        addedByNumber = null;
+    }
+
+    // Method to get the invoices as a read-only list: in the order added while open, in date order once sealed.
+    public List<Invoice> getInvoices() {
+        return sealed ? Collections.unmodifiableList(Arrays.asList(invoices)) : Collections.unmodifiableList(added);
+    }
+
+    // Method to get the invoice at a position, in the same order as getInvoices().
+    public Invoice getInvoiceAt(int position) {
+        return sealed ? invoices[position] : added.get(position);
+    }
+
+    // Method to check if the invoices are in date order, so date ranges can be found by binary search.
+    public boolean isInDateOrder() {
+        if (sealed) {
+            return true;
+        }
+        index();
+        return unsortedDates == 0;
+    }
+
+    // Method to get the earliest invoice time, or Long.MAX_VALUE if there are no invoices.
+    public long getFirstTime() {
+        if (size() > 0 && isInDateOrder()) {
+            return getInvoices().get(0).getTime();
+        }
+        long first = Long.MAX_VALUE;
+        for (Invoice invoice : getInvoices()) {
+            first = Math.min(first, invoice.getTime());
+        }
+        return first;
+    }
+
+    // Method to get the latest invoice time, or Long.MIN_VALUE if there are no invoices.
+    public long getLastTime() {
+        if (size() > 0 && isInDateOrder()) {
+            return getInvoices().get(size() - 1).getTime();
+        }
+        long last = Long.MIN_VALUE;
+        for (Invoice invoice : getInvoices()) {
+            last = Math.max(last, invoice.getTime());
+        }
+        return last;
+    }
+
+    // Method to get the distinct client numbers with invoices in the partition, in order.
+    public int[] getClientNumbers() {
+        if (sealed) {
+            return clients.clone();
+        }
+        int[] clientNumbers = new int[index().size()];
+        int[] next = { 0 };
+        addedByClient.forEach((clientNumber, list) -> clientNumbers[next[0]++] = clientNumber);
+        Arrays.sort(clientNumbers);
+        return clientNumbers;
+    }
+
+    // Method to check if a client has invoices in the partition.
+    public boolean hasClient(int clientNumber) {
+        return sealed ? Arrays.binarySearch(clients, clientNumber) >= 0 : index().containsKey(clientNumber);
+    }
+
+    // Method to get an invoice by its number, or null if it is not in the partition.
+    public Invoice getInvoice(int invoiceNumber) {
+        if (!sealed) {
+            index();
+            return addedByNumber.get(invoiceNumber);
+        }
+        int i = Arrays.binarySearch(numbers, invoiceNumber);
+        return i < 0 ? null : invoices[numberPositions[i]];
+    }
+
+    // Method to get the invoices of a client, in the same order as getInvoices().
+    public List<Invoice> getInvoicesForClient(int clientNumber) {
+        if (!sealed) {
+            List<Invoice> clientInvoices = index().get(clientNumber);
+            return clientInvoices == null ? Collections.emptyList() : Collections.unmodifiableList(clientInvoices);
+        }
+        int client = Arrays.binarySearch(clients, clientNumber);
+        if (client < 0) {
+            return Collections.emptyList();
+        }
+        List<Invoice> clientInvoices = new ArrayList<>(clientStarts[client + 1] - clientStarts[client]);
+        for (int i = clientStarts[client]; i < clientStarts[client + 1]; i++) {
+            clientInvoices.add(invoices[clientPositions[i]]);
+        }
+        return clientInvoices;
+    }
+
+    // Method to get the invoices dated from one time to another (milliseconds, both included), of
+    // one client or, for a client number below 0, of all clients.
+    public List<Invoice> getInvoicesBetween(int clientNumber, long from, long to) {
+        List<Invoice> candidates = clientNumber < 0 ? getInvoices() : getInvoicesForClient(clientNumber);
+        if (isInDateOrder()) {
+            // A client's invoices are a subsequence of the partition, so they are in date order too.
+            return InvoiceList.datedBetween(candidates, from, to);
+        }
+        List<Invoice> dated = new ArrayList<>();
+        for (Invoice invoice : candidates) {
+            if (invoice.getTime() >= from && invoice.getTime() <= to) {
+                dated.add(invoice);
+            }
+        }
+        return dated;
+    }
+
+    // Method to write a sealed partition to a gzip file. The file is written under a temporary name
+    // and then renamed, so it is either the whole partition or not there.
+    public void write(Path file) throws IOException {
+        if (!sealed) {
+            throw new IllegalStateException("Only a sealed partition can be written to a file");
+        }
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream stream = Files.newOutputStream(temporary);
+                    ObjectOutputStream output = new ObjectOutputStream(
+                            new BufferedOutputStream(new GZIPOutputStream(stream)))) {
+                output.writeObject(this);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    // Method to read a partition written by write(), such as an archived month.
+    public static InvoicePartition read(Path file) throws IOException {
+        try (ObjectInputStream input = new ObjectInputStream(
+                new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+            return (InvoicePartition) input.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Not an invoice partition: " + file, e);
+        }
+    }
+
+    // Method to provide a string representation of the partition.
+    public String toString() {
+        return "Invoices of " + yearMonthOf(month) + ": " + size() + (sealed ? " (sealed)" : " (open)");
+    }
+
+    private void checkOpen() {
+        if (sealed) {
+            throw new IllegalStateException("The invoices of " + yearMonthOf(month) + " are sealed");
+        }
+    }
+
+    // Method to get the client index of an open partition, building the indexes the first time they are used.
+    private synchronized IntObjectMap<List<Invoice>> index() {
+        if (addedByClient == null || addedByNumber == null) {
+            addedByClient = new IntObjectMap<>();
+            addedByNumber = new IntObjectMap<>(added.size());
+            unsortedDates = 0;
+            long previousTime = Long.MIN_VALUE;
+            for (Invoice invoice : added) {
+                addedByClient.computeIfAbsent(invoice.getClientNumber(), clientNumber -> new ArrayList<>())
+                        .add(invoice);
+                addedByNumber.put(invoice.getInvoiceNumber(), invoice);
+                if (invoice.getTime() < previousTime) {
+                    unsortedDates++;
+                }
+                previousTime = invoice.getTime();
+            }
+        }
+        return addedByClient;
+    }
+}
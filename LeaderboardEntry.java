@@ -0,0 +1,35 @@
+// A class representing one place on a leaderboard: a product or client and its estimated count.
+// The true count is at most the estimate and, with high probability, at least the estimate less
+// the error bound.
+public class LeaderboardEntry {
+    private String id;
+    private long estimate;
+    private long errorBound;
+
+    // Constructor for a leaderboard entry.
+    public LeaderboardEntry(String id, long estimate, long errorBound) {
+        this.id = id;
+        this.estimate = estimate;
+        this.errorBound = errorBound;
+    }
+
+    // Method to get the product or client ID.
+    public String getId() {
+        return id;
+    }
+
+    // Method to get the estimated count.
+    public long getEstimate() {
+        return estimate;
+    }
+
+    // Method to get how much the estimate may overcount by.
+    public long getErrorBound() {
+        return errorBound;
+    }
+
+    // Method to provide a string representation of the entry.
+    public String toString() {
+        return id + ": " + estimate + (errorBound > 0 ? " (at least " + Math.max(0, estimate - errorBound) + ")" : "");
+    }
+}
@@ -0,0 +1,83 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// A class keeping live leaderboards of the most wanted products and the most active clients over
+// the last hour, day and week, in fixed memory no matter how many products and clients there are.
+//
+// Products score the units invoiced plus the units added to wishlists. Clients score one point per
+// invoice and one per wishlist add. Each window uses SlidingHeavyHitters with count-min sketches
+// of depth 4 and width 1024: an estimate overcounts by at most 0.27% of the window's total score,
+// with probability above 98%, and never undercounts. The windows advance in steps of one bucket
+// (5 minutes, 1 hour and 12 hours), so each covers up to one bucket less than its full length.
+// All sketches together take about 3.5 MB. The leaderboards are not saved; they start empty.
+public class Leaderboards {
+    private static final int DEPTH = 4;
+    private static final int WIDTH = 1024;
+    private static final int CANDIDATES = 64;
+
+    // The sliding windows, with the number of buckets each is split into.
+    public enum Window {
+        HOUR(60L * 60 * 1000, 12), DAY(24L * 60 * 60 * 1000, 24), WEEK(7L * 24 * 60 * 60 * 1000, 14);
+
+        private final long millis;
+        private final int buckets;
+
+        Window(long millis, int buckets) {
+            this.millis = millis;
+            this.buckets = buckets;
+        }
+    }
+
+    private SlidingHeavyHitters[] products = new SlidingHeavyHitters[Window.values().length];
+    private SlidingHeavyHitters[] clients = new SlidingHeavyHitters[Window.values().length];
+
+    // Constructor for empty leaderboards.
+    public Leaderboards() {
+        for (Window window : Window.values()) {
+            products[window.ordinal()] = newWindow(window);
+            clients[window.ordinal()] = newWindow(window);
+        }
+    }
+
+    // Method to count a new invoice created at a time in milliseconds.
+    public synchronized void recordInvoice(Invoice invoice, long now) {
+        for (Window window : Window.values()) {
+            for (int line = 0; line < invoice.getLineCount(); line++) {
+                products[window.ordinal()].add(invoice.getProductNumber(line), invoice.getQuantity(line), now);
+            }
+            clients[window.ordinal()].add(invoice.getClientNumber(), 1, now);
+        }
+    }
+
+    // Method to count a product added to a client's wishlist at a time in milliseconds.
+    public synchronized void recordWishlistAdd(Client client, Product product, int quantity, long now) {
+        for (Window window : Window.values()) {
+            products[window.ordinal()].add(product.getProductNumber(), quantity, now);
+            clients[window.ordinal()].add(client.getClientNumber(), 1, now);
+        }
+    }
+
+    // Method to get up to n (at most 64) of the most wanted products over a window ending at a time.
+    public synchronized List<LeaderboardEntry> topProducts(Window window, int n, long now) {
+        SlidingHeavyHitters hitters = products[window.ordinal()];
+        List<LeaderboardEntry> top = new ArrayList<>();
+        for (long[] entry : hitters.top(n, now)) {
+            top.add(new LeaderboardEntry(Product.formatProductId((int) entry[0]), entry[1], hitters.getErrorBound()));
+        }
+        return top;
+    }
+
+    // Method to get up to n (at most 64) of the most active clients over a window ending at a time.
+    public synchronized List<LeaderboardEntry> topClients(Window window, int n, long now) {
+        SlidingHeavyHitters hitters = clients[window.ordinal()];
+        List<LeaderboardEntry> top = new ArrayList<>();
+        for (long[] entry : hitters.top(n, now)) {
+            top.add(new LeaderboardEntry(Client.formatClientId((int) entry[0]), entry[1], hitters.getErrorBound()));
+        }
+        return top;
+    }
+
+    private static SlidingHeavyHitters newWindow(Window window) {
+        return new SlidingHeavyHitters(window.millis, window.buckets, DEPTH, WIDTH, CANDIDATES);
+    }
+}
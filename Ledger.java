@@ -0,0 +1,44 @@
+import java.util.HashMap;
+import java.util.Map;
+
+// A class that keeps the running totals of the amounts debited to clients by invoices, in whole
+// cents, so they do not depend on the order the orders were posted in. Entries are posted a batch
+// at a time, taking the ledger's lock once per batch.
+public class Ledger {
+    private Map<Integer, Long> debitsByClient = new HashMap<>(); // Client number -> cents debited
+    private long entries;
+    private long totalCents;
+
+    // Method to post the debits of a batch of invoices. Null invoices are skipped.
+    public synchronized void post(Iterable<Invoice> invoices) {
+        for (Invoice invoice : invoices) {
+            if (invoice != null) {
+                long cents = Math.round(invoice.getTotalAmount() * 100);
+                debitsByClient.merge(invoice.getClientNumber(), cents, Long::sum);
+                totalCents += cents;
+                entries++;
+            }
+        }
+    }
+
+    // Method to get the cents debited to a client.
+    public synchronized long getDebitedCents(int clientNumber) {
+        return debitsByClient.getOrDefault(clientNumber, 0L);
+    }
+
+    // Method to get the number of entries posted.
+    public synchronized long getEntryCount() {
+        return entries;
+    }
+
+    // Method to get the cents debited to all clients.
+    public synchronized long getTotalCents() {
+        return totalCents;
+    }
+
+    // Method to provide a string representation of the ledger.
+    public synchronized String toString() {
+        return "Ledger: " + entries + " entries | " + debitsByClient.size() + " clients | Total: "
+                + Report.formatCents(totalCents);
+    }
+}
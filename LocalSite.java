@@ -0,0 +1,176 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// A class representing a site that keeps its own stock levels and waitlists in memory and saves
+// them to its own file, named after the site. Products are kept by product number; clients and
+// invoices belong to the Warehouse, which bills the clients filled from this site's waitlists.
+public class LocalSite implements Site, Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final String FILE_SUFFIX = ".site";
+    private String name;
+    private double latitude;
+    private double longitude;
+    private Map<Integer, Integer> stock = new HashMap<>(); // Product number -> units in stock
+    private Map<Integer, Waitlist> waitlists = new HashMap<>(); // Product number -> waitlist
+
+    // Constructor for an empty site at the given location.
+    public LocalSite(String name, double latitude, double longitude) {
+        this.name = name;
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public synchronized int[] getAvailable(int[] productNumbers) {
+        int[] available = new int[productNumbers.length];
+        for (int i = 0; i < productNumbers.length; i++) {
+            available[i] = stock.getOrDefault(productNumbers[i], 0);
+        }
+        return available;
+    }
+
+    public synchronized int take(Product product, int quantity) {
+        int inStock = stock.getOrDefault(product.getProductNumber(), 0);
+        int taken = Math.max(0, Math.min(quantity, inStock));
+        if (taken > 0) {
+            stock.put(product.getProductNumber(), inStock - taken);
+        }
+        return taken;
+    }
+
+    public synchronized void putBack(Product product, int quantity) {
+        if (quantity > 0) {
+            stock.merge(product.getProductNumber(), quantity, Integer::sum);
+        }
+    }
+
+    public synchronized void waitlist(Client client, Product product, int quantity) {
+        if (quantity > 0) {
+            Waitlist waitlist = waitlists.computeIfAbsent(product.getProductNumber(), productNumber -> new Waitlist());
+            waitlist.addClientToWaitlist(client, waitlist.getClientQuantity(client) + quantity);
+        }
+    }
+
+    public synchronized void reduceWaitlist(Client client, Product product, int quantity) {
+        Waitlist waitlist = waitlists.get(product.getProductNumber());
+        if (waitlist != null && quantity > 0) {
+            waitlist.reduceClientQuantity(client.getClientNumber(), quantity);
+            if (waitlist.isEmpty()) {
+                waitlists.remove(product.getProductNumber());
+            }
+        }
+    }
+
+    // The stock and waitlist are updated under the site's lock; the clients are then invoiced
+    // through the Warehouse, so the site never holds its lock while waiting for the Warehouse.
+    // A fill that cannot be invoiced (the client is gone, or invoicing fails) goes back into stock
+    // and onto the client's request; the first failure is thrown once every fill has been tried.
+    public List<Invoice> receive(Product product, int quantity) {
+        Map<Integer, Integer> fills = new LinkedHashMap<>(); // Client number -> units filled
+        synchronized (this) {
+            int inStock = stock.getOrDefault(product.getProductNumber(), 0) + quantity;
+            Waitlist waitlist = waitlists.get(product.getProductNumber());
+            if (waitlist != null) {
+                for (int clientNumber : waitlist.getClientNumbers()) {
+                    if (inStock == 0) {
+                        break;
+                    }
+                    int filled = Math.min(waitlist.getClientQuantity(clientNumber), inStock);
+                    waitlist.reduceClientQuantity(clientNumber, filled);
+                    inStock -= filled;
+                    fills.put(clientNumber, filled);
+                }
+                if (waitlist.isEmpty()) {
+                    waitlists.remove(product.getProductNumber());
+                }
+            }
+            stock.put(product.getProductNumber(), inStock);
+        }
+
+        Warehouse warehouse = Warehouse.instance();
+        List<Invoice> invoices = new ArrayList<>();
+        RuntimeException failure = null;
+        for (Map.Entry<Integer, Integer> fill : fills.entrySet()) {
+            Client client = warehouse.getClientById(Client.formatClientId(fill.getKey()));
+            try {
+                if (client != null) {
+                    invoices.add(warehouse.invoiceShipment(client, List.of(product), List.of(fill.getValue())));
+                    continue;
+                }
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+            unfill(product, fill.getKey(), fill.getValue());
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return invoices;
+    }
+
+    // Puts a fill that could not be invoiced back into stock and back on the client's request.
+    private synchronized void unfill(Product product, int clientNumber, int quantity) {
+        putBack(product, quantity);
+        waitlists.computeIfAbsent(product.getProductNumber(), productNumber -> new Waitlist())
+                .addClientQuantity(clientNumber, quantity);
+    }
+
+    // Method to set the units of a product in stock, without filling the waitlist.
+    public synchronized void setStock(Product product, int quantity) {
+        stock.put(product.getProductNumber(), quantity);
+    }
+
+    // Method to get the requested quantity of a client on the site's waitlist for a product.
+    public synchronized int getWaitlistedQuantity(Client client, Product product) {
+        Waitlist waitlist = waitlists.get(product.getProductNumber());
+        return waitlist == null ? 0 : waitlist.getClientQuantity(client);
+    }
+
+    // Method to save the site to the file named after it.
+    public synchronized boolean save() {
+        try (ObjectOutputStream output = new ObjectOutputStream(
+                new BufferedOutputStream(new FileOutputStream(name + FILE_SUFFIX)))) {
+            output.writeObject(this);
+            return true;
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+            return false;
+        }
+    }
+
+    // Method to load a site saved with save(), or null if it cannot be read.
+    public static LocalSite retrieve(String name) {
+        try (ObjectInputStream input = new ObjectInputStream(
+                new BufferedInputStream(new FileInputStream(name + FILE_SUFFIX)))) {
+            return (LocalSite) input.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // Method to provide a string representation of the site.
+    public synchronized String toString() {
+        return "Site " + name + " (" + latitude + ", " + longitude + ") | Products in stock: " + stock.size()
+                + " | Waitlists: " + waitlists.size();
+    }
+}
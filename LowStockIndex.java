@@ -0,0 +1,77 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// A class that keeps the products ordered by how far their stock is above the reorder threshold
+// (stock - threshold), so the products at or below their reorder point are always the head of
+// the index. Updating a product costs O(log n); listing the k products below their reorder point
+// costs O(k + log n).
+//
+// Each product is stored under a long key with the margin in the high 32 bits and the product
+// number in the low 32 bits, so products with the same margin keep a stable order.
+public class LowStockIndex {
+    private static final long LAST_AT_REORDER_POINT = 0xFFFFFFFFL; // Margin 0, highest product number
+    private TreeMap<Long, Product> byMargin = new TreeMap<>();
+    private Map<Integer, Long> keyByProduct = new HashMap<>(); // Product number -> current key
+
+    // Constructor to index the given products.
+    public LowStockIndex(Iterator<Product> products) {
+        while (products.hasNext()) {
+            update(products.next());
+        }
+    }
+
+    // Method to index a product, or move it after its stock or threshold changed.
+    // Returns true if the product has just fallen to or below its reorder point.
+    public boolean update(Product product) {
+        return update(product, product.getQuantity());
+    }
+
+    // Method to index a product with the given stock, such as the stock a change left it with when
+    // the product may have changed again since.
+    // Returns true if the product has just fallen to or below its reorder point.
+    public synchronized boolean update(Product product, int quantity) {
+        long key = key(product, quantity);
+        Long previousKey = keyByProduct.put(product.getProductNumber(), key);
+        if (previousKey != null) {
+            if (previousKey == key) {
+                return false;
+            }
+            byMargin.remove(previousKey);
+        }
+        byMargin.put(key, product);
+        return margin(key) <= 0 && (previousKey == null || margin(previousKey) > 0);
+    }
+
+    // Method to remove a product from the index.
+    public synchronized void remove(Product product) {
+        Long key = keyByProduct.remove(product.getProductNumber());
+        if (key != null) {
+            byMargin.remove(key);
+        }
+    }
+
+    // Method to get the products at or below their reorder point, furthest below first.
+    public synchronized List<Product> getProductsBelowReorderPoint() {
+        return new ArrayList<>(byMargin.headMap(LAST_AT_REORDER_POINT, true).values());
+    }
+
+    // Method to count the products at or below their reorder point.
+    public synchronized int countBelowReorderPoint() {
+        return byMargin.headMap(LAST_AT_REORDER_POINT, true).size();
+    }
+
+    private static long key(Product product, int quantity) {
+        long margin = (long) quantity - product.getReorderThreshold();
+        // Clamp so the margin fits in the high 32 bits.
+        margin = Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, margin));
+        return (margin << 32) | (product.getProductNumber() & 0xFFFFFFFFL);
+    }
+
+    private static long margin(long key) {
+        return key >> 32;
+    }
+}
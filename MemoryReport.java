@@ -0,0 +1,216 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+// A class that estimates how much heap the warehouse data uses, broken down by entity type.
+// Sizes assume a 64-bit JVM with compressed references: 12 byte object headers, 4 byte
+// references and 8 byte alignment. Strings are counted once no matter how many objects share them.
+// The pool of product names (see StringPool) is counted as a map of its own; the names in it are
+// counted with the other strings.
+public class MemoryReport {
+    private static final int HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+    private static final int TOP_CONSUMERS = 5;
+
+    private Map<String, long[]> totals = new LinkedHashMap<>(); // type -> {count, bytes}
+    private Map<Object, Boolean> seenStrings = new IdentityHashMap<>();
+    private PriorityQueue<Usage> topConsumers = new PriorityQueue<>();
+
+    // A class holding the footprint of a single entity for the top consumers list.
+    private static class Usage implements Comparable<Usage> {
+        private String description;
+        private long bytes;
+
+        private Usage(String description, long bytes) {
+            this.description = description;
+            this.bytes = bytes;
+        }
+
+        public int compareTo(Usage other) {
+            return Long.compare(bytes, other.bytes);
+        }
+    }
+
+    // Constructor to build the report from the products, clients and invoices of the warehouse and
+    // the pool of product names.
+    public MemoryReport(Iterator<Product> products, Iterator<Client> clients, Iterator<Invoice> invoices,
+            StringPool stringPool) {
+        totals.put("Products", new long[2]);
+        totals.put("Clients", new long[2]);
+        totals.put("Invoices", new long[2]);
+        totals.put("Strings", new long[2]);
+        totals.put("Name pool", new long[2]);
+        while (products.hasNext()) {
+            Product product = products.next();
+            long bytes = productSize(product);
+            add("Products", bytes);
+            consider("Product " + product.getProductId(), bytes);
+        }
+        while (clients.hasNext()) {
+            Client client = clients.next();
+            long bytes = clientSize(client);
+            add("Clients", bytes);
+            consider("Client " + client.getClientId(), bytes);
+        }
+        while (invoices.hasNext()) {
+            Invoice invoice = invoices.next();
+            long bytes = invoiceSize(invoice);
+            add("Invoices", bytes);
+            consider("Invoice " + invoice.getInvoiceId(), bytes);
+        }
+        stringPool.forEach(this::stringSize); // Names no product holds any more
+        long[] pool = totals.get("Name pool");
+        pool[0] = stringPool.size();
+        pool[1] = concurrentHashMapSize(stringPool.size());
+    }
+
+    // Method to get the estimated number of bytes used by one entity type.
+    public long getBytes(String type) {
+        long[] total = totals.get(type);
+        return total == null ? 0 : total[1];
+    }
+
+    // Method to get the estimated number of bytes used by all entity types.
+    public long getTotalBytes() {
+        long bytes = 0;
+        for (long[] total : totals.values()) {
+            bytes += total[1];
+        }
+        return bytes;
+    }
+
+    // Method to estimate the size of a product, including its waitlist.
+    private long productSize(Product product) {
+        // header, name, waitlist, price, id, quantity
+        long bytes = align(HEADER + REFERENCE + REFERENCE + 8 + 4 + 4);
+        stringSize(product.getProductName());
+        if (product.hasWaitlist()) {
+            Waitlist waitlist = product.getWaitlist();
+            bytes += align(HEADER + REFERENCE) + intIntMapSize(waitlist.getCapacity(), waitlist.getTableSize());
+        }
+        return bytes;
+    }
+
+    // Method to estimate the size of a client, including their wishlist.
+    private long clientSize(Client client) {
+        // header, name, address, phone, wishlist, balance, id
+        long bytes = align(HEADER + 4 * REFERENCE + 8 + 4);
+        stringSize(client.getClientName());
+        stringSize(client.getAddress());
+        stringSize(client.getPhone());
+        if (client.hasWishlist()) {
+            Wishlist wishlist = client.getWishlist();
+            bytes += align(HEADER + REFERENCE) + hashMapSize(wishlist.size(), true);
+            for (Product product : wishlist) {
+                bytes += boxedIntegerSize(product.getProductNumber());
+                bytes += boxedIntegerSize(wishlist.getProductQuantity(product.getProductId()));
+            }
+        }
+        return bytes;
+    }
+
+    // Method to estimate the size of an invoice and its line arrays.
+    private long invoiceSize(Invoice invoice) {
+        // header, client name, four arrays, date, total, id, client id
+        long bytes = align(HEADER + 5 * REFERENCE + 8 + 8 + 4 + 4);
+        int lines = invoice.getLineCount();
+        bytes += 2 * align(ARRAY_HEADER + 4L * lines); // product ids, quantities
+        bytes += align(ARRAY_HEADER + (long) REFERENCE * lines); // product names
+        bytes += align(ARRAY_HEADER + 8L * lines); // unit prices
+        stringSize(invoice.getClientName());
+        for (int i = 0; i < lines; i++) {
+            stringSize(invoice.getProductName(i));
+        }
+        return bytes;
+    }
+
+    // Method to count a string the first time it is seen.
+    private void stringSize(String value) {
+        if (value == null || seenStrings.put(value, Boolean.TRUE) != null) {
+            return;
+        }
+        boolean latin1 = true;
+        for (int i = 0; i < value.length() && latin1; i++) {
+            latin1 = value.charAt(i) <= 0xFF;
+        }
+        long bytes = align(HEADER + REFERENCE + 4 + 2) + align(ARRAY_HEADER + value.length() * (latin1 ? 1 : 2));
+        add("Strings", bytes);
+    }
+
+    // Linked maps add head and tail references to the map and before and after references to each node.
+    private static long hashMapSize(int size, boolean linked) {
+        int links = linked ? 2 * REFERENCE : 0;
+        return align(HEADER + 3 * 4 + 4 + 4 * REFERENCE + links + (linked ? 1 : 0)) + hashTableSize(size)
+                + size * align(HEADER + 4 + 3 * REFERENCE + links);
+    }
+
+    // A ConcurrentHashMap has a size counter and more references than a HashMap; its nodes are the same.
+    private static long concurrentHashMapSize(int size) {
+        return align(HEADER + 8 + 3 * 4 + 6 * REFERENCE) + hashTableSize(size)
+                + size * align(HEADER + 4 + 3 * REFERENCE);
+    }
+
+    // The bucket array of a hash map, which doubles once it is three quarters full.
+    private static long hashTableSize(int size) {
+        int capacity = 16;
+        while (size > capacity * 3 / 4) {
+            capacity *= 2;
+        }
+        return size == 0 ? 0 : align(ARRAY_HEADER + capacity * REFERENCE);
+    }
+
+    // An IntIntMap holds its entries in two int arrays and a boolean array, and finds them through an int table.
+    private static long intIntMapSize(int capacity, int tableSize) {
+        return align(HEADER + 4 * REFERENCE + 5 * 4) + 2 * align(ARRAY_HEADER + 4L * capacity)
+                + align(ARRAY_HEADER + capacity) + align(ARRAY_HEADER + 4L * tableSize);
+    }
+
+    // Integers between -128 and 127 come from the shared Integer cache.
+    private static long boxedIntegerSize(int value) {
+        return (value >= -128 && value <= 127) ? 0 : align(HEADER + 4);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    private void add(String type, long bytes) {
+        long[] total = totals.get(type);
+        total[0]++;
+        total[1] += bytes;
+    }
+
+    private void consider(String description, long bytes) {
+        topConsumers.add(new Usage(description, bytes));
+        if (topConsumers.size() > TOP_CONSUMERS) {
+            topConsumers.poll();
+        }
+    }
+
+    // Method to provide a string representation of the report.
+    public String toString() {
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append("Estimated heap usage:\n");
+        for (Map.Entry<String, long[]> entry : totals.entrySet()) {
+            long count = entry.getValue()[0];
+            long bytes = entry.getValue()[1];
+            stringBuilder.append(String.format("  %-9s count: %10d | bytes: %12d | bytes each: %8d%n",
+                    entry.getKey(), count, bytes, count == 0 ? 0 : bytes / count));
+        }
+        stringBuilder.append(String.format("  %-9s bytes: %12d%n", "Total", getTotalBytes()));
+        stringBuilder.append("Top consumers:\n");
+        List<Usage> top = new ArrayList<>(topConsumers);
+        Collections.sort(top, Collections.reverseOrder());
+        for (Usage usage : top) {
+            stringBuilder.append("  ").append(usage.description).append(": ").append(usage.bytes)
+                    .append(" bytes\n");
+        }
+        return stringBuilder.toString();
+    }
+}
@@ -0,0 +1,311 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+
+// A class that keeps the stock and prices of a very large catalog outside the Java heap, so
+// millions of products cost a fixed 32 bytes each plus their names, and add nothing for the
+// garbage collector to trace.
+//
+// The store is one buffer: a header, then a fixed-width row per product, then the product names
+// as UTF-8 bytes. A row holds, at these offsets:
+//
+//    0  product number      int
+//    4  quantity            int, changed by compare-and-set
+//    8  waitlist total      int
+//   12  name offset         int, from the start of the name area
+//   16  price in cents      long
+//   24  name length         int, in bytes
+//   28  unused              int
+//
+// The buffer is either direct memory or a file mapped into memory, so a saved store opens without
+// reading or decoding anything: only the small on-heap index from product number to row is
+// rebuilt. Rows are found by number through that index; reading or changing the quantity, price
+// or waitlist total of a row does not allocate. Adding products is synchronized.
+//
+// The Warehouse uses a store for the stock and prices of its products once useOffHeapStock() is
+// called; each Product then reads and changes its row instead of its own fields.
+public class OffHeapProductStore implements AutoCloseable {
+    private static final int MAGIC = 0x4F485053; // "OHPS"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int ROW_BYTES = 32;
+    private static final int CAPACITY_AT = 8; // Header offsets
+    private static final int NAME_CAPACITY_AT = 12;
+    private static final int ROW_COUNT_AT = 16;
+    private static final int NAMES_USED_AT = 20;
+    private static final int NUMBER = 0; // Row offsets
+    private static final int QUANTITY = 4;
+    private static final int WAITLIST_TOTAL = 8;
+    private static final int NAME_OFFSET = 12;
+    private static final int PRICE_CENTS = 16;
+    private static final int NAME_LENGTH = 24;
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private ByteBuffer buffer;
+    private FileChannel channel; // Null for a store in direct memory
+    private int capacity;
+    private int nameCapacity;
+    private int namesAt; // Where the name area starts
+    private int namesUsed;
+    private volatile int rowCount; // Written after the row and its index entry
+    private int[] rowsByNumber = new int[0]; // Product number -> row + 1, 0 if none
+
+    private OffHeapProductStore(ByteBuffer buffer, FileChannel channel) {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.channel = channel;
+        this.capacity = buffer.getInt(CAPACITY_AT);
+        this.nameCapacity = buffer.getInt(NAME_CAPACITY_AT);
+        this.namesAt = HEADER_BYTES + capacity * ROW_BYTES;
+        this.namesUsed = buffer.getInt(NAMES_USED_AT);
+        int rows = buffer.getInt(ROW_COUNT_AT);
+        for (int row = 0; row < rows; row++) {
+            index(buffer.getInt(offset(row) + NUMBER), row);
+        }
+        this.rowCount = rows;
+    }
+
+    // Method to create a store in direct memory for up to capacity products and nameBytes bytes of names.
+    public static OffHeapProductStore inMemory(int capacity, int nameBytes) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size(capacity, nameBytes));
+        writeHeader(buffer, capacity, nameBytes);
+        return new OffHeapProductStore(buffer, null);
+    }
+
+    // Method to create a store in a new file, replacing any file there, mapped into memory.
+    public static OffHeapProductStore create(Path file, int capacity, int nameBytes) throws IOException {
+        int size = size(capacity, nameBytes);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        writeHeader(buffer, capacity, nameBytes);
+        return new OffHeapProductStore(buffer, channel);
+    }
+
+    // Method to open a store saved in a file, mapping it into memory.
+    public static OffHeapProductStore open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IOException("Not a product store: " + file);
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                || size != size(buffer.getInt(CAPACITY_AT), buffer.getInt(NAME_CAPACITY_AT))) {
+            channel.close();
+            throw new IOException("Not a product store: " + file);
+        }
+        return new OffHeapProductStore(buffer, channel);
+    }
+
+    // Method to add a product. Returns its row, or -1 if the store is full or already has the
+    // product number.
+    public synchronized int add(int productNumber, String name, long priceCents, int quantity, int waitlistTotal) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int row = rowCount;
+        if (productNumber < 0 || row == capacity || nameBytes.length > nameCapacity - namesUsed
+                || row(productNumber) >= 0) {
+            return -1;
+        }
+        int at = offset(row);
+        buffer.putInt(at + NUMBER, productNumber);
+        buffer.putInt(at + QUANTITY, quantity);
+        buffer.putInt(at + WAITLIST_TOTAL, waitlistTotal);
+        buffer.putInt(at + NAME_OFFSET, namesUsed);
+        buffer.putLong(at + PRICE_CENTS, priceCents);
+        buffer.putInt(at + NAME_LENGTH, nameBytes.length);
+        buffer.put(namesAt + namesUsed, nameBytes);
+        namesUsed += nameBytes.length;
+        buffer.putInt(NAMES_USED_AT, namesUsed);
+        index(productNumber, row);
+        buffer.putInt(ROW_COUNT_AT, row + 1);
+        rowCount = row + 1;
+        return row;
+    }
+
+    // Method to add every product of an iterator, such as the catalog's, with its waitlist total.
+    // Returns the number added; stops early if the store fills up.
+    public int addAll(Iterator<Product> products) {
+        int added = 0;
+        while (products.hasNext()) {
+            Product product = products.next();
+            int waitlistTotal = product.hasWaitlist() ? product.getWaitlist().getTotalQuantity() : 0;
+            int row = add(product.getProductNumber(), product.getProductName(), Math.round(product.getPrice() * 100),
+                    product.getQuantity(), waitlistTotal);
+            if (row < 0 && rowCount == capacity) {
+                break;
+            }
+            if (row >= 0) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    // Method to get the row of a product by number, or -1 if the store does not have it.
+    public int row(int productNumber) {
+        int rows = rowCount; // Makes the index entries of the rows counted visible
+        int[] index = rowsByNumber;
+        if (productNumber < 0 || productNumber >= index.length) {
+            return -1;
+        }
+        int row = index[productNumber] - 1;
+        return row < rows ? row : -1;
+    }
+
+    // Method to get the number of products in the store.
+    public int size() {
+        return rowCount;
+    }
+
+    // Method to get the maximum number of products the store can hold.
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // Method to get the product number of a row.
+    public int getProductNumber(int row) {
+        return buffer.getInt(rowAt(row) + NUMBER);
+    }
+
+    // Method to get the name of a row. Unlike the other getters, this creates a String.
+    public String getName(int row) {
+        int at = rowAt(row);
+        byte[] name = new byte[buffer.getInt(at + NAME_LENGTH)];
+        buffer.get(namesAt + buffer.getInt(at + NAME_OFFSET), name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    // Method to get the quantity in stock of a row.
+    public int getQuantity(int row) {
+        return (int) INT.getVolatile(buffer, rowAt(row) + QUANTITY);
+    }
+
+    // Method to take up to a quantity out of a row's stock atomically. Returns the quantity taken.
+    public int takeUpTo(int row, int quantity) {
+        return Product.taken(quantity, getAndTakeUpTo(row, quantity));
+    }
+
+    // Method to take up to a quantity out of a row's stock atomically, like takeUpTo(), but return
+    // the stock just before it was taken, as Product.getAndTakeUpTo() does.
+    public int getAndTakeUpTo(int row, int quantity) {
+        int at = rowAt(row) + QUANTITY;
+        while (true) {
+            int available = (int) INT.getVolatile(buffer, at);
+            int taken = Product.taken(quantity, available);
+            if (taken == 0 || INT.compareAndSet(buffer, at, available, available - taken)) {
+                return available;
+            }
+        }
+    }
+
+    // Method to set a row's stock.
+    public void setQuantity(int row, int quantity) {
+        INT.setVolatile(buffer, rowAt(row) + QUANTITY, quantity);
+    }
+
+    // Method to add a quantity (negative to remove) to a row's stock atomically. Returns the new quantity.
+    public int addQuantity(int row, int quantity) {
+        return (int) INT.getAndAdd(buffer, rowAt(row) + QUANTITY, quantity) + quantity;
+    }
+
+    // Method to set a row's stock if it still holds the expected quantity.
+    public boolean compareAndSetQuantity(int row, int expected, int quantity) {
+        return INT.compareAndSet(buffer, rowAt(row) + QUANTITY, expected, quantity);
+    }
+
+    // Method to get the price of a row in cents.
+    public long getPriceCents(int row) {
+        return (long) LONG.getVolatile(buffer, rowAt(row) + PRICE_CENTS);
+    }
+
+    // Method to set the price of a row in cents.
+    public void setPriceCents(int row, long priceCents) {
+        LONG.setVolatile(buffer, rowAt(row) + PRICE_CENTS, priceCents);
+    }
+
+    // Method to get the total quantity waitlisted for a row.
+    public int getWaitlistTotal(int row) {
+        return (int) INT.getVolatile(buffer, rowAt(row) + WAITLIST_TOTAL);
+    }
+
+    // Method to set the total quantity waitlisted for a row.
+    public void setWaitlistTotal(int row, int quantity) {
+        INT.setVolatile(buffer, rowAt(row) + WAITLIST_TOTAL, quantity);
+    }
+
+    // Method to add to the total quantity waitlisted for a row (negative to reduce it). Returns the new total.
+    public int addWaitlistTotal(int row, int quantity) {
+        return (int) INT.getAndAdd(buffer, rowAt(row) + WAITLIST_TOTAL, quantity) + quantity;
+    }
+
+    // Method to write the changes of a mapped store to its file. Does nothing in direct memory.
+    public void force() {
+        if (buffer instanceof MappedByteBuffer) {
+            ((MappedByteBuffer) buffer).force();
+        }
+    }
+
+    // Method to write a mapped store to its file and close the file.
+    public void close() throws IOException {
+        if (channel != null) {
+            force();
+            channel.close();
+        }
+    }
+
+    // Method to provide a string representation of the store.
+    public String toString() {
+        return "OffHeapProductStore: " + rowCount + "/" + capacity + " products, " + namesUsed + "/" + nameCapacity
+                + " name bytes" + (channel == null ? ", in memory" : ", mapped");
+    }
+
+    // Gets the position of a row, checking that it exists.
+    private int rowAt(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("No row " + row);
+        }
+        return offset(row);
+    }
+
+    private static int offset(int row) {
+        return HEADER_BYTES + row * ROW_BYTES;
+    }
+
+    // Records the row of a product number, growing the index as needed.
+    private void index(int productNumber, int row) {
+        if (productNumber >= rowsByNumber.length) {
+            rowsByNumber = Arrays.copyOf(rowsByNumber, Math.max(productNumber + 1, rowsByNumber.length * 2));
+        }
+        rowsByNumber[productNumber] = row + 1;
+    }
+
+    private static int size(int capacity, int nameBytes) {
+        long size = HEADER_BYTES + (long) capacity * ROW_BYTES + nameBytes;
+        if (capacity < 1 || nameBytes < 0 || size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A store holds 1 to about 67 million rows and 2 GB in all");
+        }
+        return (int) size;
+    }
+
+    private static void writeHeader(ByteBuffer buffer, int capacity, int nameBytes) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(CAPACITY_AT, capacity);
+        buffer.putInt(NAME_CAPACITY_AT, nameBytes);
+        buffer.putInt(ROW_COUNT_AT, 0);
+        buffer.putInt(NAMES_USED_AT, 0);
+    }
+}
@@ -0,0 +1,314 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// A class that absorbs bursts of orders in front of the Warehouse. Orders wait in a bounded queue
+// and a pool of consumer threads places them (see Warehouse.placeOrder).
+//
+// When the queue is full, the policy decides what happens to a new order:
+//   BLOCK   submit() waits until there is room.
+//   REJECT  the order fails at once with an OrderRejectedException suggesting when to retry.
+//   SHED    the newest of the lowest-priority orders waiting is dropped (failing with an
+//           OrderRejectedException) if the new order has a higher priority; otherwise the new
+//           order is rejected.
+//
+// Each client has its own queue, and the consumers take from the clients in turn, so a client
+// sending a large feed cannot hold up the others. Taking an order and admitting one are O(1),
+// apart from SHED, which keeps the orders sorted by priority at O(log n) per order. A shed order is
+// only marked as shed in its client's queue, and skipped when the client's turn comes to it.
+public class OrderIntake implements AutoCloseable {
+    public static final int NORMAL_PRIORITY = 0;
+    private static final long DEFAULT_RETRY_AFTER_MILLIS = 100; // Until some orders have been timed
+    // The first order is the one to shed: lowest priority, and the newest of those.
+    private static final Comparator<Ticket> SHED_ORDER = Comparator.<Ticket>comparingInt(ticket -> ticket.priority)
+            .thenComparing(Comparator.<Ticket>comparingLong(ticket -> ticket.sequence).reversed());
+
+    // The policies for an order that arrives when the queue is full.
+    public enum Policy {
+        BLOCK, REJECT, SHED
+    }
+
+    private Warehouse warehouse = Warehouse.instance();
+    private Policy policy;
+    private int capacity;
+    private ReentrantLock lock = new ReentrantLock();
+    private Condition notEmpty = lock.newCondition();
+    private Condition notFull = lock.newCondition();
+    private Map<String, ClientQueue> queues = new HashMap<>(); // By client ID
+    private ArrayDeque<String> turns = new ArrayDeque<>(); // Client IDs with a queue, in turn order
+    private TreeSet<Ticket> byPriority = new TreeSet<>(SHED_ORDER); // Used by SHED only
+    private int size;
+    private int waitingClients; // Clients with orders waiting that were not shed
+    private long sequence;
+    private boolean closed;
+    private List<Thread> consumers = new ArrayList<>();
+    private LongAdder admitted = new LongAdder();
+    private LongAdder rejected = new LongAdder();
+    private LongAdder shed = new LongAdder();
+    private LongAdder processed = new LongAdder();
+    private LongAdder waitNanos = new LongAdder();
+    private LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+    private LongAdder serviceNanos = new LongAdder();
+
+    // A class representing an order waiting in the queue.
+    private static class Ticket {
+        private String clientId;
+        private Map<String, Integer> lines; // Product ID -> quantity
+        private String idempotencyKey;
+        private int priority;
+        private long sequence;
+        private long enqueuedAt;
+        private boolean shed;
+        private CompletableFuture<OrderResult> result = new CompletableFuture<>();
+
+        private Ticket(String clientId, Map<String, Integer> lines, String idempotencyKey, int priority) {
+            this.clientId = clientId;
+            this.lines = new LinkedHashMap<>(lines);
+            this.idempotencyKey = idempotencyKey;
+            this.priority = priority;
+        }
+    }
+
+    // A class holding the orders of a client in the order they came, including shed orders that
+    // have not been skipped yet.
+    private static class ClientQueue {
+        private ArrayDeque<Ticket> tickets = new ArrayDeque<>();
+        private int live; // Number of tickets that were not shed
+    }
+
+    // Constructor for an intake with the given policy, holding up to capacity orders, placed by
+    // the given number of consumer threads. The consumers start at once.
+    public OrderIntake(Policy policy, int capacity, int consumerCount) {
+        if (capacity < 1 || consumerCount < 1) {
+            throw new IllegalArgumentException("Capacity and consumer count must be positive");
+        }
+        this.policy = policy;
+        this.capacity = capacity;
+        for (int i = 0; i < consumerCount; i++) {
+            Thread consumer = new Thread(this::consume, "order-intake-" + i);
+            consumer.setDaemon(true);
+            consumers.add(consumer);
+            consumer.start();
+        }
+    }
+
+    // Method to submit an order of quantities by product ID for a client at normal priority.
+    public CompletableFuture<OrderResult> submit(String clientId, Map<String, Integer> lines)
+            throws InterruptedException {
+        return submit(clientId, lines, NORMAL_PRIORITY, null);
+    }
+
+    // Method to submit an order with a priority (higher is more important) and an idempotency key
+    // (null for none). The result completes once the order is placed, or fails with an
+    // OrderRejectedException if the order was rejected or shed.
+    public CompletableFuture<OrderResult> submit(String clientId, Map<String, Integer> lines, int priority,
+            String idempotencyKey) throws InterruptedException {
+        Ticket ticket = new Ticket(clientId, lines, idempotencyKey, priority);
+        Ticket dropped = null;
+        long retryAfter = 0;
+        lock.lock();
+        try {
+            while (size == capacity && !closed) {
+                if (policy == Policy.BLOCK) {
+                    notFull.await();
+                    continue;
+                }
+                if (policy == Policy.SHED && byPriority.first().priority < priority) {
+                    dropped = byPriority.first();
+                    remove(dropped);
+                    retryAfter = retryAfterMillis();
+                    break;
+                }
+                rejected.increment();
+                ticket.result.completeExceptionally(
+                        new OrderRejectedException("The order queue is full", retryAfterMillis()));
+                return ticket.result;
+            }
+            if (closed) {
+                throw new IllegalStateException("The intake is closed");
+            }
+            add(ticket);
+            admitted.increment();
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (dropped != null) {
+            shed.increment();
+            dropped.result.completeExceptionally(
+                    new OrderRejectedException("The order was shed for one of higher priority", retryAfter));
+        }
+        return ticket.result;
+    }
+
+    // Method to get the figures of the intake.
+    public IntakeMetrics getMetrics() {
+        int depth;
+        int waitingClients;
+        lock.lock();
+        try {
+            depth = size;
+            waitingClients = this.waitingClients;
+        } finally {
+            lock.unlock();
+        }
+        long count = processed.sum();
+        double averageWait = count == 0 ? 0 : waitNanos.sum() / 1e6 / count;
+        return new IntakeMetrics(depth, capacity, waitingClients, admitted.sum(), rejected.sum(), shed.sum(), count,
+                averageWait, maxWaitNanos.get() / 1e6);
+    }
+
+    // Method to stop admitting orders, place the ones already queued and stop the consumers.
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            for (Thread consumer : consumers) {
+                consumer.join();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Adds a ticket to its client's queue, giving the client a turn if it had no orders waiting.
+    // The caller must hold the lock.
+    private void add(Ticket ticket) {
+        ClientQueue queue = queues.get(ticket.clientId);
+        if (queue == null) {
+            queue = new ClientQueue();
+            queues.put(ticket.clientId, queue);
+            turns.add(ticket.clientId);
+        }
+        if (queue.live++ == 0) {
+            waitingClients++;
+        }
+        ticket.sequence = sequence++;
+        ticket.enqueuedAt = System.nanoTime();
+        queue.tickets.add(ticket);
+        if (policy == Policy.SHED) {
+            byPriority.add(ticket);
+        }
+        size++;
+    }
+
+    // Removes a shed ticket by marking it, so the client's queue never has to be searched. take()
+    // skips it, and drops the client's queue once nothing but shed tickets is left in it, so the
+    // turn order never has to be searched either. The caller must hold the lock.
+    private void remove(Ticket ticket) {
+        ticket.shed = true;
+        byPriority.remove(ticket);
+        if (--queues.get(ticket.clientId).live == 0) {
+            waitingClients--;
+        }
+        size--;
+    }
+
+    // Takes the next order from the client whose turn it is, waiting while the queue is empty.
+    // Returns null once the intake is closed and empty.
+    private Ticket take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (size == 0) {
+                if (closed) {
+                    return null;
+                }
+                notEmpty.await();
+            }
+            while (true) {
+                String clientId = turns.poll();
+                ClientQueue queue = queues.get(clientId);
+                Ticket ticket = queue.tickets.poll();
+                while (ticket != null && ticket.shed) {
+                    ticket = queue.tickets.poll();
+                }
+                if (ticket != null && --queue.live == 0) {
+                    waitingClients--;
+                }
+                if (queue.live == 0) {
+                    queues.remove(clientId);
+                } else {
+                    turns.add(clientId);
+                }
+                if (ticket != null) {
+                    if (policy == Policy.SHED) {
+                        byPriority.remove(ticket);
+                    }
+                    size--;
+                    notFull.signal();
+                    return ticket;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The loop of a consumer thread.
+    private void consume() {
+        try {
+            Ticket ticket;
+            while ((ticket = take()) != null) {
+                long startedAt = System.nanoTime();
+                long waited = startedAt - ticket.enqueuedAt;
+                waitNanos.add(waited);
+                maxWaitNanos.accumulate(waited);
+                try {
+                    ticket.result.complete(place(ticket));
+                } catch (RuntimeException e) {
+                    ticket.result.completeExceptionally(e);
+                }
+                serviceNanos.add(System.nanoTime() - startedAt);
+                processed.increment();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Places the order of a ticket.
+    private OrderResult place(Ticket ticket) {
+        Client client = warehouse.getClientById(ticket.clientId);
+        if (client == null) {
+            throw new IllegalArgumentException("No client with ID " + ticket.clientId);
+        }
+        Map<Product, Integer> lines = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> line : ticket.lines.entrySet()) {
+            Product product = warehouse.getProductById(line.getKey());
+            if (product == null) {
+                throw new IllegalArgumentException("No product with ID " + line.getKey());
+            }
+            lines.merge(product, line.getValue(), Integer::sum);
+        }
+        return warehouse.placeOrder(client, lines, ticket.idempotencyKey);
+    }
+
+    // Estimates how long the orders now queued will take the consumers, from the average time
+    // they have taken per order so far. The caller must hold the lock.
+    private long retryAfterMillis() {
+        long count = processed.sum();
+        if (count == 0) {
+            return DEFAULT_RETRY_AFTER_MILLIS;
+        }
+        long queued = Math.max(1, size);
+        long nanos = serviceNanos.sum() / count * queued / consumers.size();
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+}
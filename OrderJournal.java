@@ -0,0 +1,301 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// A class representing a write-ahead journal of the invoices created by the OrderPipeline.
+//
+// Each record is written as its length, a CRC32 of its contents, and the contents: a type byte,
+// then the invoice number, time, client number, total in cents and the lines (product number,
+// quantity and unit price). A batch of records is written with one write and made durable with
+// one force, so the cost of syncing is shared by every order in the batch.
+//
+// An order submitted with an idempotency key also gets a key record: the key, the time, the
+// invoice number (0 if nothing shipped) and the quantities waitlisted by product number. The key
+// records are written in the same batch as the invoices, so a key is durable exactly when its
+// order is, and the OrderPipeline reads them back to refill its IdempotencyTable.
+//
+// A crash can leave a half-written record at the end of the file. Reading stops at the first
+// record whose length or CRC does not check out, and opening the journal cuts such a tail off
+// before appending.
+public class OrderJournal implements AutoCloseable {
+    static final byte INVOICE_RECORD = 1;
+    static final byte KEY_RECORD = 2;
+    private static final int HEADER_BYTES = 8; // Length and CRC
+
+    private FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+    private CRC32 crc = new CRC32();
+    private long records;
+
+    // A class representing an invoice read back from the journal.
+    public static class Entry {
+        private int invoiceNumber;
+        private long time;
+        private int clientNumber;
+        private long totalCents;
+        private int[] productNumbers;
+        private int[] quantities;
+        private double[] unitPrices;
+
+        private Entry(ByteBuffer record) {
+            invoiceNumber = record.getInt();
+            time = record.getLong();
+            clientNumber = record.getInt();
+            totalCents = record.getLong();
+            int lines = record.getInt();
+            productNumbers = new int[lines];
+            quantities = new int[lines];
+            unitPrices = new double[lines];
+            for (int i = 0; i < lines; i++) {
+                productNumbers[i] = record.getInt();
+                quantities[i] = record.getInt();
+                unitPrices[i] = record.getDouble();
+            }
+        }
+
+        // Method to get the invoice number.
+        public int getInvoiceNumber() {
+            return invoiceNumber;
+        }
+
+        // Method to get the invoice time in milliseconds.
+        public long getTime() {
+            return time;
+        }
+
+        // Method to get the client number.
+        public int getClientNumber() {
+            return clientNumber;
+        }
+
+        // Method to get the invoice total in cents.
+        public long getTotalCents() {
+            return totalCents;
+        }
+
+        // Method to get the number of lines.
+        public int getLineCount() {
+            return productNumbers.length;
+        }
+
+        // Method to get the product number of a line.
+        public int getProductNumber(int line) {
+            return productNumbers[line];
+        }
+
+        // Method to get the quantity of a line.
+        public int getQuantity(int line) {
+            return quantities[line];
+        }
+
+        // Method to get the unit price of a line.
+        public double getUnitPrice(int line) {
+            return unitPrices[line];
+        }
+    }
+
+    // A class representing an idempotency key read back from the journal.
+    public static class KeyEntry {
+        private String key;
+        private long time;
+        private int invoiceNumber;
+        private Map<Integer, Integer> waitlisted = new LinkedHashMap<>(); // Product number -> quantity
+
+        private KeyEntry(ByteBuffer record) {
+            byte[] keyBytes = new byte[record.getShort() & 0xFFFF];
+            record.get(keyBytes);
+            key = new String(keyBytes, StandardCharsets.UTF_8);
+            time = record.getLong();
+            invoiceNumber = record.getInt();
+            int lines = record.getInt();
+            for (int i = 0; i < lines; i++) {
+                waitlisted.put(record.getInt(), record.getInt());
+            }
+        }
+
+        // Method to get the key, as scoped by IdempotencyTable.scopedKey.
+        public String getKey() {
+            return key;
+        }
+
+        // Method to get the time the order was written, in milliseconds.
+        public long getTime() {
+            return time;
+        }
+
+        // Method to get the number of the order's invoice, or 0 if nothing shipped.
+        public int getInvoiceNumber() {
+            return invoiceNumber;
+        }
+
+        // Method to get the quantities waitlisted, by product number.
+        public Map<Integer, Integer> getWaitlisted() {
+            return waitlisted;
+        }
+    }
+
+    // Constructor to open a journal for appending, creating the file if needed and cutting off
+    // any half-written record at its end.
+    public OrderJournal(Path file) throws IOException {
+        long validLength = Files.exists(file) ? scan(file, null, null) : 0;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.truncate(validLength);
+        channel.position(validLength);
+    }
+
+    // Method to append the invoices of a batch and force them to disk. Null invoices are skipped.
+    public void append(List<Invoice> invoices) throws IOException {
+        append(invoices, Map.of());
+    }
+
+    // Method to append the invoices of a batch and the results of its keyed orders, by scoped
+    // key, and force them to disk with one force. Null invoices are skipped.
+    public void append(List<Invoice> invoices, Map<String, OrderResult> keyedResults) throws IOException {
+        buffer.clear();
+        for (Invoice invoice : invoices) {
+            if (invoice == null) {
+                continue;
+            }
+            int start = startRecord(28 + 16 * invoice.getLineCount());
+            buffer.position(start + HEADER_BYTES);
+            buffer.put(INVOICE_RECORD);
+            buffer.putInt(invoice.getInvoiceNumber());
+            buffer.putLong(invoice.getTime());
+            buffer.putInt(invoice.getClientNumber());
+            buffer.putLong(Math.round(invoice.getTotalAmount() * 100));
+            buffer.putInt(invoice.getLineCount());
+            for (int line = 0; line < invoice.getLineCount(); line++) {
+                buffer.putInt(invoice.getProductNumber(line));
+                buffer.putInt(invoice.getQuantity(line));
+                buffer.putDouble(invoice.getUnitPrice(line));
+            }
+            sealRecord(start);
+            records++;
+        }
+        for (Map.Entry<String, OrderResult> keyed : keyedResults.entrySet()) {
+            byte[] key = keyed.getKey().getBytes(StandardCharsets.UTF_8);
+            if (key.length > 0xFFFF) {
+                throw new IllegalArgumentException("Idempotency key is too long");
+            }
+            Invoice invoice = keyed.getValue().getInvoice();
+            Map<String, Integer> waitlisted = keyed.getValue().getWaitlisted();
+            int start = startRecord(2 + key.length + 16 + 8 * waitlisted.size());
+            buffer.put(KEY_RECORD);
+            buffer.putShort((short) key.length);
+            buffer.put(key);
+            buffer.putLong(System.currentTimeMillis());
+            buffer.putInt(invoice == null ? 0 : invoice.getInvoiceNumber());
+            buffer.putInt(waitlisted.size());
+            for (Map.Entry<String, Integer> line : waitlisted.entrySet()) {
+                buffer.putInt(Product.parseProductId(line.getKey()));
+                buffer.putInt(line.getValue());
+            }
+            sealRecord(start);
+            records++;
+        }
+        flush();
+        channel.force(false);
+    }
+
+    // Method to get the number of records appended since the journal was opened.
+    public long getRecordCount() {
+        return records;
+    }
+
+    // Method to read back the invoices in a journal, oldest first, up to the first damaged record.
+    public static List<Entry> read(Path file) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        scan(file, entries, null);
+        return entries;
+    }
+
+    // Method to read back the idempotency keys in a journal, oldest first, up to the first damaged record.
+    public static List<KeyEntry> readKeys(Path file) throws IOException {
+        List<KeyEntry> keys = new ArrayList<>();
+        scan(file, null, keys);
+        return keys;
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Makes room for a record with the given contents after its type byte, and skips the header.
+    // Returns the position where the record starts.
+    private int startRecord(int contentBytes) throws IOException {
+        int size = HEADER_BYTES + 1 + contentBytes;
+        if (buffer.remaining() < size) {
+            flush();
+            if (buffer.capacity() < size) {
+                buffer = ByteBuffer.allocateDirect(Integer.highestOneBit(size) << 1);
+            }
+        }
+        int start = buffer.position();
+        buffer.position(start + HEADER_BYTES);
+        return start;
+    }
+
+    // Writes the length and CRC in front of the record that starts at the given position.
+    private void sealRecord(int start) {
+        int end = buffer.position();
+        int length = end - start - HEADER_BYTES;
+        ByteBuffer contents = buffer.duplicate();
+        contents.limit(end).position(start + HEADER_BYTES);
+        crc.reset();
+        crc.update(contents);
+        buffer.putInt(start, length);
+        buffer.putInt(start + 4, (int) crc.getValue());
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Reads the records of a file, adding the invoices to entries and the idempotency keys to keys
+    // where they are not null. Returns the length of the file up to the end of the last good record.
+    private static long scan(Path file, List<Entry> entries, List<KeyEntry> keys) throws IOException {
+        try (FileChannel input = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = input.size();
+            long position = 0;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            CRC32 check = new CRC32();
+            while (position + HEADER_BYTES <= size) {
+                header.clear();
+                input.read(header, position);
+                int length = header.getInt(0);
+                if (length <= 0 || position + HEADER_BYTES + length > size) {
+                    break;
+                }
+                ByteBuffer record = ByteBuffer.allocate(length);
+                input.read(record, position + HEADER_BYTES);
+                record.flip();
+                check.reset();
+                check.update(record.duplicate());
+                if ((int) check.getValue() != header.getInt(4)) {
+                    break;
+                }
+                byte type = record.get();
+                if (entries != null && type == INVOICE_RECORD) {
+                    entries.add(new Entry(record));
+                } else if (keys != null && type == KEY_RECORD) {
+                    keys.add(new KeyEntry(record));
+                }
+                position += HEADER_BYTES + length;
+            }
+            return position;
+        }
+    }
+}
@@ -0,0 +1,379 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// A class that processes orders in stages, each on its own thread, connected by bounded queues:
+//
+//   validate -> reserve -> price -> invoice -> ledger -> persist
+//
+// validate  looks the client and products up, for the whole batch under one read lock.
+// reserve   holds the stock of every line (see ReservationManager), without locks.
+// price     fixes the unit price of every line.
+// invoice   builds the invoice for the reserved lines.
+// ledger    commits the batch to the Warehouse under one hold of the write lock (reservations,
+//           waitlists, invoices and balances) and posts the debits to the Ledger.
+// persist   appends the batch to the OrderJournal with one write and one force, then completes
+//           the orders' results.
+//
+// Each stage takes whatever is waiting in its queue, up to the batch size, and processes it as
+// one micro-batch, so the locking in the ledger stage and the syncing in the persist stage are
+// paid once per batch rather than once per order. A full queue makes the stage before it wait,
+// and submit() waits when the first queue is full, so a burst of orders cannot use unbounded
+// memory. An order that fails in a stage gives back its reservations and completes its result
+// with the exception; if the journal cannot be written, the orders were already applied to the
+// Warehouse and their results complete with the IOException.
+//
+// An order submitted with an idempotency key is carried out at most once per client and key. A
+// repeat of a finished order gets the result recorded in the Warehouse's IdempotencyTable; a
+// repeat of an order still in the pipeline gets the same future. Both checks are hash lookups.
+// The ledger stage records the key in the table under the same hold of the write lock that
+// commits the order, the persist stage journals the key with its order, and a new pipeline reads the keys in its journal back into the table, so a
+// retry after a crash still finds its order.
+public class OrderPipeline implements AutoCloseable {
+    private static final OrderTransaction END = new OrderTransaction("", Map.of()); // Marks the end of input
+
+    private Warehouse warehouse = Warehouse.instance();
+    private Ledger ledger = new Ledger();
+    private OrderJournal journal;
+    private int batchSize;
+    private long startedAt = System.nanoTime();
+    private List<Stage> stages = new ArrayList<>();
+    private LongAdder completed = new LongAdder();
+    private LongAdder latencyNanos = new LongAdder();
+    private Map<String, CompletableFuture<OrderResult>> inFlight = new ConcurrentHashMap<>(); // By scoped key
+    private volatile boolean closed;
+
+    // A class representing one stage: a thread that takes batches from its queue and passes them on.
+    private abstract class Stage implements Runnable {
+        private String name;
+        private BlockingQueue<OrderTransaction> input;
+        private int capacity;
+        private Stage next;
+        private LongAdder processed = new LongAdder();
+        private LongAdder batches = new LongAdder();
+        private Thread thread;
+
+        private Stage(String name, int capacity) {
+            this.name = name;
+            this.capacity = capacity;
+            this.input = new ArrayBlockingQueue<>(capacity);
+        }
+
+        abstract void process(List<OrderTransaction> batch) throws Exception;
+
+        public void run() {
+            List<OrderTransaction> batch = new ArrayList<>(batchSize);
+            boolean ending = false;
+            try {
+                while (!ending) {
+                    batch.add(input.take());
+                    input.drainTo(batch, batchSize - 1);
+                    if (batch.get(batch.size() - 1) == END) {
+                        batch.remove(batch.size() - 1);
+                        ending = true;
+                    }
+                    if (!batch.isEmpty()) {
+                        try {
+                            process(batch);
+                        } catch (Exception e) {
+                            for (OrderTransaction order : batch) {
+                                order.fail(e);
+                            }
+                        }
+                        processed.add(batch.size());
+                        batches.increment();
+                        if (next != null) {
+                            for (OrderTransaction order : batch) {
+                                if (!order.isDone()) {
+                                    next.input.put(order);
+                                }
+                            }
+                        }
+                    }
+                    batch.clear();
+                }
+                if (next != null) {
+                    next.input.put(END);
+                }
+            } catch (InterruptedException ie) {
+                for (OrderTransaction order : batch) {
+                    order.fail(ie);
+                }
+            }
+        }
+    }
+
+    // Constructor for a pipeline that journals to the given file, with queues of the given
+    // capacity between stages and batches of up to batchSize orders. The stages start at once.
+    public OrderPipeline(Path journalFile, int queueCapacity, int batchSize) throws IOException {
+        if (queueCapacity < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("Queue capacity and batch size must be positive");
+        }
+        restoreKeys(journalFile);
+        this.journal = new OrderJournal(journalFile);
+        this.batchSize = batchSize;
+        addStage(new Stage("validate", queueCapacity) {
+            void process(List<OrderTransaction> batch) {
+                warehouse.read(() -> {
+                    for (OrderTransaction order : batch) {
+                        validate(order);
+                    }
+                    return null;
+                });
+            }
+        });
+        addStage(new Stage("reserve", queueCapacity) {
+            void process(List<OrderTransaction> batch) {
+                ReservationManager reservations = ReservationManager.instance();
+                for (OrderTransaction order : batch) {
+                    for (int i = 0; i < order.products.size(); i++) {
+                        order.holds.add(reservations.reserve(order.client, order.products.get(i), order.requested.get(i)));
+                    }
+                }
+            }
+        });
+        addStage(new Stage("price", queueCapacity) {
+            void process(List<OrderTransaction> batch) {
+                for (OrderTransaction order : batch) {
+                    for (Product product : order.products) {
+                        order.unitPrices.add(product.getPrice());
+                    }
+                }
+            }
+        });
+        addStage(new Stage("invoice", queueCapacity) {
+            void process(List<OrderTransaction> batch) {
+                for (OrderTransaction order : batch) {
+                    List<Product> products = new ArrayList<>();
+                    List<Integer> quantities = new ArrayList<>();
+                    List<Double> unitPrices = new ArrayList<>();
+                    for (int i = 0; i < order.products.size(); i++) {
+                        if (order.holds.get(i) != null) {
+                            products.add(order.products.get(i));
+                            quantities.add(order.holds.get(i).getQuantity());
+                            unitPrices.add(order.unitPrices.get(i));
+                        }
+                    }
+                    if (!products.isEmpty()) {
+                        order.invoice = new Invoice(order.client, products, quantities, unitPrices);
+                    }
+                }
+            }
+        });
+        addStage(new Stage("ledger", queueCapacity) {
+            void process(List<OrderTransaction> batch) {
+                List<Invoice> invoices = new ArrayList<>(batch.size());
+                IdempotencyTable idempotencyTable = warehouse.getIdempotencyTable();
+                warehouse.write(() -> {
+                    for (OrderTransaction order : batch) {
+                        try {
+                            order.applied = warehouse.completeReservedOrder(order.client, order.products,
+                                    order.requested, order.holds, order.invoice);
+                            order.invoice = order.applied.getInvoice();
+                            invoices.add(order.invoice);
+                        } catch (RuntimeException e) {
+                            order.fail(e);
+                            continue;
+                        }
+                        // Recorded with the commit, so a retry finds the order even if the
+                        // journal cannot be written afterwards.
+                        if (order.getIdempotencyKey() != null) {
+                            idempotencyTable.put(order.getIdempotencyKey(), order.applied);
+                        }
+                    }
+                });
+                ledger.post(invoices);
+            }
+        });
+        addStage(new Stage("persist", queueCapacity) {
+            void process(List<OrderTransaction> batch) throws IOException {
+                List<Invoice> invoices = new ArrayList<>(batch.size());
+                Map<String, OrderResult> keyedResults = new LinkedHashMap<>();
+                for (OrderTransaction order : batch) {
+                    invoices.add(order.invoice);
+                    if (order.getIdempotencyKey() != null) {
+                        keyedResults.put(order.getIdempotencyKey(), order.applied);
+                    }
+                }
+                journal.append(invoices, keyedResults);
+                long now = System.nanoTime();
+                for (OrderTransaction order : batch) {
+                    order.getResult().complete(order.applied);
+                    latencyNanos.add(now - order.submittedAt);
+                    completed.increment();
+                }
+            }
+        });
+        for (Stage stage : stages) {
+            stage.thread = new Thread(stage, "order-pipeline-" + stage.name);
+            stage.thread.setDaemon(true);
+            stage.thread.start();
+        }
+    }
+
+    // Method to submit an order of quantities by product ID for a client. Waits while the first
+    // queue is full. The result completes once the order is in the journal.
+    public CompletableFuture<OrderResult> submit(String clientId, Map<String, Integer> lines)
+            throws InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("The pipeline is closed");
+        }
+        OrderTransaction order = new OrderTransaction(clientId, lines);
+        stages.get(0).input.put(order);
+        return order.getResult();
+    }
+
+    // Method to submit an order that is carried out at most once per client and idempotency key.
+    // A repeat returns the original result, or the same future while the original is in the
+    // pipeline. A null key submits the order without deduplication.
+    public CompletableFuture<OrderResult> submit(String clientId, Map<String, Integer> lines, String idempotencyKey)
+            throws InterruptedException {
+        if (idempotencyKey == null) {
+            return submit(clientId, lines);
+        }
+        if (closed) {
+            throw new IllegalStateException("The pipeline is closed");
+        }
+        String scopedKey = IdempotencyTable.scopedKey("order", clientId, idempotencyKey);
+        OrderResult previous = (OrderResult) warehouse.getIdempotencyTable().get(scopedKey);
+        if (previous != null) {
+            return CompletableFuture.completedFuture(previous);
+        }
+        OrderTransaction order = new OrderTransaction(clientId, lines, scopedKey);
+        CompletableFuture<OrderResult> running = inFlight.putIfAbsent(scopedKey, order.getResult());
+        if (running != null) {
+            return running;
+        }
+        // The original may have finished between the two lookups: it is recorded in the table
+        // before it leaves inFlight, so looking again settles it.
+        previous = (OrderResult) warehouse.getIdempotencyTable().get(scopedKey);
+        if (previous != null) {
+            inFlight.remove(scopedKey, order.getResult());
+            return CompletableFuture.completedFuture(previous);
+        }
+        order.getResult().whenComplete((result, failure) -> inFlight.remove(scopedKey, order.getResult()));
+        try {
+            stages.get(0).input.put(order);
+        } catch (InterruptedException ie) {
+            order.fail(ie);
+            throw ie;
+        }
+        return order.getResult();
+    }
+
+    // Method to get the figures of every stage, in pipeline order.
+    public List<StageMetrics> getMetrics() {
+        double seconds = Math.max(1e-9, (System.nanoTime() - startedAt) / 1e9);
+        List<StageMetrics> metrics = new ArrayList<>();
+        for (Stage stage : stages) {
+            long processed = stage.processed.sum();
+            metrics.add(new StageMetrics(stage.name, stage.input.size(), stage.capacity, processed,
+                    stage.batches.sum(), processed / seconds));
+        }
+        return metrics;
+    }
+
+    // Method to get the average time from submit to completion, in milliseconds.
+    public double getAverageLatencyMillis() {
+        long count = completed.sum();
+        return count == 0 ? 0 : latencyNanos.sum() / 1e6 / count;
+    }
+
+    // Method to get the ledger of the debits posted by the pipeline.
+    public Ledger getLedger() {
+        return ledger;
+    }
+
+    // Method to finish the orders already submitted, stop the stages and close the journal.
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            stages.get(0).input.put(END);
+            for (Stage stage : stages) {
+                stage.thread.join();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } finally {
+            journal.close();
+        }
+    }
+
+    // Records the idempotency keys in an existing journal in the Warehouse's table, so orders
+    // journalled before a restart are not carried out again. Invoices are found in one pass.
+    private void restoreKeys(Path journalFile) throws IOException {
+        if (!Files.exists(journalFile)) {
+            return;
+        }
+        List<OrderJournal.KeyEntry> keys = OrderJournal.readKeys(journalFile);
+        if (keys.isEmpty()) {
+            return;
+        }
+        Map<Integer, Invoice> invoices = new HashMap<>();
+        for (OrderJournal.KeyEntry key : keys) {
+            if (key.getInvoiceNumber() != 0) {
+                invoices.put(key.getInvoiceNumber(), null);
+            }
+        }
+        Iterator<Invoice> allInvoices = warehouse.getInvoices();
+        while (allInvoices.hasNext()) {
+            Invoice invoice = allInvoices.next();
+            if (invoices.containsKey(invoice.getInvoiceNumber())) {
+                invoices.put(invoice.getInvoiceNumber(), invoice);
+            }
+        }
+        IdempotencyTable idempotencyTable = warehouse.getIdempotencyTable();
+        for (OrderJournal.KeyEntry key : keys) {
+            Map<String, Integer> waitlisted = new LinkedHashMap<>();
+            for (Map.Entry<Integer, Integer> line : key.getWaitlisted().entrySet()) {
+                waitlisted.put(Product.formatProductId(line.getKey()), line.getValue());
+            }
+            idempotencyTable.put(key.getKey(), new OrderResult(invoices.get(key.getInvoiceNumber()), waitlisted),
+                    key.getTime());
+        }
+    }
+
+    private void addStage(Stage stage) {
+        if (!stages.isEmpty()) {
+            stages.get(stages.size() - 1).next = stage;
+        }
+        stages.add(stage);
+    }
+
+    // Resolves the client and products of an order, failing it if any cannot be found.
+    private void validate(OrderTransaction order) {
+        order.client = warehouse.getClientById(order.getClientId());
+        if (order.client == null) {
+            order.fail(new IllegalArgumentException("No client with ID " + order.getClientId()));
+            return;
+        }
+        for (Map.Entry<String, Integer> line : order.getLines().entrySet()) {
+            Product product = warehouse.getProductById(line.getKey());
+            if (product == null) {
+                order.fail(new IllegalArgumentException("No product with ID " + line.getKey()));
+                return;
+            }
+            if (line.getValue() > 0) {
+                order.products.add(product);
+                order.requested.add(line.getValue());
+            }
+        }
+        if (order.products.isEmpty()) {
+            order.fail(new IllegalArgumentException("The order has no quantities"));
+        }
+    }
+}
@@ -0,0 +1,20 @@
+import java.util.concurrent.RejectedExecutionException;
+
+// An exception for an order the OrderIntake would not keep: it was full when the order arrived,
+// or the order was shed to make room for one of higher priority. The caller may submit the
+// order again after the suggested delay.
+public class OrderRejectedException extends RejectedExecutionException {
+    private static final long serialVersionUID = 1L;
+    private long retryAfterMillis;
+
+    // Constructor for a rejection with a message and the suggested delay before retrying.
+    public OrderRejectedException(String message, long retryAfterMillis) {
+        super(message);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    // Method to get the suggested delay before retrying, in milliseconds.
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -0,0 +1,33 @@
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
+
+// A class representing the outcome of an order placed without console prompts: the invoice for
+// the lines that shipped (null if nothing shipped) and the quantities put on waitlists.
+// Results are kept by idempotency key (see IdempotencyTable), so they can be saved.
+public class OrderResult implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private Invoice invoice;
+    private Map<String, Integer> waitlisted; // Product ID -> quantity waitlisted
+
+    // Constructor to initialize the result with the invoice and the waitlisted quantities.
+    public OrderResult(Invoice invoice, Map<String, Integer> waitlisted) {
+        this.invoice = invoice;
+        this.waitlisted = waitlisted;
+    }
+
+    // Method to get the invoice for the shipped lines, or null if nothing shipped.
+    public Invoice getInvoice() {
+        return invoice;
+    }
+
+    // Method to get the quantities put on waitlists, by product ID.
+    public Map<String, Integer> getWaitlisted() {
+        return Collections.unmodifiableMap(waitlisted);
+    }
+
+    // Method to provide a string representation of the order result.
+    public String toString() {
+        return (invoice == null ? "Nothing shipped.\n" : invoice.toString()) + "Waitlisted: " + waitlisted;
+    }
+}
@@ -0,0 +1,188 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+// A class that fills orders from the sites of a Federation.
+//
+// The stock of every product in the order is looked up at all sites at once, one request per
+// site, run in parallel on an Executor, so a slow site delays the order by its own lookup time
+// rather than by the sum over all sites. Each line is then taken from the sites in the order the
+// policy prefers, moving on to the next site when one runs out, so a line can be split over
+// several sites. What no site can supply is put on the waitlist of the most preferred site.
+// Everything shipped is invoiced once, through the Warehouse. If any step fails, the units taken
+// are put back at the sites they came from and the waitlist requests made are taken back before
+// the failure is passed on.
+//
+// A site that fails to answer the lookup is treated as having no stock for this order.
+public class OrderRouter {
+    private static final double EARTH_RADIUS_KM = 6371.0;
+
+    // The ways to choose the sites a line is taken from.
+    public enum Policy {
+        MOST_STOCK, // The site with the most units of the product first
+        CLOSEST // The site closest to the delivery location first
+    }
+
+    private Federation federation;
+    private Executor executor;
+
+    // Constructor for a router over the sites of a federation, looking up stock on the common pool.
+    public OrderRouter(Federation federation) {
+        this(federation, ForkJoinPool.commonPool());
+    }
+
+    // Constructor for a router that looks up stock on the given executor.
+    public OrderRouter(Federation federation, Executor executor) {
+        this.federation = federation;
+        this.executor = executor;
+    }
+
+    // Method to route an order taking each line from the sites with the most stock first.
+    public RoutedOrder route(Client client, Map<Product, Integer> lines) {
+        return route(client, lines, Policy.MOST_STOCK, 0, 0);
+    }
+
+    // Method to route an order for delivery to the given location using the given policy.
+    public RoutedOrder route(Client client, Map<Product, Integer> lines, Policy policy, double latitude,
+            double longitude) {
+        List<Site> sites = federation.getSites();
+        if (sites.isEmpty()) {
+            throw new IllegalStateException("The federation has no sites");
+        }
+        List<Product> products = new ArrayList<>();
+        List<Integer> quantities = new ArrayList<>();
+        for (Map.Entry<Product, Integer> line : lines.entrySet()) {
+            if (line.getValue() > 0) {
+                products.add(line.getKey());
+                quantities.add(line.getValue());
+            }
+        }
+        int[][] available = lookUp(sites, products);
+        double[] distances = new double[sites.size()];
+        for (int s = 0; s < sites.size(); s++) {
+            distances[s] = distanceKm(latitude, longitude, sites.get(s).getLatitude(), sites.get(s).getLongitude());
+        }
+
+        List<RoutedOrder.Allocation> shipped = new ArrayList<>();
+        List<Site> shippedFrom = new ArrayList<>(); // The site of each shipped allocation
+        List<Product> shippedProducts = new ArrayList<>(); // The product of each shipped allocation
+        List<RoutedOrder.Allocation> waitlisted = new ArrayList<>();
+        List<Site> waitlistedAt = new ArrayList<>(); // The site of each waitlisted allocation
+        List<Product> waitlistedProducts = new ArrayList<>(); // The product of each waitlisted allocation
+        Map<Product, Integer> shippedByProduct = new LinkedHashMap<>();
+        Invoice invoice = null;
+        try {
+            for (int line = 0; line < products.size(); line++) {
+                Product product = products.get(line);
+                int remaining = quantities.get(line);
+                List<Integer> order = preferredSites(policy, available, distances, line);
+                for (int s : order) {
+                    if (remaining == 0) {
+                        break;
+                    }
+                    if (available[s][line] == 0) {
+                        continue;
+                    }
+                    // Ask for everything still needed; the site gives what it actually has now.
+                    int taken = sites.get(s).take(product, remaining);
+                    if (taken > 0) {
+                        remaining -= taken;
+                        shipped.add(new RoutedOrder.Allocation(sites.get(s).getName(), product.getProductId(), taken));
+                        shippedFrom.add(sites.get(s));
+                        shippedProducts.add(product);
+                        shippedByProduct.merge(product, taken, Integer::sum);
+                    }
+                }
+                if (remaining > 0) {
+                    Site site = sites.get(order.get(0));
+                    site.waitlist(client, product, remaining);
+                    waitlisted.add(new RoutedOrder.Allocation(site.getName(), product.getProductId(), remaining));
+                    waitlistedAt.add(site);
+                    waitlistedProducts.add(product);
+                }
+            }
+            if (!shippedByProduct.isEmpty()) {
+                invoice = Warehouse.instance().invoiceShipment(client, new ArrayList<>(shippedByProduct.keySet()),
+                        new ArrayList<>(shippedByProduct.values()));
+            }
+        } catch (RuntimeException e) {
+            // Undo what the order did so far: the units go back to their sites and the client
+            // leaves the waitlists they were put on, so nothing is shipped later for a failed order.
+            for (int i = 0; i < shipped.size(); i++) {
+                try {
+                    shippedFrom.get(i).putBack(shippedProducts.get(i), shipped.get(i).getQuantity());
+                } catch (RuntimeException putBackFailure) {
+                    e.addSuppressed(putBackFailure);
+                }
+            }
+            for (int i = 0; i < waitlisted.size(); i++) {
+                try {
+                    waitlistedAt.get(i).reduceWaitlist(client, waitlistedProducts.get(i),
+                            waitlisted.get(i).getQuantity());
+                } catch (RuntimeException reduceFailure) {
+                    e.addSuppressed(reduceFailure);
+                }
+            }
+            throw e;
+        }
+        return new RoutedOrder(invoice, shipped, waitlisted);
+    }
+
+    // Method to get the units of a product in stock at each site, by site name, looked up in
+    // parallel.
+    public Map<String, Integer> getAvailability(Product product) {
+        List<Site> sites = federation.getSites();
+        int[][] available = lookUp(sites, List.of(product));
+        Map<String, Integer> availability = new LinkedHashMap<>();
+        for (int s = 0; s < sites.size(); s++) {
+            availability.put(sites.get(s).getName(), available[s][0]);
+        }
+        return availability;
+    }
+
+    // Method to get the great-circle distance in kilometres between two points given in degrees.
+    public static double distanceKm(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double dLatitude = Math.toRadians(latitude2 - latitude1);
+        double dLongitude = Math.toRadians(longitude2 - longitude1);
+        double a = Math.pow(Math.sin(dLatitude / 2), 2) + Math.cos(Math.toRadians(latitude1))
+                * Math.cos(Math.toRadians(latitude2)) * Math.pow(Math.sin(dLongitude / 2), 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    // Asks every site for the stock of all the products at once; available[site][line].
+    private int[][] lookUp(List<Site> sites, List<Product> products) {
+        int[] productNumbers = new int[products.size()];
+        for (int i = 0; i < productNumbers.length; i++) {
+            productNumbers[i] = products.get(i).getProductNumber();
+        }
+        List<CompletableFuture<int[]>> lookups = new ArrayList<>(sites.size());
+        for (Site site : sites) {
+            lookups.add(CompletableFuture.supplyAsync(() -> site.getAvailable(productNumbers), executor)
+                    .exceptionally(failure -> new int[productNumbers.length]));
+        }
+        int[][] available = new int[sites.size()][];
+        for (int s = 0; s < sites.size(); s++) {
+            available[s] = lookups.get(s).join();
+        }
+        return available;
+    }
+
+    // The site indexes in the order the policy prefers them for one line; ties keep site order.
+    private static List<Integer> preferredSites(Policy policy, int[][] available, double[] distances, int line) {
+        List<Integer> order = new ArrayList<>(available.length);
+        for (int s = 0; s < available.length; s++) {
+            order.add(s);
+        }
+        if (policy == Policy.CLOSEST) {
+            order.sort(Comparator.comparingDouble(s -> distances[s]));
+        } else {
+            order.sort(Comparator.comparingInt((Integer s) -> available[s][line]).reversed());
+        }
+        return order;
+    }
+}
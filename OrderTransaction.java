@@ -0,0 +1,69 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+// A class holding one order as it moves through the stages of an OrderPipeline. Each stage fills
+// in its part; the lists of products, quantities, holds and prices are index by index.
+public class OrderTransaction {
+    private String clientId;
+    private Map<String, Integer> lines; // Product ID -> quantity, as submitted
+    private String idempotencyKey; // Scoped key, or null if the order is not deduplicated
+    private CompletableFuture<OrderResult> result = new CompletableFuture<>();
+
+    Client client;
+    List<Product> products = new ArrayList<>();
+    List<Integer> requested = new ArrayList<>();
+    List<Reservation> holds = new ArrayList<>(); // Null where nothing could be reserved
+    List<Double> unitPrices = new ArrayList<>();
+    Invoice invoice;
+    OrderResult applied; // Set once the order is committed to the Warehouse
+    long submittedAt = System.nanoTime();
+
+    // Constructor for an order of the given quantities, by product ID, for a client.
+    public OrderTransaction(String clientId, Map<String, Integer> lines) {
+        this(clientId, lines, null);
+    }
+
+    // Constructor for an order recorded under a scoped idempotency key (see IdempotencyTable).
+    public OrderTransaction(String clientId, Map<String, Integer> lines, String idempotencyKey) {
+        this.clientId = clientId;
+        this.lines = new LinkedHashMap<>(lines);
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    // Method to get the ID of the client placing the order.
+    public String getClientId() {
+        return clientId;
+    }
+
+    // Method to get the quantities ordered, by product ID.
+    public Map<String, Integer> getLines() {
+        return lines;
+    }
+
+    // Method to get the scoped idempotency key, or null if the order is not deduplicated.
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    // Method to get the result, completed once the order has been written to the journal.
+    public CompletableFuture<OrderResult> getResult() {
+        return result;
+    }
+
+    // Fails the order, giving back any stock it still holds.
+    void fail(Throwable cause) {
+        for (Reservation hold : holds) {
+            if (hold != null) {
+                ReservationManager.instance().release(hold);
+            }
+        }
+        result.completeExceptionally(cause);
+    }
+
+    boolean isDone() {
+        return result.isDone();
+    }
+}
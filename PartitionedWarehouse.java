@@ -0,0 +1,450 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// A class representing a warehouse whose clients are spread over a number of partitions.
+//
+// Each client belongs to one partition, chosen by a hash of the client number. A partition has
+// its own ClientList and InvoiceList (with their indexes), its own lock and its own file, so
+// operations on clients in different partitions never wait for each other. The product catalog is
+// shared: adding products takes the catalog write lock, while stock and waitlist changes take the
+// catalog read lock and a lock stripe for each product involved, so orders for different products
+// do not wait for each other either.
+//
+// Locks are always taken in the order partition, catalog, product stripes (in stripe order), and
+// never more than one partition at a time. Filling waitlists after a shipment therefore updates the
+// stock first and then invoices each client under that client's partition lock alone.
+//
+// The catalog is the ProductCatalog singleton (wishlists look products up there), so a process
+// should use either a PartitionedWarehouse or the Warehouse singleton, not both. Partitioned mode
+// keeps no snapshots, events or statistics; clients are never removed.
+public class PartitionedWarehouse {
+    private static final int PRODUCT_STRIPES = 64; // A power of two
+    private static final String CATALOG_SUFFIX = ".catalog";
+    private static final String PARTITION_SUFFIX = ".partition";
+
+    private ProductCatalog productCatalog = ProductCatalog.instance();
+    private ReentrantReadWriteLock catalogLock = new ReentrantReadWriteLock();
+    private ReentrantLock[] productLocks = new ReentrantLock[PRODUCT_STRIPES];
+    private Partition[] partitions;
+    private String fileName; // Files are fileName + ".catalog" and fileName + ".partition<n>"
+
+    // A class holding the clients and invoices of one partition.
+    private static class Partition {
+        private ClientList clientList = ClientList.newInstance();
+        private InvoiceList invoiceList = InvoiceList.newInstance();
+        private ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    }
+
+    // Constructor for a warehouse with the given number of partitions, saved to files whose names
+    // start with fileName.
+    public PartitionedWarehouse(int partitionCount, String fileName) {
+        if (partitionCount < 1) {
+            throw new IllegalArgumentException("Partition count must be positive: " + partitionCount);
+        }
+        this.fileName = fileName;
+        this.partitions = new Partition[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new Partition();
+        }
+        for (int i = 0; i < PRODUCT_STRIPES; i++) {
+            productLocks[i] = new ReentrantLock();
+        }
+    }
+
+    // Method to get the number of partitions.
+    public int getPartitionCount() {
+        return partitions.length;
+    }
+
+    // Method to get the partition a client belongs to.
+    public int getPartitionOf(int clientNumber) {
+        int hash = clientNumber * 0x9E3779B9; // Spreads consecutive client numbers evenly
+        return Math.floorMod(hash ^ (hash >>> 16), partitions.length);
+    }
+
+    // Method to add a new product to the shared catalog.
+    public Product addProduct(String productName, double price, int quantity) {
+        catalogLock.writeLock().lock();
+        try {
+            Product product = new Product(productName, price, quantity);
+            return productCatalog.addProduct(product) ? product : null;
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+    }
+
+    // Method to get a product by its ID.
+    public Product getProductById(String productId) {
+        catalogLock.readLock().lock();
+        try {
+            return productCatalog.getProductById(productId);
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+    }
+
+    // Method to get an iterator over a copy of the products in the catalog.
+    public Iterator<Product> getProducts() {
+        catalogLock.readLock().lock();
+        try {
+            List<Product> products = new ArrayList<>();
+            productCatalog.getProducts().forEachRemaining(products::add);
+            return products.iterator();
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+    }
+
+    // Method to add a new client to the partition their number hashes to.
+    public Client addClient(String clientName, String address, String phone) {
+        Client client = new Client(clientName, address, phone);
+        Partition partition = partitionOf(client.getClientNumber());
+        partition.lock.writeLock().lock();
+        try {
+            return partition.clientList.addClient(client) ? client : null;
+        } finally {
+            partition.lock.writeLock().unlock();
+        }
+    }
+
+    // Method to get a client by their ID, or null if there is no such client.
+    public Client getClientById(String clientId) {
+        int clientNumber = Client.parseClientId(clientId);
+        if (clientNumber < 0) {
+            return null;
+        }
+        Partition partition = partitionOf(clientNumber);
+        partition.lock.readLock().lock();
+        try {
+            return partition.clientList.getClientByNumber(clientNumber);
+        } finally {
+            partition.lock.readLock().unlock();
+        }
+    }
+
+    // Method to get an iterator over a copy of the clients, partition by partition.
+    // Each partition is copied under its own lock, one at a time.
+    public Iterator<Client> getClients() {
+        List<Client> clients = new ArrayList<>();
+        for (Partition partition : partitions) {
+            partition.lock.readLock().lock();
+            try {
+                partition.clientList.getClients().forEachRemaining(clients::add);
+            } finally {
+                partition.lock.readLock().unlock();
+            }
+        }
+        return clients.iterator();
+    }
+
+    // Method to get the number of invoices in every partition.
+    public int getInvoiceCount() {
+        int count = 0;
+        for (Partition partition : partitions) {
+            partition.lock.readLock().lock();
+            try {
+                count += partition.invoiceList.size();
+            } finally {
+                partition.lock.readLock().unlock();
+            }
+        }
+        return count;
+    }
+
+    // Method to get the invoices of a client, oldest first.
+    public List<Invoice> getInvoicesForClient(String clientId) {
+        int clientNumber = Client.parseClientId(clientId);
+        if (clientNumber < 0) {
+            return new ArrayList<>();
+        }
+        Partition partition = partitionOf(clientNumber);
+        partition.lock.readLock().lock();
+        try {
+            return new ArrayList<>(partition.invoiceList.getInvoicesForClientNumber(clientNumber));
+        } finally {
+            partition.lock.readLock().unlock();
+        }
+    }
+
+    // Method to add a product to a client's wishlist. Returns a Warehouse status code.
+    public int addProductToWishlist(Client client, Product product, int quantity) {
+        Partition partition = partitionOf(client.getClientNumber());
+        partition.lock.writeLock().lock();
+        try {
+            Wishlist wishlist = client.getWishlist();
+            if (wishlist.containsProduct(product.getProductId())) {
+                return Warehouse.WISHLIST_PRODUCT_ALREADY_EXISTS;
+            }
+            wishlist.addProductToWishlist(product, quantity);
+            return Warehouse.ADD_PRODUCT_TO_WISHLIST_SUCCESS;
+        } finally {
+            partition.lock.writeLock().unlock();
+        }
+    }
+
+    // Method to remove a product from a client's wishlist. Returns a Warehouse status code.
+    public int removeProductFromWishlist(Client client, Product product) {
+        Partition partition = partitionOf(client.getClientNumber());
+        partition.lock.writeLock().lock();
+        try {
+            if (client.hasWishlist() && client.getWishlist().containsProduct(product.getProductId())) {
+                client.getWishlist().removeProductFromWishlist(product.getProductId());
+                return Warehouse.REMOVE_PRODUCT_FROM_WISHLIST_SUCCESS;
+            }
+            return Warehouse.WISHLIST_PRODUCT_NOT_FOUND;
+        } finally {
+            partition.lock.writeLock().unlock();
+        }
+    }
+
+    // Method to order products for a client, as Warehouse.placeOrder does: each line ships what is
+    // in stock and waitlists the rest, ordered products leave the wishlist, and the shipped lines
+    // are invoiced and debited to the client's balance.
+    public OrderResult placeOrder(Client client, Map<Product, Integer> lines) {
+        Partition partition = partitionOf(client.getClientNumber());
+        partition.lock.writeLock().lock();
+        try {
+            List<Product> shippedProducts = new ArrayList<>();
+            List<Integer> shippedQuantities = new ArrayList<>();
+            List<Double> unitPrices = new ArrayList<>();
+            Map<String, Integer> waitlisted = new LinkedHashMap<>();
+
+            List<ReentrantLock> locks = lockProducts(lines.keySet());
+            try {
+                for (Map.Entry<Product, Integer> line : lines.entrySet()) {
+                    Product product = line.getKey();
+                    int quantity = line.getValue();
+                    if (quantity <= 0) {
+                        continue;
+                    }
+                    int shipped = product.takeUpTo(quantity);
+                    if (shipped > 0) {
+                        shippedProducts.add(product);
+                        shippedQuantities.add(shipped);
+                        unitPrices.add(product.getPrice());
+                    }
+                    int remaining = quantity - shipped;
+                    if (remaining > 0) {
+                        Waitlist waitlist = product.getWaitlist();
+                        waitlist.addClientToWaitlist(client, waitlist.getClientQuantity(client) + remaining);
+                        waitlisted.put(product.getProductId(), remaining);
+                    }
+                }
+            } finally {
+                unlockProducts(locks);
+            }
+
+            if (client.hasWishlist()) {
+                for (Map.Entry<Product, Integer> line : lines.entrySet()) {
+                    if (line.getValue() > 0) {
+                        client.getWishlist().removeProductFromWishlist(line.getKey().getProductId());
+                    }
+                }
+            }
+            Invoice invoice = null;
+            if (!shippedProducts.isEmpty()) {
+                invoice = new Invoice(client, shippedProducts, shippedQuantities, unitPrices);
+                partition.invoiceList.addInvoice(invoice);
+                client.setBalance(client.getBalance() - invoice.getTotalAmount());
+            }
+            return new OrderResult(invoice, waitlisted);
+        } finally {
+            partition.lock.writeLock().unlock();
+        }
+    }
+
+    // Method to order everything in a client's wishlist at the wishlisted quantities.
+    public OrderResult orderWishlist(Client client) {
+        Partition partition = partitionOf(client.getClientNumber());
+        partition.lock.writeLock().lock();
+        try {
+            Map<Product, Integer> lines = new LinkedHashMap<>();
+            if (client.hasWishlist()) {
+                Wishlist wishlist = client.getWishlist();
+                catalogLock.readLock().lock(); // The wishlist looks its products up in the catalog
+                try {
+                    for (Product product : wishlist) {
+                        lines.put(product, wishlist.getProductQuantity(product.getProductId()));
+                    }
+                } finally {
+                    catalogLock.readLock().unlock();
+                }
+            }
+            return placeOrder(client, lines); // The partition lock is reentrant
+        } finally {
+            partition.lock.writeLock().unlock();
+        }
+    }
+
+    // Method to accept a shipment for a product, filling waitlisted clients first in the order they
+    // joined, as Warehouse.receiveShipment does. Returns the invoices created for them.
+    public List<Invoice> receiveShipment(Product product, int quantity) {
+        Map<Integer, Integer> fills = new LinkedHashMap<>(); // Client number -> units filled
+        double unitPrice;
+        List<ReentrantLock> locks = lockProducts(List.of(product));
+        try {
+            product.addQuantity(quantity);
+            if (product.hasWaitlist()) {
+                Waitlist waitlist = product.getWaitlist();
+                for (int clientNumber : waitlist.getClientNumbers()) {
+                    if (product.getQuantity() == 0) {
+                        break;
+                    }
+                    int filled = product.takeUpTo(waitlist.getClientQuantity(clientNumber));
+                    if (filled == 0) {
+                        break;
+                    }
+                    waitlist.reduceClientQuantity(clientNumber, filled);
+                    fills.put(clientNumber, filled);
+                }
+            }
+            unitPrice = product.getPrice();
+        } finally {
+            unlockProducts(locks);
+        }
+
+        List<Invoice> invoices = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> fill : fills.entrySet()) {
+            Partition partition = partitionOf(fill.getKey());
+            partition.lock.writeLock().lock();
+            try {
+                Client client = partition.clientList.getClientByNumber(fill.getKey());
+                Invoice invoice = new Invoice(client, List.of(product), List.of(fill.getValue()), List.of(unitPrice));
+                partition.invoiceList.addInvoice(invoice);
+                client.setBalance(client.getBalance() - invoice.getTotalAmount());
+                invoices.add(invoice);
+            } finally {
+                partition.lock.writeLock().unlock();
+            }
+        }
+        return invoices;
+    }
+
+    // Method to save the catalog and every partition to their files. Each file is written under
+    // the lock of what it holds, so the files are each consistent but not taken at one instant.
+    public boolean save() {
+        try {
+            saveCatalog();
+            for (int i = 0; i < partitions.length; i++) {
+                savePartition(i);
+            }
+            return true;
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+            return false;
+        }
+    }
+
+    // Method to save one partition to its file.
+    public void savePartition(int index) throws IOException {
+        Partition partition = partitions[index];
+        partition.lock.readLock().lock();
+        try (ObjectOutputStream output = new ObjectOutputStream(
+                new BufferedOutputStream(new FileOutputStream(fileName + PARTITION_SUFFIX + index)))) {
+            List<Client> clients = new ArrayList<>();
+            partition.clientList.getClients().forEachRemaining(clients::add);
+            output.writeObject(clients);
+            output.writeObject(new ArrayList<>(partition.invoiceList.getInvoiceList()));
+        } finally {
+            partition.lock.readLock().unlock();
+        }
+    }
+
+    // Method to load a warehouse saved with save(). Products not already in the catalog are added
+    // to it. Returns null if the files cannot be read.
+    @SuppressWarnings("unchecked")
+    public static PartitionedWarehouse retrieve(String fileName) {
+        try (ObjectInputStream input = new ObjectInputStream(
+                new BufferedInputStream(new FileInputStream(fileName + CATALOG_SUFFIX)))) {
+            PartitionedWarehouse warehouse = new PartitionedWarehouse(input.readInt(), fileName);
+            List<Product> products = (List<Product>) input.readObject();
+            ClientIdServer.retrieve(input);
+            InvoiceIdServer.retrieve(input);
+            ProductIdServer.retrieve(input);
+            warehouse.catalogLock.writeLock().lock();
+            try {
+                for (Product product : products) {
+                    if (warehouse.productCatalog.getProductByNumber(product.getProductNumber()) == null) {
+                        warehouse.productCatalog.addProduct(product);
+                    }
+                }
+            } finally {
+                warehouse.catalogLock.writeLock().unlock();
+            }
+            for (int i = 0; i < warehouse.partitions.length; i++) {
+                warehouse.retrievePartition(i);
+            }
+            return warehouse;
+        } catch (IOException | ClassNotFoundException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // Writes the partition count, the products and the ID servers.
+    private void saveCatalog() throws IOException {
+        catalogLock.writeLock().lock(); // Keeps stock and waitlists still while products are written
+        try (ObjectOutputStream output = new ObjectOutputStream(
+                new BufferedOutputStream(new FileOutputStream(fileName + CATALOG_SUFFIX)))) {
+            output.writeInt(partitions.length);
+            List<Product> products = new ArrayList<>();
+            productCatalog.getProducts().forEachRemaining(products::add);
+            output.writeObject(products);
+            output.writeObject(ClientIdServer.instance());
+            output.writeObject(InvoiceIdServer.instance());
+            output.writeObject(ProductIdServer.instance());
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void retrievePartition(int index) throws IOException, ClassNotFoundException {
+        Partition partition = partitions[index];
+        partition.lock.writeLock().lock();
+        try (ObjectInputStream input = new ObjectInputStream(
+                new BufferedInputStream(new FileInputStream(fileName + PARTITION_SUFFIX + index)))) {
+            for (Client client : (List<Client>) input.readObject()) {
+                partition.clientList.addClient(client);
+            }
+            for (Invoice invoice : (List<Invoice>) input.readObject()) {
+                partition.invoiceList.addInvoice(invoice);
+            }
+        } finally {
+            partition.lock.writeLock().unlock();
+        }
+    }
+
+    private Partition partitionOf(int clientNumber) {
+        return partitions[getPartitionOf(clientNumber)];
+    }
+
+    // Takes the catalog read lock and then the stripes of the given products in stripe order.
+    private List<ReentrantLock> lockProducts(Iterable<Product> products) {
+        TreeSet<Integer> stripes = new TreeSet<>();
+        for (Product product : products) {
+            stripes.add(product.getProductNumber() & (PRODUCT_STRIPES - 1));
+        }
+        catalogLock.readLock().lock();
+        List<ReentrantLock> locks = new ArrayList<>(stripes.size());
+        for (int stripe : stripes) {
+            productLocks[stripe].lock();
+            locks.add(productLocks[stripe]);
+        }
+        return locks;
+    }
+
+    private void unlockProducts(List<ReentrantLock> locks) {
+        for (int i = locks.size() - 1; i >= 0; i--) {
+            locks.get(i).unlock();
+        }
+        catalogLock.readLock().unlock();
+    }
+}
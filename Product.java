@@ -1,22 +1,44 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 // A class representing a product.
+// The product number is saved as "number"; files saved while product IDs were strings such as
+// "P12" have a "productId" string instead, which is converted when they are loaded.
+// The stock and price are held in the product itself, or, once it has been moved to an
+// OffHeapProductStore (see Warehouse.useOffHeapStock), in its row of the store, which all the
+// stock and price methods then read and change.
 public class Product implements Serializable {
     private static final long serialVersionUID = 1L;
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("productName", String.class),
+        new ObjectStreamField("number", int.class),
+        new ObjectStreamField("price", double.class),
+        new ObjectStreamField("quantity", int.class),
+        new ObjectStreamField("reorderThreshold", int.class),
+        new ObjectStreamField("waitlist", Waitlist.class)
+    };
     private String productName;
-    private String productId;
+    private int productId; // Numeric ID; the "P" prefix is only added for display
     private double price;
-    private int quantity; // New field to store the quantity of the product
-    private Waitlist waitlist; // A waitlist for clients who want this product
+    private volatile int quantity; // Units in stock; changed atomically through QUANTITY
+    private int reorderThreshold; // Stock at or below which the product should be reordered
+    private Waitlist waitlist; // A waitlist for clients who want this product, created on first use
+    private transient volatile OffHeapProductStore store; // Holds the stock and price instead, if set
+    private transient int row; // The product's row in the store
     private static final String PRODUCT_STRING = "P";
+    private static final AtomicIntegerFieldUpdater<Product> QUANTITY = AtomicIntegerFieldUpdater
+            .newUpdater(Product.class, "quantity");
 
     // Constructor to initialize a product with name, ID, price, and quantity.
     public Product(String productName, double price, int quantity) {
-        this.productName = productName;
+        this.productName = StringPool.instance().intern(productName);
         this.price = price;
         this.quantity = quantity;
-        this.productId = PRODUCT_STRING + (ProductIdServer.instance()).getId();
-        this.waitlist = new Waitlist(); // Initialize the waitlist for this product
+        this.productId = (ProductIdServer.instance()).getId();
     }
 
     // Method to get the product name.
@@ -26,27 +48,129 @@ public class Product implements Serializable {
 
     // Method to get the product ID.
     public String getProductId() {
+        return formatProductId(productId);
+    }
+
+    // Method to get the numeric part of the product ID.
+    public int getProductNumber() {
         return productId;
     }
 
+    // Method to build the display ID of a product from its number.
+    public static String formatProductId(int productNumber) {
+        return PRODUCT_STRING + productNumber;
+    }
+
+    // Method to get the number from a product ID such as "P12", or -1 if it is not a product ID.
+    public static int parseProductId(String productId) {
+        return EntityIds.parse(productId, PRODUCT_STRING);
+    }
+
     // Method to get the product price.
     public double getPrice() {
-        return price;
+        OffHeapProductStore store = this.store;
+        return store == null ? price : store.getPriceCents(row) / 100.0;
     }
 
     // Method to get the product quantity.
     public int getQuantity() {
-        return quantity;
+        OffHeapProductStore store = this.store;
+        return store == null ? quantity : store.getQuantity(row);
     }
 
     // Method to set the product quantity.
     public void setQuantity(int quantity) {
-        this.quantity = quantity;
+        OffHeapProductStore store = this.store;
+        if (store == null) {
+            this.quantity = quantity;
+        } else {
+            store.setQuantity(row, quantity);
+        }
+    }
+
+    // Method to move the stock and price into a row of an off-heap store, adding the row if the
+    // store does not have the product yet and overwriting it if it does. The price is kept in
+    // whole cents from then on. The stock must not change while it moves (no reservations may
+    // be taken), so this is meant for startup. Returns false if the store is full.
+    public synchronized boolean moveTo(OffHeapProductStore store) {
+        int quantity = getQuantity();
+        long priceCents = Math.round(getPrice() * 100);
+        int waitlistTotal = hasWaitlist() ? waitlist.getTotalQuantity() : 0;
+        int row = store.row(productId);
+        if (row < 0) {
+            row = store.add(productId, productName, priceCents, quantity, waitlistTotal);
+            if (row < 0) {
+                return false;
+            }
+        } else {
+            store.setQuantity(row, quantity);
+            store.setPriceCents(row, priceCents);
+            store.setWaitlistTotal(row, waitlistTotal);
+        }
+        this.row = row;
+        this.store = store;
+        return true;
+    }
+
+    // Method to copy the waitlist total to the product's row of the off-heap store, if it has one.
+    public void syncWaitlistTotal() {
+        OffHeapProductStore store = this.store;
+        if (store != null) {
+            store.setWaitlistTotal(row, hasWaitlist() ? waitlist.getTotalQuantity() : 0);
+        }
+    }
+
+    // Method to get the reorder threshold.
+    public int getReorderThreshold() {
+        return reorderThreshold;
+    }
+
+    // Method to set the reorder threshold.
+    public void setReorderThreshold(int reorderThreshold) {
+        this.reorderThreshold = reorderThreshold;
+    }
+
+    // Method to check if the stock is at or below the reorder threshold.
+    public boolean isBelowReorderPoint() {
+        return getQuantity() <= reorderThreshold;
+    }
+
+    // Method to take up to the given quantity out of stock in one atomic step, without locks.
+    // Returns the quantity taken, which is less than asked for if the stock runs out.
+    public int takeUpTo(int quantity) {
+        return taken(quantity, getAndTakeUpTo(quantity));
+    }
+
+    // Method to take up to the given quantity out of stock in one atomic step, like takeUpTo(), but
+    // return the stock just before it was taken. taken() gives the quantity that was taken.
+    public int getAndTakeUpTo(int quantity) {
+        OffHeapProductStore store = this.store;
+        if (store != null) {
+            return store.getAndTakeUpTo(row, quantity);
+        }
+        while (true) {
+            int inStock = this.quantity;
+            int taken = taken(quantity, inStock);
+            if (taken == 0 || QUANTITY.compareAndSet(this, inStock, inStock - taken)) {
+                return inStock;
+            }
+        }
+    }
+
+    // Method to get the quantity getAndTakeUpTo() took when asked for a quantity with a given stock.
+    public static int taken(int quantity, int inStock) {
+        return Math.max(0, Math.min(quantity, inStock));
+    }
+
+    // Method to add to the stock in one atomic step. Returns the stock just before it was added to.
+    public int addQuantity(int quantity) {
+        OffHeapProductStore store = this.store;
+        return store == null ? QUANTITY.getAndAdd(this, quantity) : store.addQuantity(row, quantity) - quantity;
     }
 
     public boolean updateQuantity(int quantity) {
         if (quantity >= 0) { // Ensure the new quantity is non-negative
-            this.quantity = quantity;
+            setQuantity(quantity);
             return true; // Quantity updated successfully
         } else {
             return false; // Invalid quantity
@@ -55,22 +179,60 @@ public class Product implements Serializable {
 
     // Method to add a client to the waitlist for this product.
     public void addClientToWaitlist(Client client, int quantity) {
-        waitlist.addClientToWaitlist(client, quantity);
+        getWaitlist().addClientToWaitlist(client, quantity);
     }
 
     // Method to remove a client from the waitlist for this product.
     public void removeClientFromWaitlist(Client client) {
-        waitlist.removeClientFromWaitlist(client);
+        if (waitlist != null) {
+            waitlist.removeClientFromWaitlist(client);
+        }
     }
 
-    // Method to get the waitlist for this product.
+    // Method to get the waitlist for this product, creating it the first time it is needed.
     public Waitlist getWaitlist() {
+        if (waitlist == null) {
+            waitlist = new Waitlist();
+        }
         return waitlist;
     }
 
+    // Method to check if any clients are waiting for this product.
+    public boolean hasWaitlist() {
+        return waitlist != null && !waitlist.isEmpty();
+    }
+
     // Method to provide a string representation of the product.
     public String toString() {
-        return "Product Name: " + productName + " | Product ID: " + productId + " | Price: $" + price + " | Quantity: "
-                + quantity;
+        return "Product Name: " + productName + " | Product ID: " + getProductId() + " | Price: $" + getPrice()
+                + " | Quantity: " + getQuantity();
+    }
+
+    // Custom serialization method that saves the fields under their serial names.
+    private void writeObject(ObjectOutputStream output) throws IOException {
+        ObjectOutputStream.PutField fields = output.putFields();
+        fields.put("productName", productName);
+        fields.put("number", productId);
+        fields.put("price", getPrice());
+        fields.put("quantity", getQuantity());
+        fields.put("reorderThreshold", reorderThreshold);
+        fields.put("waitlist", waitlist);
+        output.writeFields();
+    }
+
+    // Custom deserialization method that converts the string ID of older files and shares
+    // repeated product names again after loading.
+    private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = input.readFields();
+        productName = StringPool.instance().intern((String) fields.get("productName", null));
+        price = fields.get("price", 0.0);
+        quantity = fields.get("quantity", 0);
+        reorderThreshold = fields.get("reorderThreshold", 0);
+        waitlist = (Waitlist) fields.get("waitlist", null);
+        if (fields.defaulted("number")) {
+            productId = parseProductId((String) fields.get("productId", null));
+        } else {
+            productId = fields.get("number", 0);
+        }
     }
 }
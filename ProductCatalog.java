@@ -5,6 +5,8 @@ import java.io.*;
 public class ProductCatalog implements Serializable {
     private static final long serialVersionUID = 1L;
     private List<Product> products = new LinkedList<>();
+    private transient IntObjectMap<Product> productsById; // Index by product number, rebuilt after loading
+    private transient TreeMap<Double, List<Product>> productsByPrice; // Index by price, rebuilt after loading
     private static ProductCatalog productCatalog;
 
     private ProductCatalog() {
@@ -24,6 +26,8 @@ public class ProductCatalog implements Serializable {
     public boolean addProduct(Product product) {
         if (product != null) {
             products.add(product);
+            index().put(product.getProductNumber(), product);
+            addToPriceIndex(product);
             return true; // Product added successfully
         }
         return false; // Product is null, cannot be added
@@ -31,14 +35,22 @@ public class ProductCatalog implements Serializable {
 
     // Method to remove a product from the catalog.
     public boolean removeProduct(Product product) {
-        return products.remove(product);
+        if (products.remove(product)) {
+            index().remove(product.getProductNumber());
+            removeFromPriceIndex(product);
+            return true;
+        }
+        return false;
     }
 
     // Method to update product information in the catalog.
     public boolean updateProduct(Product updatedProduct) {
         for (int i = 0; i < products.size(); i++) {
-            if (products.get(i).getProductId().equals(updatedProduct.getProductId())) {
+            if (products.get(i).getProductNumber() == updatedProduct.getProductNumber()) {
+                removeFromPriceIndex(products.get(i));
+                addToPriceIndex(updatedProduct);
                 products.set(i, updatedProduct);
+                index().put(updatedProduct.getProductNumber(), updatedProduct);
                 return true;
             }
         }
@@ -47,12 +59,67 @@ public class ProductCatalog implements Serializable {
 
     // Method to get a product by its ID from the catalog.
     public Product getProductById(String productId) {
-        for (Product product : products) {
-            if (product.getProductId().equals(productId)) {
-                return product;
+        return index().get(Product.parseProductId(productId));
+    }
+
+    // Method to get a product by the numeric part of its ID.
+    public Product getProductByNumber(int productNumber) {
+        return index().get(productNumber);
+    }
+
+    // Method to get the products priced from min to max (both included), cheapest first.
+    public List<Product> getProductsByPrice(double min, double max) {
+        List<Product> inRange = new ArrayList<>();
+        if (min > max) {
+            return inRange;
+        }
+        for (List<Product> samePrice : priceIndex().subMap(min, true, max, true).values()) {
+            inRange.addAll(samePrice);
+        }
+        return inRange;
+    }
+
+    // Method to drop the price index so it is built again on next use, as after prices were
+    // rounded to cents by moving them to an off-heap store.
+    public void clearPriceIndex() {
+        productsByPrice = null;
+    }
+
+    // Method to get the price index, building it from the list the first time it is used.
+    private TreeMap<Double, List<Product>> priceIndex() {
+        if (productsByPrice == null) {
+            productsByPrice = new TreeMap<>();
+            for (Product product : products) {
+                productsByPrice.computeIfAbsent(product.getPrice(), price -> new ArrayList<>()).add(product);
+            }
+        }
+        return productsByPrice;
+    }
+
+    private void addToPriceIndex(Product product) {
+        if (productsByPrice != null) {
+            productsByPrice.computeIfAbsent(product.getPrice(), price -> new ArrayList<>()).add(product);
+        }
+    }
+
+    private void removeFromPriceIndex(Product product) {
+        if (productsByPrice != null) {
+            List<Product> samePrice = productsByPrice.get(product.getPrice());
+            if (samePrice != null && samePrice.remove(product) && samePrice.isEmpty()) {
+                productsByPrice.remove(product.getPrice());
+            }
+        }
+    }
+
+    // Method to get the product index, building it from the list the first time it is used.
+    private IntObjectMap<Product> index() {
+        if (productsById == null) {
+            productsById = new IntObjectMap<>(products.size());
+            for (Product product : products) {
+                productsById.put(product.getProductNumber(), product);
             }
         }
-        return null;
+        return productsById;
     }
 
     // Method to get an iterator for all products in the catalog.
@@ -19,10 +19,17 @@ public class ProductIdServer implements Serializable {
         }
     }
 
-    public int getId() {
+    public synchronized int getId() {
         return idCounter++;
     }
 
+    // Method to make sure the next ID comes after a number that is already in use.
+    public synchronized void skipPast(int productNumber) {
+        if (idCounter <= productNumber) {
+            idCounter = productNumber + 1;
+        }
+    }
+
     // Method to provide a string representation of the ClientIdServer.
     public String toString() {
         return ("ProductIdServer: " + idCounter);
@@ -30,9 +37,13 @@ public class ProductIdServer implements Serializable {
 
     // Custom deserialization method for retrieving the object from a file.
 
+    // Files saved before the product IDs were saved end before it; the caller then continues the
+    // IDs after the highest product number instead (see skipPast()).
     public static void retrieve(ObjectInputStream input) {
         try {
             productIdServer = (ProductIdServer) input.readObject();
+        } catch (EOFException | OptionalDataException e) {
+            productIdServer = new ProductIdServer();
         } catch (IOException ioe) {
             ioe.printStackTrace();
         } catch (Exception cnfe) {
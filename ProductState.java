@@ -0,0 +1,82 @@
+// A class representing a product as it was at one version of the warehouse.
+// States are immutable, so a reader can use them without any locking.
+public class ProductState {
+    private int productId;
+    private String productName;
+    private double price;
+    private int quantity;
+    private int[] waitlistClients; // Client numbers, in waitlist order
+    private int[] waitlistQuantities;
+    private int waitlistTotal;
+
+    // Constructor to copy the current state of a product and its waitlist.
+    public ProductState(Product product) {
+        this.productId = product.getProductNumber();
+        this.productName = product.getProductName();
+        this.price = product.getPrice();
+        this.quantity = product.getQuantity();
+        if (product.hasWaitlist()) {
+            Waitlist waitlist = product.getWaitlist();
+            this.waitlistClients = waitlist.getClientNumbers();
+            this.waitlistQuantities = new int[waitlistClients.length];
+            for (int i = 0; i < waitlistClients.length; i++) {
+                waitlistQuantities[i] = waitlist.getClientQuantity(waitlistClients[i]);
+                waitlistTotal += waitlistQuantities[i];
+            }
+        } else {
+            this.waitlistClients = new int[0];
+            this.waitlistQuantities = new int[0];
+        }
+    }
+
+    // Method to get the product ID.
+    public String getProductId() {
+        return Product.formatProductId(productId);
+    }
+
+    // Method to get the numeric part of the product ID.
+    public int getProductNumber() {
+        return productId;
+    }
+
+    // Method to get the product name.
+    public String getProductName() {
+        return productName;
+    }
+
+    // Method to get the product price.
+    public double getPrice() {
+        return price;
+    }
+
+    // Method to get the quantity in stock.
+    public int getQuantity() {
+        return quantity;
+    }
+
+    // Method to get the number of clients on the waitlist.
+    public int getWaitlistSize() {
+        return waitlistClients.length;
+    }
+
+    // Method to get the client number of one waitlist entry.
+    public int getWaitlistClient(int index) {
+        return waitlistClients[index];
+    }
+
+    // Method to get the quantity of one waitlist entry.
+    public int getWaitlistQuantity(int index) {
+        return waitlistQuantities[index];
+    }
+
+    // Method to get the total quantity waitlisted for the product.
+    public int getWaitlistTotal() {
+        return waitlistTotal;
+    }
+
+    // Method to provide a string representation of the product state.
+    public String toString() {
+        return "Product Name: " + productName + " | Product ID: " + getProductId() + " | Price: $" + price
+                + " | Quantity: " + quantity + " | Waitlisted: " + waitlistTotal;
+    }
+}
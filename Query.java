@@ -0,0 +1,239 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+// A class describing a query over the products, clients or invoices of the warehouse.
+// A query is built by chaining conditions, for example
+//     Query.invoices().forClient("C3").datedBetween(from, to).sortBy("total", true).limit(10)
+// and is run with Warehouse.query(), which picks an index for it when one fits.
+// Conditions that do not apply to the kind of entity being queried throw IllegalArgumentException.
+public class Query<T> {
+    // The kinds of entities a query can go over.
+    public enum Source {
+        PRODUCTS, CLIENTS, INVOICES
+    }
+
+    private Source source;
+    private double minPrice = Double.NEGATIVE_INFINITY;
+    private double maxPrice = Double.POSITIVE_INFINITY;
+    private int minStock = Integer.MIN_VALUE;
+    private int maxStock = Integer.MAX_VALUE;
+    private double minBalance = Double.NEGATIVE_INFINITY;
+    private double maxBalance = Double.POSITIVE_INFINITY;
+    private long fromDate = Long.MIN_VALUE;
+    private long toDate = Long.MAX_VALUE;
+    private int clientNumber = -1; // -1 when the query is not limited to one client
+    private int productNumber = -1; // -1 when the query is not limited to one product
+    private boolean belowReorderPoint;
+    private List<Predicate<? super T>> filters = new ArrayList<>();
+    private List<String> fields = Collections.emptyList(); // Empty to select every field
+    private String sortField;
+    private boolean descending;
+    private int limit = Integer.MAX_VALUE;
+
+    private Query(Source source) {
+        this.source = source;
+    }
+
+    // Method to start a query over the products.
+    public static Query<Product> products() {
+        return new Query<>(Source.PRODUCTS);
+    }
+
+    // Method to start a query over the clients.
+    public static Query<Client> clients() {
+        return new Query<>(Source.CLIENTS);
+    }
+
+    // Method to start a query over the invoices.
+    public static Query<Invoice> invoices() {
+        return new Query<>(Source.INVOICES);
+    }
+
+    // Method to keep the products priced from min to max (both included).
+    public Query<T> priceBetween(double min, double max) {
+        require("price", Source.PRODUCTS);
+        minPrice = min;
+        maxPrice = max;
+        return this;
+    }
+
+    // Method to keep the products with a stock from min to max (both included).
+    public Query<T> stockBetween(int min, int max) {
+        require("stock", Source.PRODUCTS);
+        minStock = min;
+        maxStock = max;
+        return this;
+    }
+
+    // Method to keep the products whose stock is at or below their reorder threshold.
+    public Query<T> belowReorderPoint() {
+        require("reorder point", Source.PRODUCTS);
+        belowReorderPoint = true;
+        return this;
+    }
+
+    // Method to keep the clients with a balance from min to max (both included).
+    public Query<T> balanceBetween(double min, double max) {
+        require("balance", Source.CLIENTS);
+        minBalance = min;
+        maxBalance = max;
+        return this;
+    }
+
+    // Method to keep the invoices dated from one time to another (milliseconds, both included).
+    public Query<T> datedBetween(long from, long to) {
+        require("date", Source.INVOICES);
+        fromDate = from;
+        toDate = to;
+        return this;
+    }
+
+    // Method to keep one client, or the invoices of one client.
+    public Query<T> forClient(String clientId) {
+        require("client", Source.CLIENTS, Source.INVOICES);
+        clientNumber = Client.parseClientId(clientId);
+        if (clientNumber < 0) {
+            throw new IllegalArgumentException("Not a client ID: " + clientId);
+        }
+        return this;
+    }
+
+    // Method to keep one product, or the invoices with a line for one product.
+    public Query<T> forProduct(String productId) {
+        require("product", Source.PRODUCTS, Source.INVOICES);
+        productNumber = Product.parseProductId(productId);
+        if (productNumber < 0) {
+            throw new IllegalArgumentException("Not a product ID: " + productId);
+        }
+        return this;
+    }
+
+    // Method to add any other condition. It is checked after the ones above.
+    public Query<T> where(Predicate<? super T> filter) {
+        filters.add(filter);
+        return this;
+    }
+
+    // Method to choose the fields of each result row, in order. By default every field is selected.
+    public Query<T> select(String... fieldNames) {
+        for (String field : fieldNames) {
+            QueryEngine.checkField(source, field);
+        }
+        fields = Arrays.asList(fieldNames.clone());
+        return this;
+    }
+
+    // Method to sort the results by a field.
+    public Query<T> sortBy(String field, boolean descending) {
+        QueryEngine.checkField(source, field);
+        this.sortField = field;
+        this.descending = descending;
+        return this;
+    }
+
+    // Method to return at most the given number of results.
+    public Query<T> limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit must not be negative");
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    private void require(String condition, Source... allowed) {
+        for (Source allowedSource : allowed) {
+            if (source == allowedSource) {
+                return;
+            }
+        }
+        throw new IllegalArgumentException("A " + condition + " condition does not apply to "
+                + source.name().toLowerCase());
+    }
+
+    public Source getSource() {
+        return source;
+    }
+
+    double getMinPrice() {
+        return minPrice;
+    }
+
+    double getMaxPrice() {
+        return maxPrice;
+    }
+
+    boolean hasPriceRange() {
+        return minPrice != Double.NEGATIVE_INFINITY || maxPrice != Double.POSITIVE_INFINITY;
+    }
+
+    int getMinStock() {
+        return minStock;
+    }
+
+    int getMaxStock() {
+        return maxStock;
+    }
+
+    boolean hasStockRange() {
+        return minStock != Integer.MIN_VALUE || maxStock != Integer.MAX_VALUE;
+    }
+
+    boolean isBelowReorderPoint() {
+        return belowReorderPoint;
+    }
+
+    double getMinBalance() {
+        return minBalance;
+    }
+
+    double getMaxBalance() {
+        return maxBalance;
+    }
+
+    boolean hasBalanceRange() {
+        return minBalance != Double.NEGATIVE_INFINITY || maxBalance != Double.POSITIVE_INFINITY;
+    }
+
+    long getFromDate() {
+        return fromDate;
+    }
+
+    long getToDate() {
+        return toDate;
+    }
+
+    boolean hasDateRange() {
+        return fromDate != Long.MIN_VALUE || toDate != Long.MAX_VALUE;
+    }
+
+    int getClientNumber() {
+        return clientNumber;
+    }
+
+    int getProductNumber() {
+        return productNumber;
+    }
+
+    List<Predicate<? super T>> getFilters() {
+        return filters;
+    }
+
+    List<String> getFields() {
+        return fields;
+    }
+
+    String getSortField() {
+        return sortField;
+    }
+
+    boolean isDescending() {
+        return descending;
+    }
+
+    int getLimit() {
+        return limit;
+    }
+}
@@ -0,0 +1,347 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+// A class that runs Query objects against the product catalog, client list and invoice list.
+//
+// The planner is rule based. It starts from the narrowest index that fits the query and falls back
+// to a full scan when none does:
+//   products: ID lookup, then the low stock index for products below their reorder point, then
+//             the price index for a price range, else a scan
+//   clients:  ID lookup, else a scan
+//   invoices: only the months with invoices in the date range (and for the client, if one is
+//             given), then the client index of each month or a binary search on date, else a scan
+// Every condition is checked again on the candidates, so an index only ever saves work.
+// Choosing a plan reads only what is kept in memory (the indexes and the date and client ranges
+// of each month); the candidates are fetched when the query runs, so explain() loads no months.
+// The caller must keep the data from changing while a query runs (Warehouse.query() holds the
+// read lock).
+public class QueryEngine {
+    private static final String[] PRODUCT_FIELDS = { "productId", "name", "price", "quantity", "reorderThreshold",
+            "waitlisted" };
+    private static final String[] CLIENT_FIELDS = { "clientId", "name", "address", "phone", "balance" };
+    private static final String[] INVOICE_FIELDS = { "invoiceId", "date", "clientId", "clientName", "lineCount",
+            "total" };
+
+    private ProductCatalog productCatalog;
+    private ClientList clientList;
+    private InvoiceList invoiceList;
+    private LowStockIndex lowStockIndex;
+
+    // A class holding the access path chosen by the planner and how to fetch its candidates. Index
+    // scans fetch a list, whose size is added to the description once it has been fetched.
+    private static class Plan<T> {
+        private String access;
+        private Supplier<Iterator<T>> scan; // Null for an index scan
+        private Supplier<List<T>> indexScan;
+        private int candidateCount = -1; // Set once an index scan has been fetched
+
+        private Plan(String access, Supplier<Iterator<T>> scan, Supplier<List<T>> indexScan) {
+            this.access = access;
+            this.scan = scan;
+            this.indexScan = indexScan;
+        }
+
+        private static <T> Plan<T> scan(String access, Supplier<Iterator<T>> scan) {
+            return new Plan<>(access, scan, null);
+        }
+
+        private static <T> Plan<T> indexScan(String access, Supplier<List<T>> indexScan) {
+            return new Plan<>(access, null, indexScan);
+        }
+
+        // Method to fetch the candidates.
+        private Iterator<T> candidates() {
+            if (scan != null) {
+                return scan.get();
+            }
+            List<T> candidates = indexScan.get();
+            candidateCount = candidates.size();
+            return candidates.iterator();
+        }
+
+        // Method to describe the access path, with the number of candidates if they were counted.
+        private String describe() {
+            return candidateCount < 0 ? access : access + " (" + candidateCount + " candidates)";
+        }
+    }
+
+    // Constructor for an engine over the given warehouse data.
+    public QueryEngine(ProductCatalog productCatalog, ClientList clientList, InvoiceList invoiceList,
+            LowStockIndex lowStockIndex) {
+        this.productCatalog = productCatalog;
+        this.clientList = clientList;
+        this.invoiceList = invoiceList;
+        this.lowStockIndex = lowStockIndex;
+    }
+
+    // Method to run a query and collect its result rows.
+    public <T> QueryResult run(Query<T> query) {
+        Plan<T> plan = plan(query);
+        Iterator<T> candidates = plan.candidates();
+        List<T> matches = new ArrayList<>();
+        boolean sorted = query.getSortField() != null;
+        int examined = 0;
+        while (candidates.hasNext() && (sorted || matches.size() < query.getLimit())) {
+            T candidate = candidates.next();
+            examined++;
+            if (matches(query, candidate)) {
+                matches.add(candidate);
+            }
+        }
+        if (sorted) {
+            String sortField = query.getSortField();
+            Comparator<T> order = (first, second) -> compareValues(field(first, sortField), field(second, sortField));
+            matches.sort(query.isDescending() ? order.reversed() : order);
+            if (matches.size() > query.getLimit()) {
+                matches = matches.subList(0, query.getLimit());
+            }
+        }
+
+        List<String> fields = query.getFields().isEmpty() ? fieldsOf(query.getSource()) : query.getFields();
+        List<Map<String, Object>> rows = new ArrayList<>(matches.size());
+        for (T entity : matches) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (String field : fields) {
+                row.put(field, field(entity, field));
+            }
+            rows.add(row);
+        }
+        return new QueryResult(rows, describe(query, plan), examined);
+    }
+
+    // Method to describe how a query would run, without running it or fetching its candidates.
+    public String explain(Query<?> query) {
+        return describe(query, plan(query));
+    }
+
+    // Method to check that a field exists for a kind of entity.
+    // Throws IllegalArgumentException if it does not.
+    public static void checkField(Query.Source source, String field) {
+        if (!fieldsOf(source).contains(field)) {
+            throw new IllegalArgumentException("Unknown field '" + field + "' for " + source.name().toLowerCase()
+                    + "; expected one of " + fieldsOf(source));
+        }
+    }
+
+    // Method to get the fields of a kind of entity, in their default order.
+    public static List<String> fieldsOf(Query.Source source) {
+        switch (source) {
+            case PRODUCTS:
+                return Arrays.asList(PRODUCT_FIELDS);
+            case CLIENTS:
+                return Arrays.asList(CLIENT_FIELDS);
+            default:
+                return Arrays.asList(INVOICE_FIELDS);
+        }
+    }
+
+    // Method to choose where the candidates of a query come from, without fetching them.
+    @SuppressWarnings("unchecked")
+    private <T> Plan<T> plan(Query<T> query) {
+        switch (query.getSource()) {
+            case PRODUCTS:
+                return (Plan<T>) planProducts((Query<Product>) query);
+            case CLIENTS:
+                return (Plan<T>) planClients((Query<Client>) query);
+            default:
+                return (Plan<T>) planInvoices((Query<Invoice>) query);
+        }
+    }
+
+    private Plan<Product> planProducts(Query<Product> query) {
+        if (query.getProductNumber() >= 0) {
+            return Plan.scan("index lookup: products by ID " + Product.formatProductId(query.getProductNumber()),
+                    () -> singleton(productCatalog.getProductByNumber(query.getProductNumber())));
+        }
+        if (query.isBelowReorderPoint()) {
+            return Plan.indexScan("index scan: products at or below reorder point",
+                    () -> lowStockIndex.getProductsBelowReorderPoint());
+        }
+        if (query.hasPriceRange()) {
+            return Plan.indexScan("range scan: products by price from " + query.getMinPrice() + " to "
+                    + query.getMaxPrice(), () -> productCatalog.getProductsByPrice(query.getMinPrice(), query.getMaxPrice()));
+        }
+        return Plan.scan("full scan: products", () -> productCatalog.getProducts());
+    }
+
+    private Plan<Client> planClients(Query<Client> query) {
+        if (query.getClientNumber() >= 0) {
+            return Plan.scan("index lookup: clients by ID " + Client.formatClientId(query.getClientNumber()),
+                    () -> singleton(clientList.getClientByNumber(query.getClientNumber())));
+        }
+        return Plan.scan("full scan: clients", () -> clientList.getClients());
+    }
+
+    private Plan<Invoice> planInvoices(Query<Invoice> query) {
+        if (query.getClientNumber() < 0 && !query.hasDateRange()) {
+            return Plan.scan("full scan: invoices", () -> invoiceList.getInvoices());
+        }
+        List<String> steps = new ArrayList<>();
+        if (query.hasDateRange()) {
+            steps.add("partition pruning: invoices of " + invoiceList.countMonthsBetween(query.getFromDate(),
+                    query.getToDate()) + " of " + invoiceList.getMonths().size() + " months");
+        }
+        if (query.getClientNumber() >= 0) {
+            steps.add("index lookup: invoices by client " + Client.formatClientId(query.getClientNumber()));
+            return Plan.indexScan(String.join("; ", steps), () -> invoiceList
+                    .getInvoicesForClientNumber(query.getClientNumber(), query.getFromDate(), query.getToDate()));
+        }
+        steps.add("binary search: invoices by date in each month");
+        return Plan.indexScan(String.join("; ", steps),
+                () -> invoiceList.getInvoicesBetween(query.getFromDate(), query.getToDate()));
+    }
+
+    private static <T> Iterator<T> singleton(T entity) {
+        return entity == null ? Collections.<T>emptyIterator() : Collections.singletonList(entity).iterator();
+    }
+
+    // Method to check every condition of a query on a candidate.
+    private static <T> boolean matches(Query<T> query, T entity) {
+        if (entity instanceof Product) {
+            Product product = (Product) entity;
+            if (product.getPrice() < query.getMinPrice() || product.getPrice() > query.getMaxPrice()
+                    || product.getQuantity() < query.getMinStock() || product.getQuantity() > query.getMaxStock()
+                    || (query.getProductNumber() >= 0 && product.getProductNumber() != query.getProductNumber())
+                    || (query.isBelowReorderPoint() && !product.isBelowReorderPoint())) {
+                return false;
+            }
+        } else if (entity instanceof Client) {
+            Client client = (Client) entity;
+            if (client.getBalance() < query.getMinBalance() || client.getBalance() > query.getMaxBalance()
+                    || (query.getClientNumber() >= 0 && client.getClientNumber() != query.getClientNumber())) {
+                return false;
+            }
+        } else {
+            Invoice invoice = (Invoice) entity;
+            if (invoice.getTime() < query.getFromDate() || invoice.getTime() > query.getToDate()
+                    || (query.getClientNumber() >= 0 && invoice.getClientNumber() != query.getClientNumber())
+                    || (query.getProductNumber() >= 0 && !hasLineFor(invoice, query.getProductNumber()))) {
+                return false;
+            }
+        }
+        for (Predicate<? super T> filter : query.getFilters()) {
+            if (!filter.test(entity)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Field values are strings or numbers of the same type for a given field; nulls sort last.
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static int compareValues(Object first, Object second) {
+        if (first == null || second == null) {
+            return first == null ? (second == null ? 0 : 1) : -1;
+        }
+        return ((Comparable) first).compareTo(second);
+    }
+
+    private static boolean hasLineFor(Invoice invoice, int productNumber) {
+        for (int i = 0; i < invoice.getLineCount(); i++) {
+            if (invoice.getProductNumber(i) == productNumber) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Method to get the value of a field of a product, client or invoice.
+    private static Object field(Object entity, String field) {
+        if (entity instanceof Product) {
+            Product product = (Product) entity;
+            switch (field) {
+                case "productId":
+                    return product.getProductId();
+                case "name":
+                    return product.getProductName();
+                case "price":
+                    return product.getPrice();
+                case "quantity":
+                    return product.getQuantity();
+                case "reorderThreshold":
+                    return product.getReorderThreshold();
+                default:
+                    return product.hasWaitlist() ? product.getWaitlist().getTotalQuantity() : 0;
+            }
+        } else if (entity instanceof Client) {
+            Client client = (Client) entity;
+            switch (field) {
+                case "clientId":
+                    return client.getClientId();
+                case "name":
+                    return client.getClientName();
+                case "address":
+                    return client.getAddress();
+                case "phone":
+                    return client.getPhone();
+                default:
+                    return client.getBalance();
+            }
+        } else {
+            Invoice invoice = (Invoice) entity;
+            switch (field) {
+                case "invoiceId":
+                    return invoice.getInvoiceId();
+                case "date":
+                    return invoice.getTime();
+                case "clientId":
+                    return invoice.getClientId();
+                case "clientName":
+                    return invoice.getClientName();
+                case "lineCount":
+                    return invoice.getLineCount();
+                default:
+                    return invoice.getTotalAmount();
+            }
+        }
+    }
+
+    // Method to describe the access path, the remaining conditions, the sort and the limit.
+    private static String describe(Query<?> query, Plan<?> plan) {
+        StringBuilder stringBuilder = new StringBuilder(plan.describe());
+        List<String> checks = new ArrayList<>();
+        if (query.hasStockRange()) {
+            checks.add("stock from " + query.getMinStock() + " to " + query.getMaxStock());
+        }
+        if (query.hasBalanceRange()) {
+            checks.add("balance from " + query.getMinBalance() + " to " + query.getMaxBalance());
+        }
+        if (query.getSource() == Query.Source.INVOICES && query.getProductNumber() >= 0) {
+            checks.add("has a line for " + Product.formatProductId(query.getProductNumber()));
+        }
+        if (query.hasDateRange() && !plan.access.contains("binary search")) {
+            checks.add("date from " + query.getFromDate() + " to " + query.getToDate());
+        }
+        if (query.isBelowReorderPoint() && !plan.access.contains("reorder point")) {
+            checks.add("at or below reorder point");
+        }
+        if (query.hasPriceRange() && !plan.access.contains("by price")) {
+            checks.add("price from " + query.getMinPrice() + " to " + query.getMaxPrice());
+        }
+        if (!query.getFilters().isEmpty()) {
+            checks.add(query.getFilters().size() + " custom condition(s)");
+        }
+        if (!checks.isEmpty()) {
+            stringBuilder.append("; filter: ").append(String.join(", ", checks));
+        }
+        if (query.getSortField() != null) {
+            stringBuilder.append("; sort: ").append(query.getSortField())
+                    .append(query.isDescending() ? " descending" : " ascending");
+        }
+        if (query.getLimit() != Integer.MAX_VALUE) {
+            stringBuilder.append("; limit: ").append(query.getLimit());
+            if (query.getSortField() == null) {
+                stringBuilder.append(" (stops early)");
+            }
+        }
+        return stringBuilder.toString();
+    }
+}
@@ -0,0 +1,49 @@
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// A class holding the rows returned by a query, with the plan it ran with and the number of
+// candidates it had to look at.
+public class QueryResult {
+    private List<Map<String, Object>> rows;
+    private String plan;
+    private int examined;
+
+    // Constructor for a query result.
+    public QueryResult(List<Map<String, Object>> rows, String plan, int examined) {
+        this.rows = Collections.unmodifiableList(rows);
+        this.plan = plan;
+        this.examined = examined;
+    }
+
+    // Method to get the result rows; each maps the selected field names to their values.
+    public List<Map<String, Object>> getRows() {
+        return rows;
+    }
+
+    // Method to get a description of how the query ran.
+    public String getPlan() {
+        return plan;
+    }
+
+    // Method to get the number of candidates the query looked at.
+    public int getExamined() {
+        return examined;
+    }
+
+    // Method to get the number of result rows.
+    public int size() {
+        return rows.size();
+    }
+
+    // Method to provide a string representation of the result.
+    public String toString() {
+        StringBuilder stringBuilder = new StringBuilder();
+        for (Map<String, Object> row : rows) {
+            stringBuilder.append(row).append("\n");
+        }
+        stringBuilder.append(rows.size()).append(" rows, ").append(examined).append(" examined\n");
+        stringBuilder.append("Plan: ").append(plan).append("\n");
+        return stringBuilder.toString();
+    }
+}
@@ -0,0 +1,73 @@
+// A class representing how much of a product purchasing should reorder, and why.
+// The suggested quantity covers the forecast demand over the horizon, the quantity clients are
+// waiting for and the reorder threshold as safety stock, less the stock on hand.
+public class ReorderSuggestion {
+    private String productId;
+    private String productName;
+    private int stock;
+    private int waitlisted;
+    private int reorderThreshold;
+    private double dailyRate;
+    private double forecast;
+    private int suggestedQuantity;
+
+    // Constructor for a suggestion for a product over a forecast of the given units.
+    public ReorderSuggestion(Product product, double dailyRate, double forecast) {
+        this.productId = product.getProductId();
+        this.productName = product.getProductName();
+        this.stock = product.getQuantity();
+        this.waitlisted = product.hasWaitlist() ? product.getWaitlist().getTotalQuantity() : 0;
+        this.reorderThreshold = product.getReorderThreshold();
+        this.dailyRate = dailyRate;
+        this.forecast = forecast;
+        long needed = (long) Math.ceil(forecast) + waitlisted + reorderThreshold - stock;
+        this.suggestedQuantity = (int) Math.max(0, Math.min(Integer.MAX_VALUE, needed));
+    }
+
+    // Method to get the product ID.
+    public String getProductId() {
+        return productId;
+    }
+
+    // Method to get the product name.
+    public String getProductName() {
+        return productName;
+    }
+
+    // Method to get the stock on hand.
+    public int getStock() {
+        return stock;
+    }
+
+    // Method to get the quantity clients are waiting for.
+    public int getWaitlisted() {
+        return waitlisted;
+    }
+
+    // Method to get the reorder threshold used as safety stock.
+    public int getReorderThreshold() {
+        return reorderThreshold;
+    }
+
+    // Method to get the forecast average units sold per day.
+    public double getDailyRate() {
+        return dailyRate;
+    }
+
+    // Method to get the forecast units sold over the horizon.
+    public double getForecast() {
+        return forecast;
+    }
+
+    // Method to get the suggested quantity to reorder (0 when none is needed).
+    public int getSuggestedQuantity() {
+        return suggestedQuantity;
+    }
+
+    // Method to provide a string representation of the suggestion.
+    public String toString() {
+        return productId + " " + productName + " | in stock: " + stock + " | waitlisted: " + waitlisted
+                + " | per day: " + String.format("%.2f", dailyRate) + " | forecast: "
+                + String.format("%.1f", forecast) + " | reorder: " + suggestedQuantity;
+    }
+}
@@ -0,0 +1,74 @@
+import java.util.Collections;
+import java.util.List;
+
+// A class holding the rows of an end-of-day report and its total.
+// Money columns are whole cents (long) so that totals do not depend on the order they were added in.
+public class Report {
+    private String title;
+    private String[] columns;
+    private List<Object[]> rows;
+    private long totalCents;
+
+    // Constructor for a report with the given column names, rows and total in cents.
+    public Report(String title, String[] columns, List<Object[]> rows, long totalCents) {
+        this.title = title;
+        this.columns = columns.clone();
+        this.rows = Collections.unmodifiableList(rows);
+        this.totalCents = totalCents;
+    }
+
+    // Method to get the report title.
+    public String getTitle() {
+        return title;
+    }
+
+    // Method to get the column names.
+    public String[] getColumns() {
+        return columns.clone();
+    }
+
+    // Method to get the rows; each has one value per column.
+    public List<Object[]> getRows() {
+        return rows;
+    }
+
+    // Method to get the report total in cents.
+    public long getTotalCents() {
+        return totalCents;
+    }
+
+    // Method to format an amount in cents as dollars.
+    public static String formatCents(long cents) {
+        String sign = cents < 0 ? "-" : "";
+        long absolute = Math.abs(cents);
+        return sign + "$" + (absolute / 100) + "." + String.format("%02d", absolute % 100);
+    }
+
+    // Method to format one row, showing money columns (names ending in "($)") as dollars.
+    public String formatRow(Object[] row) {
+        StringBuilder stringBuilder = new StringBuilder();
+        for (int i = 0; i < row.length; i++) {
+            if (i > 0) {
+                stringBuilder.append(" | ");
+            }
+            stringBuilder.append(columns[i]).append(": ");
+            if (columns[i].endsWith("($)")) {
+                stringBuilder.append(formatCents((Long) row[i]));
+            } else {
+                stringBuilder.append(row[i]);
+            }
+        }
+        return stringBuilder.toString();
+    }
+
+    // Method to provide a string representation of the report.
+    public String toString() {
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append(title).append("\n");
+        for (Object[] row : rows) {
+            stringBuilder.append(formatRow(row)).append("\n");
+        }
+        stringBuilder.append("Total: ").append(formatCents(totalCents)).append("\n");
+        return stringBuilder.toString();
+    }
+}
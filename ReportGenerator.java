@@ -0,0 +1,234 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// A class that builds the end-of-day reports: inventory valuation, the outstanding waitlist per
+// product, receivables and sales per product.
+//
+// The data is copied out of a Snapshot into arrays once, so the reports are consistent with each
+// other and no lock is held while they run. Each report splits its array into index ranges and
+// runs them as fork-join tasks. The ranges add into arrays of long counters (units and whole
+// cents), one array per worker thread rather than per range, so the counters take memory in
+// proportion to the threads; the arrays are added together at the end, and the parallel and
+// sequential paths give exactly the same reports.
+public class ReportGenerator {
+    private static final int MIN_CHUNK = 1024; // Smallest range worth a task of its own
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private ProductState[] products;
+    private ClientState[] clients;
+    private Invoice[] invoices;
+    private int productSlots; // Highest product number plus one
+    private ForkJoinPool pool; // Null to run sequentially
+
+    // An aggregation over a range of array positions. It adds into counters of a fixed length that
+    // are totalled for the whole array; it may also fill in row slots for its positions.
+    private interface Chunk {
+        void compute(int from, int to, long[] counters);
+    }
+
+    // A fork-join task that splits a range of positions in halves until it is small enough, then
+    // adds into the counters of the thread running it.
+    private static class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private transient Chunk chunk;
+        private int from;
+        private int to;
+        private int threshold;
+        private int length;
+        private transient Map<Thread, long[]> counters;
+
+        private RangeTask(Chunk chunk, int from, int to, int threshold, int length, Map<Thread, long[]> counters) {
+            this.chunk = chunk;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+            this.length = length;
+            this.counters = counters;
+        }
+
+        protected void compute() {
+            if (to - from <= threshold) {
+                // A thread runs one range at a time, so its counters need no synchronization.
+                chunk.compute(from, to, counters.computeIfAbsent(Thread.currentThread(), thread -> new long[length]));
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RangeTask(chunk, from, middle, threshold, length, counters),
+                    new RangeTask(chunk, middle, to, threshold, length, counters));
+        }
+    }
+
+    // Constructor for reports on the common fork-join pool.
+    public ReportGenerator(Snapshot snapshot) {
+        this(snapshot, ForkJoinPool.commonPool());
+    }
+
+    // Constructor for reports on the given fork-join pool, or sequential reports if the pool is null.
+    // The snapshot is only read here and may be closed once the generator is built.
+    public ReportGenerator(Snapshot snapshot, ForkJoinPool pool) {
+        this.pool = pool;
+        List<ProductState> productList = new ArrayList<>();
+        Iterator<ProductState> allProducts = snapshot.getProducts();
+        while (allProducts.hasNext()) {
+            ProductState product = allProducts.next();
+            productList.add(product);
+            productSlots = Math.max(productSlots, product.getProductNumber() + 1);
+        }
+        products = productList.toArray(new ProductState[0]);
+        List<ClientState> clientList = new ArrayList<>();
+        Iterator<ClientState> allClients = snapshot.getClients();
+        while (allClients.hasNext()) {
+            clientList.add(allClients.next());
+        }
+        clients = clientList.toArray(new ClientState[0]);
+        invoices = new Invoice[snapshot.getInvoiceCount()];
+        Iterator<Invoice> allInvoices = snapshot.getInvoices();
+        for (int i = 0; i < invoices.length; i++) {
+            invoices[i] = allInvoices.next();
+            for (int line = 0; line < invoices[i].getLineCount(); line++) {
+                productSlots = Math.max(productSlots, invoices[i].getProductNumber(line) + 1);
+            }
+        }
+    }
+
+    // Method to check if the reports run in parallel.
+    public boolean isParallel() {
+        return pool != null;
+    }
+
+    // Method to build all reports, in the order they are listed in the class comment.
+    public List<Report> allReports() {
+        List<Report> reports = new ArrayList<>();
+        reports.add(inventoryValuation());
+        reports.add(waitlistByProduct());
+        reports.add(receivables());
+        reports.add(salesByProduct());
+        return reports;
+    }
+
+    // Method to value the stock of every product at its current price.
+    public Report inventoryValuation() {
+        Object[][] rows = new Object[products.length][];
+        long[] total = aggregate(products.length, 1, (from, to, value) -> {
+            for (int i = from; i < to; i++) {
+                ProductState product = products[i];
+                long priceCents = toCents(product.getPrice());
+                long valueCents = priceCents * product.getQuantity();
+                rows[i] = new Object[] { product.getProductId(), product.getProductName(), product.getQuantity(),
+                        priceCents, valueCents };
+                value[0] += valueCents;
+            }
+        });
+        return new Report("Inventory valuation",
+                new String[] { "Product", "Name", "In stock", "Price ($)", "Value ($)" }, compact(rows), total[0]);
+    }
+
+    // Method to list the products clients are waiting for, with the quantity and its value.
+    public Report waitlistByProduct() {
+        Object[][] rows = new Object[products.length][];
+        long[] total = aggregate(products.length, 1, (from, to, value) -> {
+            for (int i = from; i < to; i++) {
+                ProductState product = products[i];
+                if (product.getWaitlistSize() > 0) {
+                    long valueCents = toCents(product.getPrice()) * product.getWaitlistTotal();
+                    rows[i] = new Object[] { product.getProductId(), product.getProductName(),
+                            product.getWaitlistSize(), product.getWaitlistTotal(), product.getQuantity(), valueCents };
+                    value[0] += valueCents;
+                }
+            }
+        });
+        return new Report("Outstanding waitlist per product",
+                new String[] { "Product", "Name", "Clients waiting", "Quantity waiting", "In stock", "Value ($)" },
+                compact(rows), total[0]);
+    }
+
+    // Method to list the clients who owe money and what they owe.
+    public Report receivables() {
+        Object[][] rows = new Object[clients.length][];
+        long[] total = aggregate(clients.length, 1, (from, to, owed) -> {
+            for (int i = from; i < to; i++) {
+                ClientState client = clients[i];
+                long balanceCents = toCents(client.getBalance());
+                if (balanceCents < 0) {
+                    rows[i] = new Object[] { client.getClientId(), client.getClientName(), client.getPhone(),
+                            -balanceCents };
+                    owed[0] -= balanceCents;
+                }
+            }
+        });
+        return new Report("Receivables", new String[] { "Client", "Name", "Phone", "Owed ($)" }, compact(rows),
+                total[0]);
+    }
+
+    // Method to total the units and revenue invoiced for each product.
+    public Report salesByProduct() {
+        // Two counters per product number: units at 2n and revenue in cents at 2n + 1.
+        long[] sales = aggregate(invoices.length, 2 * productSlots, (from, to, counters) -> {
+            for (int i = from; i < to; i++) {
+                Invoice invoice = invoices[i];
+                for (int line = 0; line < invoice.getLineCount(); line++) {
+                    int slot = 2 * invoice.getProductNumber(line);
+                    counters[slot] += invoice.getQuantity(line);
+                    counters[slot + 1] += toCents(invoice.getUnitPrice(line)) * invoice.getQuantity(line);
+                }
+            }
+        });
+
+        String[] names = new String[productSlots];
+        for (ProductState product : products) {
+            names[product.getProductNumber()] = product.getProductName();
+        }
+        List<Object[]> rows = new ArrayList<>();
+        long revenue = 0;
+        for (int productNumber = 0; productNumber < productSlots; productNumber++) {
+            long units = sales[2 * productNumber];
+            if (units != 0) {
+                long cents = sales[2 * productNumber + 1];
+                String name = names[productNumber] == null ? "(removed)" : names[productNumber];
+                rows.add(new Object[] { Product.formatProductId(productNumber), name, units, cents });
+                revenue += cents;
+            }
+        }
+        return new Report("Sales per product", new String[] { "Product", "Name", "Units", "Revenue ($)" }, rows,
+                revenue);
+    }
+
+    // Method to run a chunked aggregation with the given number of counters over positions 0 to
+    // size - 1, in parallel when there is a pool and enough work, and return the added up counters.
+    private long[] aggregate(int size, int length, Chunk chunk) {
+        long[] total = new long[length];
+        if (pool == null || size <= MIN_CHUNK) {
+            chunk.compute(0, size, total);
+            return total;
+        }
+        int threshold = Math.max(MIN_CHUNK, size / (pool.getParallelism() * CHUNKS_PER_THREAD));
+        Map<Thread, long[]> counters = new ConcurrentHashMap<>();
+        pool.invoke(new RangeTask(chunk, 0, size, threshold, length, counters));
+        for (long[] threadCounters : counters.values()) {
+            for (int i = 0; i < length; i++) {
+                total[i] += threadCounters[i];
+            }
+        }
+        return total;
+    }
+
+    // Method to drop the empty row slots, keeping the others in order.
+    private static List<Object[]> compact(Object[][] rows) {
+        List<Object[]> filled = new ArrayList<>();
+        for (Object[] row : rows) {
+            if (row != null) {
+                filled.add(row);
+            }
+        }
+        return filled;
+    }
+
+    private static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+}
@@ -0,0 +1,97 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+// A class that writes the rows of a listing through one large buffer, either to the screen or to a
+// file, and only renders the rows on the requested page. Rows before the page are skipped without
+// being formatted and the listing stops as soon as the page is full.
+public class ReportWriter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private PrintWriter output;
+    private String fileName; // Null when the listing goes to the screen
+    private long firstRow; // Index of the first row on the page
+    private long lastRow; // Index after the last row on the page
+    private long row; // Index of the next row
+    private long written; // Number of rows written
+
+    // Constructor for a listing of the given page. A page size of 0 lists every row.
+    // Pages are numbered from 1. When fileName is null the listing goes to the screen.
+    public ReportWriter(int pageSize, int page, String fileName) throws IOException {
+        if (pageSize > 0) {
+            firstRow = (long) pageSize * (Math.max(page, 1) - 1);
+            lastRow = firstRow + pageSize;
+        } else {
+            firstRow = 0;
+            lastRow = Long.MAX_VALUE;
+        }
+        if (fileName == null || fileName.isEmpty()) {
+            // Write to the process output directly instead of the autoflushing System.out.
+            System.out.flush();
+            output = new PrintWriter(new BufferedWriter(
+                    new OutputStreamWriter(new FileOutputStream(FileDescriptor.out)), BUFFER_SIZE), false);
+        } else {
+            output = new PrintWriter(new BufferedWriter(new FileWriter(fileName), BUFFER_SIZE), false);
+            this.fileName = fileName;
+        }
+    }
+
+    // Method to move to the next row. Returns true if the row is on the page and should be written.
+    public boolean nextRow() {
+        boolean onPage = row >= firstRow && row < lastRow;
+        row++;
+        if (onPage) {
+            written++;
+        }
+        return onPage;
+    }
+
+    // Method to check if the page is full, so the caller can stop going through its rows.
+    public boolean isDone() {
+        return row >= lastRow;
+    }
+
+    // Method to write a line to the listing.
+    public void println(Object line) {
+        output.println(line);
+    }
+
+    // Method to write an empty line to the listing.
+    public void println() {
+        output.println();
+    }
+
+    // Method to check if the listing goes to a file.
+    public boolean isToFile() {
+        return fileName != null;
+    }
+
+    // Method to get the name of the file the listing goes to.
+    public String getFileName() {
+        return fileName;
+    }
+
+    // Method to get the number of rows written so far.
+    public long getRowsWritten() {
+        return written;
+    }
+
+    // Method to write a short summary of the rows shown and flush the listing.
+    // The screen stays open; a file is closed.
+    public void close() {
+        if (written == 0) {
+            output.println("No rows to show.");
+        } else if (firstRow > 0 || lastRow != Long.MAX_VALUE) {
+            output.println("Showing rows " + (firstRow + 1) + " to " + (firstRow + written) + ".");
+        }
+        if (fileName != null) {
+            output.close();
+        } else {
+            output.flush();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// A class representing units of a product held out of stock for a client until the order is
+// confirmed, cancelled or the hold expires (see ReservationManager). A reservation ends exactly
+// once: the first of commit, release or expiry wins and the others do nothing.
+public class Reservation implements Delayed {
+    static final int HELD = 0;
+    static final int COMMITTED = 1;
+    static final int RELEASED = 2;
+    static final int EXPIRED = 3;
+
+    private long reservationId;
+    private int clientNumber;
+    private Product product;
+    private int quantity;
+    private long expiresAt; // Time in milliseconds
+    private AtomicInteger state = new AtomicInteger(HELD);
+
+    // Constructor for a hold on a quantity of a product that ends at the given time.
+    Reservation(long reservationId, int clientNumber, Product product, int quantity, long expiresAt) {
+        this.reservationId = reservationId;
+        this.clientNumber = clientNumber;
+        this.product = product;
+        this.quantity = quantity;
+        this.expiresAt = expiresAt;
+    }
+
+    // Method to get the reservation ID.
+    public long getReservationId() {
+        return reservationId;
+    }
+
+    // Method to get the number of the client the units are held for.
+    public int getClientNumber() {
+        return clientNumber;
+    }
+
+    // Method to get the product held.
+    public Product getProduct() {
+        return product;
+    }
+
+    // Method to get the quantity held.
+    public int getQuantity() {
+        return quantity;
+    }
+
+    // Method to get the time the hold expires, in milliseconds.
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    // Method to check if the units are still held.
+    public boolean isHeld() {
+        return state.get() == HELD;
+    }
+
+    // Ends the reservation in the given state. Returns false if it had already ended.
+    boolean finish(int finalState) {
+        return state.compareAndSet(HELD, finalState);
+    }
+
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(expiresAt - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public int compareTo(Delayed other) {
+        if (other instanceof Reservation) {
+            return Long.compare(expiresAt, ((Reservation) other).expiresAt);
+        }
+        return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+    }
+
+    // Method to provide a string representation of the reservation.
+    public String toString() {
+        return "Reservation " + reservationId + " | " + Client.formatClientId(clientNumber) + " | "
+                + product.getProductId() + " x" + quantity + (isHeld() ? " | held" : " | ended");
+    }
+}
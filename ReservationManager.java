@@ -0,0 +1,138 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// A class that holds stock for orders while they are being put together.
+//
+// Reserving takes the units out of the product's stock with a single compare-and-set, so orders
+// for the same product only contend for that one step and never wait on a lock, and no two
+// orders can be promised the same units. A reservation is then committed when its order is
+// confirmed (the units stay out of stock), released when the order is cancelled (the units go
+// back), or expires after its time to live. A background reaper thread waits on a DelayQueue
+// ordered by expiry time and returns expired holds to stock as they fall due.
+//
+// Reservations live in memory only; Warehouse.save writes the units still held so that they go
+// back into stock when the data is retrieved.
+public class ReservationManager {
+    public static final long DEFAULT_TTL_MILLIS = 5 * 60 * 1000L;
+    private static ReservationManager reservationManager;
+    private AtomicLong nextId = new AtomicLong(1);
+    private Map<Long, Reservation> open = new ConcurrentHashMap<>();
+    private DelayQueue<Reservation> expiries = new DelayQueue<>();
+    private LongAdder expired = new LongAdder();
+
+    private ReservationManager() {
+        Thread reaper = new Thread(this::reap, "reservation-reaper");
+        reaper.setDaemon(true);
+        reaper.start();
+    }
+
+    // Method to get an instance of the ReservationManager (singleton pattern).
+    public static synchronized ReservationManager instance() {
+        if (reservationManager == null) {
+            return (reservationManager = new ReservationManager());
+        } else {
+            return reservationManager;
+        }
+    }
+
+    // Method to reserve up to a quantity of a product for a client for the default time to live.
+    // Returns null if none is in stock.
+    public Reservation reserve(Client client, Product product, int quantity) {
+        return reserve(client, product, quantity, DEFAULT_TTL_MILLIS);
+    }
+
+    // Method to reserve up to a quantity of a product for a client, held for the given time.
+    // The reservation may be for less than asked if the stock runs out; returns null if none
+    // could be reserved.
+    public Reservation reserve(Client client, Product product, int quantity, long ttlMillis) {
+        if (quantity <= 0) {
+            return null;
+        }
+        int previousQuantity = product.getAndTakeUpTo(quantity);
+        int taken = Product.taken(quantity, previousQuantity);
+        if (taken == 0) {
+            return null;
+        }
+        Reservation reservation = new Reservation(nextId.getAndIncrement(), client.getClientNumber(), product,
+                taken, System.currentTimeMillis() + ttlMillis);
+        open.put(reservation.getReservationId(), reservation);
+        expiries.add(reservation);
+        Warehouse.instance().stockChangedOutsideLock(product, previousQuantity, previousQuantity - taken);
+        return reservation;
+    }
+
+    // Method to confirm a reservation: its units stay out of stock for good. Returns false if the
+    // reservation had already been released or had expired.
+    public boolean commit(Reservation reservation) {
+        if (reservation.finish(Reservation.COMMITTED)) {
+            open.remove(reservation.getReservationId());
+            return true;
+        }
+        return false;
+    }
+
+    // Method to cancel a reservation and put its units back in stock. Returns false if the
+    // reservation had already ended.
+    public boolean release(Reservation reservation) {
+        return end(reservation, Reservation.RELEASED);
+    }
+
+    // Method to get a reservation that is still held by its ID, or null.
+    public Reservation getReservation(long reservationId) {
+        return open.get(reservationId);
+    }
+
+    // Method to get the number of reservations still held.
+    public int getOpenCount() {
+        return open.size();
+    }
+
+    // Method to get the number of reservations that expired before they were committed.
+    public long getExpiredCount() {
+        return expired.sum();
+    }
+
+    // Method to get the units still held, by product number.
+    public Map<Integer, Integer> getHeldQuantities() {
+        Map<Integer, Integer> held = new HashMap<>();
+        for (Reservation reservation : open.values()) {
+            if (reservation.isHeld()) {
+                held.merge(reservation.getProduct().getProductNumber(), reservation.getQuantity(), Integer::sum);
+            }
+        }
+        return held;
+    }
+
+    // Ends a reservation and puts its units back in stock.
+    private boolean end(Reservation reservation, int finalState) {
+        if (!reservation.finish(finalState)) {
+            return false;
+        }
+        open.remove(reservation.getReservationId());
+        Product product = reservation.getProduct();
+        int previousQuantity = product.addQuantity(reservation.getQuantity());
+        Warehouse.instance().stockChangedOutsideLock(product, previousQuantity,
+                previousQuantity + reservation.getQuantity());
+        return true;
+    }
+
+    // Returns expired reservations to stock as they fall due. Committed and released reservations
+    // stay queued until their expiry time and are skipped then.
+    private void reap() {
+        while (true) {
+            try {
+                if (end(expiries.take(), Reservation.EXPIRED)) {
+                    expired.increment();
+                }
+            } catch (InterruptedException ie) {
+                return;
+            } catch (RuntimeException e) {
+                e.printStackTrace(); // Keep reaping the others
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+import java.util.Collections;
+import java.util.List;
+
+// A class representing the outcome of an order routed across sites: the units each site shipped,
+// the units put on a site's waitlist, and the invoice for everything shipped (null if nothing
+// shipped).
+public class RoutedOrder {
+    private Invoice invoice;
+    private List<Allocation> shipped;
+    private List<Allocation> waitlisted;
+
+    // A class representing a quantity of one product at one site.
+    public static class Allocation {
+        private String siteName;
+        private String productId;
+        private int quantity;
+
+        // Constructor for a quantity of a product at a site.
+        public Allocation(String siteName, String productId, int quantity) {
+            this.siteName = siteName;
+            this.productId = productId;
+            this.quantity = quantity;
+        }
+
+        // Method to get the name of the site.
+        public String getSiteName() {
+            return siteName;
+        }
+
+        // Method to get the product ID.
+        public String getProductId() {
+            return productId;
+        }
+
+        // Method to get the quantity.
+        public int getQuantity() {
+            return quantity;
+        }
+
+        // Method to provide a string representation of the allocation.
+        public String toString() {
+            return productId + " x" + quantity + " @ " + siteName;
+        }
+    }
+
+    // Constructor to initialize the result with the invoice and the allocations.
+    public RoutedOrder(Invoice invoice, List<Allocation> shipped, List<Allocation> waitlisted) {
+        this.invoice = invoice;
+        this.shipped = shipped;
+        this.waitlisted = waitlisted;
+    }
+
+    // Method to get the invoice for the shipped units, or null if nothing shipped.
+    public Invoice getInvoice() {
+        return invoice;
+    }
+
+    // Method to get the units shipped, by site and product.
+    public List<Allocation> getShipped() {
+        return Collections.unmodifiableList(shipped);
+    }
+
+    // Method to get the units waitlisted, by site and product.
+    public List<Allocation> getWaitlisted() {
+        return Collections.unmodifiableList(waitlisted);
+    }
+
+    // Method to provide a string representation of the routed order.
+    public String toString() {
+        return (invoice == null ? "Nothing shipped.\n" : invoice.toString()) + "Shipped: " + shipped
+                + "\nWaitlisted: " + waitlisted;
+    }
+}
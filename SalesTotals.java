@@ -0,0 +1,42 @@
+// A class holding the units, revenue and number of invoices sold for one product, client or day.
+// Revenue is in whole cents.
+public class SalesTotals {
+    private String key;
+    private long units;
+    private long revenueCents;
+    private long invoiceCount;
+
+    // Constructor for the totals of a product, client or day (the key identifies which).
+    public SalesTotals(String key, long units, long revenueCents, long invoiceCount) {
+        this.key = key;
+        this.units = units;
+        this.revenueCents = revenueCents;
+        this.invoiceCount = invoiceCount;
+    }
+
+    // Method to get the product ID, client ID or ISO date the totals are for.
+    public String getKey() {
+        return key;
+    }
+
+    // Method to get the number of units sold.
+    public long getUnits() {
+        return units;
+    }
+
+    // Method to get the revenue in cents.
+    public long getRevenueCents() {
+        return revenueCents;
+    }
+
+    // Method to get the number of invoices counted.
+    public long getInvoiceCount() {
+        return invoiceCount;
+    }
+
+    // Method to provide a string representation of the totals.
+    public String toString() {
+        return key + " | units: " + units + " | revenue: " + Report.formatCents(revenueCents) + " | invoices: "
+                + invoiceCount;
+    }
+}
@@ -0,0 +1,133 @@
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// A class keeping running sales totals per product, per client and per day, updated as invoices
+// are added and removed, so they never have to be computed by walking the invoices.
+// Each total is a long[3] of {units, revenue in cents, invoices}. Revenue is summed line by line
+// in cents, so the product, client and day totals always add up to the same amount. Days are
+// counted in UTC. Looking up one total is O(1); listing totals costs O(result size) (plus
+// O(log days) to find the start of a day range).
+public class SalesViews implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int UNITS = 0;
+    private static final int CENTS = 1;
+    private static final int INVOICES = 2;
+
+    private Map<Integer, long[]> byProduct = new HashMap<>();
+    private Map<Integer, long[]> byClient = new HashMap<>();
+    private TreeMap<Long, long[]> byDay = new TreeMap<>();
+
+    // Method to add an invoice to the totals.
+    public void add(Invoice invoice) {
+        apply(invoice, 1);
+    }
+
+    // Method to take a removed invoice out of the totals.
+    public void remove(Invoice invoice) {
+        apply(invoice, -1);
+    }
+
+    // Method to drop all totals and add up the given invoices again.
+    public void rebuild(Iterator<Invoice> invoices) {
+        byProduct.clear();
+        byClient.clear();
+        byDay.clear();
+        while (invoices.hasNext()) {
+            add(invoices.next());
+        }
+    }
+
+    // Method to get the totals of a product, or null if it has not been sold.
+    public SalesTotals getProductTotals(int productNumber) {
+        return totals(Product.formatProductId(productNumber), byProduct.get(productNumber));
+    }
+
+    // Method to get the totals of a client, or null if they have not bought anything.
+    public SalesTotals getClientTotals(int clientNumber) {
+        return totals(Client.formatClientId(clientNumber), byClient.get(clientNumber));
+    }
+
+    // Method to get the totals of every product sold.
+    public List<SalesTotals> getProductTotals() {
+        List<SalesTotals> result = new ArrayList<>(byProduct.size());
+        for (Map.Entry<Integer, long[]> entry : byProduct.entrySet()) {
+            result.add(totals(Product.formatProductId(entry.getKey()), entry.getValue()));
+        }
+        return result;
+    }
+
+    // Method to get the totals of every client who bought something.
+    public List<SalesTotals> getClientTotals() {
+        List<SalesTotals> result = new ArrayList<>(byClient.size());
+        for (Map.Entry<Integer, long[]> entry : byClient.entrySet()) {
+            result.add(totals(Client.formatClientId(entry.getKey()), entry.getValue()));
+        }
+        return result;
+    }
+
+    // Method to get the totals of each day with sales from one day to another (days since
+    // 1970-01-01, both included), oldest first.
+    public List<SalesTotals> getDailyTotals(long fromDay, long toDay) {
+        List<SalesTotals> result = new ArrayList<>();
+        if (fromDay > toDay) {
+            return result;
+        }
+        for (Map.Entry<Long, long[]> entry : byDay.subMap(fromDay, true, toDay, true).entrySet()) {
+            result.add(totals(LocalDate.ofEpochDay(entry.getKey()).toString(), entry.getValue()));
+        }
+        return result;
+    }
+
+    private void apply(Invoice invoice, int sign) {
+        long[] client = byClient.computeIfAbsent(invoice.getClientNumber(), clientNumber -> new long[3]);
+        long[] day = byDay.computeIfAbsent(DemandForecaster.dayOf(invoice.getTime()), dayNumber -> new long[3]);
+        client[INVOICES] += sign;
+        day[INVOICES] += sign;
+        for (int line = 0; line < invoice.getLineCount(); line++) {
+            long units = (long) sign * invoice.getQuantity(line);
+            long cents = Math.round(invoice.getUnitPrice(line) * 100) * units;
+            long[] product = byProduct.computeIfAbsent(invoice.getProductNumber(line), productNumber -> new long[3]);
+            product[UNITS] += units;
+            product[CENTS] += cents;
+            if (firstLineFor(invoice, line)) {
+                product[INVOICES] += sign;
+            }
+            client[UNITS] += units;
+            client[CENTS] += cents;
+            day[UNITS] += units;
+            day[CENTS] += cents;
+        }
+        for (int line = 0; line < invoice.getLineCount(); line++) {
+            long[] product = byProduct.get(invoice.getProductNumber(line));
+            if (product != null && product[INVOICES] == 0) {
+                byProduct.remove(invoice.getProductNumber(line));
+            }
+        }
+        if (client[INVOICES] == 0) {
+            byClient.remove(invoice.getClientNumber());
+        }
+        if (day[INVOICES] == 0) {
+            byDay.remove(DemandForecaster.dayOf(invoice.getTime()));
+        }
+    }
+
+    // An invoice counts once for a product even if the product is on several of its lines.
+    private static boolean firstLineFor(Invoice invoice, int line) {
+        for (int earlier = 0; earlier < line; earlier++) {
+            if (invoice.getProductNumber(earlier) == invoice.getProductNumber(line)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static SalesTotals totals(String key, long[] values) {
+        return values == null ? null : new SalesTotals(key, values[UNITS], values[CENTS], values[INVOICES]);
+    }
+}
@@ -0,0 +1,37 @@
+import java.util.List;
+
+// An interface for one physical warehouse in a Federation: it holds its own stock levels and
+// waitlists for the products of the shared catalog. Clients and invoices stay with the
+// Warehouse. Implementations must be safe to call from several threads at once.
+public interface Site {
+    // Method to get the unique name of the site.
+    String getName();
+
+    // Method to get the latitude of the site in degrees.
+    double getLatitude();
+
+    // Method to get the longitude of the site in degrees.
+    double getLongitude();
+
+    // Method to get the units in stock of each of the given products, by position.
+    int[] getAvailable(int[] productNumbers);
+
+    // Method to take up to the given quantity of a product out of stock. Returns the quantity
+    // taken, which may be less than what getAvailable reported if another order got there first.
+    int take(Product product, int quantity);
+
+    // Method to put back units taken by take() for an order that could not be completed. Unlike
+    // receive(), this does not fill the waitlist.
+    void putBack(Product product, int quantity);
+
+    // Method to put a client on the site's waitlist for more units of a product.
+    void waitlist(Client client, Product product, int quantity);
+
+    // Method to take a quantity off a client's request on the site's waitlist for a product, such
+    // as one added for an order that then failed. The client leaves the waitlist if nothing is left.
+    void reduceWaitlist(Client client, Product product, int quantity);
+
+    // Method to receive a shipment of a product, filling the site's waitlist first.
+    // Returns the invoices created for the waitlisted clients.
+    List<Invoice> receive(Product product, int quantity);
+}
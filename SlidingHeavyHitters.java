@@ -0,0 +1,130 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// A class that finds the keys counted most often over a sliding time window in fixed memory.
+//
+// The window is split into buckets of equal length, each with its own CountMinSketch, plus one
+// sketch holding the sum of the live buckets. When time moves past a bucket, that bucket is taken
+// out of the sum and reused, so the window always covers the current (partial) bucket and the
+// buckets before it: between (buckets - 1) and buckets bucket lengths of history.
+//
+// Candidates for the top keys are kept in a small fixed-size table. A counted key replaces the
+// candidate with the smallest estimate when its own estimate is larger. Estimates carry the
+// error of the sketch (see CountMinSketch), and a key whose count grows slowly while the table is
+// full of larger keys may be missing from it; keys well above the error bound are not missed.
+// Whenever a bucket expires the candidates are estimated again and those left with nothing in the
+// window are dropped, so a new key competes with what the old keys count now rather than with
+// what they counted before the window moved.
+public class SlidingHeavyHitters {
+    private long bucketMillis;
+    private CountMinSketch[] buckets;
+    private CountMinSketch window; // Sum of the live buckets
+    private long newestBucket = Long.MIN_VALUE; // Time / bucketMillis of the newest bucket
+    private int[] candidateKeys;
+    private long[] candidateCounts;
+    private int candidates;
+
+    // Constructor for a window of the given length split into the given number of buckets, with
+    // sketches of the given depth and width, and room for the given number of candidates.
+    public SlidingHeavyHitters(long windowMillis, int bucketCount, int depth, int width, int capacity) {
+        this.bucketMillis = Math.max(1, windowMillis / bucketCount);
+        this.buckets = new CountMinSketch[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            buckets[i] = new CountMinSketch(depth, width);
+        }
+        this.window = new CountMinSketch(depth, width);
+        this.candidateKeys = new int[capacity];
+        this.candidateCounts = new long[capacity];
+    }
+
+    // Method to count a key at a time in milliseconds.
+    public void add(int key, long count, long now) {
+        advance(now);
+        buckets[slot(newestBucket)].add(key, count);
+        window.add(key, count);
+        offer(key, window.estimate(key));
+    }
+
+    // Method to get up to n keys with the highest estimated counts in the window ending at a time,
+    // highest first. Each entry is {key, estimated count}.
+    public List<long[]> top(int n, long now) {
+        advance(now);
+        estimateCandidates();
+        List<long[]> top = new ArrayList<>();
+        for (int i = 0; i < candidates; i++) {
+            top.add(new long[] { candidateKeys[i], candidateCounts[i] });
+        }
+        top.sort((first, second) -> first[1] != second[1] ? Long.compare(second[1], first[1])
+                : Long.compare(first[0], second[0]));
+        return top.size() > n ? new ArrayList<>(top.subList(0, n)) : top;
+    }
+
+    // Method to get the most an estimate in the current window can overcount by.
+    public long getErrorBound() {
+        return window.getErrorBound();
+    }
+
+    // Method to get the total counted in the current window.
+    public long getTotal() {
+        return window.getTotal();
+    }
+
+    // Moves the window so the given time falls in the newest bucket, expiring older buckets.
+    // A time earlier than the newest bucket counts towards the newest bucket.
+    private void advance(long now) {
+        long bucket = Math.floorDiv(now, bucketMillis);
+        if (newestBucket == Long.MIN_VALUE) {
+            newestBucket = bucket;
+            return;
+        }
+        long steps = Math.min(bucket - newestBucket, buckets.length);
+        for (long step = 1; step <= steps; step++) {
+            CountMinSketch expired = buckets[slot(newestBucket + step)];
+            window.subtract(expired);
+            expired.clear();
+        }
+        if (bucket > newestBucket) {
+            newestBucket = bucket;
+            estimateCandidates();
+        }
+    }
+
+    // Estimates the candidates again from the window, dropping those with nothing left in it.
+    private void estimateCandidates() {
+        int kept = 0;
+        for (int i = 0; i < candidates; i++) {
+            long estimate = window.estimate(candidateKeys[i]);
+            if (estimate > 0) {
+                candidateKeys[kept] = candidateKeys[i];
+                candidateCounts[kept] = estimate;
+                kept++;
+            }
+        }
+        candidates = kept;
+    }
+
+    private int slot(long bucket) {
+        return (int) Math.floorMod(bucket, (long) buckets.length);
+    }
+
+    private void offer(int key, long estimate) {
+        int smallest = -1;
+        for (int i = 0; i < candidates; i++) {
+            if (candidateKeys[i] == key) {
+                candidateCounts[i] = estimate;
+                return;
+            }
+            if (smallest < 0 || candidateCounts[i] < candidateCounts[smallest]) {
+                smallest = i;
+            }
+        }
+        if (candidates < candidateKeys.length) {
+            candidateKeys[candidates] = key;
+            candidateCounts[candidates] = estimate;
+            candidates++;
+        } else if (estimate > candidateCounts[smallest]) {
+            candidateKeys[smallest] = key;
+            candidateCounts[smallest] = estimate;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+// A class representing a stable, point-in-time view of the products, clients and invoices.
+// Reading from a snapshot takes no locks and never sees a change that was half made; writes that
+// commit after the snapshot was opened are not visible. Close the snapshot when done so the old
+// versions it holds can be reclaimed, for example with try-with-resources.
+//
+// Invoices are numbered by position: first those of the sealed months, month by month, then those
+// of the open month in the order they were added. The sealed months are read from their files as
+// they are needed.
+public class Snapshot implements AutoCloseable {
+    private SnapshotStore store;
+    private long version;
+    private InvoiceList.SealedMonths sealed;
+    private Invoice[][] logChunks; // The open month's invoices
+    private int logCount;
+    private int invoiceCount;
+    private boolean closed;
+
+    // Constructor used by SnapshotStore.open().
+    Snapshot(SnapshotStore store, long version, InvoiceList.SealedMonths sealed, Invoice[][] logChunks, int logCount) {
+        this.store = store;
+        this.version = version;
+        this.sealed = sealed;
+        this.logChunks = logChunks;
+        this.logCount = logCount;
+        this.invoiceCount = sealed.size() + logCount;
+    }
+
+    // Method to get the version this snapshot sees.
+    public long getVersion() {
+        return version;
+    }
+
+    // Method to get a product by its ID, or null if it did not exist at this version.
+    public ProductState getProductById(String productId) {
+        return store.productAt(Product.parseProductId(productId), version);
+    }
+
+    // Method to get a client by their ID, or null if they did not exist at this version.
+    public ClientState getClientById(String clientId) {
+        return store.clientAt(Client.parseClientId(clientId), version);
+    }
+
+    // Method to get an iterator for all products, in product ID order.
+    public Iterator<ProductState> getProducts() {
+        return store.productsAt(version);
+    }
+
+    // Method to get an iterator for all clients, in client ID order.
+    public Iterator<ClientState> getClients() {
+        return store.clientsAt(version);
+    }
+
+    // Method to get the number of invoices.
+    public int getInvoiceCount() {
+        return invoiceCount;
+    }
+
+    // Method to get an iterator for all invoices, month by month.
+    public Iterator<Invoice> getInvoices() {
+        Iterator<Invoice> sealedInvoices = sealed.iterator();
+        return new Iterator<Invoice>() {
+            private int index;
+
+            public boolean hasNext() {
+                return sealedInvoices.hasNext() || index < logCount;
+            }
+
+            public Invoice next() {
+                if (sealedInvoices.hasNext()) {
+                    return sealedInvoices.next();
+                }
+                if (index >= logCount) {
+                    throw new NoSuchElementException();
+                }
+                return SnapshotStore.invoiceAt(logChunks, index++);
+            }
+        };
+    }
+
+    // Method to get an invoice by its position, from 0 to getInvoiceCount() - 1.
+    // Positions can be read in any order and from several threads.
+    public Invoice getInvoice(int index) {
+        if (index < 0 || index >= invoiceCount) {
+            throw new IndexOutOfBoundsException("Invoice " + index + " of " + invoiceCount);
+        }
+        int sealedCount = sealed.size();
+        return index < sealedCount ? sealed.get(index) : SnapshotStore.invoiceAt(logChunks, index - sealedCount);
+    }
+
+    // Method to get the invoices for a specific client ID. Only the sealed months with invoices for
+    // the client are read.
+    public List<Invoice> getInvoicesForClient(String clientId) {
+        int clientNumber = Client.parseClientId(clientId);
+        List<Invoice> invoices = clientNumber < 0 ? new ArrayList<>() : sealed.getInvoicesForClient(clientNumber);
+        for (int i = 0; i < logCount; i++) {
+            Invoice invoice = SnapshotStore.invoiceAt(logChunks, i);
+            if (invoice.getClientNumber() == clientNumber) {
+                invoices.add(invoice);
+            }
+        }
+        return invoices;
+    }
+
+    // Method to release the snapshot. It must not be used afterwards.
+    public void close() {
+        if (!closed) {
+            closed = true;
+            store.release(version);
+        }
+    }
+}
@@ -0,0 +1,286 @@
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+// A class that keeps several versions of the products, clients and invoices so that readers can
+// work on a stable point-in-time view without any locks (multi-version concurrency control).
+//
+// Every write to the warehouse commits the states of the products and clients it changed, plus any
+// new invoices, as one new version. A Snapshot sees exactly the versions committed before it was
+// opened. The invoice log holds only the invoices of the open month; the sealed months never
+// change, so a snapshot reads them through a view of the InvoiceList taken with its version, and
+// they stay in their files until a reader needs them. When a month is sealed the log starts again
+// with the new open month. Each product and client keeps a chain of states from newest to oldest; when a product or
+// client is committed again, the states older than the oldest one any open snapshot can still see
+// are unlinked and left to the garbage collector.
+public class SnapshotStore {
+    private static final int CHUNK_SIZE = 1024;
+    private static SnapshotStore snapshotStore;
+
+    private ConcurrentSkipListMap<Integer, Version<ProductState>> products = new ConcurrentSkipListMap<>();
+    private ConcurrentSkipListMap<Integer, Version<ClientState>> clients = new ConcurrentSkipListMap<>();
+    private ConcurrentSkipListMap<Long, Integer> readers = new ConcurrentSkipListMap<>(); // version -> open snapshots
+    private volatile Head head = new Head(0, null, new Invoice[0][], 0);
+    private boolean seeded;
+
+    // A class holding one state of a product or client and a link to the state before it.
+    private static class Version<T> {
+        private final T state;
+        private final long version;
+        private volatile Version<T> older;
+
+        private Version(T state, long version, Version<T> older) {
+            this.state = state;
+            this.version = version;
+            this.older = older;
+        }
+    }
+
+    // A class holding the latest committed version with the invoices it includes: the sealed months,
+    // and the append-only log of the open month with the number of invoices in it. All of them are
+    // read together through one volatile field.
+    private static class Head {
+        private final long version;
+        private final InvoiceList.SealedMonths sealed; // Null before the store is seeded
+        private final Invoice[][] logChunks;
+        private final int logCount;
+
+        private Head(long version, InvoiceList.SealedMonths sealed, Invoice[][] logChunks, int logCount) {
+            this.version = version;
+            this.sealed = sealed;
+            this.logChunks = logChunks;
+            this.logCount = logCount;
+        }
+    }
+
+    private SnapshotStore() {
+        // Private constructor to enforce singleton pattern.
+    }
+
+    // Method to get an instance of the SnapshotStore (singleton pattern).
+    public static synchronized SnapshotStore instance() {
+        if (snapshotStore == null) {
+            return (snapshotStore = new SnapshotStore());
+        } else {
+            return snapshotStore;
+        }
+    }
+
+    // Method to check if the store has been loaded with the warehouse data.
+    public synchronized boolean isSeeded() {
+        return seeded;
+    }
+
+    // Method to load the store with the current warehouse data as its first version, dropping
+    // anything it held before. The caller must stop all writes while this runs.
+    public synchronized void seed(Iterator<Product> allProducts, Iterator<Client> allClients, InvoiceList invoiceList) {
+        products.clear();
+        clients.clear();
+        long version = head.version + 1;
+        while (allProducts.hasNext()) {
+            Product product = allProducts.next();
+            products.put(product.getProductNumber(), new Version<>(new ProductState(product), version, null));
+        }
+        while (allClients.hasNext()) {
+            Client client = allClients.next();
+            clients.put(client.getClientNumber(), new Version<>(new ClientState(client), version, null));
+        }
+        head = startLog(version, invoiceList);
+        seeded = true;
+    }
+
+    // Method to forget all versions, for example after the warehouse data has been reloaded. A new,
+    // empty store takes the place of the current one and must be seeded before it is used.
+    // Snapshots that are still open keep reading the old store, which goes once they are closed.
+    public static synchronized void reset() {
+        long version = snapshotStore == null ? 0 : snapshotStore.getVersion();
+        snapshotStore = new SnapshotStore();
+        snapshotStore.head = new Head(version + 1, null, new Invoice[0][], 0);
+    }
+
+    // Method to commit the new states of the given products and clients, and the new invoices added
+    // to the invoice list, as one version. Snapshots opened afterwards see all of them; earlier
+    // snapshots see none.
+    public synchronized void commit(Collection<Product> changedProducts, Collection<Client> changedClients,
+            Collection<Invoice> newInvoices, InvoiceList invoiceList) {
+        if (!seeded) {
+            return;
+        }
+        Head current = head;
+        long version = current.version + 1;
+        for (Product product : changedProducts) {
+            products.compute(product.getProductNumber(),
+                    (id, older) -> new Version<>(new ProductState(product), version, older));
+        }
+        for (Client client : changedClients) {
+            clients.compute(client.getClientNumber(),
+                    (id, older) -> new Version<>(new ClientState(client), version, older));
+        }
+        if (invoiceList.getSealedMonths() != current.sealed) {
+            head = startLog(version, invoiceList); // A month was sealed: the log starts again
+        } else {
+            Invoice[][] chunks = current.logChunks;
+            int count = current.logCount;
+            for (Invoice invoice : newInvoices) {
+                chunks = append(chunks, invoice, count++);
+            }
+            head = new Head(version, current.sealed, chunks, count); // Publishes the new version to readers
+        }
+
+        long oldestNeeded = oldestReaderVersion(version);
+        for (Product product : changedProducts) {
+            prune(products.get(product.getProductNumber()), oldestNeeded);
+        }
+        for (Client client : changedClients) {
+            prune(clients.get(client.getClientNumber()), oldestNeeded);
+        }
+    }
+
+    // Method to open a snapshot of the latest committed version. The snapshot must be closed so
+    // that the versions it holds can be reclaimed.
+    public Snapshot open() {
+        while (true) {
+            Head current = head;
+            readers.merge(current.version, 1, Integer::sum);
+            if (head == current) {
+                return new Snapshot(this, current.version, current.sealed, current.logChunks, current.logCount);
+            }
+            // A commit happened while registering; it may not have seen this reader, so retry.
+            release(current.version);
+        }
+    }
+
+    // Method to get the number of snapshots that are open.
+    public int getOpenSnapshotCount() {
+        int count = 0;
+        for (int readersAtVersion : readers.values()) {
+            count += readersAtVersion;
+        }
+        return count;
+    }
+
+    // Method to get the latest committed version.
+    public long getVersion() {
+        return head.version;
+    }
+
+    // Called by Snapshot.close().
+    void release(long version) {
+        readers.computeIfPresent(version, (v, count) -> count == 1 ? null : count - 1);
+    }
+
+    // Method to get the state of a product visible at a version, or null if it did not exist yet.
+    ProductState productAt(int productNumber, long version) {
+        return visible(products.get(productNumber), version);
+    }
+
+    // Method to get the state of a client visible at a version, or null if they did not exist yet.
+    ClientState clientAt(int clientNumber, long version) {
+        return visible(clients.get(clientNumber), version);
+    }
+
+    // Method to go through the products visible at a version, in product number order.
+    Iterator<ProductState> productsAt(long version) {
+        return visibleStates(products.values().iterator(), version);
+    }
+
+    // Method to go through the clients visible at a version, in client number order.
+    Iterator<ClientState> clientsAt(long version) {
+        return visibleStates(clients.values().iterator(), version);
+    }
+
+    // Method to get the state in a chain that is visible at a version.
+    private static <T> T visible(Version<T> newest, long version) {
+        for (Version<T> node = newest; node != null; node = node.older) {
+            if (node.version <= version) {
+                return node.state;
+            }
+        }
+        return null;
+    }
+
+    // Method to go through the states of several chains visible at a version, skipping chains
+    // whose first state is newer than the version.
+    private static <T> Iterator<T> visibleStates(Iterator<Version<T>> chains, long version) {
+        return new Iterator<T>() {
+            private T next = advance();
+
+            private T advance() {
+                while (chains.hasNext()) {
+                    T state = visible(chains.next(), version);
+                    if (state != null) {
+                        return state;
+                    }
+                }
+                return null;
+            }
+
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            public T next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                T state = next;
+                next = advance();
+                return state;
+            }
+        };
+    }
+
+    // Method to get an invoice from a log by position.
+    static Invoice invoiceAt(Invoice[][] logChunks, int index) {
+        return logChunks[index / CHUNK_SIZE][index % CHUNK_SIZE];
+    }
+
+    // Builds a head whose log holds the invoices of the open month, with the sealed months as they are now.
+    private static Head startLog(long version, InvoiceList invoiceList) {
+        Invoice[][] chunks = new Invoice[0][];
+        int count = 0;
+        for (Invoice invoice : invoiceList.getOpenMonthInvoices()) {
+            chunks = append(chunks, invoice, count++);
+        }
+        return new Head(version, invoiceList.getSealedMonths(), chunks, count);
+    }
+
+    // Adds an invoice at a position of a log, returning the log (grown if the position starts a new
+    // chunk). Readers only look at positions below the published count, and the count is published
+    // after the invoice is stored.
+    private static Invoice[][] append(Invoice[][] chunks, Invoice invoice, int index) {
+        int chunk = index / CHUNK_SIZE;
+        if (chunk == chunks.length) {
+            Invoice[][] grown = new Invoice[chunks.length + 1][];
+            System.arraycopy(chunks, 0, grown, 0, chunks.length);
+            grown[chunk] = new Invoice[CHUNK_SIZE];
+            chunks = grown;
+        }
+        chunks[chunk][index % CHUNK_SIZE] = invoice;
+        return chunks;
+    }
+
+    // The oldest version an open snapshot may still read, or the given version if none are open.
+    private long oldestReaderVersion(long latest) {
+        Map.Entry<Long, Integer> oldest = readers.firstEntry();
+        return oldest == null ? latest : Math.min(oldest.getKey(), latest);
+    }
+
+    // Unlinks the states that no open snapshot can see: everything older than the newest state
+    // at or before the oldest version still needed.
+    private static <T> void prune(Version<T> newest, long oldestNeeded) {
+        for (Version<T> node = newest; node != null; node = node.older) {
+            if (node.version <= oldestNeeded) {
+                node.older = null;
+                return;
+            }
+        }
+    }
+
+    // Method to provide a string representation of the SnapshotStore.
+    public String toString() {
+        return "SnapshotStore: version " + head.version + ", " + getOpenSnapshotCount() + " open snapshots";
+    }
+}
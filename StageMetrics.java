@@ -0,0 +1,63 @@
+// A class holding the figures of one OrderPipeline stage at a moment: how many orders wait in
+// its input queue, how many it has processed and in how many batches, and its throughput since
+// the pipeline started.
+public class StageMetrics {
+    private String stage;
+    private int queueDepth;
+    private int queueCapacity;
+    private long processed;
+    private long batches;
+    private double ordersPerSecond;
+
+    // Constructor for the figures of a stage.
+    public StageMetrics(String stage, int queueDepth, int queueCapacity, long processed, long batches,
+            double ordersPerSecond) {
+        this.stage = stage;
+        this.queueDepth = queueDepth;
+        this.queueCapacity = queueCapacity;
+        this.processed = processed;
+        this.batches = batches;
+        this.ordersPerSecond = ordersPerSecond;
+    }
+
+    // Method to get the name of the stage.
+    public String getStage() {
+        return stage;
+    }
+
+    // Method to get the number of orders waiting in the stage's input queue.
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    // Method to get the capacity of the stage's input queue.
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    // Method to get the number of orders the stage has processed.
+    public long getProcessed() {
+        return processed;
+    }
+
+    // Method to get the number of batches the stage has processed.
+    public long getBatches() {
+        return batches;
+    }
+
+    // Method to get the average number of orders per batch.
+    public double getAverageBatchSize() {
+        return batches == 0 ? 0 : (double) processed / batches;
+    }
+
+    // Method to get the orders processed per second since the pipeline started.
+    public double getOrdersPerSecond() {
+        return ordersPerSecond;
+    }
+
+    // Method to provide a string representation of the figures.
+    public String toString() {
+        return String.format("%-8s queue %d/%d | processed %d in %d batches (avg %.1f) | %.0f orders/s", stage,
+                queueDepth, queueCapacity, processed, batches, getAverageBatchSize(), ordersPerSecond);
+    }
+}
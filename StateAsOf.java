@@ -0,0 +1,206 @@
+import java.util.Arrays;
+
+// A class representing the warehouse as it was at one moment, rebuilt from the EventJournal:
+// the balance of every client, the stock of every product, the waitlists in the order clients
+// joined them, and the wishlists. Clients and products are given by number.
+//
+// Balances and stock are kept in arrays indexed by number, since numbers are handed out in
+// sequence, and the lists in primitive maps, so replaying an event does not allocate unless it
+// starts a new list.
+public class StateAsOf {
+    private long time;
+    private double[] balances = new double[0]; // NaN where there is no client
+    private int[] stock = new int[0]; // -1 where there is no product
+    private IntObjectMap<IntIntMap> waitlists = new IntObjectMap<>(); // Product -> client -> quantity
+    private IntObjectMap<IntIntMap> waitingByClient = new IntObjectMap<>(); // Client -> product -> quantity
+    private IntObjectMap<IntIntMap> wishlists = new IntObjectMap<>(); // Client -> product -> quantity
+    private int waitlistEntries;
+    private int wishlistEntries;
+
+    // Constructor for an empty state.
+    StateAsOf() {
+    }
+
+    // Method to get the moment the state is for, in milliseconds.
+    public long getTime() {
+        return time;
+    }
+
+    // Method to check if a client existed.
+    public boolean hasClient(int clientNumber) {
+        return !Double.isNaN(getBalance(clientNumber));
+    }
+
+    // Method to get the balance of a client, or NaN if there was no such client.
+    public double getBalance(int clientNumber) {
+        return clientNumber >= 0 && clientNumber < balances.length ? balances[clientNumber] : Double.NaN;
+    }
+
+    // Method to get the stock of a product, or -1 if there was no such product.
+    public int getStock(int productNumber) {
+        return productNumber >= 0 && productNumber < stock.length ? stock[productNumber] : -1;
+    }
+
+    // Method to get the numbers of the clients on a product's waitlist, in the order they joined.
+    public int[] getWaitlist(int productNumber) {
+        IntIntMap waitlist = waitlists.get(productNumber);
+        return waitlist == null ? new int[0] : waitlist.keys();
+    }
+
+    // Method to get the quantity a client waited for on a product's waitlist, or 0.
+    public int getWaitlistQuantity(int productNumber, int clientNumber) {
+        IntIntMap waitlist = waitlists.get(productNumber);
+        return waitlist == null ? 0 : waitlist.get(clientNumber, 0);
+    }
+
+    // Method to get a client's place on a product's waitlist, counting from 1, or 0 if they were not on it.
+    public int getWaitlistPosition(int productNumber, int clientNumber) {
+        IntIntMap waitlist = waitlists.get(productNumber);
+        return waitlist == null ? 0 : waitlist.indexOf(clientNumber) + 1;
+    }
+
+    // Method to get the numbers of the products a client waited for.
+    public int[] getWaitlistedProducts(int clientNumber) {
+        IntIntMap waiting = waitingByClient.get(clientNumber);
+        return waiting == null ? new int[0] : waiting.keys();
+    }
+
+    // Method to get the numbers of the products on a client's wishlist, in the order they were added.
+    public int[] getWishlist(int clientNumber) {
+        IntIntMap wishlist = wishlists.get(clientNumber);
+        return wishlist == null ? new int[0] : wishlist.keys();
+    }
+
+    // Method to get the quantity of a product on a client's wishlist, or 0.
+    public int getWishlistQuantity(int clientNumber, int productNumber) {
+        IntIntMap wishlist = wishlists.get(clientNumber);
+        return wishlist == null ? 0 : wishlist.get(productNumber, 0);
+    }
+
+    // Method to provide a string representation of the state.
+    public String toString() {
+        int clients = 0;
+        for (double balance : balances) {
+            clients += Double.isNaN(balance) ? 0 : 1;
+        }
+        int products = 0;
+        for (int quantity : stock) {
+            products += quantity < 0 ? 0 : 1;
+        }
+        return "State as of " + time + ": " + clients + " clients, " + products + " products, " + waitlistEntries
+                + " waitlist entries, " + wishlistEntries + " wishlist entries";
+    }
+
+    void setTime(long time) {
+        this.time = time;
+    }
+
+    // Applies one event from the journal (see EventJournal for the meaning of the fields).
+    void apply(byte type, int subject, int object, long value) {
+        switch (type) {
+            case EventJournal.BALANCE:
+                if (subject >= balances.length) {
+                    int oldLength = balances.length;
+                    balances = Arrays.copyOf(balances, grownLength(oldLength, subject));
+                    Arrays.fill(balances, oldLength, balances.length, Double.NaN);
+                }
+                balances[subject] = Double.longBitsToDouble(value);
+                break;
+            case EventJournal.STOCK:
+                if (subject >= stock.length) {
+                    int oldLength = stock.length;
+                    stock = Arrays.copyOf(stock, grownLength(oldLength, subject));
+                    Arrays.fill(stock, oldLength, stock.length, -1);
+                }
+                stock[subject] = (int) value;
+                break;
+            case EventJournal.WAITLIST:
+                waitlistEntries += set(waitlists, subject, object, (int) value);
+                set(waitingByClient, object, subject, (int) value);
+                break;
+            case EventJournal.WISHLIST:
+                wishlistEntries += set(wishlists, subject, object, (int) value);
+                break;
+            case EventJournal.PAYMENT:
+                break; // The balance is set by the BALANCE event that follows
+            default:
+                throw new IllegalArgumentException("Unknown event type " + type);
+        }
+    }
+
+    // Method to get a rough count of what the state holds, used to space checkpoints out.
+    int weight() {
+        return balances.length + stock.length + waitlistEntries + wishlistEntries;
+    }
+
+    // Method to get a copy that can be changed without affecting this state.
+    StateAsOf copy() {
+        StateAsOf copy = new StateAsOf();
+        copy.time = time;
+        copy.balances = balances.clone();
+        copy.stock = stock.clone();
+        copy.waitlists = copyOf(waitlists);
+        copy.waitingByClient = copyOf(waitingByClient);
+        copy.wishlists = copyOf(wishlists);
+        copy.waitlistEntries = waitlistEntries;
+        copy.wishlistEntries = wishlistEntries;
+        return copy;
+    }
+
+    // Copies a waitlist or wishlist of a product or client, or returns an empty list.
+    IntIntMap copyOfList(IntObjectMap<IntIntMap> lists, int key) {
+        IntIntMap list = lists.get(key);
+        IntIntMap copy = new IntIntMap(list == null ? 4 : list.size());
+        if (list != null) {
+            list.forEach(copy::put);
+        }
+        return copy;
+    }
+
+    IntObjectMap<IntIntMap> waitlists() {
+        return waitlists;
+    }
+
+    IntObjectMap<IntIntMap> waitingByClient() {
+        return waitingByClient;
+    }
+
+    IntObjectMap<IntIntMap> wishlists() {
+        return wishlists;
+    }
+
+    // Sets or (for a quantity of 0) removes an entry of a list. Returns the change in the number of entries.
+    private static int set(IntObjectMap<IntIntMap> lists, int key, int entry, int quantity) {
+        IntIntMap list = lists.get(key);
+        if (quantity > 0) {
+            if (list == null) {
+                list = new IntIntMap();
+                lists.put(key, list);
+            }
+            int before = list.size();
+            list.put(entry, quantity);
+            return list.size() - before;
+        }
+        if (list == null || !list.remove(entry)) {
+            return 0;
+        }
+        if (list.isEmpty()) {
+            lists.remove(key);
+        }
+        return -1;
+    }
+
+    private static IntObjectMap<IntIntMap> copyOf(IntObjectMap<IntIntMap> lists) {
+        IntObjectMap<IntIntMap> copy = new IntObjectMap<>(lists.size());
+        lists.forEach((key, list) -> {
+            IntIntMap listCopy = new IntIntMap(list.size());
+            list.forEach(listCopy::put);
+            copy.put(key, listCopy);
+        });
+        return copy;
+    }
+
+    private static int grownLength(int length, int index) {
+        return Math.max(index + 1, Math.max(16, length + (length >> 1)));
+    }
+}
@@ -0,0 +1,129 @@
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+// A class representing a client's statement for a period: the balance at the start, the invoices
+// and payments in the period, and the balance at the end. Amounts are kept in whole cents. If the
+// balance changed in other ways (for example it was set by hand), the difference is shown as an
+// adjustment, so the statement always adds up.
+public class Statement {
+    private String clientId;
+    private String clientName;
+    private String address;
+    private long from; // Start of the period in milliseconds, included
+    private long to; // End of the period in milliseconds, included
+    private long openingCents;
+    private long closingCents;
+    private List<Invoice> invoices = new ArrayList<>();
+    private List<long[]> payments = new ArrayList<>(); // {time, cents}
+
+    // Constructor for a statement of a client for a period, with the balance at its start.
+    public Statement(Client client, long from, long to, double openingBalance) {
+        this.clientId = client.getClientId();
+        this.clientName = client.getClientName();
+        this.address = client.getAddress();
+        this.from = from;
+        this.to = to;
+        this.openingCents = toCents(openingBalance);
+    }
+
+    // Method to add an invoice of the period.
+    public void addInvoice(Invoice invoice) {
+        invoices.add(invoice);
+    }
+
+    // Method to add a payment of the period.
+    public void addPayment(long time, double amount) {
+        payments.add(new long[] { time, toCents(amount) });
+    }
+
+    // Method to set the balance at the end of the period.
+    public void setClosingBalance(double closingBalance) {
+        closingCents = toCents(closingBalance);
+    }
+
+    // Method to get the client ID.
+    public String getClientId() {
+        return clientId;
+    }
+
+    // Method to get the balance at the start of the period, in cents.
+    public long getOpeningCents() {
+        return openingCents;
+    }
+
+    // Method to get the balance at the end of the period, in cents.
+    public long getClosingCents() {
+        return closingCents;
+    }
+
+    // Method to get the invoices of the period.
+    public List<Invoice> getInvoices() {
+        return invoices;
+    }
+
+    // Method to get the total of the invoices of the period, in cents.
+    public long getInvoicedCents() {
+        long cents = 0;
+        for (Invoice invoice : invoices) {
+            cents += toCents(invoice.getTotalAmount());
+        }
+        return cents;
+    }
+
+    // Method to get the total of the payments of the period, in cents.
+    public long getPaidCents() {
+        long cents = 0;
+        for (long[] payment : payments) {
+            cents += payment[1];
+        }
+        return cents;
+    }
+
+    // Method to get the change in the balance not explained by the invoices and payments, in cents.
+    public long getAdjustmentCents() {
+        return closingCents - (openingCents - getInvoicedCents() + getPaidCents());
+    }
+
+    // Method to render the statement as text.
+    public String render() {
+        StringBuilder text = new StringBuilder();
+        text.append("Statement for ").append(clientId).append(" | ").append(clientName).append(" | ").append(address)
+                .append('\n');
+        text.append("Period: ").append(dayOf(from)).append(" to ").append(dayOf(to)).append(" (UTC)\n");
+        text.append("Opening balance: ").append(Report.formatCents(openingCents)).append('\n');
+        text.append("Invoices: ").append(invoices.size()).append(", total ")
+                .append(Report.formatCents(getInvoicedCents())).append('\n');
+        for (Invoice invoice : invoices) {
+            text.append("  ").append(dayOf(invoice.getTime())).append("  ").append(invoice.getInvoiceId()).append("  ")
+                    .append(Report.formatCents(toCents(invoice.getTotalAmount()))).append('\n');
+        }
+        text.append("Payments: ").append(payments.size()).append(", total ").append(Report.formatCents(getPaidCents()))
+                .append('\n');
+        for (long[] payment : payments) {
+            text.append("  ").append(dayOf(payment[0])).append("  ").append(Report.formatCents(payment[1]))
+                    .append('\n');
+        }
+        long adjustment = getAdjustmentCents();
+        if (adjustment != 0) {
+            text.append("Other adjustments: ").append(Report.formatCents(adjustment)).append('\n');
+        }
+        text.append("Closing balance: ").append(Report.formatCents(closingCents)).append('\n');
+        return text.toString();
+    }
+
+    // Method to provide a string representation of the statement.
+    public String toString() {
+        return render();
+    }
+
+    private static LocalDate dayOf(long timeMillis) {
+        return Instant.ofEpochMilli(timeMillis).atZone(ZoneOffset.UTC).toLocalDate();
+    }
+
+    private static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+}
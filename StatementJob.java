@@ -0,0 +1,188 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// A class that writes the statements of every client for a month, one text file per client
+// (named after the client ID) in a directory for the month.
+//
+// collect() makes one pass over the month's invoices (reading only the months of the invoice
+// list that have any) and one over the payments in the event journal, and sorts them into the
+// clients' statements; the opening and closing balances come from two rebuilds of the state.
+// write() then renders and writes the statements on a fork-join pool.
+//
+// The job can be run again after it was interrupted. Each file is written under a temporary name
+// and renamed when complete, clients that already have a file are left out, and a marker file is
+// written once every statement is done. Statements of a month that is over do not change, so a
+// second run writes the same files the first one would have; a month that is not over yet is
+// always written in full and never marked complete.
+public class StatementJob {
+    public static final String COMPLETE_FILE = "complete"; // Marks a month whose statements are all written
+    private static final String SUFFIX = ".txt";
+    private static final int MIN_CHUNK = 16;
+
+    private YearMonth month;
+    private Path monthDirectory;
+    private ForkJoinPool pool; // Null to write sequentially
+    private List<Statement> statements = new ArrayList<>();
+    private boolean over; // Whether the month was over when the statements were collected
+    private int skipped;
+
+    // A task writing the statements between two positions, splitting the range while it is large.
+    private class WriteTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final List<Statement> pending;
+        private final int from;
+        private final int to;
+        private final AtomicInteger written;
+
+        private WriteTask(List<Statement> pending, int from, int to, AtomicInteger written) {
+            this.pending = pending;
+            this.from = from;
+            this.to = to;
+            this.written = written;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= MIN_CHUNK) {
+                for (int i = from; i < to; i++) {
+                    writeStatement(pending.get(i));
+                    written.incrementAndGet();
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new WriteTask(pending, from, middle, written), new WriteTask(pending, middle, to, written));
+        }
+    }
+
+    // Constructor for a job writing a month's statements under a directory, on the common fork-join pool.
+    public StatementJob(YearMonth month, Path directory) {
+        this(month, directory, ForkJoinPool.commonPool());
+    }
+
+    // Constructor for a job on the given fork-join pool, or a sequential job if the pool is null.
+    public StatementJob(YearMonth month, Path directory, ForkJoinPool pool) {
+        this.month = month;
+        this.monthDirectory = directory.resolve(month.toString());
+        this.pool = pool;
+    }
+
+    // Method to get the directory the month's statements are written to.
+    public Path getMonthDirectory() {
+        return monthDirectory;
+    }
+
+    // Method to check if every statement of the month has been written.
+    public boolean isComplete() {
+        return Files.exists(monthDirectory.resolve(COMPLETE_FILE));
+    }
+
+    // Method to get the number of clients left out because their statement was already written.
+    public int getSkipped() {
+        return skipped;
+    }
+
+    // Method to gather the statements of the clients that had an account by the end of the month.
+    // A month that is not over yet is covered up to now, and one that began before the journal did
+    // from the start of the journal. The caller must keep the data from changing
+    // (Warehouse.writeStatements() holds the read lock).
+    public void collect(Iterator<Client> clients, InvoiceList invoiceList, EventJournal history, long now) {
+        long from = month.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        long end = month.plusMonths(1).atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli() - 1;
+        long to = Math.min(end, now);
+        if (to < history.getStartTime()) {
+            throw new IllegalArgumentException("There is no history for " + month + "; it starts at "
+                    + new java.util.Date(history.getStartTime()));
+        }
+        long openingTime = Math.max(from - 1, history.getStartTime()); // Events after it are in the statement
+        StateAsOf opening = history.stateAsOf(openingTime);
+        StateAsOf closing = history.stateAsOf(to);
+        IntObjectMap<Statement> byClient = new IntObjectMap<>();
+        statements.clear();
+        over = end <= now;
+        while (clients.hasNext()) {
+            Client client = clients.next();
+            int clientNumber = client.getClientNumber();
+            if (!closing.hasClient(clientNumber)) {
+                continue;
+            }
+            double openingBalance = opening.hasClient(clientNumber) ? opening.getBalance(clientNumber) : 0;
+            Statement statement = new Statement(client, openingTime + 1, to, openingBalance);
+            statement.setClosingBalance(closing.getBalance(clientNumber));
+            byClient.put(clientNumber, statement);
+            statements.add(statement);
+        }
+        for (Invoice invoice : invoiceList.getInvoicesBetween(openingTime + 1, to)) {
+            Statement statement = byClient.get(invoice.getClientNumber());
+            if (statement != null) {
+                statement.addInvoice(invoice);
+            }
+        }
+        history.forEachPayment(openingTime + 1, to, (clientNumber, time, amount) -> {
+            Statement statement = byClient.get(clientNumber);
+            if (statement != null) {
+                statement.addPayment(time, amount);
+            }
+        });
+    }
+
+    // Method to write the collected statements, leaving out the clients whose statement a run that
+    // was interrupted already wrote, then mark the month complete. A month that was not over is
+    // written in full and not marked, since its statements can still change. Returns the number of
+    // statements written.
+    public int write() throws IOException {
+        Files.createDirectories(monthDirectory);
+        List<Statement> pending = new ArrayList<>();
+        skipped = 0;
+        for (Statement statement : statements) {
+            if (over && Files.exists(fileOf(statement.getClientId()))) {
+                skipped++;
+            } else {
+                pending.add(statement);
+            }
+        }
+        AtomicInteger written = new AtomicInteger();
+        try {
+            if (pool == null) {
+                new WriteTask(pending, 0, pending.size(), written).compute();
+            } else {
+                pool.invoke(new WriteTask(pending, 0, pending.size(), written));
+            }
+        } catch (UncheckedIOException uioe) {
+            throw uioe.getCause();
+        }
+        if (over) {
+            Files.write(monthDirectory.resolve(COMPLETE_FILE),
+                    (statements.size() + " statements\n").getBytes(StandardCharsets.UTF_8));
+        }
+        return written.get();
+    }
+
+    // Writes one statement under a temporary name and renames it to its final name.
+    private void writeStatement(Statement statement) {
+        Path file = fileOf(statement.getClientId());
+        Path temporary = monthDirectory.resolve(statement.getClientId() + SUFFIX + ".tmp");
+        try {
+            Files.write(temporary, statement.render().getBytes(StandardCharsets.UTF_8));
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    private Path fileOf(String clientId) {
+        return monthDirectory.resolve(clientId + SUFFIX);
+    }
+}
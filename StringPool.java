@@ -0,0 +1,47 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+// A class that keeps one shared copy of each product name, so products loaded from different
+// files and the invoice lines made from them share the character data of a name. Only product
+// names are pooled: client names and addresses are mostly unique, and the pool never shrinks.
+public class StringPool {
+    private static StringPool stringPool;
+    private ConcurrentHashMap<String, String> strings = new ConcurrentHashMap<>();
+
+    private StringPool() {
+        // Private constructor to enforce singleton pattern.
+    }
+
+    // Method to get an instance of the StringPool (singleton pattern).
+    public static synchronized StringPool instance() {
+        if (stringPool == null) {
+            return (stringPool = new StringPool());
+        } else {
+            return stringPool;
+        }
+    }
+
+    // Method to get the shared copy of a string, adding it to the pool if it is new.
+    public String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String existing = strings.putIfAbsent(value, value);
+        return existing == null ? value : existing;
+    }
+
+    // Method to pass every string held by the pool to an action.
+    public void forEach(Consumer<String> action) {
+        strings.keySet().forEach(action);
+    }
+
+    // Method to get the number of distinct strings held by the pool.
+    public int size() {
+        return strings.size();
+    }
+
+    // Method to provide a string representation of the StringPool.
+    public String toString() {
+        return "StringPool: " + strings.size() + " strings";
+    }
+}
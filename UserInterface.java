@@ -1,4 +1,10 @@
 import java.io.*;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
 import java.util.*;
 
 // A class representing the user interface for managing the warehouse.
@@ -24,6 +30,18 @@ public class UserInterface {
     private static final int SHOW_INVOICES = 15;
     private static final int SHOW_CLIENT_INVOICE = 16;
     private static final int SUPPLY_PRODUCT = 17;
+    private static final int MEMORY_REPORT = 18;
+    private static final int SHOW_OUTSTANDING_BALANCES = 19;
+    private static final int SHOW_INVENTORY = 20;
+    private static final int END_OF_DAY_REPORTS = 21;
+    private static final int SET_REORDER_THRESHOLD = 22;
+    private static final int SHOW_LOW_STOCK = 23;
+    private static final int REORDER_SUGGESTIONS = 24;
+    private static final int SHOW_SALES = 25;
+    private static final int SHOW_LEADERBOARDS = 26;
+    private static final int EXPORT = 27;
+    private static final int CLIENT_HISTORY = 28;
+    private static final int WRITE_STATEMENTS = 29;
 
     private UserInterface() {
         if (yesOrNo("Look for saved data and use it?")) {
@@ -77,56 +95,104 @@ public class UserInterface {
 
     // Method to show the products in the wishlist.
     public void showWishlist() {
-        System.out.println("Wishlist:");
+        ReportWriter report = openReport();
+        if (report == null) {
+            return;
+        }
+        report.println("Wishlist:");
 
         Iterator<Client> allClients = warehouse.getClients();
-        while (allClients.hasNext()) {
+        while (allClients.hasNext() && !report.isDone()) {
             Client client = allClients.next();
-            Wishlist wishlist = client.getWishlist();
-
-            if (!wishlist.getProducts().isEmpty()) {
-                System.out.println("Client: " + client.getClientName());
-                System.out.println("Products in Wishlist:");
-
-                for (Product product : wishlist.getProducts()) {
-                    double totalPrice = wishlist.getProductQuantity(product.getProductId()) * product.getPrice();
 
-                    System.out.println("  Product ID: " + product.getProductId());
-                    System.out.println("  Product Name: " + product.getProductName());
-                    System.out.println("  Quantity: " + wishlist.getProductQuantity(product.getProductId()));
-                    System.out.println("  Product Price: " + product.getPrice());
-                    System.out.println("  Total Amount: " + totalPrice);
-                    System.out.println();
+            if (client.hasWishlist() && report.nextRow()) {
+                Wishlist wishlist = client.getWishlist();
+                report.println("Client: " + client.getClientName());
+                report.println("Products in Wishlist:");
+
+                for (Product product : wishlist) {
+                    int quantity = wishlist.getProductQuantity(product.getProductId());
+                    double totalPrice = quantity * product.getPrice();
+
+                    report.println("  Product ID: " + product.getProductId());
+                    report.println("  Product Name: " + product.getProductName());
+                    report.println("  Quantity: " + quantity);
+                    report.println("  Product Price: " + product.getPrice());
+                    report.println("  Total Amount: " + totalPrice);
+                    report.println();
                 }
             }
         }
+        closeReport(report);
     }
 
     // Method to show the products in the waitlist.
     public void showWaitlist() {
-        System.out.println("Waitlist:");
+        ReportWriter report = openReport();
+        if (report == null) {
+            return;
+        }
+        report.println("Waitlist:");
 
         Iterator<Product> allProducts = warehouse.getProducts();
-        while (allProducts.hasNext()) {
+        while (allProducts.hasNext() && !report.isDone()) {
             Product product = allProducts.next();
-            Waitlist waitlist = product.getWaitlist();
 
-            if (!waitlist.getClients().isEmpty()) {
-                System.out.println("Product ID: " + product.getProductId());
-                System.out.println("Product Name: " + product.getProductName());
+            if (product.hasWaitlist() && report.nextRow()) {
+                Waitlist waitlist = product.getWaitlist();
+                report.println("Product ID: " + product.getProductId());
+                report.println("Product Name: " + product.getProductName());
 
-                System.out.println("Clients in Waitlist:");
+                report.println("Clients in Waitlist:");
 
                 for (Client client : waitlist.getClients()) {
-                    System.out.println("  Client ID: " + client.getClientId());
-                    System.out.println("  Client Name: " + client.getClientName());
-                    System.out.println("  Client Address: " + client.getAddress());
-                    System.out.println("  Client Phone: " + client.getPhone());
-                    System.out.println("  Product Quantity: " + waitlist.getClientQuantity(client));
-                    System.out.println();
+                    report.println("  Client ID: " + client.getClientId());
+                    report.println("  Client Name: " + client.getClientName());
+                    report.println("  Client Address: " + client.getAddress());
+                    report.println("  Client Phone: " + client.getPhone());
+                    report.println("  Product Quantity: " + waitlist.getClientQuantity(client));
+                    report.println();
                 }
             }
         }
+        closeReport(report);
+    }
+
+    // Method to ask which page of a listing to show and where to write it.
+    // Returns null if the output file cannot be opened.
+    private ReportWriter openReport() {
+        int pageSize = 0;
+        int page = 1;
+        String paging = getString("Enter page size and page number (e.g. 50 2), or press Enter to list everything");
+        if (!paging.isEmpty()) {
+            try {
+                String[] parts = paging.split("\\s+");
+                pageSize = Integer.parseInt(parts[0]);
+                if (parts.length > 1) {
+                    page = Integer.parseInt(parts[1]);
+                }
+            } catch (NumberFormatException nfe) {
+                System.out.println("Invalid page; listing everything.");
+                pageSize = 0;
+                page = 1;
+            }
+        }
+        String fileName = getString("Enter a file name to write the listing to, or press Enter for the screen");
+        try {
+            return new ReportWriter(pageSize, page, fileName);
+        } catch (IOException ioe) {
+            System.out.println("Could not open " + fileName + ": " + ioe.getMessage());
+            return null;
+        }
+    }
+
+    // Method to finish a listing and say where it went.
+    private void closeReport(ReportWriter report) {
+        long rows = report.getRowsWritten();
+        report.close();
+        if (report.isToFile()) {
+            System.out.println(rows + " rows written to " + report.getFileName());
+        }
     }
 
     // Method to set the client's balance.
@@ -137,7 +203,7 @@ public class UserInterface {
         Client client = warehouse.getClientById(clientId);
 
         if (client != null) {
-            client.setBalance(newBalance);
+            warehouse.setBalance(client, newBalance);
             System.out.println("Balance updated successfully.");
             System.out.println("New Balance: $" + newBalance);
         } else {
@@ -209,6 +275,18 @@ public class UserInterface {
             case "15":
             case "16":
             case "17":
+            case "18":
+            case "19":
+            case "20":
+            case "21":
+            case "22":
+            case "23":
+            case "24":
+            case "25":
+            case "26":
+            case "27":
+            case "28":
+            case "29":
                 return true;
             default:
                 return false;
@@ -217,7 +295,7 @@ public class UserInterface {
 
     // Method to display the available commands.
     public void help() {
-        System.out.println("Enter a number between 0 and 16 as explained below:");
+        System.out.println("Enter a number between 0 and 29 as explained below:");
         System.out.println(EXIT + " to Exit");
         System.out.println(ADD_PRODUCT + " to add a product");
         System.out.println(ADD_CLIENT + " to add a client");
@@ -236,6 +314,18 @@ public class UserInterface {
         System.out.println(SHOW_INVOICES + " to show invoices");
         System.out.println(SHOW_CLIENT_INVOICE + " to show client invoice");
         System.out.println(SUPPLY_PRODUCT + " to supply product");
+        System.out.println(MEMORY_REPORT + " to show memory usage");
+        System.out.println(SHOW_OUTSTANDING_BALANCES + " to show clients with an outstanding balance");
+        System.out.println(SHOW_INVENTORY + " to show inventory with waitlisted quantities");
+        System.out.println(END_OF_DAY_REPORTS + " to show the end-of-day reports");
+        System.out.println(SET_REORDER_THRESHOLD + " to set a product's reorder threshold");
+        System.out.println(SHOW_LOW_STOCK + " to show products at or below their reorder threshold");
+        System.out.println(REORDER_SUGGESTIONS + " to show suggested reorder quantities");
+        System.out.println(SHOW_SALES + " to show sales per product, client or day");
+        System.out.println(SHOW_LEADERBOARDS + " to show the top products and clients");
+        System.out.println(EXPORT + " to export all data to CSV or JSON Lines files");
+        System.out.println(CLIENT_HISTORY + " to show a client as they were at a past date");
+        System.out.println(WRITE_STATEMENTS + " to write the monthly statements of all clients");
     }
 
     // Method to add a product to the warehouse.
@@ -270,20 +360,34 @@ public class UserInterface {
 
     // Method to show all products in the warehouse.
     public void showProducts() {
+        ReportWriter report = openReport();
+        if (report == null) {
+            return;
+        }
         Iterator<Product> allProducts = warehouse.getProducts();
-        while (allProducts.hasNext()) {
+        while (allProducts.hasNext() && !report.isDone()) {
             Product product = allProducts.next();
-            System.out.println(product.toString());
+            if (report.nextRow()) {
+                report.println(product.toString());
+            }
         }
+        closeReport(report);
     }
 
     // Method to show all clients in the warehouse.
     public void showClients() {
+        ReportWriter report = openReport();
+        if (report == null) {
+            return;
+        }
         Iterator<Client> allClients = warehouse.getClients();
-        while (allClients.hasNext()) {
+        while (allClients.hasNext() && !report.isDone()) {
             Client client = allClients.next();
-            System.out.println(client.toString());
+            if (report.nextRow()) {
+                report.println(client.toString());
+            }
         }
+        closeReport(report);
     }
 
     // Method to save warehouse data to a file.
@@ -449,11 +553,18 @@ public class UserInterface {
 
     // Method to show all invoices.
     public void showInvoices() {
+        ReportWriter report = openReport();
+        if (report == null) {
+            return;
+        }
         Iterator<Invoice> allInvoices = warehouse.getInvoices();
-        while (allInvoices.hasNext()) {
+        while (allInvoices.hasNext() && !report.isDone()) {
             Invoice invoice = allInvoices.next();
-            System.out.println(invoice);
+            if (report.nextRow()) {
+                report.println(invoice);
+            }
         }
+        closeReport(report);
     }
 
     // Method to show the invoice for a specific client.
@@ -517,6 +628,244 @@ public class UserInterface {
 
     }
 
+    // Method to show the estimated heap usage of the warehouse data.
+    public void showMemoryReport() {
+        System.out.println(warehouse.memoryReport());
+    }
+
+    // Method to show the clients who owe money. The listing runs on a snapshot, so it takes no
+    // locks and shows the balances as they were when it started.
+    public void showOutstandingBalances() {
+        ReportWriter report = openReport();
+        if (report == null) {
+            return;
+        }
+        try (Snapshot snapshot = warehouse.snapshot()) {
+            Iterator<ClientState> allClients = snapshot.getClients();
+            while (allClients.hasNext() && !report.isDone()) {
+                ClientState client = allClients.next();
+                if (client.getBalance() < 0 && report.nextRow()) {
+                    report.println(client.getClientId() + " " + client.getClientName() + " owes $"
+                            + String.format("%.2f", -client.getBalance()));
+                }
+            }
+        }
+        closeReport(report);
+    }
+
+    // Method to show every product with its stock and the quantity clients are waiting for.
+    // The listing runs on a snapshot like showOutstandingBalances.
+    public void showInventory() {
+        ReportWriter report = openReport();
+        if (report == null) {
+            return;
+        }
+        try (Snapshot snapshot = warehouse.snapshot()) {
+            Iterator<ProductState> allProducts = snapshot.getProducts();
+            while (allProducts.hasNext() && !report.isDone()) {
+                ProductState product = allProducts.next();
+                if (report.nextRow()) {
+                    report.println(product.getProductId() + " " + product.getProductName() + " | in stock: "
+                            + product.getQuantity() + " | waitlisted: " + product.getWaitlistTotal());
+                }
+            }
+        }
+        closeReport(report);
+    }
+
+    // Method to show the end-of-day reports (inventory valuation, waitlist per product, receivables
+    // and sales per product). They are built in parallel from one snapshot, so they agree with each
+    // other. The page size applies to the rows of each report.
+    public void showEndOfDayReports() {
+        ReportWriter report = openReport();
+        if (report == null) {
+            return;
+        }
+        ReportGenerator generator;
+        try (Snapshot snapshot = warehouse.snapshot()) {
+            generator = new ReportGenerator(snapshot);
+        }
+        List<Report> reports = generator.allReports();
+        for (Report endOfDay : reports) {
+            report.println(endOfDay.getTitle());
+            for (Object[] row : endOfDay.getRows()) {
+                if (report.nextRow()) {
+                    report.println(endOfDay.formatRow(row));
+                }
+            }
+            report.println("Total: " + Report.formatCents(endOfDay.getTotalCents()));
+            report.println();
+        }
+        closeReport(report);
+    }
+
+    // Method to set the stock level at or below which a product should be reordered.
+    public void setReorderThreshold() {
+        String productId = getToken("Enter product ID");
+        Product product = warehouse.getProductById(productId);
+        if (product == null) {
+            System.out.println("Product not found.");
+            return;
+        }
+        int threshold = getNumber("Enter the reorder threshold (currently " + product.getReorderThreshold() + ")");
+        warehouse.setReorderThreshold(product, threshold);
+        System.out.println("Reorder threshold of " + product.getProductName() + " set to " + threshold
+                + (product.isBelowReorderPoint() ? "; the product is at or below it now." : "."));
+    }
+
+    // Method to show the products at or below their reorder threshold, furthest below first.
+    public void showLowStock() {
+        ReportWriter report = openReport();
+        if (report == null) {
+            return;
+        }
+        Iterator<Product> lowStock = warehouse.getProductsBelowReorderPoint().iterator();
+        while (lowStock.hasNext() && !report.isDone()) {
+            Product product = lowStock.next();
+            if (report.nextRow()) {
+                report.println(product.getProductId() + " " + product.getProductName() + " | in stock: "
+                        + product.getQuantity() + " | reorder threshold: " + product.getReorderThreshold());
+            }
+        }
+        closeReport(report);
+    }
+
+    // Method to show the products worth reordering, with the quantity suggested from recent sales,
+    // the waitlist and the reorder threshold.
+    public void showReorderSuggestions() {
+        int days = getNumber("Enter the number of days the reorder should cover");
+        ReportWriter report = openReport();
+        if (report == null) {
+            return;
+        }
+        Iterator<ReorderSuggestion> suggestions = warehouse.getReorderSuggestions(days).iterator();
+        while (suggestions.hasNext() && !report.isDone()) {
+            ReorderSuggestion suggestion = suggestions.next();
+            if (suggestion.getSuggestedQuantity() > 0 && report.nextRow()) {
+                report.println(suggestion.toString());
+            }
+        }
+        closeReport(report);
+    }
+
+    // Method to show the units and revenue sold per product, per client or per day.
+    public void showSales() {
+        String view = getToken("Show sales per (p)roduct, (c)lient or (d)ay?").toLowerCase();
+        List<SalesTotals> totals;
+        if (view.startsWith("p")) {
+            totals = warehouse.getSalesByProduct();
+        } else if (view.startsWith("c")) {
+            totals = warehouse.getSalesByClient();
+        } else if (view.startsWith("d")) {
+            int days = getNumber("Enter the number of days to show, ending today");
+            long today = DemandForecaster.dayOf(System.currentTimeMillis());
+            totals = warehouse.getSalesByDay(today - days + 1, today);
+        } else {
+            System.out.println("Invalid choice.");
+            return;
+        }
+        ReportWriter report = openReport();
+        if (report == null) {
+            return;
+        }
+        Iterator<SalesTotals> rows = totals.iterator();
+        while (rows.hasNext() && !report.isDone()) {
+            SalesTotals row = rows.next();
+            if (report.nextRow()) {
+                report.println(row.toString());
+            }
+        }
+        closeReport(report);
+    }
+
+    // Method to show the most wanted products and most active clients over the last hour, day or week.
+    public void showLeaderboards() {
+        String choice = getToken("Show the last (h)our, (d)ay or (w)eek?").toLowerCase();
+        Leaderboards.Window window;
+        if (choice.startsWith("h")) {
+            window = Leaderboards.Window.HOUR;
+        } else if (choice.startsWith("d")) {
+            window = Leaderboards.Window.DAY;
+        } else if (choice.startsWith("w")) {
+            window = Leaderboards.Window.WEEK;
+        } else {
+            System.out.println("Invalid choice.");
+            return;
+        }
+        System.out.println("Top products (units ordered and wishlisted):");
+        for (LeaderboardEntry entry : warehouse.getTopProducts(window, 10)) {
+            System.out.println("  " + entry);
+        }
+        System.out.println("Top clients (orders and wishlist adds):");
+        for (LeaderboardEntry entry : warehouse.getTopClients(window, 10)) {
+            System.out.println("  " + entry);
+        }
+    }
+
+    // Method to show a client's balance, wishlist and waitlist places as they were at a past date
+    // and time. A date alone means the end of that day.
+    public void showClientAsOf() {
+        String clientId = getString("Enter client ID");
+        String when = getToken("Enter the date (yyyy-mm-dd) or date and time (yyyy-mm-dd hh:mm)");
+        long time;
+        try {
+            LocalDateTime moment = when.contains(" ") ? LocalDateTime.parse(when.replace(' ', 'T'))
+                    : LocalDate.parse(when).plusDays(1).atStartOfDay().minusNanos(1_000_000);
+            time = moment.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            System.out.println("Invalid date.");
+            return;
+        }
+        try {
+            ClientAsOf client = warehouse.clientAsOf(clientId, time);
+            System.out.println(client == null ? "No client with that ID existed then." : client.toString());
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    // Method to export the products, clients, wishlists, waitlists and invoices to files.
+    public void export() {
+        String directory = getToken("Enter the directory to export to");
+        String choice = getToken("Export as (c)sv or (j)son lines?").toLowerCase();
+        WarehouseExporter.Format format;
+        if (choice.startsWith("c")) {
+            format = WarehouseExporter.Format.CSV;
+        } else if (choice.startsWith("j")) {
+            format = WarehouseExporter.Format.JSONL;
+        } else {
+            System.out.println("Invalid choice.");
+            return;
+        }
+        boolean gzip = yesOrNo("Compress the files with gzip?");
+        try {
+            Map<String, Long> rows = warehouse.export(Paths.get(directory), format, gzip);
+            for (Map.Entry<String, Long> entry : rows.entrySet()) {
+                System.out.println(entry.getKey() + ": " + entry.getValue() + " rows");
+            }
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+            System.out.println("There has been an error in exporting the warehouse data");
+        }
+    }
+
+    // Method to write the statements of all clients for a month to files.
+    public void writeStatements() {
+        String month = getToken("Enter the month (yyyy-mm)");
+        String directory = getToken("Enter the directory to write the statements to");
+        try {
+            int written = warehouse.writeStatements(YearMonth.parse(month), Paths.get(directory));
+            System.out.println(written + " statements written to " + Paths.get(directory, month));
+        } catch (DateTimeParseException e) {
+            System.out.println("Invalid month. Use the form yyyy-mm.");
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+            System.out.println("There has been an error in writing the statements");
+        }
+    }
+
     // Method to handle user interactions and process commands.
     public void process() {
         String command;
@@ -574,6 +923,42 @@ public class UserInterface {
                 case "17":
                     supplyProductsInWarehouse();
                     break;
+                case "18":
+                    showMemoryReport();
+                    break;
+                case "19":
+                    showOutstandingBalances();
+                    break;
+                case "20":
+                    showInventory();
+                    break;
+                case "21":
+                    showEndOfDayReports();
+                    break;
+                case "22":
+                    setReorderThreshold();
+                    break;
+                case "23":
+                    showLowStock();
+                    break;
+                case "24":
+                    showReorderSuggestions();
+                    break;
+                case "25":
+                    showSales();
+                    break;
+                case "26":
+                    showLeaderboards();
+                    break;
+                case "27":
+                    export();
+                    break;
+                case "28":
+                    showClientAsOf();
+                    break;
+                case "29":
+                    writeStatements();
+                    break;
                 default:
                     System.out.println("Invalid command. Enter a valid command.");
             }
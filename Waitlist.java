@@ -1,43 +1,156 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 // A class representing a Waitlist that stores a list of clients and their requested quantities.
+// Clients are kept by client number in the order they joined; only the numbers are saved and
+// the clients themselves are looked up in the ClientList when they are needed.
+// The quantities are held in an IntIntMap, so nothing is boxed; they are saved as a map of
+// Integers. Files saved before then map the clients themselves to their quantities; they are
+// converted once the whole file has been read, since the clients may not be complete until then.
 public class Waitlist implements Serializable {
-    private Map<Client, Integer> clientsWithQuantity; // Map to store clients and their requested quantities.
+    private static final long serialVersionUID = -2800414420305988432L; // As computed for the first saved form
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("clientsWithQuantity", Map.class) // Client number -> requested quantity.
+    };
+    private transient IntIntMap quantities; // Client number -> requested quantity.
 
     // Constructor to initialize an empty waitlist.
     public Waitlist() {
-        this.clientsWithQuantity = new HashMap<>();
+        this.quantities = new IntIntMap();
     }
 
     // Method to add a client to the waitlist with their requested quantity.
     public void addClientToWaitlist(Client client, int quantity) {
         if (quantity > 0) {
-            clientsWithQuantity.put(client, quantity);
+            quantities.put(client.getClientNumber(), quantity);
         }
     }
 
     // Method to remove a client from the waitlist.
     public void removeClientFromWaitlist(Client client) {
-        clientsWithQuantity.remove(client);
+        quantities.remove(client.getClientNumber());
+    }
+
+    // Method to add to the request of a client, given by client number. A client who is not waiting
+    // joins at the end.
+    public void addClientQuantity(int clientNumber, int quantity) {
+        if (quantity > 0) {
+            quantities.addTo(clientNumber, quantity);
+        }
+    }
+
+    // Method to take a filled quantity off the request of a client, given by client number. The
+    // client is removed once nothing is left to fill.
+    public void reduceClientQuantity(int clientNumber, int filled) {
+        int requested = quantities.get(clientNumber, 0);
+        if (requested == 0) {
+            return;
+        }
+        if (requested > filled) {
+            quantities.put(clientNumber, requested - filled);
+        } else {
+            quantities.remove(clientNumber);
+        }
     }
 
     // Method to get the list of clients in the waitlist.
     public List<Client> getClients() {
-        return new ArrayList<>(clientsWithQuantity.keySet());
+        ClientList clientList = ClientList.instance();
+        List<Client> clients = new ArrayList<>(quantities.size());
+        for (int clientNumber : quantities.keys()) {
+            Client client = clientList.getClientByNumber(clientNumber);
+            if (client != null) {
+                clients.add(client);
+            }
+        }
+        return clients;
+    }
+
+    // Method to get the numbers of the waiting clients in the order they joined. The array is a copy.
+    public int[] getClientNumbers() {
+        return quantities.keys();
+    }
+
+    // Method to pass each waiting client's number and requested quantity to an action, in the
+    // order they joined. The action must not change the waitlist.
+    public void forEachEntry(IntIntMap.EntryConsumer action) {
+        quantities.forEach(action);
+    }
+
+    // Method to check if no clients are waiting.
+    public boolean isEmpty() {
+        return quantities.isEmpty();
+    }
+
+    // Method to get the number of clients in the waitlist.
+    public int size() {
+        return quantities.size();
+    }
+
+    // Method to get the length of the arrays holding the entries, for estimating the memory used.
+    public int getCapacity() {
+        return quantities.capacity();
+    }
+
+    // Method to get the number of slots in the table finding the entries, for estimating the memory used.
+    public int getTableSize() {
+        return quantities.tableSize();
+    }
+
+    // Method to get the total quantity requested by all clients in the waitlist.
+    public int getTotalQuantity() {
+        return (int) quantities.sumOfValues();
     }
 
     // Method to get the requested quantity for a specific client in the waitlist.
     public int getClientQuantity(Client client) {
-        return clientsWithQuantity.getOrDefault(client, 0);
+        return getClientQuantity(client.getClientNumber());
+    }
+
+    // Method to get the requested quantity of a client by client number, or 0 if they are not waiting.
+    public int getClientQuantity(int clientNumber) {
+        return quantities.get(clientNumber, 0);
     }
 
     // Method to check if a client is already in the waitlist.
     public boolean containsClient(Client client) {
-        return clientsWithQuantity.containsKey(client);
+        return quantities.containsKey(client.getClientNumber());
+    }
+
+    // Custom serialization method that saves the quantities as a map, in the order clients joined.
+    private void writeObject(ObjectOutputStream output) throws IOException {
+        Map<Integer, Integer> saved = new LinkedHashMap<>();
+        quantities.forEach(saved::put);
+        ObjectOutputStream.PutField fields = output.putFields();
+        fields.put("clientsWithQuantity", saved);
+        output.writeFields();
+    }
+
+    // Custom deserialization method that reads the saved map back into an IntIntMap.
+    private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+        Map<?, ?> saved = (Map<?, ?>) input.readFields().get("clientsWithQuantity", null);
+        quantities = new IntIntMap(saved == null ? 4 : saved.size());
+        if (saved == null) {
+            return;
+        }
+        if (saved.isEmpty() || saved.keySet().iterator().next() instanceof Integer) {
+            for (Map.Entry<?, ?> entry : saved.entrySet()) {
+                quantities.put((Integer) entry.getKey(), (Integer) entry.getValue());
+            }
+            return;
+        }
+        input.registerValidation(() -> {
+            for (Map.Entry<?, ?> entry : saved.entrySet()) {
+                quantities.put(((Client) entry.getKey()).getClientNumber(), (Integer) entry.getValue());
+            }
+        }, 0);
     }
 
     // Override the toString method to provide a string representation of the
@@ -45,10 +158,9 @@ public class Waitlist implements Serializable {
     @Override
     public String toString() {
         StringBuilder stringBuilder = new StringBuilder();
-        for (Map.Entry<Client, Integer> entry : clientsWithQuantity.entrySet()) {
-            Client client = entry.getKey();
-            int quantity = entry.getValue();
-            stringBuilder.append(client.toString()).append(" (Requested Quantity: ").append(quantity).append(")\n");
+        for (Client client : getClients()) {
+            stringBuilder.append(client.toString()).append(" (Requested Quantity: ")
+                    .append(getClientQuantity(client)).append(")\n");
         }
         return stringBuilder.toString();
     }
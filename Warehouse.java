@@ -1,21 +1,47 @@
+import java.nio.file.Path;
+import java.time.YearMonth;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
 
 import java.io.*;
 
 // A class representing a Warehouse that manages products, clients, and wishlists.
+// The public methods are safe to call from several threads: queries share a read lock and
+// changes take the write lock. Console prompts never run while the lock is held.
+// Every change is also committed to the SnapshotStore when the write lock is released, so long
+// queries can run on a Snapshot instead of holding the read lock.
 public class Warehouse implements Serializable {
     private static final long serialVersionUID = 1L;
     private ProductCatalog productCatalog; // Catalog of products.
     private ClientList clientList; // List of clients.
     private InvoiceList invoiceList;
+    private transient LowStockIndex lowStockIndex; // Built on first use
+    private DemandForecaster demandForecaster; // Fed with each new invoice
+    private transient Leaderboards leaderboards; // Live top products and clients, not saved
+    private IdempotencyTable idempotencyTable; // Results of keyed orders and payments
+    private EventJournal eventJournal; // History of balances, stock, waitlists and wishlists
     private static Warehouse warehouse; // Singleton instance of the Warehouse.
     private static ProductIdServer productIdServer; // Singleton instance of the ProductIdServer.
     private static ClientIdServer clientIdServer; // Singleton instance of the ClientIdserver.
     private static InvoiceIdServer invoiceIdServer;// Singleton instance of the inoviceIdServer.
+    private static final ReentrantReadWriteLock LOCK = new ReentrantReadWriteLock(); // Guards all warehouse data.
+    // Changes made under the write lock that are not yet committed to the SnapshotStore.
+    private static final Set<Product> changedProducts = new LinkedHashSet<>();
+    private static final Set<Client> changedClients = new LinkedHashSet<>();
+    private static final List<Invoice> newInvoices = new ArrayList<>();
+    private static final Set<Product> productsChangedOutsideLock = ConcurrentHashMap.newKeySet(); // By reservations
+    private static OffHeapProductStore offHeapStock; // Holds the stock and prices if set, see useOffHeapStock()
 
     // Constants for warehouse operations or conditions.
     // These constants help identify the outcome of various operations.
@@ -46,6 +72,9 @@ public class Warehouse implements Serializable {
         clientIdServer = ClientIdServer.instance();
         invoiceIdServer = InvoiceIdServer.instance();
         invoiceList = InvoiceList.instance(); // Initialize the ClientIdServer
+        demandForecaster = new DemandForecaster();
+        idempotencyTable = new IdempotencyTable();
+        eventJournal = new EventJournal(productCatalog.getProducts(), clientList.getClients());
     }
 
     // Singleton method to get or create an instance of the Warehouse.
@@ -58,187 +87,846 @@ public class Warehouse implements Serializable {
         }
     }
 
-    // custom pair class since putty doesnt like the javafx.util.Pair
-    public class Pair<K, V> implements Serializable {
-        private static final long serialVersionUID = 1L;
-        private K key;
-        private V value;
-
-        public Pair(K key, V value) {
-            this.key = key;
-            this.value = value;
-        }
-
-        public K getKey() {
-            return key;
-        }
-
-        public V getValue() {
-            return value;
-        }
-
-        public void setKey(K key) {
-            this.key = key;
+    // Method to get a client by their ID.
+    public Client getClientById(String clientId) {
+        LOCK.readLock().lock();
+        try {
+            return clientList.getClientById(clientId);
+        } finally {
+            LOCK.readLock().unlock();
         }
+    }
 
-        public void setValue(V value) {
-            this.value = value;
+    // Method to get a product by its ID.
+    public Product getProductById(String productId) {
+        LOCK.readLock().lock();
+        try {
+            return productCatalog.getProductById(productId);
+        } finally {
+            LOCK.readLock().unlock();
         }
     }
 
-    // Method to get a client by their ID.
-    public Client getClientById(String clientId) {
-        return clientList.getClientById(clientId);
+    // Method to get a product by the numeric part of its ID, for callers that keep numbers.
+    public Product getProductByNumber(int productNumber) {
+        LOCK.readLock().lock();
+        try {
+            return productCatalog.getProductByNumber(productNumber);
+        } finally {
+            LOCK.readLock().unlock();
+        }
     }
 
-    // Method to get a product by its ID.
-    public Product getProductById(String productId) {
-        return productCatalog.getProductById(productId);
+    // Method to get a client by the numeric part of their ID, for callers that keep numbers.
+    public Client getClientByNumber(int clientNumber) {
+        LOCK.readLock().lock();
+        try {
+            return clientList.getClientByNumber(clientNumber);
+        } finally {
+            LOCK.readLock().unlock();
+        }
     }
 
     // Method to add a new product to the catalog.
     public Product addProduct(String productName, double price, int quantity) {
-        Product product = new Product(productName, price, quantity);
-        if (productCatalog.addProduct(product)) {
-            return product;
+        LOCK.writeLock().lock();
+        try {
+            Product product = new Product(productName, price, quantity);
+            if (offHeapStock != null && !product.moveTo(offHeapStock)) {
+                throw new IllegalStateException("The off-heap product store is full");
+            }
+            if (productCatalog.addProduct(product)) {
+                changedProducts.add(product);
+                lowStock().update(product);
+                history().recordStock(product);
+                return product;
+            }
+            return null;
+        } finally {
+            unlockWrite();
         }
-        return null;
     }
 
     // Method to add a new client to the list.
     public Client addClient(String clientName, String address, String phone) {
-        Client client = new Client(clientName, address, phone);
-        if (clientList.addClient(client)) {
-            return client;
+        LOCK.writeLock().lock();
+        try {
+            Client client = new Client(clientName, address, phone);
+            if (clientList.addClient(client)) {
+                changedClients.add(client);
+                history().recordBalance(client);
+                return client;
+            }
+            return null;
+        } finally {
+            unlockWrite();
         }
-        return null;
     }
 
     // Method to get an iterator for the products in the catalog.
+    // The iterator goes over a copy, so it is not affected by later changes.
     public Iterator<Product> getProducts() {
-        return productCatalog.getProducts();
+        LOCK.readLock().lock();
+        try {
+            return copyOf(productCatalog.getProducts());
+        } finally {
+            LOCK.readLock().unlock();
+        }
     }
 
     // Method to get an iterator for the clients in the list.
     public Iterator<Client> getClients() {
-        return clientList.getClients();
+        LOCK.readLock().lock();
+        try {
+            return copyOf(clientList.getClients());
+        } finally {
+            LOCK.readLock().unlock();
+        }
     }
 
     // Method to get an iterator for the invoices in the list.
     public Iterator<Invoice> getInvoices() {
-        return invoiceList.getInvoices();
+        LOCK.readLock().lock();
+        try {
+            return copyOf(invoiceList.getInvoices());
+        } finally {
+            LOCK.readLock().unlock();
+        }
+    }
+
+    // Helper method to copy what an iterator returns, so it can be used after the lock is released.
+    private static <T> Iterator<T> copyOf(Iterator<T> iterator) {
+        List<T> copy = new ArrayList<>();
+        while (iterator.hasNext()) {
+            copy.add(iterator.next());
+        }
+        return copy.iterator();
     }
 
     // Method to add a product to a client's wishlist.
     public int addProductToWishlist(Client client, Product product, int quantity) {
-        Wishlist clientWishlist = client.getWishlist();
+        LOCK.writeLock().lock();
+        try {
+            Wishlist clientWishlist = client.getWishlist();
 
-        // Check if the product is already in the wishlist
-        if (clientWishlist.containsProduct(product.getProductId())) {
-            return WISHLIST_PRODUCT_ALREADY_EXISTS;
-        }
+            // Check if the product is already in the wishlist
+            if (clientWishlist.containsProduct(product.getProductId())) {
+                return WISHLIST_PRODUCT_ALREADY_EXISTS;
+            }
 
-        // Add the product to the client's wishlist
-        clientWishlist.addProductToWishlist(product, quantity);
-        return ADD_PRODUCT_TO_WISHLIST_SUCCESS;
+            // Add the product to the client's wishlist
+            clientWishlist.addProductToWishlist(product, quantity);
+            changedClients.add(client);
+            history().recordWishlist(client.getClientNumber(), product.getProductNumber(), quantity);
+            leaderboards().recordWishlistAdd(client, product, quantity, System.currentTimeMillis());
+            return ADD_PRODUCT_TO_WISHLIST_SUCCESS;
+        } finally {
+            unlockWrite();
+        }
     }
 
     // Method to remove a product from a client's wishlist.
     public int removeProductFromWishlist(Client client, Product product) {
-        Wishlist clientWishlist = client.getWishlist();
+        LOCK.writeLock().lock();
+        try {
+            Wishlist clientWishlist = client.getWishlist();
 
-        // Check if the product is in the wishlist
-        if (clientWishlist.containsProduct(product.getProductId())) {
-            clientWishlist.removeProductFromWishlist(product.getProductId());
-            return REMOVE_PRODUCT_FROM_WISHLIST_SUCCESS;
-        }
+            // Check if the product is in the wishlist
+            if (clientWishlist.containsProduct(product.getProductId())) {
+                removeFromWishlist(client, product);
+                return REMOVE_PRODUCT_FROM_WISHLIST_SUCCESS;
+            }
 
-        // Product not found in the wishlist
-        return WISHLIST_PRODUCT_NOT_FOUND;
+            // Product not found in the wishlist
+            return WISHLIST_PRODUCT_NOT_FOUND;
+        } finally {
+            unlockWrite();
+        }
     }
 
     // Method to add a client to a product's waitlist.
     public int addClientToWaitlist(Client client, Product product, int quantity) {
-        Waitlist productWaitlist = product.getWaitlist();
+        LOCK.writeLock().lock();
+        try {
+            Waitlist productWaitlist = product.getWaitlist();
 
-        // Check if the client is already in the waitlist
-        if (productWaitlist.getClients().contains(client)) {
-            return CLIENT_ALREADY_IN_WAITLIST;
-        }
+            // Check if the client is already in the waitlist
+            if (productWaitlist.containsClient(client)) {
+                return CLIENT_ALREADY_IN_WAITLIST;
+            }
 
-        // Add the client to the product's waitlist
-        productWaitlist.addClientToWaitlist(client, quantity);
-        return ADD_CLIENT_TO_WAITLIST_SUCCESS;
+            // Add the client to the product's waitlist
+            waitlistClient(client, product, quantity);
+            return ADD_CLIENT_TO_WAITLIST_SUCCESS;
+        } finally {
+            unlockWrite();
+        }
     }
 
     // Method to remove a client from a product's waitlist.
     public int removeClientFromWaitlist(Client client, Product product) {
-        Waitlist productWaitlist = product.getWaitlist();
+        LOCK.writeLock().lock();
+        try {
+            // Check if the client is in the waitlist
+            if (product.hasWaitlist() && product.getWaitlist().containsClient(client)) {
+                product.getWaitlist().removeClientFromWaitlist(client);
+                changedProducts.add(product);
+                history().recordWaitlist(product.getProductNumber(), client.getClientNumber(), 0);
+                return REMOVE_CLIENT_FROM_WAITLIST_SUCCESS;
+            }
 
-        // Check if the client is in the waitlist
-        if (productWaitlist.getClients().contains(client)) {
-            productWaitlist.removeClientFromWaitlist(client);
-            return REMOVE_CLIENT_FROM_WAITLIST_SUCCESS;
+            // Client not found in the waitlist
+            return CLIENT_NOT_FOUND_IN_WAITLIST;
+        } finally {
+            unlockWrite();
         }
+    }
 
-        // Client not found in the waitlist
-        return CLIENT_NOT_FOUND_IN_WAITLIST;
+    // Method to take a quantity off a client's request on a product's waitlist, such as one added
+    // for an order that then failed. The client leaves the waitlist if nothing is left.
+    public void reduceWaitlist(Client client, Product product, int quantity) {
+        LOCK.writeLock().lock();
+        try {
+            if (quantity > 0 && product.hasWaitlist() && product.getWaitlist().containsClient(client)) {
+                Waitlist waitlist = product.getWaitlist();
+                waitlist.reduceClientQuantity(client.getClientNumber(), quantity);
+                changedProducts.add(product);
+                history().recordWaitlist(product.getProductNumber(), client.getClientNumber(),
+                        waitlist.getClientQuantity(client));
+            }
+        } finally {
+            unlockWrite();
+        }
     }
 
     // Method to create an invoice for a client.
     public Invoice createInvoice(Client client, List<Product> products, List<Integer> quantities) {
-        List<Double> unitPrices = new ArrayList<>();
+        LOCK.writeLock().lock();
+        try {
+            List<Double> unitPrices = new ArrayList<>();
 
-        // Calculate unit prices based on the products' prices
-        for (Product product : products) {
-            unitPrices.add(product.getPrice());
-        }
+            // Calculate unit prices based on the products' prices
+            for (Product product : products) {
+                unitPrices.add(product.getPrice());
+            }
 
-        Invoice invoice = new Invoice(client, products, quantities, unitPrices);
+            Invoice invoice = new Invoice(client, products, quantities, unitPrices);
 
-        // Add the invoice to the invoice list
-        invoiceList.addInvoice(invoice);
+            // Add the invoice to the invoice list
+            recordInvoice(invoice);
 
-        return invoice;
+            return invoice;
+        } finally {
+            unlockWrite();
+        }
     }
 
     // Method to retrieve an invoice by its ID.
     public Invoice getInvoiceById(String invoiceId) {
-        return invoiceList.getInvoiceById(invoiceId);
+        LOCK.readLock().lock();
+        try {
+            return invoiceList.getInvoiceById(invoiceId);
+        } finally {
+            LOCK.readLock().unlock();
+        }
     }
 
     // Method to get invoices for a specific client ID.
     public List<Invoice> getInvoicesForClient(String clientId) {
-        return invoiceList.getInvoicesForClient(clientId);
+        LOCK.readLock().lock();
+        try {
+            return invoiceList.getInvoicesForClient(clientId);
+        } finally {
+            LOCK.readLock().unlock();
+        }
+    }
+
+    // Method to get the invoices dated from one time to another (milliseconds, both included).
+    // Only the months with invoices in the range are read.
+    public List<Invoice> getInvoicesBetween(long from, long to) {
+        LOCK.readLock().lock();
+        try {
+            return new ArrayList<>(invoiceList.getInvoicesBetween(from, to));
+        } finally {
+            LOCK.readLock().unlock();
+        }
+    }
+
+    // Method to move the invoices of the sealed months before a month to an archive directory,
+    // one gzip file per month. Returns the number of months moved. Save the warehouse afterwards.
+    public int archiveInvoicesBefore(YearMonth before, Path archiveDirectory) throws IOException {
+        LOCK.writeLock().lock();
+        try {
+            int archived = invoiceList.archiveMonthsBefore(before, archiveDirectory);
+            if (archived > 0) {
+                SnapshotStore.reset(); // Snapshots are seeded again without the archived invoices
+            }
+            return archived;
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    // Method to write every client's statement for a month (opening balance, invoices, payments and
+    // closing balance) to one file per client in a directory for the month under the given
+    // directory. The data is gathered under the read lock in one pass and the files are written
+    // after it is released. A run that was interrupted can be started again and writes only the
+    // missing statements. Returns the number of statements written.
+    public int writeStatements(YearMonth month, Path directory) throws IOException {
+        StatementJob job = new StatementJob(month, directory);
+        if (job.isComplete()) {
+            return 0;
+        }
+        LOCK.readLock().lock();
+        try {
+            job.collect(clientList.getClients(), invoiceList, history(), System.currentTimeMillis());
+        } finally {
+            LOCK.readLock().unlock();
+        }
+        return job.write();
+    }
+
+    // Method to order products for a client without any console prompts.
+    // Each line ships as much as is in stock; the rest puts the client on the product's waitlist
+    // (adding to any quantity they are already waiting for). Ordered products are removed from the
+    // client's wishlist, and the shipped lines are invoiced and debited to the client's balance.
+    public OrderResult placeOrder(Client client, Map<Product, Integer> lines) {
+        LOCK.writeLock().lock();
+        try {
+            List<Product> shippedProducts = new ArrayList<>();
+            List<Integer> shippedQuantities = new ArrayList<>();
+            List<Double> unitPrices = new ArrayList<>();
+            Map<String, Integer> waitlisted = new LinkedHashMap<>();
+
+            for (Map.Entry<Product, Integer> line : lines.entrySet()) {
+                Product product = line.getKey();
+                int quantity = line.getValue();
+                if (quantity <= 0) {
+                    continue;
+                }
+                int shipped = removeStock(product, quantity);
+                if (shipped > 0) {
+                    shippedProducts.add(product);
+                    shippedQuantities.add(shipped);
+                    unitPrices.add(product.getPrice());
+                }
+                int remaining = quantity - shipped;
+                if (remaining > 0) {
+                    waitlistClient(client, product, product.getWaitlist().getClientQuantity(client) + remaining);
+                    waitlisted.put(product.getProductId(), remaining);
+                }
+                removeFromWishlist(client, product);
+            }
+
+            Invoice invoice = null;
+            if (!shippedProducts.isEmpty()) {
+                invoice = new Invoice(client, shippedProducts, shippedQuantities, unitPrices);
+                recordInvoice(invoice);
+                changeBalance(client, -invoice.getTotalAmount());
+            }
+            return new OrderResult(invoice, waitlisted);
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    // Method to take up to the given quantity of a product out of stock without invoicing it, as
+    // when an order routed across sites is shipped from here. Returns the quantity taken.
+    public int takeStock(Product product, int quantity) {
+        LOCK.writeLock().lock();
+        try {
+            return removeStock(product, quantity);
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    // Method to put back stock taken by takeStock() for an order that could not be completed. The
+    // waitlist is not filled from it.
+    public void returnStock(Product product, int quantity) {
+        LOCK.writeLock().lock();
+        try {
+            if (quantity > 0) {
+                addStock(product, quantity);
+            }
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    // Method to put a client on a product's waitlist for more units, adding to any quantity they
+    // are already waiting for.
+    public void addToWaitlist(Client client, Product product, int quantity) {
+        LOCK.writeLock().lock();
+        try {
+            if (quantity > 0) {
+                waitlistClient(client, product, product.getWaitlist().getClientQuantity(client) + quantity);
+            }
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    // Method to invoice products shipped to a client from elsewhere, such as another site, and
+    // debit the client's balance. Stock is not changed here.
+    public Invoice invoiceShipment(Client client, List<Product> products, List<Integer> quantities) {
+        LOCK.writeLock().lock();
+        try {
+            List<Double> unitPrices = new ArrayList<>();
+            for (Product product : products) {
+                unitPrices.add(product.getPrice());
+            }
+            Invoice invoice = new Invoice(client, products, quantities, unitPrices);
+            recordInvoice(invoice);
+            changeBalance(client, -invoice.getTotalAmount());
+            return invoice;
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    // Method to complete an order whose stock was reserved up front (see ReservationManager). The
+    // reservations are committed, whatever was asked for but not reserved is waitlisted, ordered
+    // products leave the wishlist, and the invoice is recorded and debited. The lists are index by
+    // index; a hold may be null if nothing was reserved. If a hold expired first, what is left in
+    // stock is taken instead and a new invoice replaces the one given. Returns the invoice
+    // recorded (null if nothing shipped) with the quantities actually waitlisted.
+    public OrderResult completeReservedOrder(Client client, List<Product> products, List<Integer> requested,
+            List<Reservation> holds, Invoice invoice) {
+        LOCK.writeLock().lock();
+        try {
+            ReservationManager reservations = ReservationManager.instance();
+            List<Product> shippedProducts = new ArrayList<>();
+            List<Integer> shippedQuantities = new ArrayList<>();
+            Map<String, Integer> waitlisted = new LinkedHashMap<>();
+            boolean expired = false;
+            for (int i = 0; i < products.size(); i++) {
+                Product product = products.get(i);
+                Reservation hold = holds.get(i);
+                int shipped = 0;
+                if (hold != null) {
+                    if (reservations.commit(hold)) {
+                        shipped = hold.getQuantity();
+                        changedProducts.add(product);
+                    } else {
+                        shipped = removeStock(product, hold.getQuantity());
+                        expired = true;
+                    }
+                }
+                if (shipped > 0) {
+                    shippedProducts.add(product);
+                    shippedQuantities.add(shipped);
+                }
+                int remaining = requested.get(i) - shipped;
+                if (remaining > 0) {
+                    waitlistClient(client, product, product.getWaitlist().getClientQuantity(client) + remaining);
+                    waitlisted.put(product.getProductId(), remaining);
+                }
+                removeFromWishlist(client, product);
+            }
+            if (expired || (invoice == null && !shippedProducts.isEmpty())) {
+                List<Double> unitPrices = new ArrayList<>();
+                for (Product product : shippedProducts) {
+                    unitPrices.add(product.getPrice());
+                }
+                invoice = shippedProducts.isEmpty() ? null
+                        : new Invoice(client, shippedProducts, shippedQuantities, unitPrices);
+            }
+            if (invoice != null) {
+                recordInvoice(invoice);
+                changeBalance(client, -invoice.getTotalAmount());
+            }
+            return new OrderResult(invoice, waitlisted);
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    // Method to order products for a client at most once per idempotency key. If the client has
+    // already placed an order with the key, its original result is returned and nothing changes.
+    // A null key places the order without deduplication.
+    public OrderResult placeOrder(Client client, Map<Product, Integer> lines, String idempotencyKey) {
+        return once("order", client, idempotencyKey, () -> placeOrder(client, lines));
+    }
+
+    // Method to make several changes under one hold of the write lock, so they are committed to
+    // the SnapshotStore as one version. The changes must go through the public Warehouse methods.
+    public void write(Runnable changes) {
+        LOCK.writeLock().lock();
+        try {
+            changes.run();
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    // Method to order everything in a client's wishlist at the wishlisted quantities.
+    public OrderResult orderWishlist(Client client) {
+        LOCK.writeLock().lock();
+        try {
+            Map<Product, Integer> lines = new LinkedHashMap<>();
+            if (client.hasWishlist()) {
+                Wishlist wishlist = client.getWishlist();
+                for (Product product : wishlist) {
+                    lines.put(product, wishlist.getProductQuantity(product.getProductId()));
+                }
+            }
+            return placeOrder(client, lines);
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    // Method to order a client's wishlist at most once per idempotency key.
+    public OrderResult orderWishlist(Client client, String idempotencyKey) {
+        return once("wishlist", client, idempotencyKey, () -> orderWishlist(client));
+    }
+
+    // Method to accept a shipment for a product without any console prompts.
+    // Waitlisted clients are filled first, in the order they joined the waitlist; a client who
+    // cannot be filled completely gets what is left and stays on the waitlist for the rest.
+    // Returns the invoices created for the waitlisted clients.
+    public List<Invoice> receiveShipment(Product product, int quantity) {
+        LOCK.writeLock().lock();
+        try {
+            List<Invoice> invoices = new ArrayList<>();
+            addStock(product, quantity);
+            if (product.hasWaitlist()) {
+                Waitlist productWaitlist = product.getWaitlist();
+                for (Client waitlistClient : productWaitlist.getClients()) {
+                    if (product.getQuantity() == 0) {
+                        break;
+                    }
+                    int requested = productWaitlist.getClientQuantity(waitlistClient);
+                    int filled = Math.min(requested, product.getQuantity());
+                    Invoice invoice = fillFromWaitlist(waitlistClient, product, filled);
+                    if (invoice != null) {
+                        invoices.add(invoice);
+                    }
+                }
+            }
+            return invoices;
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    // Method to credit a payment to a client's account. Returns the new balance.
+    public double acceptPayment(Client client, double amount) {
+        LOCK.writeLock().lock();
+        try {
+            history().recordPayment(client.getClientNumber(), amount);
+            changeBalance(client, amount);
+            return client.getBalance();
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    // Method to credit a payment at most once per idempotency key. A repeated payment returns
+    // the balance recorded the first time.
+    public double acceptPayment(Client client, double amount, String idempotencyKey) {
+        return once("payment", client, idempotencyKey, () -> acceptPayment(client, amount));
+    }
+
+    // Method to set a client's balance by hand, such as to correct it. The change is recorded like
+    // any other change of balance; a statement shows it as an adjustment.
+    public void setBalance(Client client, double balance) {
+        LOCK.writeLock().lock();
+        try {
+            changeBalanceTo(client, balance);
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    // Method to rebuild the whole warehouse as it was at a time (in milliseconds) from the event
+    // journal. Throws IllegalArgumentException for a time before the journal started.
+    public StateAsOf stateAsOf(long time) {
+        return history().stateAsOf(time);
+    }
+
+    // Method to rebuild a client's balance, wishlist and waitlist places as they were at a time
+    // (in milliseconds). Returns null if the client did not exist then. Throws
+    // IllegalArgumentException for a time before the journal started.
+    public ClientAsOf clientAsOf(String clientId, long time) {
+        return history().clientAsOf(Client.parseClientId(clientId), time);
+    }
+
+    // Method to get the time the event journal started, before which there is no history.
+    public long getHistoryStartTime() {
+        return history().getStartTime();
+    }
+
+    // Method to get the table of results recorded by idempotency key.
+    public IdempotencyTable getIdempotencyTable() {
+        return idempotency();
+    }
+
+    // Method to run a query while holding the read lock, so it sees no changes half made.
+    // The query must not change any warehouse data.
+    public <T> T read(Supplier<T> query) {
+        LOCK.readLock().lock();
+        try {
+            return query.get();
+        } finally {
+            LOCK.readLock().unlock();
+        }
+    }
+
+    // Method to set the stock level at or below which a product should be reordered.
+    // Publishes a low stock event if the product is now at or below it and was not before.
+    public int setReorderThreshold(Product product, int reorderThreshold) {
+        LOCK.writeLock().lock();
+        try {
+            product.setReorderThreshold(reorderThreshold);
+            changedProducts.add(product);
+            int quantity = product.getQuantity();
+            if (lowStock().update(product, quantity)) {
+                WarehouseEvents.instance().publish(WarehouseEvent.lowStock(product, quantity, quantity));
+            }
+            return OPERATION_COMPLETED;
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    // Method to get the products whose stock is at or below their reorder threshold, furthest
+    // below first. Comes from a maintained index, so it does not scan the catalog.
+    public List<Product> getProductsBelowReorderPoint() {
+        LOCK.readLock().lock();
+        try {
+            return lowStock().getProductsBelowReorderPoint();
+        } finally {
+            LOCK.readLock().unlock();
+        }
+    }
+
+    // Method to get the units, revenue and invoice count of every product sold.
+    public List<SalesTotals> getSalesByProduct() {
+        LOCK.readLock().lock();
+        try {
+            return invoiceList.getSalesViews().getProductTotals();
+        } finally {
+            LOCK.readLock().unlock();
+        }
+    }
+
+    // Method to get the units, revenue and invoice count of every client who bought something.
+    public List<SalesTotals> getSalesByClient() {
+        LOCK.readLock().lock();
+        try {
+            return invoiceList.getSalesViews().getClientTotals();
+        } finally {
+            LOCK.readLock().unlock();
+        }
+    }
+
+    // Method to get the units, revenue and invoice count of each day with sales from one day to
+    // another (days since 1970-01-01 in UTC, both included).
+    public List<SalesTotals> getSalesByDay(long fromDay, long toDay) {
+        LOCK.readLock().lock();
+        try {
+            return invoiceList.getSalesViews().getDailyTotals(fromDay, toDay);
+        } finally {
+            LOCK.readLock().unlock();
+        }
+    }
+
+    // Method to get up to n of the most wanted products (units invoiced and wishlisted) over the
+    // last hour, day or week. The counts are estimates; see Leaderboards for their error bounds.
+    public List<LeaderboardEntry> getTopProducts(Leaderboards.Window window, int n) {
+        return leaderboards().topProducts(window, n, System.currentTimeMillis());
+    }
+
+    // Method to get up to n of the most active clients (invoices and wishlist adds) over the last
+    // hour, day or week. The counts are estimates; see Leaderboards for their error bounds.
+    public List<LeaderboardEntry> getTopClients(Leaderboards.Window window, int n) {
+        return leaderboards().topClients(window, n, System.currentTimeMillis());
+    }
+
+    // Method to suggest how much of each product to reorder to cover the forecast demand over the
+    // given number of days, the waitlists and the reorder thresholds. Returns one suggestion per
+    // product, in catalog order, in time proportional to the number of products.
+    public List<ReorderSuggestion> getReorderSuggestions(int days) {
+        LOCK.readLock().lock();
+        try {
+            DemandForecaster forecaster = demand();
+            long today = DemandForecaster.dayOf(System.currentTimeMillis());
+            List<ReorderSuggestion> suggestions = new ArrayList<>();
+            Iterator<Product> allProducts = productCatalog.getProducts();
+            while (allProducts.hasNext()) {
+                Product product = allProducts.next();
+                int productNumber = product.getProductNumber();
+                suggestions.add(new ReorderSuggestion(product, forecaster.getDailyRate(productNumber, today),
+                        forecaster.forecast(productNumber, today, days)));
+            }
+            return suggestions;
+        } finally {
+            LOCK.readLock().unlock();
+        }
+    }
+
+    // Method to run a query over the products, clients or invoices (see Query and QueryEngine).
+    public QueryResult query(Query<?> query) {
+        LOCK.readLock().lock();
+        try {
+            return new QueryEngine(productCatalog, clientList, invoiceList, lowStock()).run(query);
+        } finally {
+            LOCK.readLock().unlock();
+        }
+    }
+
+    // Method to describe how a query would run, without running it.
+    public String explain(Query<?> query) {
+        LOCK.readLock().lock();
+        try {
+            return new QueryEngine(productCatalog, clientList, invoiceList, lowStock()).explain(query);
+        } finally {
+            LOCK.readLock().unlock();
+        }
+    }
+
+    // Method to open a snapshot of the products, clients and invoices as they are now. Queries on
+    // the snapshot take no locks and do not see later changes. The snapshot must be closed.
+    public Snapshot snapshot() {
+        SnapshotStore store = SnapshotStore.instance();
+        if (!store.isSeeded()) {
+            LOCK.writeLock().lock();
+            try {
+                if (!store.isSeeded()) {
+                    store.seed(productCatalog.getProducts(), clientList.getClients(), invoiceList);
+                }
+            } finally {
+                unlockWrite();
+            }
+        }
+        return store.open();
+    }
+
+    // Method to export the products, clients, wishlists, waitlists and invoices to CSV or JSON
+    // Lines files in a directory. The export reads a snapshot, so the warehouse stays usable while
+    // it runs. Returns the number of rows written to each file, by file name.
+    public Map<String, Long> export(Path directory, WarehouseExporter.Format format, boolean gzip)
+            throws IOException {
+        try (Snapshot snapshot = snapshot()) {
+            return new WarehouseExporter(snapshot, format, gzip).exportAll(directory);
+        }
+    }
+
+    // Method to get the publisher of warehouse events (stock changes, waitlists, invoices, balances).
+    public Flow.Publisher<WarehouseEvent> events() {
+        return WarehouseEvents.instance();
+    }
+
+    // Method to estimate the heap used by the products, clients and invoices and the pool of product names.
+    public MemoryReport memoryReport() {
+        LOCK.readLock().lock();
+        try {
+            return new MemoryReport(productCatalog.getProducts(), clientList.getClients(), invoiceList.getInvoices(),
+                    StringPool.instance());
+        } finally {
+            LOCK.readLock().unlock();
+        }
     }
 
     // Method to save the current state of the Warehouse to a file.
     public static boolean save() {
+        LOCK.readLock().lock();
         try {
             FileOutputStream file = new FileOutputStream("WarehouseData");
             ObjectOutputStream output = new ObjectOutputStream(file);
             output.writeObject(warehouse);
             output.writeObject(ClientIdServer.instance());
             output.writeObject(InvoiceIdServer.instance()); // Add InvoiceIdServer instance
+            output.writeObject(ProductIdServer.instance());
+            output.writeObject(new HashMap<>(ReservationManager.instance().getHeldQuantities()));
             output.close();
             return true;
         } catch (IOException ioe) {
             ioe.printStackTrace();
             return false;
+        } finally {
+            LOCK.readLock().unlock();
         }
     }
 
     // Method to retrieve a previously saved Warehouse instance from a file.
     public static Warehouse retrieve() {
+        LOCK.writeLock().lock();
         try {
             FileInputStream file = new FileInputStream("WarehouseData");
             ObjectInputStream input = new ObjectInputStream(file);
             warehouse = (Warehouse) input.readObject(); // Set the retrieved instance
             ClientIdServer.retrieve(input);
+            InvoiceIdServer.retrieve(input);
+            ProductIdServer.retrieve(input);
+            for (Iterator<Product> products = ProductCatalog.instance().getProducts(); products.hasNext();) {
+                ProductIdServer.instance().skipPast(products.next().getProductNumber());
+            }
+            returnHeldStock(input);
+            input.close();
+            // The stock in the file replaces what the store had.
+            if (offHeapStock != null && !moveStock(ProductCatalog.instance().getProducts(), offHeapStock)) {
+                System.out.println("The off-heap product store is full; the remaining products keep their stock"
+                        + " on the heap.");
+            }
+            SnapshotStore.reset(); // Snapshots of the old data no longer apply
             return warehouse;
         } catch (IOException | ClassNotFoundException e) {
             e.printStackTrace();
             return null;
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    // Method to keep the stock and prices of every product, and of the products added later, in an
+    // off-heap store rather than on the heap (see OffHeapProductStore). Rows the store already has
+    // are overwritten with the catalog's figures; a store opened from a file should be given the
+    // same catalog it was made from. It stays in use after retrieve(). Call it at startup, before
+    // any reservations are taken. Returns false if the store is too small for the catalog; the
+    // products moved before it filled up keep their rows, and the rest stay on the heap.
+    public boolean useOffHeapStock(OffHeapProductStore store) {
+        LOCK.writeLock().lock();
+        try {
+            boolean moved = moveStock(productCatalog.getProducts(), store);
+            productCatalog.clearPriceIndex();
+            if (!moved) {
+                return false;
+            }
+            offHeapStock = store;
+            return true;
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    // Moves the stock and prices of products into a store. Returns false if it fills up.
+    private static boolean moveStock(Iterator<Product> products, OffHeapProductStore store) {
+        while (products.hasNext()) {
+            if (!products.next().moveTo(store)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Method to put the units that reservations held when the data was saved back into stock, since
+    // the reservations themselves are not saved. Files saved before reservations existed have none.
+    @SuppressWarnings("unchecked")
+    private static void returnHeldStock(ObjectInputStream input) throws IOException, ClassNotFoundException {
+        Map<Integer, Integer> held;
+        try {
+            held = (Map<Integer, Integer>) input.readObject();
+        } catch (EOFException | OptionalDataException e) {
+            return;
+        }
+        for (Map.Entry<Integer, Integer> entry : held.entrySet()) {
+            Product product = ProductCatalog.instance().getProductByNumber(entry.getKey());
+            if (product != null) {
+                product.addQuantity(entry.getValue());
+            }
         }
     }
 
@@ -280,18 +968,24 @@ public class Warehouse implements Serializable {
         return scanner.nextLine();
     }
 
-    // Updated processOrder method
+    // Method to process a client's wishlist as an order, asking the operator what to do with each
+    // item. Stock is reserved as each item is chosen, so no other order can take it while the
+    // operator decides and no lock is held across the prompts. Confirming commits the reservations
+    // and invoices them; cancelling releases them. A reservation that expired while the operator
+    // was deciding is replaced by whatever stock is left at confirmation.
     public void processOrder(Client client) {
         System.out.println("Processing order for client: " + client.getClientName());
 
         // Step 2: Display each item in the wishlist
         System.out.println("Items in the wishlist:");
         Wishlist clientWishlist = client.getWishlist();
-        List<Product> wishlistItems = clientWishlist.getProducts();
+        List<Product> wishlistItems = read(clientWishlist::getProducts);
+        ReservationManager reservations = ReservationManager.instance();
 
-        // Lists to store quantities and unit prices
-        List<Integer> quantities = new ArrayList<>();
-        List<Double> unitPrices = new ArrayList<>();
+        // The items ordered, each with the quantity asked for and its reservation, index by index
+        List<Product> orderedProducts = new ArrayList<>();
+        List<Integer> requestedQuantities = new ArrayList<>();
+        List<Reservation> holds = new ArrayList<>();
 
         // Create a list to collect items marked for removal
         List<String> itemsToRemove = new ArrayList<>();
@@ -306,141 +1000,314 @@ public class Warehouse implements Serializable {
             // Step 3: User selects an action for each item
             String action = getInput(
                     "Select an action for this item (a: Remove, b: Order existing quantity, c: Order different quantity): ");
+            int quantity;
             switch (action.toLowerCase()) {
                 case "a":
                     // Step 3a: Remove from wishlist
                     itemsToRemove.add(product.getProductId());
-                    break;
+                    continue;
                 case "b":
                     // Step 3b: Order with existing quantity
-                    Pair<Integer, Integer> orderResult = orderProduct(client, product, itemQuantity);
-                    int orderedQuantity = orderResult.getKey();
-                    int remainingQuantity = orderResult.getValue();
-                    if (orderedQuantity > 0) {
-                        System.out.println("Item ordered with existing quantity: " + orderedQuantity);
-                        // Add quantity and unit price to the lists
-                        quantities.add(orderedQuantity);
-                        unitPrices.add(product.getPrice());
-                        itemsToRemove.add(product.getProductId());
-
-                        if (remainingQuantity > 0) {
-                            // Put the remaining quantity into the product waitlist
-                            addClientToWaitlist(client, product, remainingQuantity);
-                        }
-                    } else {
-                        System.out.println("Order failed: Insufficient stock.");
-                    }
+                    quantity = itemQuantity;
                     break;
                 case "c":
                     // Step 3c: Order with a different quantity
-                    int quantity = Integer.parseInt(getInput("Enter the quantity to order: "));
-                    Pair<Integer, Integer> customOrderResult = orderProduct(client, product, quantity);
-                    int customOrderedQuantity = customOrderResult.getKey();
-                    int customRemainingQuantity = customOrderResult.getValue();
-                    if (customOrderedQuantity > 0) {
-                        System.out.println("Item ordered with custom quantity: " + customOrderedQuantity);
-                        // Add quantity and unit price to the lists
-                        quantities.add(customOrderedQuantity);
-                        unitPrices.add(product.getPrice());
-                        itemsToRemove.add(product.getProductId());
-
-                        if (customRemainingQuantity > 0) {
-                            // Put the remaining quantity into the product waitlist
-                            addClientToWaitlist(client, product, customRemainingQuantity);
-                        }
-                    } else {
-                        System.out.println("Order failed: Insufficient stock or invalid quantity.");
-                    }
+                    quantity = Integer.parseInt(getInput("Enter the quantity to order: "));
                     break;
                 default:
                     System.out.println("Invalid action. Please select a valid action (a, b, or c).");
+                    continue;
+            }
+            Reservation reservation = reservations.reserve(client, product, quantity);
+            if (reservation == null) {
+                System.out.println("Order failed: Insufficient stock or invalid quantity.");
+                continue;
             }
+            System.out.println("Item reserved: " + reservation.getQuantity()
+                    + (reservation.getQuantity() < quantity
+                            ? " (the remaining " + (quantity - reservation.getQuantity()) + " will be waitlisted)"
+                            : ""));
+            orderedProducts.add(product);
+            requestedQuantities.add(quantity);
+            holds.add(reservation);
+            itemsToRemove.add(product.getProductId());
         }
 
-        // Step 4: User confirms the wishlist for processing (assuming confirmation)
+        // Step 4: User confirms the wishlist for processing
         String confirm = getInput("Do you want to confirm the order? (yes/no): ");
-        if (confirm.equalsIgnoreCase("yes")) {
-            // Step 6: System checks the availability of items in the warehouse
-            List<Product> orderedProducts = wishlistItems.stream()
-                    .filter(product -> product.getQuantity() > 0)
-                    .collect(Collectors.toList());
-
-            boolean isAvailabilityValid = checkAvailability(orderedProducts);
-
-            if (isAvailabilityValid) {
-
-                // Step 8: System calculates the total price for invoiced items and updates the
-                // client's balance
-                double totalPrice = calculateTotalPrice(orderedProducts, quantities);
-                client.setBalance(client.getBalance() - totalPrice);
-
-                // Step 9: System places any remaining items and quantities in a waitlist
-                int totalOrderedQuantity = wishlistItems.stream()
-                        .mapToInt(product -> clientWishlist.getProductQuantity(product.getProductId()))
-                        .sum();
-
-                if (totalOrderedQuantity > 0) {
-                    List<Product> remainingProducts = wishlistItems.stream()
-                            .filter(product -> product.getQuantity() > 0)
-                            .collect(Collectors.toList());
-
-                    for (Product remainingProduct : remainingProducts) {
-                        int itemQuantity = clientWishlist.getProductQuantity(remainingProduct.getProductId());
-                        if (itemQuantity > remainingProduct.getQuantity()) {
-                            // Client ordered more than what is available, put the remaining quantity into
-                            // the product waitlist
-                            int remainingQuantity = itemQuantity - remainingProduct.getQuantity();
-                            warehouse.addClientToWaitlist(client, remainingProduct, remainingQuantity);
-                            client.getWishlist().decreaseProductQuantity(remainingProduct.getProductId(),
-                                    remainingProduct.getQuantity());
-                        }
-                        client.getWishlist().decreaseProductQuantity(remainingProduct.getProductId(),
-                                totalOrderedQuantity);
-                    }
-                }
+        if (!confirm.equalsIgnoreCase("yes")) {
+            for (Reservation reservation : holds) {
+                reservations.release(reservation);
+            }
+            System.out.println("Order canceled.");
+            return;
+        }
 
-                // Step 10: System generates an invoice, shows it to the user, and saves the
-                // invoice
-                Invoice invoice = new Invoice(client, orderedProducts, quantities, unitPrices);
+        LOCK.writeLock().lock();
+        try {
+            List<Product> invoicedProducts = new ArrayList<>();
+            List<Integer> quantities = new ArrayList<>();
+            List<Double> unitPrices = new ArrayList<>();
+            for (int i = 0; i < holds.size(); i++) {
+                Product product = orderedProducts.get(i);
+                Reservation reservation = holds.get(i);
+                int shipped;
+                if (reservations.commit(reservation)) {
+                    shipped = reservation.getQuantity();
+                    changedProducts.add(product);
+                } else {
+                    shipped = removeStock(product, reservation.getQuantity());
+                    System.out.println("The reservation for " + product.getProductName() + " expired; "
+                            + shipped + " could still be ordered.");
+                }
+                if (shipped > 0) {
+                    invoicedProducts.add(product);
+                    quantities.add(shipped);
+                    unitPrices.add(product.getPrice());
+                }
 
-                invoiceList.addInvoice(invoice);
+                // Step 9: System places any remaining quantity in the product's waitlist
+                int remainingQuantity = requestedQuantities.get(i) - shipped;
+                if (remainingQuantity > 0) {
+                    waitlistClient(client, product,
+                            product.getWaitlist().getClientQuantity(client) + remainingQuantity);
+                }
+            }
 
+            // Step 8 and 10: System generates an invoice, saves it and updates the client's balance
+            if (!invoicedProducts.isEmpty()) {
+                Invoice invoice = new Invoice(client, invoicedProducts, quantities, unitPrices);
+                recordInvoice(invoice);
+                changeBalance(client, -invoice.getTotalAmount());
                 System.out.println("Order successfully processed. Invoice generated.");
-                // Remove items marked for removal from the wishlist
-                for (String productIdToRemove : itemsToRemove) {
-                    clientWishlist.removeProductFromWishlist(productIdToRemove);
-                }
             } else {
-                System.out.println("Order failed: Insufficient stock.");
+                System.out.println("Nothing could be shipped; no invoice generated.");
             }
-        } else {
-            System.out.println("Order canceled.");
-        }
 
+            // Remove items marked for removal from the wishlist
+            for (String productIdToRemove : itemsToRemove) {
+                clientWishlist.removeProductFromWishlist(productIdToRemove);
+                history().recordWishlist(client.getClientNumber(), Product.parseProductId(productIdToRemove), 0);
+            }
+            changedClients.add(client);
+        } finally {
+            unlockWrite();
+        }
     }
 
-    // Updated orderProduct method to return the actual quantity ordered and
-    // remaining quantity.
-    private Pair<Integer, Integer> orderProduct(Client client, Product product, int quantity) {
-        Product orderedProduct = warehouse.getProductById(product.getProductId());
+    // Method to release the write lock. When the outermost hold is released, the changes made under
+    // it are committed to the SnapshotStore as one version.
+    private static void unlockWrite() {
+        if (LOCK.getWriteHoldCount() == 1 && !productsChangedOutsideLock.isEmpty()) {
+            for (Iterator<Product> changed = productsChangedOutsideLock.iterator(); changed.hasNext();) {
+                changedProducts.add(changed.next());
+                changed.remove();
+            }
+        }
+        if (offHeapStock != null && LOCK.getWriteHoldCount() == 1) {
+            for (Product product : changedProducts) {
+                product.syncWaitlistTotal();
+            }
+        }
+        if (LOCK.getWriteHoldCount() == 1
+                && (!changedProducts.isEmpty() || !changedClients.isEmpty() || !newInvoices.isEmpty())) {
+            try {
+                SnapshotStore.instance().commit(changedProducts, changedClients, newInvoices, InvoiceList.instance());
+            } finally {
+                changedProducts.clear();
+                changedClients.clear();
+                newInvoices.clear();
+            }
+        }
+        LOCK.writeLock().unlock();
+    }
 
-        int availableQuantity = orderedProduct.getQuantity(); // Get the available quantity in the warehouse
+    // Method to get the low stock index, building it from the catalog the first time it is used.
+    private synchronized LowStockIndex lowStock() {
+        if (lowStockIndex == null) {
+            lowStockIndex = new LowStockIndex(productCatalog.getProducts());
+        }
+        return lowStockIndex;
+    }
 
-        int orderedQuantity = Math.min(quantity, availableQuantity); // Calculate the actual quantity to order
+    // Method to get the demand forecaster. Data saved before it existed has none, so it is built
+    // once from the invoice list.
+    private synchronized DemandForecaster demand() {
+        if (demandForecaster == null) {
+            demandForecaster = new DemandForecaster();
+            Iterator<Invoice> allInvoices = invoiceList.getInvoices();
+            while (allInvoices.hasNext()) {
+                demandForecaster.record(allInvoices.next());
+            }
+        }
+        return demandForecaster;
+    }
 
-        return new Pair<>(orderedQuantity, quantity - orderedQuantity); // Return the actual quantity ordered
-                                                                        // and remaining quantity
+    // Method to get the idempotency table. Data saved before it existed has none, so it starts empty.
+    private synchronized IdempotencyTable idempotency() {
+        if (idempotencyTable == null) {
+            idempotencyTable = new IdempotencyTable();
+        }
+        return idempotencyTable;
     }
 
-    // Method to check availability of ordered products in the warehouse
-    private boolean checkAvailability(List<Product> orderedProducts) {
-        for (Product product : orderedProducts) {
-            Product warehouseProduct = warehouse.getProductById(product.getProductId());
-            if (warehouseProduct == null || warehouseProduct.getQuantity() < product.getQuantity()) {
-                return false; // Insufficient stock for at least one product
+    // Method to make a change once per key: the key is looked up and the result recorded under
+    // the same hold of the write lock, so two requests with the same key cannot both make it.
+    @SuppressWarnings("unchecked")
+    private <T extends Serializable> T once(String operation, Client client, String key, Supplier<T> change) {
+        if (key == null) {
+            return change.get();
+        }
+        LOCK.writeLock().lock();
+        try {
+            String scopedKey = IdempotencyTable.scopedKey(operation, client.getClientId(), key);
+            T previous = (T) idempotency().get(scopedKey);
+            if (previous != null) {
+                return previous;
             }
+            T result = change.get();
+            idempotency().put(scopedKey, result);
+            return result;
+        } finally {
+            unlockWrite();
         }
-        return true; // All ordered products are available in sufficient quantities
+    }
+
+    // Method to get the event journal. Data saved before it existed has none, so it starts from
+    // the data as it is now.
+    private synchronized EventJournal history() {
+        if (eventJournal == null) {
+            eventJournal = new EventJournal(productCatalog.getProducts(), clientList.getClients());
+        }
+        return eventJournal;
+    }
+
+    // Method to get the leaderboards, creating them the first time they are used.
+    private synchronized Leaderboards leaderboards() {
+        if (leaderboards == null) {
+            leaderboards = new Leaderboards();
+        }
+        return leaderboards;
+    }
+
+    // Method to take up to a quantity out of a product's stock and publish the change. Stock is
+    // changed atomically because reservations take it without the lock. Returns the quantity
+    // taken. The caller must hold the write lock.
+    private int removeStock(Product product, int quantity) {
+        int previousQuantity = product.getAndTakeUpTo(quantity);
+        int taken = Product.taken(quantity, previousQuantity);
+        if (taken > 0) {
+            changedProducts.add(product);
+            publishStockChange(product, previousQuantity, previousQuantity - taken);
+        }
+        return taken;
+    }
+
+    // Method to add to a product's stock and publish the change. The caller must hold the write lock.
+    private void addStock(Product product, int quantity) {
+        if (quantity != 0) {
+            int previousQuantity = product.addQuantity(quantity);
+            changedProducts.add(product);
+            publishStockChange(product, previousQuantity, previousQuantity + quantity);
+        }
+    }
+
+    // Method to record a stock change made without the write lock, by a reservation. The product
+    // is committed to the SnapshotStore with the next change made under the write lock.
+    void stockChangedOutsideLock(Product product, int previousQuantity, int quantity) {
+        productsChangedOutsideLock.add(product);
+        publishStockChange(product, previousQuantity, quantity);
+    }
+
+    // Method to publish a stock change from one quantity to another, and a low stock event if the
+    // stock has just fallen to or below the reorder threshold. The quantities are passed in rather
+    // than read from the product, which a reservation may have changed again in the meantime.
+    private void publishStockChange(Product product, int previousQuantity, int quantity) {
+        history().recordStock(product);
+        WarehouseEvents.instance().publish(WarehouseEvent.stockChanged(product, previousQuantity, quantity));
+        if (lowStock().update(product, quantity)) {
+            WarehouseEvents.instance().publish(WarehouseEvent.lowStock(product, previousQuantity, quantity));
+        }
+    }
+
+    // Method to add to a client's balance (a negative amount debits it) and publish the change.
+    // The caller must hold the write lock.
+    private void changeBalance(Client client, double amount) {
+        changeBalanceTo(client, client.getBalance() + amount);
+    }
+
+    // Method to set a client's balance and publish the change, like changeBalance() but without
+    // rounding the new balance through the difference. The caller must hold the write lock.
+    private void changeBalanceTo(Client client, double balance) {
+        double previousBalance = client.getBalance();
+        client.setBalance(balance);
+        changedClients.add(client);
+        history().recordBalance(client);
+        WarehouseEvents.instance().publish(WarehouseEvent.balanceChanged(client, previousBalance));
+    }
+
+    // Method to take a product off a client's wishlist, if it is there. The caller must hold the write lock.
+    private void removeFromWishlist(Client client, Product product) {
+        if (client.hasWishlist() && client.getWishlist().containsProduct(product.getProductId())) {
+            client.getWishlist().removeProductFromWishlist(product.getProductId());
+            changedClients.add(client);
+            history().recordWishlist(client.getClientNumber(), product.getProductNumber(), 0);
+        }
+    }
+
+    // Method to put a client on a product's waitlist for a quantity and publish it.
+    // The caller must hold the write lock.
+    private void waitlistClient(Client client, Product product, int quantity) {
+        product.getWaitlist().addClientToWaitlist(client, quantity);
+        changedProducts.add(product);
+        history().recordWaitlist(product.getProductNumber(), client.getClientNumber(), quantity);
+        WarehouseEvents.instance().publish(WarehouseEvent.clientWaitlisted(client, product, quantity));
+    }
+
+    // Method to add an invoice to the invoice list and publish it. The caller must hold the write lock.
+    private void recordInvoice(Invoice invoice) {
+        invoiceList.addInvoice(invoice);
+        newInvoices.add(invoice);
+        demand().record(invoice);
+        leaderboards().recordInvoice(invoice, invoice.getTime());
+        WarehouseEvents.instance().publish(WarehouseEvent.invoiceCreated(invoice));
+    }
+
+    // Method to fill a waitlisted order: the quantity comes out of stock and the client is invoiced
+    // and debited. The client leaves the waitlist, or keeps their place for any quantity still
+    // outstanding. Returns null if reservations have taken the stock in the meantime.
+    // The caller must hold the write lock.
+    private Invoice fillFromWaitlist(Client client, Product selectedProduct, int requestedQuantity) {
+        // Deduct the ordered quantity from the product
+        int orderedQuantity = removeStock(selectedProduct, requestedQuantity);
+        if (orderedQuantity == 0) {
+            return null;
+        }
+
+        // Remove the client from the waitlist
+        Waitlist productWaitlist = selectedProduct.getWaitlist();
+        int outstanding = productWaitlist.getClientQuantity(client) - orderedQuantity;
+        if (outstanding > 0) {
+            productWaitlist.addClientToWaitlist(client, outstanding);
+        } else {
+            productWaitlist.removeClientFromWaitlist(client);
+        }
+        changedProducts.add(selectedProduct);
+        history().recordWaitlist(selectedProduct.getProductNumber(), client.getClientNumber(), Math.max(0, outstanding));
+        WarehouseEvents.instance().publish(WarehouseEvent.waitlistFilled(client, selectedProduct, orderedQuantity));
+
+        List<Product> products = new ArrayList<>();
+        products.add(selectedProduct);
+        List<Integer> quantities = new ArrayList<>();
+        quantities.add(orderedQuantity);
+        List<Double> unitPrices = new ArrayList<>();
+        unitPrices.add(selectedProduct.getPrice());
+
+        double totalPrice = calculateTotalPrice(products, quantities);
+        Invoice invoice = new Invoice(client, products, quantities, unitPrices);
+        recordInvoice(invoice);
+        changeBalance(client, -totalPrice);
+        return invoice;
     }
 
     // Method to calculate the total price of ordered products
@@ -457,10 +1324,18 @@ public class Warehouse implements Serializable {
 
     public void supplyProducts(Product selectedProduct, int quantityToAdd) {
         // Add the received quantity to the product in the warehouse
-        selectedProduct.setQuantity(selectedProduct.getQuantity() + quantityToAdd);
-    
-        Waitlist productWaitlist = selectedProduct.getWaitlist();    
-        for (Client waitlistClient : productWaitlist.getClients()) {
+        Waitlist productWaitlist;
+        List<Client> waitlistClients;
+        LOCK.writeLock().lock();
+        try {
+            addStock(selectedProduct, quantityToAdd);
+            productWaitlist = selectedProduct.getWaitlist();
+            waitlistClients = productWaitlist.getClients();
+        } finally {
+            unlockWrite();
+        }
+
+        for (Client waitlistClient : waitlistClients) {
 
             String action = getInput("Client " + waitlistClient.getClientName()
                     + " is on the waitlist. What do you want to do? (a: Leave, b: Order with existing quantity, c: Order with different quantity): ");
@@ -499,27 +1374,21 @@ public class Warehouse implements Serializable {
     
     
     private void processOrder_supply(Client client, Product selectedProduct, int orderedQuantity) {
-        // Remove the client from the waitlist
-        selectedProduct.getWaitlist().removeClientFromWaitlist(client);
-    
-        // Deduct the ordered quantity from the product
-        selectedProduct.setQuantity(selectedProduct.getQuantity() - orderedQuantity);
-    
-        List<Product> products = new ArrayList<>();
-        products.add(selectedProduct);
-        List<Integer> quantities = new ArrayList<>();
-        quantities.add(orderedQuantity);
-        List<Double> unitPrices = new ArrayList<>();
-        unitPrices.add(selectedProduct.getPrice());
+        Invoice invoice;
+        LOCK.writeLock().lock();
+        try {
+            invoice = fillFromWaitlist(client, selectedProduct, orderedQuantity);
+        } finally {
+            unlockWrite();
+        }
 
-        double totalPrice = calculateTotalPrice(products, quantities);
-        client.setBalance(client.getBalance() - totalPrice);
-    
-        Invoice invoice = new Invoice(client, products, quantities, unitPrices);
-        invoiceList.addInvoice(invoice);
-    
-        System.out.println("Order successfully processed. Invoice generated.");
-        System.out.println("Client " + client.getClientName() + " ordered " + orderedQuantity + " of " + selectedProduct.getProductName());
+        if (invoice != null) {
+            System.out.println("Order successfully processed. Invoice generated.");
+            System.out.println("Client " + client.getClientName() + " ordered " + invoice.getQuantity(0) + " of "
+                    + selectedProduct.getProductName());
+        } else {
+            System.out.println("Nothing could be shipped; no invoice generated.");
+        }
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,154 @@
+import java.io.Serializable;
+
+// A class representing a change in the warehouse that other systems may want to react to.
+// Events are immutable. Fields that do not apply to an event type are null or zero.
+public class WarehouseEvent implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // The kinds of events the warehouse publishes.
+    public enum Type {
+        STOCK_CHANGED, // quantity = new stock, previousQuantity = old stock
+        CLIENT_WAITLISTED, // quantity = quantity the client now waits for
+        WAITLIST_FILLED, // quantity = quantity shipped from the waitlist
+        INVOICE_CREATED, // amount = invoice total
+        BALANCE_CHANGED, // amount = new balance, previousAmount = old balance
+        LOW_STOCK // quantity = stock, previousQuantity = stock before it fell to the reorder threshold
+    }
+
+    private Type type;
+    private long time;
+    private String productId;
+    private String clientId;
+    private String invoiceId;
+    private int quantity;
+    private int previousQuantity;
+    private double amount;
+    private double previousAmount;
+
+    private WarehouseEvent(Type type, String productId, String clientId, String invoiceId, int quantity,
+            int previousQuantity, double amount, double previousAmount) {
+        this.type = type;
+        this.time = System.currentTimeMillis();
+        this.productId = productId;
+        this.clientId = clientId;
+        this.invoiceId = invoiceId;
+        this.quantity = quantity;
+        this.previousQuantity = previousQuantity;
+        this.amount = amount;
+        this.previousAmount = previousAmount;
+    }
+
+    // Method to create an event for a change in a product's stock. The quantities are the ones the
+    // change went from and to, since the stock may have changed again by the time this is called.
+    public static WarehouseEvent stockChanged(Product product, int previousQuantity, int quantity) {
+        return new WarehouseEvent(Type.STOCK_CHANGED, product.getProductId(), null, null, quantity,
+                previousQuantity, 0, 0);
+    }
+
+    // Method to create an event for a client joining (or adding to) a product's waitlist.
+    public static WarehouseEvent clientWaitlisted(Client client, Product product, int quantity) {
+        return new WarehouseEvent(Type.CLIENT_WAITLISTED, product.getProductId(), client.getClientId(), null,
+                quantity, 0, 0, 0);
+    }
+
+    // Method to create an event for a waitlisted order being shipped.
+    public static WarehouseEvent waitlistFilled(Client client, Product product, int quantity) {
+        return new WarehouseEvent(Type.WAITLIST_FILLED, product.getProductId(), client.getClientId(), null,
+                quantity, 0, 0, 0);
+    }
+
+    // Method to create an event for a new invoice.
+    public static WarehouseEvent invoiceCreated(Invoice invoice) {
+        return new WarehouseEvent(Type.INVOICE_CREATED, null, invoice.getClientId(), invoice.getInvoiceId(), 0, 0,
+                invoice.getTotalAmount(), 0);
+    }
+
+    // Method to create an event for a change in a client's balance.
+    public static WarehouseEvent balanceChanged(Client client, double previousBalance) {
+        return new WarehouseEvent(Type.BALANCE_CHANGED, null, client.getClientId(), null, 0, 0,
+                client.getBalance(), previousBalance);
+    }
+
+    // Method to create an event for a product's stock falling to or below its reorder threshold.
+    public static WarehouseEvent lowStock(Product product, int previousQuantity, int quantity) {
+        return new WarehouseEvent(Type.LOW_STOCK, product.getProductId(), null, null, quantity, previousQuantity,
+                0, 0);
+    }
+
+    // Method to get the event type.
+    public Type getType() {
+        return type;
+    }
+
+    // Method to get the time of the event in milliseconds.
+    public long getTime() {
+        return time;
+    }
+
+    // Method to get the product ID, or null if the event is not about a product.
+    public String getProductId() {
+        return productId;
+    }
+
+    // Method to get the client ID, or null if the event is not about a client.
+    public String getClientId() {
+        return clientId;
+    }
+
+    // Method to get the invoice ID, or null if the event is not about an invoice.
+    public String getInvoiceId() {
+        return invoiceId;
+    }
+
+    // Method to get the quantity of the event (see Type).
+    public int getQuantity() {
+        return quantity;
+    }
+
+    // Method to get the quantity before the change (stock events only).
+    public int getPreviousQuantity() {
+        return previousQuantity;
+    }
+
+    // Method to get the amount of the event (see Type).
+    public double getAmount() {
+        return amount;
+    }
+
+    // Method to get the amount before the change (balance events only).
+    public double getPreviousAmount() {
+        return previousAmount;
+    }
+
+    // Method to provide a string representation of the event.
+    public String toString() {
+        StringBuilder stringBuilder = new StringBuilder(type.toString());
+        if (productId != null) {
+            stringBuilder.append(" | Product ID: ").append(productId);
+        }
+        if (clientId != null) {
+            stringBuilder.append(" | Client ID: ").append(clientId);
+        }
+        if (invoiceId != null) {
+            stringBuilder.append(" | Invoice ID: ").append(invoiceId);
+        }
+        switch (type) {
+            case STOCK_CHANGED:
+                stringBuilder.append(" | Quantity: ").append(previousQuantity).append(" -> ").append(quantity);
+                break;
+            case CLIENT_WAITLISTED:
+            case WAITLIST_FILLED:
+                stringBuilder.append(" | Quantity: ").append(quantity);
+                break;
+            case INVOICE_CREATED:
+                stringBuilder.append(" | Total: $").append(amount);
+                break;
+            case BALANCE_CHANGED:
+                stringBuilder.append(" | Balance: $").append(previousAmount).append(" -> $").append(amount);
+                break;
+            default:
+                break;
+        }
+        return stringBuilder.toString();
+    }
+}
@@ -0,0 +1,72 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.LongAdder;
+
+// A class that publishes warehouse events to any number of Flow subscribers.
+// Every subscriber has its own bounded buffer and receives events only as fast as it requests
+// them. Publishing never waits: if a subscriber's buffer is full the event is dropped for that
+// subscriber alone and counted, so a slow consumer can never hold up order processing.
+public class WarehouseEvents implements Flow.Publisher<WarehouseEvent> {
+    public static final int BUFFER_CAPACITY = 8192; // Events buffered per subscriber
+    private static WarehouseEvents warehouseEvents;
+    private SubmissionPublisher<WarehouseEvent> publisher;
+    private LongAdder published = new LongAdder();
+    private LongAdder dropped = new LongAdder();
+
+    private WarehouseEvents() {
+        ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "warehouse-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+        publisher = new SubmissionPublisher<>(executor, BUFFER_CAPACITY);
+    }
+
+    // Method to get an instance of the WarehouseEvents (singleton pattern).
+    public static synchronized WarehouseEvents instance() {
+        if (warehouseEvents == null) {
+            return (warehouseEvents = new WarehouseEvents());
+        } else {
+            return warehouseEvents;
+        }
+    }
+
+    // Method to add a subscriber. It receives the events published from now on.
+    public void subscribe(Flow.Subscriber<? super WarehouseEvent> subscriber) {
+        publisher.subscribe(subscriber);
+    }
+
+    // Method to send an event to all subscribers without waiting for any of them.
+    public void publish(WarehouseEvent event) {
+        published.increment();
+        if (publisher.hasSubscribers()) {
+            publisher.offer(event, (subscriber, item) -> {
+                dropped.increment();
+                return false; // Do not retry; the publisher must not wait.
+            });
+        }
+    }
+
+    // Method to get the number of subscribers.
+    public int getSubscriberCount() {
+        return publisher.getNumberOfSubscribers();
+    }
+
+    // Method to get the number of events published.
+    public long getPublishedCount() {
+        return published.sum();
+    }
+
+    // Method to get the number of deliveries dropped because a subscriber's buffer was full.
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    // Method to provide a string representation of the WarehouseEvents.
+    public String toString() {
+        return "WarehouseEvents: " + getSubscriberCount() + " subscribers, " + getPublishedCount()
+                + " published, " + getDroppedCount() + " dropped";
+    }
+}
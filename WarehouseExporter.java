@@ -0,0 +1,364 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+// A class that exports the products, clients, wishlists, waitlists and invoices of a Snapshot to
+// CSV or JSON Lines files, one file per kind, optionally gzipped.
+//
+// Rows are written one at a time through a fixed-size character buffer that is encoded into a
+// fixed-size byte buffer and written to a FileChannel, so memory use does not depend on the
+// amount of data. Each file is written under a temporary name and renamed when complete, so a
+// failed export never leaves a partial file behind under the final name.
+//
+// CSV invoices have one row per invoice line; JSON Lines invoices have one object per invoice
+// with an array of lines. Times are ISO-8601 in UTC.
+public class WarehouseExporter {
+    private static final int CHAR_BUFFER_SIZE = 1 << 15;
+    private static final int BYTE_BUFFER_SIZE = 1 << 17;
+
+    // The file formats the exporter can write.
+    public enum Format {
+        CSV("csv"), JSONL("jsonl");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    private Snapshot snapshot;
+    private Format format;
+    private boolean gzip;
+
+    // Constructor for an exporter of a snapshot in the given format. The snapshot must stay open
+    // until the export is done.
+    public WarehouseExporter(Snapshot snapshot, Format format, boolean gzip) {
+        this.snapshot = snapshot;
+        this.format = format;
+        this.gzip = gzip;
+    }
+
+    // Method to export everything into a directory, replacing earlier exports of the same format.
+    // Returns the number of rows written to each file, by file name.
+    public Map<String, Long> exportAll(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        Map<String, Long> rows = new LinkedHashMap<>();
+        rows.put(fileName("products"), exportProducts(directory.resolve(fileName("products"))));
+        rows.put(fileName("clients"), exportClients(directory.resolve(fileName("clients"))));
+        rows.put(fileName("wishlists"), exportWishlists(directory.resolve(fileName("wishlists"))));
+        rows.put(fileName("waitlists"), exportWaitlists(directory.resolve(fileName("waitlists"))));
+        rows.put(fileName("invoices"), exportInvoices(directory.resolve(fileName("invoices"))));
+        return rows;
+    }
+
+    // Method to get the file name used for a kind of data, such as "invoices.csv.gz".
+    public String fileName(String kind) {
+        return kind + "." + format.extension + (gzip ? ".gz" : "");
+    }
+
+    // Method to export the products. Returns the number of rows written.
+    public long exportProducts(Path file) throws IOException {
+        try (RowWriter out = new RowWriter(file)) {
+            out.header("productId", "name", "price", "quantity", "waitlisted");
+            Iterator<ProductState> products = snapshot.getProducts();
+            while (products.hasNext()) {
+                ProductState product = products.next();
+                out.begin().text("productId", product.getProductId()).text("name", product.getProductName())
+                        .number("price", product.getPrice()).number("quantity", product.getQuantity())
+                        .number("waitlisted", product.getWaitlistTotal()).end();
+            }
+            return out.commit();
+        }
+    }
+
+    // Method to export the clients. Returns the number of rows written.
+    public long exportClients(Path file) throws IOException {
+        try (RowWriter out = new RowWriter(file)) {
+            out.header("clientId", "name", "address", "phone", "balance");
+            Iterator<ClientState> clients = snapshot.getClients();
+            while (clients.hasNext()) {
+                ClientState client = clients.next();
+                out.begin().text("clientId", client.getClientId()).text("name", client.getClientName())
+                        .text("address", client.getAddress()).text("phone", client.getPhone())
+                        .number("balance", client.getBalance()).end();
+            }
+            return out.commit();
+        }
+    }
+
+    // Method to export the wishlists, one row per client and product. Returns the number of rows.
+    public long exportWishlists(Path file) throws IOException {
+        try (RowWriter out = new RowWriter(file)) {
+            out.header("clientId", "productId", "quantity");
+            Iterator<ClientState> clients = snapshot.getClients();
+            while (clients.hasNext()) {
+                ClientState client = clients.next();
+                for (int i = 0; i < client.getWishlistSize(); i++) {
+                    out.begin().text("clientId", client.getClientId())
+                            .text("productId", Product.formatProductId(client.getWishlistProduct(i)))
+                            .number("quantity", client.getWishlistQuantity(i)).end();
+                }
+            }
+            return out.commit();
+        }
+    }
+
+    // Method to export the waitlists, one row per product and client in waitlist order.
+    // Returns the number of rows written.
+    public long exportWaitlists(Path file) throws IOException {
+        try (RowWriter out = new RowWriter(file)) {
+            out.header("productId", "position", "clientId", "quantity");
+            Iterator<ProductState> products = snapshot.getProducts();
+            while (products.hasNext()) {
+                ProductState product = products.next();
+                for (int i = 0; i < product.getWaitlistSize(); i++) {
+                    out.begin().text("productId", product.getProductId()).number("position", i + 1)
+                            .text("clientId", Client.formatClientId(product.getWaitlistClient(i)))
+                            .number("quantity", product.getWaitlistQuantity(i)).end();
+                }
+            }
+            return out.commit();
+        }
+    }
+
+    // Method to export the invoices, month by month. Returns the number of rows written.
+    public long exportInvoices(Path file) throws IOException {
+        try (RowWriter out = new RowWriter(file)) {
+            if (format == Format.CSV) {
+                out.header("invoiceId", "date", "clientId", "clientName", "productId", "productName", "quantity",
+                        "unitPrice", "total");
+            }
+            for (Iterator<Invoice> invoices = snapshot.getInvoices(); invoices.hasNext();) {
+                Invoice invoice = invoices.next();
+                String date = Instant.ofEpochMilli(invoice.getTime()).toString();
+                if (format == Format.CSV) {
+                    for (int line = 0; line < invoice.getLineCount(); line++) {
+                        out.begin().text("invoiceId", invoice.getInvoiceId()).text("date", date)
+                                .text("clientId", invoice.getClientId()).text("clientName", invoice.getClientName())
+                                .text("productId", Product.formatProductId(invoice.getProductNumber(line)))
+                                .text("productName", invoice.getProductName(line))
+                                .number("quantity", invoice.getQuantity(line))
+                                .number("unitPrice", invoice.getUnitPrice(line))
+                                .number("total", invoice.getTotalAmount()).end();
+                    }
+                } else {
+                    out.begin().text("invoiceId", invoice.getInvoiceId()).text("date", date)
+                            .text("clientId", invoice.getClientId()).text("clientName", invoice.getClientName())
+                            .number("total", invoice.getTotalAmount()).rawField("lines");
+                    for (int line = 0; line < invoice.getLineCount(); line++) {
+                        out.raw(line == 0 ? "[{" : ",{");
+                        out.text("productId", Product.formatProductId(invoice.getProductNumber(line)))
+                                .text("productName", invoice.getProductName(line))
+                                .number("quantity", invoice.getQuantity(line))
+                                .number("unitPrice", invoice.getUnitPrice(line));
+                        out.raw("}");
+                    }
+                    out.raw(invoice.getLineCount() == 0 ? "[]" : "]").end();
+                }
+            }
+            return out.commit();
+        }
+    }
+
+    // A class that formats rows as CSV or JSON Lines and writes them through fixed-size buffers.
+    private class RowWriter implements AutoCloseable {
+        private Path file;
+        private Path temporary;
+        private FileChannel fileChannel;
+        private WritableByteChannel channel;
+        private StringBuilder chars = new StringBuilder(CHAR_BUFFER_SIZE + 1024);
+        private CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        private ByteBuffer bytes = ByteBuffer.allocateDirect(BYTE_BUFFER_SIZE);
+        private boolean firstField;
+        private long rows;
+        private boolean committed;
+
+        private RowWriter(Path file) throws IOException {
+            this.file = file;
+            this.temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            this.fileChannel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            if (gzip) {
+                OutputStream compressed = new GZIPOutputStream(Channels.newOutputStream(fileChannel), 1 << 16);
+                this.channel = Channels.newChannel(compressed);
+            } else {
+                this.channel = fileChannel;
+            }
+        }
+
+        // Writes the CSV header line; JSON Lines has none.
+        private void header(String... columns) throws IOException {
+            if (format == Format.CSV) {
+                for (int i = 0; i < columns.length; i++) {
+                    if (i > 0) {
+                        chars.append(',');
+                    }
+                    chars.append(columns[i]);
+                }
+                chars.append('\n');
+                flushIfFull();
+            }
+        }
+
+        private RowWriter begin() {
+            if (format == Format.JSONL) {
+                chars.append('{');
+            }
+            firstField = true;
+            return this;
+        }
+
+        private RowWriter text(String name, String value) {
+            separator(name);
+            if (format == Format.JSONL) {
+                if (value == null) {
+                    chars.append("null");
+                } else {
+                    Json.quote(value, chars);
+                }
+            } else if (value != null) {
+                csv(value);
+            }
+            return this;
+        }
+
+        private RowWriter number(String name, double value) {
+            separator(name);
+            if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+                chars.append((long) value);
+            } else {
+                chars.append(value);
+            }
+            return this;
+        }
+
+        private RowWriter number(String name, long value) {
+            separator(name);
+            chars.append(value);
+            return this;
+        }
+
+        // Starts a JSON field whose value is written with raw().
+        private RowWriter rawField(String name) {
+            separator(name);
+            return this;
+        }
+
+        private RowWriter raw(String text) {
+            chars.append(text);
+            firstField = text.endsWith("{");
+            return this;
+        }
+
+        private void end() throws IOException {
+            chars.append(format == Format.JSONL ? "}\n" : "\n");
+            rows++;
+            flushIfFull();
+        }
+
+        private void separator(String name) {
+            if (!firstField) {
+                chars.append(',');
+            }
+            firstField = false;
+            if (format == Format.JSONL) {
+                chars.append('"').append(name).append("\":");
+            }
+        }
+
+        private void csv(String value) {
+            boolean quote = false;
+            for (int i = 0; i < value.length() && !quote; i++) {
+                char c = value.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                chars.append(value);
+                return;
+            }
+            chars.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') {
+                    chars.append('"');
+                }
+                chars.append(c);
+            }
+            chars.append('"');
+        }
+
+        private void flushIfFull() throws IOException {
+            if (chars.length() >= CHAR_BUFFER_SIZE) {
+                flush(false);
+            }
+        }
+
+        // Encodes the buffered characters and writes them to the channel.
+        private void flush(boolean endOfInput) throws IOException {
+            CharBuffer input = CharBuffer.wrap(chars);
+            while (true) {
+                CoderResult result = encoder.encode(input, bytes, endOfInput);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                writeBytes();
+                if (result.isUnderflow()) {
+                    break;
+                }
+            }
+            // Keep any half of a surrogate pair for the next flush.
+            chars.delete(0, input.position());
+            if (endOfInput) {
+                encoder.flush(bytes);
+                writeBytes();
+            }
+        }
+
+        private void writeBytes() throws IOException {
+            bytes.flip();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            bytes.clear();
+        }
+
+        // Finishes the file and moves it to its final name. Returns the number of rows written.
+        private long commit() throws IOException {
+            flush(true);
+            channel.close();
+            fileChannel.close();
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+            return rows;
+        }
+
+        // Closes the file; if it was not committed, the partial file is deleted.
+        public void close() throws IOException {
+            if (!committed) {
+                try {
+                    channel.close();
+                    fileChannel.close();
+                } finally {
+                    Files.deleteIfExists(temporary);
+                }
+            }
+        }
+    }
+}
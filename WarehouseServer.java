@@ -0,0 +1,769 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// A class that serves the warehouse operations as a JSON API over HTTP on the loopback address only.
+// Each request runs on its own virtual thread when the JVM supports them (Java 21 and later), and
+// otherwise on a fixed pool of threads with a bounded queue. The thread that accepts connections
+// only hands requests over; when the queue is full it answers 503 with a Retry-After header at
+// once, so a slow request never holds up the other connections. All data access goes through the
+// thread-safe Warehouse methods.
+//
+// Endpoints:
+//   GET  /clients                      POST /clients {"name","address","phone"}
+//   GET  /clients/{id}                 GET  /clients/{id}/invoices
+//   GET  /clients/{id}/wishlist        POST /clients/{id}/wishlist {"productId","quantity"}
+//   DELETE /clients/{id}/wishlist/{productId}
+//   GET  /products                     POST /products {"name","price","quantity"} or an array of them
+//   GET  /products/{id}                GET  /products/{id}/waitlist
+//   GET  /invoices                     GET  /invoices/{id}
+//   POST /orders {"clientId", "lines": [{"productId","quantity"}]}; without lines the wishlist is ordered
+//   POST /shipments {"productId","quantity"}
+//   POST /payments {"clientId","amount"}
+//   Orders and payments take an optional "idempotencyKey"; a retry with the same key gets the
+//   original result and changes nothing.
+//   GET  /queries/outstanding-balances GET  /queries/inventory    GET  /queries/low-stock
+//   GET  /queries/reorder-suggestions[/{days}] (7 days by default)
+//   GET  /queries/sales-by-product     GET  /queries/sales-by-client
+//   GET  /queries/sales-by-day[/{days}] (the last 30 days, ending today in UTC, by default)
+//   GET  /queries/top-products[/{hour|day|week}] GET /queries/top-clients[/{hour|day|week}] (day by default)
+//   POST /queries {"from": "products"|"clients"|"invoices", conditions, "select", "sortBy", "descending",
+//                  "limit", "explain"}; conditions are minPrice, maxPrice, minStock, maxStock,
+//                  minBalance, maxBalance, fromDate, toDate (milliseconds), clientId and productId
+public class WarehouseServer {
+    public static final int DEFAULT_PORT = 8080;
+    private static final int BACKLOG = 4096;
+    private static final int THREADS_PER_CORE = 8; // Without virtual threads; requests mostly wait on locks and I/O
+    private static final String RETRY_AFTER_SECONDS = "1"; // For requests turned away while the queue is full
+    private HttpServer server;
+    private ExecutorService executor;
+    private Warehouse warehouse;
+
+    // Constructor to create a server for the warehouse on the given loopback port (0 picks a free port).
+    public WarehouseServer(Warehouse warehouse, int port) throws IOException {
+        this.warehouse = warehouse;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        this.executor = newRequestExecutor();
+        server.createContext("/", this::dispatch); // No server executor: dispatch() runs on the accepting thread
+    }
+
+    // Method to create one virtual thread per request when available, or otherwise a bounded thread
+    // pool that rejects requests once its queue is full.
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException roe) {
+            int threads = THREADS_PER_CORE * Runtime.getRuntime().availableProcessors();
+            return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(BACKLOG), new ThreadPoolExecutor.AbortPolicy());
+        }
+    }
+
+    // Method to start accepting requests.
+    public void start() {
+        server.start();
+    }
+
+    // Method to stop accepting requests, giving running requests up to the given number of seconds.
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    // Method to get the port the server is listening on.
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // Method to hand a request over to the request executor, or to turn it away with 503 if the
+    // executor is full. Runs on the thread that accepts connections, so it must not block.
+    private void dispatch(HttpExchange exchange) throws IOException {
+        try {
+            executor.execute(() -> {
+                try {
+                    handle(exchange);
+                } catch (IOException ioe) {
+                    exchange.close(); // The client went away; nothing more can be sent
+                }
+            });
+        } catch (RejectedExecutionException ree) {
+            exchange.getResponseHeaders().set("Retry-After", RETRY_AFTER_SECONDS);
+            send(exchange, 503, error("The server is busy; retry after " + RETRY_AFTER_SECONDS + " second(s)"));
+        }
+    }
+
+    // Method to handle one request: route it, and reply with JSON.
+    private void handle(HttpExchange exchange) throws IOException {
+        int status;
+        Object body;
+        try {
+            String[] path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/");
+            Object result = route(exchange.getRequestMethod(), path, readBody(exchange));
+            if (result instanceof Reply) {
+                status = ((Reply) result).status;
+                body = ((Reply) result).body;
+            } else {
+                status = 200;
+                body = result;
+            }
+        } catch (IllegalArgumentException e) {
+            status = 400;
+            body = error("Bad request: " + e.getMessage());
+        } catch (RuntimeException e) {
+            status = 500;
+            body = error("Server error: " + e);
+        }
+        send(exchange, status, body);
+    }
+
+    // Method to send a JSON response and close the exchange.
+    private static void send(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = Json.write(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    // Method to find the operation for a request. Returns the response body or a Reply.
+    private Object route(String method, String[] path, Object request) {
+        String resource = path[0];
+        String id = path.length > 1 ? path[1] : null;
+        String part = path.length > 2 ? path[2] : null;
+        switch (resource) {
+            case "clients":
+                if (id == null) {
+                    return method.equals("GET") ? listClients() : method.equals("POST") ? addClient(request)
+                            : notAllowed();
+                }
+                if (part == null) {
+                    return method.equals("GET") ? getClient(id) : notAllowed();
+                }
+                if (part.equals("invoices") && method.equals("GET")) {
+                    return getClientInvoices(id);
+                }
+                if (part.equals("wishlist")) {
+                    if (path.length > 3 && method.equals("DELETE")) {
+                        return removeFromWishlist(id, path[3]);
+                    }
+                    return method.equals("GET") ? getWishlist(id)
+                            : method.equals("POST") ? addToWishlist(id, request) : notAllowed();
+                }
+                return notFound("No such resource");
+            case "products":
+                if (id == null) {
+                    return method.equals("GET") ? listProducts() : method.equals("POST") ? addProducts(request)
+                            : notAllowed();
+                }
+                if (part == null) {
+                    return method.equals("GET") ? getProduct(id) : notAllowed();
+                }
+                if (part.equals("waitlist") && method.equals("GET")) {
+                    return getWaitlist(id);
+                }
+                return notFound("No such resource");
+            case "invoices":
+                if (!method.equals("GET")) {
+                    return notAllowed();
+                }
+                return id == null ? listInvoices() : getInvoice(id);
+            case "orders":
+                return method.equals("POST") ? placeOrder(request) : notAllowed();
+            case "shipments":
+                return method.equals("POST") ? receiveShipment(request) : notAllowed();
+            case "payments":
+                return method.equals("POST") ? acceptPayment(request) : notAllowed();
+            case "queries":
+                if (id == null && method.equals("POST")) {
+                    return runQuery(request);
+                }
+                if (!method.equals("GET") || id == null) {
+                    return notAllowed();
+                }
+                if (id.equals("outstanding-balances")) {
+                    return outstandingBalances();
+                }
+                if (id.equals("inventory")) {
+                    return inventory();
+                }
+                if (id.equals("low-stock")) {
+                    return lowStock();
+                }
+                if (id.equals("sales-by-product")) {
+                    return salesTotals(warehouse.getSalesByProduct());
+                }
+                if (id.equals("sales-by-client")) {
+                    return salesTotals(warehouse.getSalesByClient());
+                }
+                if (id.equals("sales-by-day")) {
+                    long today = DemandForecaster.dayOf(System.currentTimeMillis());
+                    int days = part == null ? 30 : Integer.parseInt(part);
+                    return salesTotals(warehouse.getSalesByDay(today - days + 1, today));
+                }
+                if (id.equals("top-products") || id.equals("top-clients")) {
+                    Leaderboards.Window window = part == null ? Leaderboards.Window.DAY
+                            : Leaderboards.Window.valueOf(part.toUpperCase());
+                    return leaderboard(id.equals("top-products") ? warehouse.getTopProducts(window, 10)
+                            : warehouse.getTopClients(window, 10));
+                }
+                if (id.equals("reorder-suggestions")) {
+                    return reorderSuggestions(part == null ? 7 : Integer.parseInt(part));
+                }
+                return notFound("No such query");
+            default:
+                return notFound("No such resource");
+        }
+    }
+
+    private Object listClients() {
+        List<Object> clients = new ArrayList<>();
+        Iterator<Client> allClients = warehouse.getClients();
+        while (allClients.hasNext()) {
+            clients.add(toJson(allClients.next()));
+        }
+        return clients;
+    }
+
+    private Object addClient(Object request) {
+        Map<?, ?> fields = object(request, "the request body");
+        Client client = warehouse.addClient(text(fields, "name"), text(fields, "address"), text(fields, "phone"));
+        return new Reply(201, toJson(client));
+    }
+
+    private Object getClient(String clientId) {
+        Client client = warehouse.getClientById(clientId);
+        return client == null ? notFound("Client not found") : toJson(client);
+    }
+
+    private Object getClientInvoices(String clientId) {
+        if (warehouse.getClientById(clientId) == null) {
+            return notFound("Client not found");
+        }
+        List<Object> invoices = new ArrayList<>();
+        for (Invoice invoice : warehouse.getInvoicesForClient(clientId)) {
+            invoices.add(toJson(invoice));
+        }
+        return invoices;
+    }
+
+    private Object getWishlist(String clientId) {
+        Client client = warehouse.getClientById(clientId);
+        if (client == null) {
+            return notFound("Client not found");
+        }
+        return warehouse.read(() -> {
+            List<Object> items = new ArrayList<>();
+            if (client.hasWishlist()) {
+                Wishlist wishlist = client.getWishlist();
+                for (Product product : wishlist) {
+                    Map<String, Object> item = new LinkedHashMap<>();
+                    item.put("productId", product.getProductId());
+                    item.put("productName", product.getProductName());
+                    item.put("quantity", wishlist.getProductQuantity(product.getProductId()));
+                    item.put("price", product.getPrice());
+                    items.add(item);
+                }
+            }
+            return items;
+        });
+    }
+
+    private Object addToWishlist(String clientId, Object request) {
+        Map<?, ?> fields = object(request, "the request body");
+        Client client = warehouse.getClientById(clientId);
+        Product product = warehouse.getProductById(text(fields, "productId"));
+        if (client == null || product == null) {
+            return notFound("Client or product not found");
+        }
+        int result = warehouse.addProductToWishlist(client, product, count(fields, "quantity", 1));
+        if (result == Warehouse.WISHLIST_PRODUCT_ALREADY_EXISTS) {
+            return new Reply(409, error("Product is already in the wishlist"));
+        }
+        return new Reply(201, getWishlist(clientId));
+    }
+
+    private Object removeFromWishlist(String clientId, String productId) {
+        Client client = warehouse.getClientById(clientId);
+        Product product = warehouse.getProductById(productId);
+        if (client == null || product == null) {
+            return notFound("Client or product not found");
+        }
+        if (warehouse.removeProductFromWishlist(client, product) == Warehouse.WISHLIST_PRODUCT_NOT_FOUND) {
+            return notFound("Product not found in the wishlist");
+        }
+        return getWishlist(clientId);
+    }
+
+    private Object listProducts() {
+        List<Object> products = new ArrayList<>();
+        Iterator<Product> allProducts = warehouse.getProducts();
+        while (allProducts.hasNext()) {
+            products.add(toJson(allProducts.next()));
+        }
+        return products;
+    }
+
+    // Several products can be added at once by sending an array.
+    private Object addProducts(Object request) {
+        if (request instanceof List) {
+            List<Object> products = new ArrayList<>();
+            for (Object item : (List<?>) request) {
+                products.add(addProduct(object(item, "each product")));
+            }
+            return new Reply(201, products);
+        }
+        return new Reply(201, addProduct(object(request, "the request body")));
+    }
+
+    private Object addProduct(Map<?, ?> fields) {
+        String name = text(fields, "name");
+        double price = number(fields, "price");
+        if (price < 0 || !Double.isFinite(price)) {
+            throw new IllegalArgumentException("price must not be negative");
+        }
+        Product product = warehouse.addProduct(name, price, count(fields, "quantity", 0));
+        return toJson(product);
+    }
+
+    private Object getProduct(String productId) {
+        Product product = warehouse.getProductById(productId);
+        return product == null ? notFound("Product not found") : toJson(product);
+    }
+
+    private Object getWaitlist(String productId) {
+        Product product = warehouse.getProductById(productId);
+        if (product == null) {
+            return notFound("Product not found");
+        }
+        return warehouse.read(() -> {
+            List<Object> entries = new ArrayList<>();
+            if (product.hasWaitlist()) {
+                Waitlist waitlist = product.getWaitlist();
+                for (Client client : waitlist.getClients()) {
+                    Map<String, Object> entry = new LinkedHashMap<>();
+                    entry.put("clientId", client.getClientId());
+                    entry.put("clientName", client.getClientName());
+                    entry.put("quantity", waitlist.getClientQuantity(client));
+                    entries.add(entry);
+                }
+            }
+            return entries;
+        });
+    }
+
+    private Object listInvoices() {
+        List<Object> invoices = new ArrayList<>();
+        Iterator<Invoice> allInvoices = warehouse.getInvoices();
+        while (allInvoices.hasNext()) {
+            invoices.add(toJson(allInvoices.next()));
+        }
+        return invoices;
+    }
+
+    private Object getInvoice(String invoiceId) {
+        Invoice invoice = warehouse.getInvoiceById(invoiceId);
+        return invoice == null ? notFound("Invoice not found") : toJson(invoice);
+    }
+
+    private Object placeOrder(Object request) {
+        Map<?, ?> fields = object(request, "the request body");
+        Client client = warehouse.getClientById(text(fields, "clientId"));
+        if (client == null) {
+            return notFound("Client not found");
+        }
+        String idempotencyKey = optionalText(fields, "idempotencyKey");
+        OrderResult result;
+        if (fields.get("lines") == null) {
+            result = warehouse.orderWishlist(client, idempotencyKey);
+        } else {
+            Map<Product, Integer> lines = new LinkedHashMap<>();
+            for (Object item : list(fields, "lines")) {
+                Map<?, ?> line = object(item, "each line");
+                Product product = warehouse.getProductById(text(line, "productId"));
+                if (product == null) {
+                    return notFound("Product not found: " + line.get("productId"));
+                }
+                lines.merge(product, count(line, "quantity", 1), Integer::sum);
+            }
+            result = warehouse.placeOrder(client, lines, idempotencyKey);
+        }
+        Map<String, Object> reply = new LinkedHashMap<>();
+        reply.put("invoice", result.getInvoice() == null ? null : toJson(result.getInvoice()));
+        reply.put("waitlisted", result.getWaitlisted());
+        return new Reply(201, reply);
+    }
+
+    private Object receiveShipment(Object request) {
+        Map<?, ?> fields = object(request, "the request body");
+        Product product = warehouse.getProductById(text(fields, "productId"));
+        if (product == null) {
+            return notFound("Product not found");
+        }
+        int quantity = count(fields, "quantity", 1);
+        List<Object> invoices = new ArrayList<>();
+        for (Invoice invoice : warehouse.receiveShipment(product, quantity)) {
+            invoices.add(toJson(invoice));
+        }
+        Map<String, Object> reply = new LinkedHashMap<>();
+        reply.put("product", toJson(product));
+        reply.put("waitlistInvoices", invoices);
+        return reply;
+    }
+
+    private Object acceptPayment(Object request) {
+        Map<?, ?> fields = object(request, "the request body");
+        Client client = warehouse.getClientById(text(fields, "clientId"));
+        if (client == null) {
+            return notFound("Client not found");
+        }
+        double amount = number(fields, "amount");
+        if (amount <= 0) {
+            throw new IllegalArgumentException("amount must be positive");
+        }
+        warehouse.acceptPayment(client, amount, optionalText(fields, "idempotencyKey"));
+        return toJson(client);
+    }
+
+    // Query: all clients who have an outstanding balance.
+    private Object outstandingBalances() {
+        List<Object> clients = new ArrayList<>();
+        try (Snapshot snapshot = warehouse.snapshot()) {
+            Iterator<ClientState> allClients = snapshot.getClients();
+            while (allClients.hasNext()) {
+                ClientState client = allClients.next();
+                if (client.getBalance() < 0) {
+                    clients.add(toJson(client));
+                }
+            }
+        }
+        return clients;
+    }
+
+    // Query: all products with their stock and total waitlisted quantity.
+    private Object inventory() {
+        List<Object> products = new ArrayList<>();
+        try (Snapshot snapshot = warehouse.snapshot()) {
+            Iterator<ProductState> allProducts = snapshot.getProducts();
+            while (allProducts.hasNext()) {
+                ProductState product = allProducts.next();
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("productId", product.getProductId());
+                item.put("name", product.getProductName());
+                item.put("price", product.getPrice());
+                item.put("quantity", product.getQuantity());
+                item.put("waitlisted", product.getWaitlistTotal());
+                products.add(item);
+            }
+        }
+        return products;
+    }
+
+    // Query: the products at or below their reorder threshold, furthest below first.
+    private Object lowStock() {
+        List<Object> products = new ArrayList<>();
+        for (Product product : warehouse.getProductsBelowReorderPoint()) {
+            products.add(toJson(product));
+        }
+        return products;
+    }
+
+    // Query: the products worth reordering to cover the given number of days.
+    private Object reorderSuggestions(int days) {
+        List<Object> suggestions = new ArrayList<>();
+        for (ReorderSuggestion suggestion : warehouse.getReorderSuggestions(days)) {
+            if (suggestion.getSuggestedQuantity() > 0) {
+                Map<String, Object> map = new LinkedHashMap<>();
+                map.put("productId", suggestion.getProductId());
+                map.put("name", suggestion.getProductName());
+                map.put("stock", suggestion.getStock());
+                map.put("waitlisted", suggestion.getWaitlisted());
+                map.put("reorderThreshold", suggestion.getReorderThreshold());
+                map.put("dailyRate", suggestion.getDailyRate());
+                map.put("forecast", suggestion.getForecast());
+                map.put("suggestedQuantity", suggestion.getSuggestedQuantity());
+                suggestions.add(map);
+            }
+        }
+        return suggestions;
+    }
+
+    private static Object leaderboard(List<LeaderboardEntry> entries) {
+        List<Object> rows = new ArrayList<>();
+        for (LeaderboardEntry entry : entries) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("id", entry.getId());
+            map.put("estimate", entry.getEstimate());
+            map.put("errorBound", entry.getErrorBound());
+            rows.add(map);
+        }
+        return rows;
+    }
+
+    private static Object salesTotals(List<SalesTotals> totals) {
+        List<Object> rows = new ArrayList<>();
+        for (SalesTotals total : totals) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("key", total.getKey());
+            map.put("units", total.getUnits());
+            map.put("revenue", total.getRevenueCents() / 100.0);
+            map.put("invoices", total.getInvoiceCount());
+            rows.add(map);
+        }
+        return rows;
+    }
+
+    // Query: any query the query engine supports, described in the request body.
+    private Object runQuery(Object request) {
+        Map<?, ?> fields = object(request, "the request body");
+        Query<?> query;
+        switch (text(fields, "from")) {
+            case "products":
+                query = Query.products();
+                break;
+            case "clients":
+                query = Query.clients();
+                break;
+            case "invoices":
+                query = Query.invoices();
+                break;
+            default:
+                throw new IllegalArgumentException("'from' must be products, clients or invoices");
+        }
+        if (fields.containsKey("minPrice") || fields.containsKey("maxPrice")) {
+            query.priceBetween(numberOr(fields, "minPrice", Double.NEGATIVE_INFINITY),
+                    numberOr(fields, "maxPrice", Double.POSITIVE_INFINITY));
+        }
+        if (fields.containsKey("minStock") || fields.containsKey("maxStock")) {
+            query.stockBetween((int) numberOr(fields, "minStock", Integer.MIN_VALUE),
+                    (int) numberOr(fields, "maxStock", Integer.MAX_VALUE));
+        }
+        if (fields.containsKey("minBalance") || fields.containsKey("maxBalance")) {
+            query.balanceBetween(numberOr(fields, "minBalance", Double.NEGATIVE_INFINITY),
+                    numberOr(fields, "maxBalance", Double.POSITIVE_INFINITY));
+        }
+        if (fields.containsKey("fromDate") || fields.containsKey("toDate")) {
+            query.datedBetween((long) numberOr(fields, "fromDate", Long.MIN_VALUE),
+                    (long) numberOr(fields, "toDate", Long.MAX_VALUE));
+        }
+        if (fields.containsKey("clientId")) {
+            query.forClient(text(fields, "clientId"));
+        }
+        if (fields.containsKey("productId")) {
+            query.forProduct(text(fields, "productId"));
+        }
+        if (fields.containsKey("select")) {
+            List<?> select = list(fields, "select");
+            String[] names = new String[select.size()];
+            for (int i = 0; i < names.length; i++) {
+                if (!(select.get(i) instanceof String)) {
+                    throw new IllegalArgumentException("'select' must be an array of field names");
+                }
+                names[i] = (String) select.get(i);
+            }
+            query.select(names);
+        }
+        if (fields.containsKey("sortBy")) {
+            query.sortBy(text(fields, "sortBy"), Boolean.TRUE.equals(fields.get("descending")));
+        }
+        if (fields.containsKey("limit")) {
+            query.limit(count(fields, "limit", 0));
+        }
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        if (Boolean.TRUE.equals(fields.get("explain"))) {
+            map.put("plan", warehouse.explain(query));
+            return map;
+        }
+        QueryResult result = warehouse.query(query);
+        map.put("plan", result.getPlan());
+        map.put("examined", result.getExamined());
+        map.put("rows", result.getRows());
+        return map;
+    }
+
+    private static Map<String, Object> toJson(Client client) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("clientId", client.getClientId());
+        map.put("name", client.getClientName());
+        map.put("address", client.getAddress());
+        map.put("phone", client.getPhone());
+        map.put("balance", client.getBalance());
+        return map;
+    }
+
+    private static Map<String, Object> toJson(ClientState client) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("clientId", client.getClientId());
+        map.put("name", client.getClientName());
+        map.put("address", client.getAddress());
+        map.put("phone", client.getPhone());
+        map.put("balance", client.getBalance());
+        return map;
+    }
+
+    private static Map<String, Object> toJson(Product product) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("productId", product.getProductId());
+        map.put("name", product.getProductName());
+        map.put("price", product.getPrice());
+        map.put("quantity", product.getQuantity());
+        map.put("reorderThreshold", product.getReorderThreshold());
+        return map;
+    }
+
+    private static Map<String, Object> toJson(Invoice invoice) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("invoiceId", invoice.getInvoiceId());
+        map.put("date", invoice.getTime());
+        map.put("clientId", invoice.getClientId());
+        map.put("clientName", invoice.getClientName());
+        List<Object> lines = new ArrayList<>();
+        for (int i = 0; i < invoice.getLineCount(); i++) {
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("productId", Product.formatProductId(invoice.getProductNumber(i)));
+            line.put("productName", invoice.getProductName(i));
+            line.put("quantity", invoice.getQuantity(i));
+            line.put("unitPrice", invoice.getUnitPrice(i));
+            lines.add(line);
+        }
+        map.put("lines", lines);
+        map.put("total", invoice.getTotalAmount());
+        return map;
+    }
+
+    private static Object readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (InputStream input = exchange.getRequestBody()) {
+            input.transferTo(buffer);
+        }
+        String text = buffer.toString(StandardCharsets.UTF_8).trim();
+        return text.isEmpty() ? null : Json.parse(text);
+    }
+
+    // Checks that a value from the request is a JSON object.
+    private static Map<?, ?> object(Object value, String what) {
+        if (!(value instanceof Map)) {
+            throw new IllegalArgumentException(what + " must be a JSON object");
+        }
+        return (Map<?, ?>) value;
+    }
+
+    private static List<?> list(Map<?, ?> fields, String name) {
+        Object value = fields.get(name);
+        if (!(value instanceof List)) {
+            throw new IllegalArgumentException("missing array field '" + name + "'");
+        }
+        return (List<?>) value;
+    }
+
+    private static String text(Map<?, ?> fields, String name) {
+        Object value = fields.get(name);
+        if (!(value instanceof String)) {
+            throw new IllegalArgumentException("missing text field '" + name + "'");
+        }
+        return (String) value;
+    }
+
+    private static String optionalText(Map<?, ?> fields, String name) {
+        return fields.get(name) == null ? null : text(fields, name);
+    }
+
+    private static double number(Map<?, ?> fields, String name) {
+        Object value = fields.get(name);
+        if (!(value instanceof Number)) {
+            throw new IllegalArgumentException("missing number field '" + name + "'");
+        }
+        return ((Number) value).doubleValue();
+    }
+
+    // Quantities and limits must be whole numbers from the given minimum up to the largest int,
+    // rather than be rounded or clamped into range.
+    private static int count(Map<?, ?> fields, String name, int minimum) {
+        double value = number(fields, name);
+        if (value != Math.rint(value) || value < minimum || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                    "'" + name + "' must be a whole number from " + minimum + " to " + Integer.MAX_VALUE);
+        }
+        return (int) value;
+    }
+
+    private static double numberOr(Map<?, ?> fields, String name, double otherwise) {
+        return fields.containsKey(name) ? number(fields, name) : otherwise;
+    }
+
+    private static Map<String, Object> error(String message) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("error", message);
+        return map;
+    }
+
+    private static Reply notFound(String message) {
+        return new Reply(404, error(message));
+    }
+
+    private static Reply notAllowed() {
+        return new Reply(405, error("Method not allowed"));
+    }
+
+    // A class pairing a response body with an HTTP status other than 200.
+    private static class Reply {
+        private int status;
+        private Object body;
+
+        private Reply(int status, Object body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    // Main method to run the server on the saved warehouse data until "quit" is entered or the
+    // process is stopped. The data is saved when the server stops.
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        Warehouse warehouse = new File("WarehouseData").exists() ? Warehouse.retrieve() : null;
+        if (warehouse == null) {
+            warehouse = Warehouse.instance();
+        }
+        WarehouseServer warehouseServer = new WarehouseServer(warehouse, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            warehouseServer.stop(1);
+            if (Warehouse.save()) {
+                System.out.println("The warehouse data has been saved in the file WarehouseData");
+            }
+        }));
+        warehouseServer.start();
+        System.out.println("Warehouse server listening on http://localhost:" + warehouseServer.getPort()
+                + "/ (enter quit to stop)");
+        BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.trim().equalsIgnoreCase("quit")) {
+                System.exit(0);
+            }
+        }
+        // No console: keep serving until the process is stopped.
+        Thread.currentThread().join();
+    }
+}
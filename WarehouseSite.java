@@ -0,0 +1,65 @@
+import java.util.List;
+
+// A class that makes the Warehouse one of the sites of a Federation. Its stock and waitlists are
+// the ones in the product catalog, and it is saved with the Warehouse.
+public class WarehouseSite implements Site {
+    private String name;
+    private double latitude;
+    private double longitude;
+
+    // Constructor for the Warehouse as a site with the given name and location.
+    public WarehouseSite(String name, double latitude, double longitude) {
+        this.name = name;
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public int[] getAvailable(int[] productNumbers) {
+        Warehouse warehouse = Warehouse.instance();
+        return warehouse.read(() -> {
+            int[] available = new int[productNumbers.length];
+            for (int i = 0; i < productNumbers.length; i++) {
+                Product product = warehouse.getProductById(Product.formatProductId(productNumbers[i]));
+                available[i] = product == null ? 0 : product.getQuantity();
+            }
+            return available;
+        });
+    }
+
+    public int take(Product product, int quantity) {
+        return Warehouse.instance().takeStock(product, quantity);
+    }
+
+    public void putBack(Product product, int quantity) {
+        Warehouse.instance().returnStock(product, quantity);
+    }
+
+    public void waitlist(Client client, Product product, int quantity) {
+        Warehouse.instance().addToWaitlist(client, product, quantity);
+    }
+
+    public void reduceWaitlist(Client client, Product product, int quantity) {
+        Warehouse.instance().reduceWaitlist(client, product, quantity);
+    }
+
+    public List<Invoice> receive(Product product, int quantity) {
+        return Warehouse.instance().receiveShipment(product, quantity);
+    }
+
+    // Method to provide a string representation of the site.
+    public String toString() {
+        return "Site " + name + " (" + latitude + ", " + longitude + ") | The warehouse";
+    }
+}
@@ -1,82 +1,120 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 // A class representing a Wishlist that stores a list of products.
+// Products are kept by product number in an insertion-ordered map, so lookups, updates and
+// removals take constant time. Only the numbers are saved; the products themselves are looked
+// up in the ProductCatalog when they are needed.
+// Files saved before then hold a list of products and a list of quantities; they are converted
+// once the whole file has been read, since the products may not be complete while the wishlist is.
 public class Wishlist implements Serializable, Iterable<Product> {
-    private List<Product> products; // List to store the products in the wishlist.
-    private List<Integer> quantities; // List to store the quantities of the corresponding products.
+    private static final long serialVersionUID = 8974825134607539148L; // As computed for the first saved form
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("entries", Map.class) // Product number -> quantity wanted.
+    };
+    private transient Map<Integer, Integer> quantities; // Map from product number to the quantity wanted.
 
     // Constructor to initialize an empty wishlist.
     public Wishlist() {
-        this.products = new ArrayList<>();
-        this.quantities = new ArrayList<>();
+        this.quantities = new LinkedHashMap<>();
     }
 
     // Method to add a product to the wishlist with a specified quantity.
     public void addProductToWishlist(Product product, int quantity) {
-        if (!containsProduct(product.getProductId())) {
-            products.add(product);
-            quantities.add(quantity);
-        }
+        quantities.putIfAbsent(product.getProductNumber(), quantity);
     }
 
     // Method to remove a product from the wishlist using the product ID.
     public void removeProductFromWishlist(String productId) {
-        int index = getProductIndexById(productId);
-        if (index != -1) {
-            products.remove(index);
-            quantities.remove(index);
-        }
-    }
-
-    public void decreaseProductQuantity(String productId, int quantity) {
-        for (Product product : products) {
-            if (product.getProductId().equals(productId)) {
-                int currentQuantity = product.getQuantity();
-                if (currentQuantity >= quantity) {
-                    product.setQuantity(currentQuantity - quantity);
-                }
-                break; // Exit the loop after updating the quantity
-            }
-        }
+        quantities.remove(Product.parseProductId(productId));
     }
 
     // Method to get the list of products in the wishlist.
     public List<Product> getProducts() {
+        List<Product> products = new ArrayList<>(quantities.size());
+        for (Product product : this) {
+            products.add(product);
+        }
         return products;
     }
 
+    // Method to get the wishlisted products by product number, with their quantities, in the order
+    // they were added. The map cannot be changed.
+    public Map<Integer, Integer> getEntries() {
+        return Collections.unmodifiableMap(quantities);
+    }
+
+    // Method to check if the wishlist has no products.
+    public boolean isEmpty() {
+        return quantities.isEmpty();
+    }
+
+    // Method to get the number of products in the wishlist.
+    public int size() {
+        return quantities.size();
+    }
+
     // Method to get the quantity of a specific product in the wishlist using the
     // product ID.
     public int getProductQuantity(String productId) {
-        int index = getProductIndexById(productId);
-        if (index != -1) {
-            return quantities.get(index);
+        Integer quantity = quantities.get(Product.parseProductId(productId));
+        if (quantity != null) {
+            return quantity;
         }
         return 0; // Product not found in the wishlist.
     }
 
-    // Method to check if a product is already in the wishlist using the product ID.
-    public boolean containsProduct(String productId) {
-        return getProductIndexById(productId) != -1;
+    // Method to change the quantity of a product that is already in the wishlist.
+    public boolean setProductQuantity(String productId, int quantity) {
+        return quantities.replace(Product.parseProductId(productId), quantity) != null;
     }
 
-    // Helper method to get the index of a product in the wishlist using its ID.
-    private int getProductIndexById(String productId) {
-        for (int i = 0; i < products.size(); i++) {
-            if (products.get(i).getProductId().equals(productId)) {
-                return i;
-            }
-        }
-        return -1; // Product not found.
+    // Method to check if a product is already in the wishlist using the product ID.
+    public boolean containsProduct(String productId) {
+        return quantities.containsKey(Product.parseProductId(productId));
     }
 
     // Override the iterator method to provide an iterator for the products.
+    // Products that are no longer in the catalog are skipped.
     @Override
     public Iterator<Product> iterator() {
-        return products.iterator();
+        final Iterator<Integer> productNumbers = quantities.keySet().iterator();
+        final ProductCatalog catalog = ProductCatalog.instance();
+        return new Iterator<Product>() {
+            private Product next = advance();
+
+            private Product advance() {
+                while (productNumbers.hasNext()) {
+                    Product product = catalog.getProductByNumber(productNumbers.next());
+                    if (product != null) {
+                        return product;
+                    }
+                }
+                return null;
+            }
+
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            public Product next() {
+                if (next == null) {
+                    throw new java.util.NoSuchElementException();
+                }
+                Product product = next;
+                next = advance();
+                return product;
+            }
+        };
     }
 
     // Override the toString method to provide a string representation of the
@@ -84,9 +122,42 @@ public class Wishlist implements Serializable, Iterable<Product> {
     @Override
     public String toString() {
         StringBuilder stringBuilder = new StringBuilder();
-        for (Product product : products) {
+        for (Product product : this) {
             stringBuilder.append(product.toString()).append("\n");
         }
         return stringBuilder.toString();
     }
+
+    // Custom serialization method that saves the product numbers with their quantities.
+    private void writeObject(ObjectOutputStream output) throws IOException {
+        ObjectOutputStream.PutField fields = output.putFields();
+        fields.put("entries", quantities);
+        output.writeFields();
+    }
+
+    // Custom deserialization method that reads the saved map, or converts the lists of an older
+    // file once the products in them have been read.
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = input.readFields();
+        quantities = new LinkedHashMap<>();
+        if (!fields.defaulted("entries")) {
+            Map<Integer, Integer> saved = (Map<Integer, Integer>) fields.get("entries", null);
+            if (saved != null) {
+                quantities.putAll(saved);
+            }
+            return;
+        }
+        List<?> products = (List<?>) fields.get("products", null);
+        List<?> savedQuantities = (List<?>) fields.get("quantities", null);
+        if (products == null || savedQuantities == null) {
+            return;
+        }
+        input.registerValidation(() -> {
+            for (int i = 0; i < products.size(); i++) {
+                quantities.putIfAbsent(((Product) products.get(i)).getProductNumber(),
+                        (Integer) savedQuantities.get(i));
+            }
+        }, 0);
+    }
 }